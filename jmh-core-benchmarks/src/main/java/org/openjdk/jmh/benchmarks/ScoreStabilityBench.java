@@ -29,6 +29,7 @@ import org.openjdk.jmh.annotations.GenerateMicroBenchmark;
 import org.openjdk.jmh.annotations.Level;
 import org.openjdk.jmh.annotations.Measurement;
 import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
 import org.openjdk.jmh.annotations.Scope;
 import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.State;
@@ -45,67 +46,20 @@ import java.util.concurrent.TimeUnit;
 public class ScoreStabilityBench {
 
     @State(Scope.Thread)
-    public static class Sleep_X_State {
-        @Setup(Level.Iteration)
-        public void sleep() throws InterruptedException {
-            // don't
-        }
-    }
-
-    @State(Scope.Thread)
-    public static class Sleep_X1_State {
-        @Setup(Level.Iteration)
-        public void sleep() throws InterruptedException {
-            TimeUnit.MILLISECONDS.sleep(1);
-        }
-    }
+    public static class SleepState {
+        @Param({"0", "1", "10", "100", "500"})
+        public int sleepMs;
 
-    @State(Scope.Thread)
-    public static class Sleep_X10_State {
-        @Setup(Level.Iteration)
-        public void sleep() throws InterruptedException {
-            TimeUnit.MILLISECONDS.sleep(10);
-        }
-    }
-
-    @State(Scope.Thread)
-    public static class Sleep_X100_State {
         @Setup(Level.Iteration)
         public void sleep() throws InterruptedException {
-            TimeUnit.MILLISECONDS.sleep(100);
+            if (sleepMs > 0) {
+                TimeUnit.MILLISECONDS.sleep(sleepMs);
+            }
         }
     }
 
-    @State(Scope.Thread)
-    public static class Sleep_X500_State {
-        @Setup(Level.Iteration)
-        public void sleep() throws InterruptedException {
-            TimeUnit.MILLISECONDS.sleep(500);
-        }
-    }
-
-    @GenerateMicroBenchmark
-    public void test_X(Sleep_X_State s) {
-        BlackHole.consumeCPU(10000);
-    }
-
-    @GenerateMicroBenchmark
-    public void test_X1(Sleep_X1_State s) {
-        BlackHole.consumeCPU(10000);
-    }
-
-    @GenerateMicroBenchmark
-    public void test_X10(Sleep_X10_State x) {
-        BlackHole.consumeCPU(10000);
-    }
-
-    @GenerateMicroBenchmark
-    public void test_X100(Sleep_X100_State x) {
-        BlackHole.consumeCPU(10000);
-    }
-
     @GenerateMicroBenchmark
-    public void test_X500(Sleep_X500_State x) {
+    public void test(SleepState s) {
         BlackHole.consumeCPU(10000);
     }
 
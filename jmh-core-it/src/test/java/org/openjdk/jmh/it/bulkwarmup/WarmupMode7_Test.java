@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2005, 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jmh.it.bulkwarmup;
+
+
+import org.junit.Test;
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.annotations.GenerateMicroBenchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.it.Fixtures;
+import org.openjdk.jmh.logic.Control;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.WarmupMode;
+import org.openjdk.jmh.runner.parameters.TimeValue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import static junit.framework.Assert.assertEquals;
+
+/**
+ * Tests if forked VMs do the bulk warmup:
+ * -wm beforeany -f 1
+ * <p>
+ * Forks record the sequence into the file, since they do not share the memory with the host.
+ */
+@State(Scope.Thread)
+public class WarmupMode7_Test {
+
+    private static final String SEQUENCE = "jmh.it.warmupSequence";
+
+    boolean recorded;
+
+    @Setup(Level.Iteration)
+    public void oneShot() {
+        recorded = false;
+    }
+
+    @GenerateMicroBenchmark
+    public void testBig(Control cnt) {
+        if (!recorded) {
+            recorded = true;
+            if (cnt.iterationTime == 100) { // warmup
+                record("W");
+            } else if (cnt.iterationTime == 200) {  // iteration
+                record("I");
+            }
+        }
+        Fixtures.work();
+    }
+
+    @GenerateMicroBenchmark
+    public void testSmall(Control cnt) {
+        if (!recorded) {
+            recorded = true;
+            if (cnt.iterationTime == 100) { // warmup
+                record("w");
+            } else if (cnt.iterationTime == 200) {  // iteration
+                record("i");
+            }
+        }
+        Fixtures.work();
+    }
+
+    private static void record(String s) {
+        try {
+            FileWriter w = new FileWriter(System.getProperty(SEQUENCE), true);
+            try {
+                w.write(s);
+            } finally {
+                w.close();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static File sequenceFile() throws IOException {
+        File file = File.createTempFile("jmh-warmup", ".txt");
+        file.deleteOnExit();
+        return file;
+    }
+
+    private static String getSequence(File file) throws IOException {
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            String line = reader.readLine();
+            return (line == null) ? "" : line;
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void invokeCLI() throws IOException {
+        File file = sequenceFile();
+        Main.testMain(Fixtures.getTestMask(this.getClass()) + "  -foe -w 100ms -r 200ms -t 1 -i 1 -wi 2 -wm beforeany -f 1 -si false " +
+                "--jvmargs -D" + SEQUENCE + "=" + file.getAbsolutePath());
+        assertEquals("WWwwIWWwwi", getSequence(file));
+    }
+
+    @Test
+    public void invokeAPI() throws RunnerException, IOException {
+        File file = sequenceFile();
+
+        Options opt = new OptionsBuilder()
+                .include(Fixtures.getTestMask(this.getClass()))
+                .failOnError(true)
+                .warmupIterations(2)
+                .warmupTime(TimeValue.milliseconds(100))
+                .measurementIterations(1)
+                .measurementTime(TimeValue.milliseconds(200))
+                .threads(1)
+                .forks(1)
+                .syncIterations(false)
+                .warmupMode(WarmupMode.BEFOREANY)
+                .jvmArgs("-D" + SEQUENCE + "=" + file.getAbsolutePath())
+                .build();
+        new Runner(opt).run();
+
+        assertEquals("WWwwIWWwwi", getSequence(file));
+    }
+
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2005, 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jmh.it.fails;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openjdk.jmh.annotations.GenerateMicroBenchmark;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.it.Fixtures;
+import org.openjdk.jmh.logic.results.IterationResult;
+import org.openjdk.jmh.logic.results.RunResult;
+import org.openjdk.jmh.runner.BenchmarkRecord;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.parameters.TimeValue;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests if the hung iteration is abandoned after the timeout:
+ * the results of the completed workers are kept, and the run moves on.
+ */
+public class HangingBenchTest {
+
+    private static final AtomicInteger THREADS = new AtomicInteger();
+    private static final CountDownLatch NEVER = new CountDownLatch(1);
+
+    @State(Scope.Thread)
+    public static class ThreadIndex {
+        int index;
+
+        @Setup
+        public void setup() {
+            index = THREADS.getAndIncrement();
+        }
+    }
+
+    @GenerateMicroBenchmark
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 3, time = 100, timeUnit = TimeUnit.MILLISECONDS)
+    @Threads(2)
+    public void hang(ThreadIndex s) {
+        if (s.index == 0) {
+            // only the first worker hangs, until abandoned
+            try {
+                NEVER.await();
+            } catch (InterruptedException e) {
+                // abandoned
+            }
+        }
+    }
+
+    @GenerateMicroBenchmark
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 1, time = 100, timeUnit = TimeUnit.MILLISECONDS)
+    @Threads(1)
+    public void work() {
+        Fixtures.work();
+    }
+
+    @Test
+    public void invokeAPI() throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(Fixtures.getTestMask(this.getClass()))
+                .timeout(TimeValue.seconds(1))
+                .forks(1)
+                .build();
+        Map<BenchmarkRecord, RunResult> results = new Runner(opt).run();
+
+        RunResult hang = null;
+        RunResult work = null;
+        for (Map.Entry<BenchmarkRecord, RunResult> e : results.entrySet()) {
+            if (e.getKey().getUsername().endsWith(".hang")) {
+                hang = e.getValue();
+            }
+            if (e.getKey().getUsername().endsWith(".work")) {
+                work = e.getValue();
+            }
+        }
+
+        Assert.assertNotNull("Hung benchmark should keep the partial results", hang);
+        Assert.assertEquals("Iterations after the timed out one should be skipped", 1, hang.getRawIterationResults().size());
+        IterationResult ir = hang.getRawIterationResults().iterator().next();
+        Assert.assertTrue("Iteration should be marked timed out", ir.isTimedOut());
+        Assert.assertEquals("Completed worker result should be kept", 1, ir.getRawPrimaryResults().size());
+
+        Assert.assertNotNull("Run should continue after the timeout", work);
+        Assert.assertFalse(work.getRawIterationResults().iterator().next().isTimedOut());
+    }
+
+}
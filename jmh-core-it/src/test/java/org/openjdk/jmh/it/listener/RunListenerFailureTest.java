@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2005, 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jmh.it.listener;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openjdk.jmh.annotations.GenerateMicroBenchmark;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.it.Fixtures;
+import org.openjdk.jmh.logic.results.RunResult;
+import org.openjdk.jmh.runner.AbstractRunListener;
+import org.openjdk.jmh.runner.BenchmarkRecord;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.parameters.TimeValue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests if the run listeners get the partial results of the failed run.
+ */
+@State
+public class RunListenerFailureTest {
+
+    @GenerateMicroBenchmark
+    public void a_pass() {
+        Fixtures.work();
+    }
+
+    @GenerateMicroBenchmark
+    public void b_fail() {
+        throw new IllegalStateException("Expected failure");
+    }
+
+    static class Recorder extends AbstractRunListener {
+        volatile Map<BenchmarkRecord, RunResult> results;
+        volatile Throwable failure;
+        volatile int calls;
+
+        @Override
+        public void runFinished(Map<BenchmarkRecord, RunResult> results, Throwable failure) {
+            this.results = results;
+            this.failure = failure;
+            this.calls++;
+        }
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        Options opt = new OptionsBuilder()
+                .include(Fixtures.getTestMask(this.getClass()))
+                .failOnError(true)
+                .warmupIterations(0)
+                .measurementIterations(1)
+                .measurementTime(TimeValue.milliseconds(100))
+                .forks(0)
+                .build();
+
+        Runner runner = new Runner(opt);
+        Recorder recorder = new Recorder();
+        runner.addListener(recorder);
+        try {
+            runner.run();
+            Assert.fail("Run should fail");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        Assert.assertEquals(1, recorder.calls);
+        Assert.assertNotNull(recorder.failure);
+
+        List<String> names = new ArrayList<String>();
+        for (BenchmarkRecord br : recorder.results.keySet()) {
+            names.add(br.getUsername().substring(br.getUsername().lastIndexOf('.') + 1));
+        }
+        Assert.assertEquals("[a_pass]", names.toString());
+    }
+
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2005, 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jmh.it.listener;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openjdk.jmh.annotations.GenerateMicroBenchmark;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.it.Fixtures;
+import org.openjdk.jmh.logic.results.IterationResult;
+import org.openjdk.jmh.logic.results.RunResult;
+import org.openjdk.jmh.output.format.IterationType;
+import org.openjdk.jmh.runner.AbstractRunListener;
+import org.openjdk.jmh.runner.BenchmarkRecord;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.parameters.BenchmarkParams;
+import org.openjdk.jmh.runner.parameters.IterationParams;
+import org.openjdk.jmh.runner.parameters.TimeValue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests if the run listeners are notified in order, and if the asynchronous run can be cancelled.
+ */
+@State
+public class RunListenerTest {
+
+    @GenerateMicroBenchmark
+    public void test() {
+        Fixtures.work();
+    }
+
+    /**
+     * Records the events as short strings, e.g. "M2" for the second measurement iteration.
+     */
+    static class Recorder extends AbstractRunListener {
+        final List<String> events = new ArrayList<String>();
+        final CountDownLatch firstIteration = new CountDownLatch(1);
+
+        synchronized List<String> getEvents() {
+            return new ArrayList<String>(events);
+        }
+
+        private synchronized void add(String event) {
+            events.add(event);
+        }
+
+        @Override
+        public void benchmarkStarted(BenchmarkRecord benchmark, BenchmarkParams params) {
+            add("start");
+        }
+
+        @Override
+        public void iterationFinished(BenchmarkRecord benchmark, IterationParams params, int iteration, IterationType type, IterationResult result) {
+            add(((type == IterationType.WARMUP) ? "W" : "M") + iteration);
+            firstIteration.countDown();
+        }
+
+        @Override
+        public void forkFinished(BenchmarkRecord benchmark, int fork, RunResult result) {
+            add("fork" + fork);
+        }
+
+        @Override
+        public void benchmarkFinished(BenchmarkRecord benchmark, RunResult result) {
+            add("end");
+        }
+
+        @Override
+        public void runFinished(Map<BenchmarkRecord, RunResult> results, Throwable failure) {
+            add((failure == null) ? "run" : "failed");
+        }
+    }
+
+    @Test
+    public void testOrder() throws Exception {
+        Options opt = new OptionsBuilder()
+                .include(Fixtures.getTestMask(this.getClass()))
+                .failOnError(true)
+                .warmupIterations(1)
+                .warmupTime(TimeValue.milliseconds(100))
+                .measurementIterations(2)
+                .measurementTime(TimeValue.milliseconds(100))
+                .forks(2)
+                .build();
+
+        Runner runner = new Runner(opt);
+        Recorder recorder = new Recorder();
+        runner.addListener(recorder);
+        Map<BenchmarkRecord, RunResult> results = runner.runAsync().get();
+
+        Assert.assertEquals(1, results.size());
+        Assert.assertEquals("[start, W1, M1, M2, fork0, start, W1, M1, M2, fork1, end, run]", recorder.getEvents().toString());
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        Options opt = new OptionsBuilder()
+                .include(Fixtures.getTestMask(this.getClass()))
+                .failOnError(true)
+                .warmupIterations(0)
+                .measurementIterations(1000)
+                .measurementTime(TimeValue.milliseconds(100))
+                .forks(1)
+                .build();
+
+        Runner runner = new Runner(opt);
+        Recorder recorder = new Recorder();
+        runner.addListener(recorder);
+        Future<Map<BenchmarkRecord, RunResult>> future = runner.runAsync();
+
+        Assert.assertTrue("Run should start", recorder.firstIteration.await(60, TimeUnit.SECONDS));
+        Assert.assertTrue(future.cancel(true));
+        try {
+            future.get();
+            Assert.fail("Cancelled run should not return the results");
+        } catch (CancellationException e) {
+            // expected
+        }
+
+        // the fork is killed, and reports nothing after a while
+        TimeUnit.SECONDS.sleep(1);
+        int settled = recorder.getEvents().size();
+        TimeUnit.SECONDS.sleep(1);
+        List<String> events = recorder.getEvents();
+        Assert.assertEquals("Run should stop after cancel: " + events, settled, events.size());
+        Assert.assertFalse("Run should not complete: " + events, events.contains("M1000"));
+        Assert.assertEquals("Cancelled run should be reported: " + events, "failed", events.get(events.size() - 1));
+    }
+
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2005, 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jmh.it.params;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.GenerateMicroBenchmark;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.it.Fixtures;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests if every parameter combination gets its own group-scoped state in the same VM.
+ */
+public class ParamGroupStateTest {
+
+    static final StringBuffer SEEN = new StringBuffer();
+
+    @State(Scope.Group)
+    public static class MyState {
+        @Param({"1", "2", "3"})
+        public int size;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            SEEN.append(size);
+        }
+    }
+
+    @GenerateMicroBenchmark
+    @BenchmarkMode(Mode.Throughput)
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 1, time = 100, timeUnit = TimeUnit.MILLISECONDS)
+    @Group("group1")
+    public void test1(MyState s) {
+        Fixtures.work();
+    }
+
+    @GenerateMicroBenchmark
+    @BenchmarkMode(Mode.Throughput)
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 1, time = 100, timeUnit = TimeUnit.MILLISECONDS)
+    @Group("group1")
+    public void test2(MyState s) {
+        Fixtures.work();
+    }
+
+    @Test
+    public void invokeCLI() {
+        SEEN.setLength(0);
+        Main.testMain(Fixtures.getTestMask(this.getClass()) + " -foe -f 0");
+        Assert.assertEquals("123", SEEN.toString());
+    }
+
+    @Test
+    public void invokeAPI() throws RunnerException {
+        SEEN.setLength(0);
+        Options opt = new OptionsBuilder()
+                .include(Fixtures.getTestMask(this.getClass()))
+                .failOnError(true)
+                .forks(0)
+                .build();
+        new Runner(opt).run();
+        Assert.assertEquals("123", SEEN.toString());
+    }
+
+}
@@ -24,12 +24,16 @@
  */
 package org.openjdk.jmh;
 
+import org.kohsuke.args4j.CmdLineException;
 import org.openjdk.jmh.link.BinaryLinkClient;
 import org.openjdk.jmh.runner.BenchmarkRecord;
 import org.openjdk.jmh.runner.ForkedRunner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
 import org.openjdk.jmh.runner.options.Options;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 
 /**
  * Main program entry point for forked JVM instance
@@ -53,20 +57,38 @@ public class ForkedMain {
                 //   1) host name to back-connect
                 //   2) host port to back-connect
                 //   3) benchmark to execute (saves benchmark lookup via Options)
+                //   4) optional directory with memory-mapped link files
+                //   5) optional iteration overrides, e.g. "-wi 1 -i 0" for warmup forks
+                //   6) fork id to identify ourselves to host VM
                 String hostName = argv[0];
                 int hostPort = Integer.valueOf(argv[1]);
                 BenchmarkRecord benchmark = new BenchmarkRecord(argv[2]);
+                int forkId = Integer.valueOf(argv[argv.length - 1]);
+
+                int overridesFrom = 3;
+                String linkDir = null;
+                if (argv.length > 4 && !argv[3].startsWith("-")) {
+                    linkDir = argv[3];
+                    overridesFrom = 4;
+                }
+
+                CommandLineOptions overrides = CommandLineOptions.newInstance();
+                overrides.parseArguments(Arrays.copyOfRange(argv, overridesFrom, argv.length - 1));
 
                 // establish the link to host VM and pull the options
-                link = new BinaryLinkClient(hostName, hostPort);
-                Options options = link.requestOptions();
+                if (linkDir != null) {
+                    link = new BinaryLinkClient(new File(linkDir, String.valueOf(forkId)), forkId);
+                } else {
+                    link = new BinaryLinkClient(hostName, hostPort, forkId);
+                }
+                Options options = link.requestOptions(overrides);
 
                 // run!
                 ForkedRunner runner = new ForkedRunner(options, link);
                 runner.run(benchmark);
             } catch (IOException ex) {
                 throw new IllegalArgumentException(ex.getMessage());
-            } catch (ClassNotFoundException ex) {
+            } catch (CmdLineException ex) {
                 throw new IllegalArgumentException(ex.getMessage());
             } finally {
                 if (link != null) {
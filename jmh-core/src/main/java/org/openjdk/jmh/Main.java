@@ -25,12 +25,16 @@
 package org.openjdk.jmh;
 
 import org.kohsuke.args4j.CmdLineException;
+import org.openjdk.jmh.logic.TraceTimeline;
 import org.openjdk.jmh.output.OutputFormatType;
 import org.openjdk.jmh.profile.ProfilerFactory;
 import org.openjdk.jmh.runner.Runner;
 import org.openjdk.jmh.runner.RunnerException;
 import org.openjdk.jmh.runner.options.CommandLineOptions;
 
+import java.io.File;
+import java.io.IOException;
+
 /**
  * Main program entry point
  *
@@ -93,6 +97,20 @@ public class Main {
                 return;
             }
 
+            if (cmdOptions.getReadTrace() != null) {
+                try {
+                    TraceTimeline.read(new File(cmdOptions.getReadTrace())).print(System.out);
+                } catch (IOException e) {
+                    System.err.println("Can not read the trace: " + e.getMessage());
+                }
+                return;
+            }
+
+            if (cmdOptions.getAgent() != null) {
+                Runner.runAgent(cmdOptions.getAgent());
+                return;
+            }
+
             Runner runner = new Runner(cmdOptions);
 
             if (cmdOptions.shouldList()) {
@@ -59,6 +59,14 @@ public enum Mode {
      */
     SingleShotTime("ss", "Single shot invocation time"),
 
+    /**
+     * Time distribution under the open-loop load: invocations start on schedule at the target rate,
+     * regardless of whether the previous ones had completed, and the time is counted from the
+     * scheduled start, so that the queueing delay is not omitted.
+     * {@link org.openjdk.jmh.logic.results.OpenLoopTimePerOp}.
+     */
+    OpenLoop("open", "Open loop at the target rate, time/op"),
+
     /**
      * Meta-mode: all the modes.
      * This is mostly useful for testing.
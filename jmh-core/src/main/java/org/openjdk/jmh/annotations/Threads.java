@@ -34,6 +34,18 @@ import java.lang.annotation.Target;
  * Annotation for a micro benchmark method which allows the setting of default
  * value for amount of benchmark threads.
  * Zero value means max available hw threads aka Runtime.availableProcessors().
+ * <p>
+ * Setting {@link #sweep()} runs the benchmark once for every thread count listed,
+ * and reports how the benchmark scales with the thread count:
+ * <blockquote><pre>
+ * &#64;Threads(sweep = {1, 2, 4, Threads.MAX})
+ * </pre></blockquote></p>
+ * <p>
+ * The benchmark threads may also run on virtual threads, allowing thread counts far above
+ * the number of CPUs:
+ * <blockquote><pre>
+ * &#64;Threads(value = 10000, executor = "VIRTUAL")
+ * </pre></blockquote></p>
  *
  * @author sergey.kuksenko@oracle.com
  */
@@ -42,8 +54,22 @@ import java.lang.annotation.Target;
 @Inherited
 public @interface Threads {
 
+    /** Special thread count meaning max available hw threads */
+    int MAX = 0;
+
     /** Amount of threads */
     int value() default 1;
 
+    /** Thread counts to run the benchmark with, one after another; overrides {@link #value()} */
+    int[] sweep() default {};
+
+    /**
+     * Executor to run the benchmark threads on: either the built-in
+     * {@link org.openjdk.jmh.runner.ExecutorType} name, e.g. "VIRTUAL", or the name of
+     * the class implementing {@link org.openjdk.jmh.runner.ExecutorProvider}.
+     * Default is the fixed thread pool.
+     */
+    String executor() default "";
+
 }
 
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2005, 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jmh.link;
+
+import org.openjdk.jmh.logic.results.RunResult;
+import org.openjdk.jmh.runner.BenchmarkRecord;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.util.HardwareFingerprint;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.net.Socket;
+
+/**
+ * Agent side of the link to the {@link CoordinatorServer}.
+ */
+public final class AgentClient {
+
+    private final Socket socket;
+    private final LinkOutput out;
+    private final LinkInput in;
+
+    /**
+     * Connects to the coordinator, and introduces this agent.
+     *
+     * @param host coordinator host
+     * @param port coordinator port
+     * @param token token printed by the coordinator
+     * @param name agent name to report to the coordinator
+     * @param fingerprint hardware fingerprint of this agent
+     * @throws IOException if link fails
+     */
+    public AgentClient(String host, int port, String token, String name, HardwareFingerprint fingerprint) throws IOException {
+        this.socket = new Socket(host, port);
+        // coordinator does not take the serialized objects from the agents
+        this.out = new LinkOutput(new BufferedOutputStream(socket.getOutputStream()), false);
+        this.in = new LinkInput(new BufferedInputStream(socket.getInputStream()));
+
+        synchronized (this) {
+            out.beginFrame(LinkProtocol.AGENT_HELLO);
+            out.writeInt(LinkProtocol.MAGIC);
+            out.writeInt(LinkProtocol.VERSION);
+            out.writeString(token);
+            out.writeString(name);
+            out.writeString(fingerprint.toString());
+            out.endFrame();
+        }
+    }
+
+    /**
+     * @return options to run the benchmarks with
+     * @throws IOException if link fails, or the coordinator had rejected this agent
+     */
+    public synchronized Options requestOptions() throws IOException {
+        out.writeFrame(LinkProtocol.OPTIONS_REQUEST);
+        int tag = in.nextFrame();
+        switch (tag) {
+            case LinkProtocol.OPTIONS:
+                return in.readOptions();
+            case LinkProtocol.AGENT_REJECTED:
+                throw new IOException("Coordinator had rejected this agent: " + in.readString());
+            default:
+                throw new IllegalStateException("Got the erroneous reply: " + tag);
+        }
+    }
+
+    /**
+     * Pulls the next benchmark to run. Blocks while the coordinator waits for the other agents.
+     *
+     * @return benchmark; null if there is no more work
+     * @throws IOException if link fails
+     */
+    public synchronized BenchmarkRecord requestWork() throws IOException {
+        out.writeFrame(LinkProtocol.WORK_REQUEST);
+        int tag = in.nextFrame();
+        if (tag == LinkProtocol.WORK) {
+            String line = in.readString();
+            return (line != null) ? new BenchmarkRecord(line) : null;
+        } else if (tag == -1) {
+            // coordinator is gone, nothing more to do
+            return null;
+        } else {
+            throw new IllegalStateException("Got the erroneous reply: " + tag);
+        }
+    }
+
+    /**
+     * Sends the result of the benchmark obtained with {@link #requestWork()}.
+     * Profiler results stay with the agent. The result which can not be sent without
+     * the Java serialization, e.g. the custom result type, is reported as the failure.
+     *
+     * @param benchmark benchmark
+     * @param result result; null if benchmark had failed to run
+     * @return true, if result was sent; false, if the failure was reported instead
+     * @throws IOException if link fails
+     */
+    public synchronized boolean pushResult(BenchmarkRecord benchmark, RunResult result) throws IOException {
+        if (result != null) {
+            try {
+                out.beginFrame(LinkProtocol.WORK_RESULT);
+                out.writeRecord(benchmark);
+                out.writeBoolean(true);
+                out.writeRunResult(result);
+                out.endFrame();
+                return true;
+            } catch (NotSerializableException e) {
+                // the frame is discarded by the next one
+            }
+        }
+        out.beginFrame(LinkProtocol.WORK_RESULT);
+        out.writeRecord(benchmark);
+        out.writeBoolean(false);
+        out.endFrame();
+        return false;
+    }
+
+    public synchronized void close() throws IOException {
+        try {
+            out.writeFrame(LinkProtocol.FINISH);
+        } finally {
+            socket.close();
+        }
+    }
+
+}
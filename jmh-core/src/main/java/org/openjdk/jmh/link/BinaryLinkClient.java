@@ -24,65 +24,324 @@
  */
 package org.openjdk.jmh.link;
 
-import org.openjdk.jmh.link.frames.FinishingFrame;
-import org.openjdk.jmh.link.frames.InfraFrame;
-import org.openjdk.jmh.link.frames.OptionsFrame;
-import org.openjdk.jmh.link.frames.OutputFormatFrame;
-import org.openjdk.jmh.link.frames.ResultsFrame;
+import org.openjdk.jmh.logic.results.IterationResult;
 import org.openjdk.jmh.logic.results.RunResult;
+import org.openjdk.jmh.output.format.IterationType;
+import org.openjdk.jmh.output.format.OutputFormat;
 import org.openjdk.jmh.runner.BenchmarkRecord;
 import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.parameters.BenchmarkParams;
+import org.openjdk.jmh.runner.parameters.IterationParams;
+import org.openjdk.jmh.util.Utils;
 
+import java.io.BufferedInputStream;
+import java.io.File;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.lang.reflect.InvocationHandler;
-import java.lang.reflect.Method;
 import java.net.Socket;
 
 public final class BinaryLinkClient {
 
     private final Socket clientSocket;
+    private final MappedLink mappedLink;
+    private final DeferredOutputStream sender;
 
-    private final ObjectOutputStream oos;
-    private final ObjectInputStream ois;
+    private final LinkOutput out;
+    private final LinkInput in;
 
-    public BinaryLinkClient(String hostName, int hostPort) throws IOException {
+    public BinaryLinkClient(String hostName, int hostPort, int forkId) throws IOException {
         this.clientSocket = new Socket(hostName, hostPort);
-        this.oos = new ObjectOutputStream(clientSocket.getOutputStream());
-        this.ois = new ObjectInputStream(clientSocket.getInputStream());
+        this.mappedLink = null;
+        this.sender = new DeferredOutputStream(clientSocket.getOutputStream());
+        this.out = new LinkOutput(sender);
+        this.in = new LinkInput(new BufferedInputStream(clientSocket.getInputStream()));
+        handshake(forkId);
     }
 
-    public Options requestOptions() throws IOException, ClassNotFoundException {
-        oos.writeObject(new InfraFrame(InfraFrame.Type.OPTIONS_REQUEST));
-        Object reply = ois.readObject();
-        if (reply instanceof OptionsFrame) {
-            return (((OptionsFrame) reply).getOpts());
+    /**
+     * Connects to the host VM over the memory-mapped file the host VM had created for this fork.
+     *
+     * @param linkFile link file
+     * @param forkId fork id
+     * @throws IOException if file can not be mapped
+     */
+    public BinaryLinkClient(File linkFile, int forkId) throws IOException {
+        this.clientSocket = null;
+        this.mappedLink = MappedLink.open(linkFile);
+        this.sender = new DeferredOutputStream(mappedLink.getOutputStream());
+        this.out = new LinkOutput(sender);
+        this.in = new LinkInput(new BufferedInputStream(mappedLink.getInputStream()));
+        handshake(forkId);
+    }
+
+    private void handshake(int forkId) throws IOException {
+        synchronized (this) {
+            out.beginFrame(LinkProtocol.HANDSHAKE);
+            out.writeInt(LinkProtocol.MAGIC);
+            out.writeInt(LinkProtocol.VERSION);
+            out.writeInt(forkId);
+            out.writeLong(Utils.getPid());
+            out.endFrame();
+        }
+    }
+
+    public synchronized Options requestOptions() throws IOException {
+        return requestOptions(null);
+    }
+
+    /**
+     * @param overrides options to take iteration counts from; null for none
+     * @return host options with iteration counts overridden
+     * @throws IOException if link fails
+     */
+    public synchronized Options requestOptions(Options overrides) throws IOException {
+        out.writeFrame(LinkProtocol.OPTIONS_REQUEST);
+        sender.drain();
+        int tag = in.nextFrame();
+        if (tag == LinkProtocol.OPTIONS) {
+            return in.readOptions(overrides);
         } else {
-            throw new IllegalStateException("Got the erroneous reply: " + reply);
+            throw new IllegalStateException("Got the erroneous reply: " + tag);
         }
     }
 
-    public InvocationHandler getOutputFormatHandler() {
-        return new InvocationHandler() {
-            @Override
-            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-                oos.writeObject(new OutputFormatFrame(ClassConventions.getMethodName(method), args));
-                oos.flush();
-                return null; // expect null
-            }
-        };
+    /**
+     * @return output format which forwards all the calls to the host VM
+     */
+    public OutputFormat getOutputFormat() {
+        return new ForwardingOutputFormat();
+    }
+
+    public synchronized void close() throws IOException {
+        out.writeFrame(LinkProtocol.FINISH);
+
+        // nothing written before is lost, even if the link was held
+        sender.close();
+
+        if (clientSocket != null) {
+            clientSocket.close();
+        } else {
+            mappedLink.close();
+        }
+    }
+
+    /**
+     * Enters the window where the link should stay quiet, e.g. while the benchmark iteration runs.
+     * Everything written so far is sent before this method returns, and everything written
+     * afterwards is held back until {@link #releaseOutput()}.
+     *
+     * @throws IOException if link fails
+     */
+    public void holdOutput() throws IOException {
+        sender.hold();
     }
 
-    public void close() throws IOException {
-        oos.writeObject(new FinishingFrame());
-        oos.flush();
-        oos.close();
-        clientSocket.close();
+    /**
+     * Leaves the quiet window: the writes held back are sent in the background.
+     */
+    public void releaseOutput() {
+        sender.release();
     }
 
-    public void pushResults(BenchmarkRecord record, RunResult result) throws IOException {
-        oos.writeObject(new ResultsFrame(record, result));
-        oos.flush();
+    /**
+     * Sends the measurement iteration result to the host VM as soon as the link is not held,
+     * so that it survives the forked VM crash.
+     *
+     * @param record benchmark
+     * @param result iteration result
+     * @throws IOException if link fails
+     */
+    public synchronized void pushIterationResult(BenchmarkRecord record, IterationResult result) throws IOException {
+        out.beginFrame(LinkProtocol.ITERATION_RESULT);
+        out.writeRecord(record);
+        out.writeStreamedIterationResult(result);
+        out.endFrame();
+    }
+
+    /**
+     * Tells the host VM all the iteration results of the benchmark had been pushed.
+     *
+     * @param record benchmark
+     * @throws IOException if link fails
+     */
+    public synchronized void benchmarkCompleted(BenchmarkRecord record) throws IOException {
+        out.beginFrame(LinkProtocol.BENCHMARK_COMPLETE);
+        out.writeRecord(record);
+        out.endFrame();
+    }
+
+    /**
+     * Encodes OutputFormat calls into the link frames.
+     * Start/end run callbacks are not forwarded, since their effects are enforced by host VM instead.
+     */
+    private final class ForwardingOutputFormat implements OutputFormat {
+
+        private void fail(IOException e) {
+            throw new IllegalStateException("Link failed", e);
+        }
+
+        @Override
+        public void iteration(BenchmarkRecord benchmark, IterationParams params, int iteration, IterationType type) {
+            synchronized (BinaryLinkClient.this) {
+                try {
+                    out.beginFrame(LinkProtocol.OUT_ITERATION);
+                    out.writeRecord(benchmark);
+                    out.writeIterationParams(params);
+                    out.writeInt(iteration);
+                    out.writeEnum(type);
+                    out.endFrame();
+                } catch (IOException e) {
+                    fail(e);
+                }
+            }
+        }
+
+        @Override
+        public void iterationResult(BenchmarkRecord name, IterationParams params, int iteration, IterationType type, IterationResult data) {
+            synchronized (BinaryLinkClient.this) {
+                try {
+                    out.beginFrame(LinkProtocol.OUT_ITERATION_RESULT);
+                    out.writeRecord(name);
+                    out.writeIterationParams(params);
+                    out.writeInt(iteration);
+                    out.writeEnum(type);
+                    out.writeIterationRef(data);
+                    out.endFrame();
+                } catch (IOException e) {
+                    fail(e);
+                }
+            }
+        }
+
+        @Override
+        public void startBenchmark(BenchmarkRecord name, BenchmarkParams mbParams, boolean verbose) {
+            synchronized (BinaryLinkClient.this) {
+                try {
+                    out.beginFrame(LinkProtocol.OUT_START_BENCHMARK);
+                    out.writeRecord(name);
+                    out.writeBenchmarkParams(mbParams);
+                    out.writeBoolean(verbose);
+                    out.endFrame();
+                } catch (IOException e) {
+                    fail(e);
+                }
+            }
+        }
+
+        @Override
+        public void endBenchmark(BenchmarkRecord name, RunResult result) {
+            synchronized (BinaryLinkClient.this) {
+                try {
+                    out.beginFrame(LinkProtocol.OUT_END_BENCHMARK);
+                    out.writeRecord(name);
+                    out.writeRunResult(result);
+                    out.endFrame();
+                } catch (IOException e) {
+                    fail(e);
+                }
+            }
+        }
+
+        @Override
+        public void startRun() {
+            // do nothing
+        }
+
+        @Override
+        public void endRun() {
+            // do nothing
+        }
+
+        @Override
+        public void detailedResults(BenchmarkRecord name, IterationParams params, int iteration, IterationResult data) {
+            synchronized (BinaryLinkClient.this) {
+                try {
+                    out.beginFrame(LinkProtocol.OUT_DETAILED_RESULTS);
+                    out.writeRecord(name);
+                    out.writeIterationParams(params);
+                    out.writeInt(iteration);
+                    out.writeIterationRef(data);
+                    out.endFrame();
+                } catch (IOException e) {
+                    fail(e);
+                }
+            }
+        }
+
+        @Override
+        public void exception(Throwable ex) {
+            synchronized (BinaryLinkClient.this) {
+                try {
+                    out.beginFrame(LinkProtocol.OUT_EXCEPTION);
+                    out.writeOpaque(ex);
+                    out.endFrame();
+                } catch (IOException e) {
+                    fail(e);
+                }
+            }
+        }
+
+        @Override
+        public void println(String s) {
+            writeString(LinkProtocol.OUT_PRINTLN, s);
+        }
+
+        @Override
+        public void verbosePrintln(String s) {
+            writeString(LinkProtocol.OUT_VERBOSE_PRINTLN, s);
+        }
+
+        private void writeString(int tag, String s) {
+            synchronized (BinaryLinkClient.this) {
+                try {
+                    out.beginFrame(tag);
+                    out.writeString(s);
+                    out.endFrame();
+                } catch (IOException e) {
+                    fail(e);
+                }
+            }
+        }
+
+        @Override
+        public void flush() {
+            writeEmpty(LinkProtocol.OUT_FLUSH);
+        }
+
+        @Override
+        public void close() {
+            writeEmpty(LinkProtocol.OUT_CLOSE);
+        }
+
+        private void writeEmpty(int tag) {
+            synchronized (BinaryLinkClient.this) {
+                try {
+                    out.writeFrame(tag);
+                } catch (IOException e) {
+                    fail(e);
+                }
+            }
+        }
+
+        @Override
+        public void write(int b) {
+            synchronized (BinaryLinkClient.this) {
+                try {
+                    out.beginFrame(LinkProtocol.OUT_WRITE_BYTE);
+                    out.writeByte(b);
+                    out.endFrame();
+                } catch (IOException e) {
+                    fail(e);
+                }
+            }
+        }
+
+        @Override
+        public void write(byte[] b) throws IOException {
+            synchronized (BinaryLinkClient.this) {
+                out.beginFrame(LinkProtocol.OUT_WRITE_BYTES);
+                out.writeBytes(b);
+                out.endFrame();
+            }
+        }
     }
 }
@@ -24,25 +24,22 @@
  */
 package org.openjdk.jmh.link;
 
-import org.openjdk.jmh.link.frames.FinishingFrame;
-import org.openjdk.jmh.link.frames.InfraFrame;
-import org.openjdk.jmh.link.frames.OptionsFrame;
-import org.openjdk.jmh.link.frames.OutputFormatFrame;
-import org.openjdk.jmh.link.frames.ResultsFrame;
+import org.openjdk.jmh.logic.results.IterationResult;
 import org.openjdk.jmh.logic.results.RunResult;
+import org.openjdk.jmh.output.format.IterationType;
 import org.openjdk.jmh.output.format.OutputFormat;
 import org.openjdk.jmh.runner.BenchmarkRecord;
+import org.openjdk.jmh.runner.options.LinkTransport;
 import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.parameters.BenchmarkParams;
+import org.openjdk.jmh.runner.parameters.IterationParams;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InterruptedIOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.io.ObjectStreamException;
-import java.io.OutputStream;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
+import java.io.StreamCorruptedException;
 import java.net.InetAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
@@ -50,13 +47,15 @@ import java.net.SocketException;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Accepts the OutputFormat calls from the network and forwards those to given local OutputFormat
@@ -65,37 +64,65 @@ public class BinaryLinkServer {
 
     private final Options opts;
     private final OutputFormat out;
-    private final Map<String, Method> methods;
-    private final Set<String> forbidden;
     private final Acceptor acceptor;
     private final List<Handler> registeredHandlers;
     private final Map<BenchmarkRecord, RunResult> results;
+    private final Map<Integer, ForkSession> forks;
+    private final boolean bufferOutput;
+    private final File mappedDir;
+
+    /**
+     * How long to wait for the exited fork to show up on the link, in nanoseconds.
+     */
+    private static final long CONNECT_GRACE_NS = TimeUnit.SECONDS.toNanos(5);
 
     public BinaryLinkServer(Options opts, OutputFormat out) throws IOException {
         this.opts = opts;
         this.out = out;
-        this.methods = new HashMap<String, Method>();
-        this.forbidden = new HashSet<String>();
+        registeredHandlers = Collections.synchronizedList(new ArrayList<Handler>());
+        results = Collections.synchronizedMap(new TreeMap<BenchmarkRecord, RunResult>());
+        forks = new ConcurrentHashMap<Integer, ForkSession>();
 
-        // enumerate methods
-        for (Method m : out.getClass().getMethods()) {
+        // concurrent forks would otherwise garble each other's output
+        bufferOutput = opts.getParallelForks() > 1;
 
-            // start/end run callbacks are banned, since their effects are enforced by parent instead
-            if (m.getName().equals("startRun")) { forbidden.add(ClassConventions.getMethodName(m)); }
-            if (m.getName().equals("endRun"))   { forbidden.add(ClassConventions.getMethodName(m)); }
+        mappedDir = (opts.getLinkTransport() == LinkTransport.MMAP) ? createMappedDir(out) : null;
 
-            Method prev = methods.put(ClassConventions.getMethodName(m), m);
-            if (prev != null) {
-                out.println("WARNING: Duplicate methods: " + m + " vs. " + prev);
-                throw new IllegalStateException("WARNING: Duplicate methods: " + m + " vs. " + prev);
-            }
+        acceptor = new Acceptor();
+        acceptor.start();
+    }
+
+    /**
+     * Prepares the directory for the memory-mapped link files, preferring the memory-backed file system.
+     *
+     * @return directory; null if memory-mapped link is not available, and forks should use the socket
+     */
+    private static File createMappedDir(OutputFormat out) {
+        if (!MappedLink.isSupported()) {
+            out.println("WARNING: Memory-mapped link is not supported by this VM, falling back to " + LinkTransport.TCP.label());
+            return null;
         }
 
-        registeredHandlers = Collections.synchronizedList(new ArrayList<Handler>());
-        results = Collections.synchronizedMap(new TreeMap<BenchmarkRecord, RunResult>());
+        File shm = new File("/dev/shm");
+        File base = (shm.isDirectory() && shm.canWrite()) ? shm : new File(System.getProperty("java.io.tmpdir"));
+        try {
+            File dir = File.createTempFile("jmh-link", "", base);
+            if (dir.delete() && dir.mkdir()) {
+                dir.deleteOnExit();
+                return dir;
+            }
+            out.println("WARNING: Unable to create the memory-mapped link directory in " + base + ", falling back to " + LinkTransport.TCP.label());
+        } catch (IOException e) {
+            out.println("WARNING: Unable to create the memory-mapped link directory: " + e.getMessage() + ", falling back to " + LinkTransport.TCP.label());
+        }
+        return null;
+    }
 
-        acceptor = new Acceptor();
-        acceptor.start();
+    /**
+     * @return directory where forks should look up their memory-mapped link files; null if forks should use the socket
+     */
+    public File getMappedLinkDirectory() {
+        return mappedDir;
     }
 
     public void terminate() {
@@ -113,18 +140,111 @@ public class BinaryLinkServer {
         } catch (InterruptedException e) {
             // ignore
         }
+
+        if (mappedDir != null) {
+            File[] leftovers = mappedDir.listFiles();
+            if (leftovers != null) {
+                for (File f : leftovers) {
+                    f.delete();
+                }
+            }
+            mappedDir.delete();
+        }
     }
 
-    public void waitFinish() {
-        for (Iterator<Handler> iterator = registeredHandlers.iterator(); iterator.hasNext(); ) {
-            Handler r = iterator.next();
-            try {
-                r.join();
-                iterator.remove();
-            } catch (InterruptedException e) {
-                // ignore
+    /**
+     * Announces the fork which is about to be started.
+     *
+     * @param forkId fork id, which forked VM will report back on handshake
+     * @param banner line to print before the fork output when fork output is buffered; null to print nothing
+     * @throws IOException if memory-mapped link file can not be created
+     */
+    public void registerFork(int forkId, String banner) throws IOException {
+        ForkSession session = new ForkSession(banner);
+        if (mappedDir != null) {
+            session.mappedLink = MappedLink.create(new File(mappedDir, String.valueOf(forkId)));
+        }
+        forks.put(forkId, session);
+
+        if (session.mappedLink != null) {
+            Handler r = new Handler(session.mappedLink, session);
+            registeredHandlers.add(r);
+            r.start();
+        }
+    }
+
+    /**
+     * Reports how long it took for the fork to connect back after registration.
+     *
+     * @param forkId fork id
+     * @return startup latency, in nanoseconds; -1 if fork had not connected
+     */
+    public long getStartupNanos(int forkId) {
+        ForkSession session = forks.get(forkId);
+        if (session == null || !session.connected) {
+            return -1;
+        }
+        return session.connectedAt - session.registeredAt;
+    }
+
+    /**
+     * Reports the process id the fork had reported on handshake.
+     *
+     * @param forkId fork id
+     * @return process id; -1 if fork had not connected, or its process id is unknown
+     */
+    public long getForkPid(int forkId) {
+        ForkSession session = forks.get(forkId);
+        if (session == null || !session.connected) {
+            return -1;
+        }
+        return session.pid;
+    }
+
+    /**
+     * Waits for all pending messages from the given fork to be processed.
+     * Should be called after the forked VM had exited.
+     *
+     * @param forkId fork id
+     * @return results pushed by this fork
+     */
+    public Map<BenchmarkRecord, RunResult> waitFork(int forkId) {
+        ForkSession session = forks.get(forkId);
+        if (session == null) {
+            throw new IllegalStateException("Fork was not registered: " + forkId);
+        }
+
+        // forked VM had exited, whatever it had written is already in the ring
+        if (session.mappedLink != null) {
+            session.mappedLink.peerGone();
+        }
+
+        long start = System.nanoTime();
+        try {
+            while (!session.finished.await(100, TimeUnit.MILLISECONDS)) {
+                // forked VM may have died before connecting back
+                if (!session.connected && (System.nanoTime() - start > CONNECT_GRACE_NS)) {
+                    break;
+                }
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
+        forks.remove(forkId);
+
+        if (session.mappedLink != null) {
+            session.mappedLink.delete();
+        }
+
+        synchronized (registeredHandlers) {
+            for (Iterator<Handler> iterator = registeredHandlers.iterator(); iterator.hasNext(); ) {
+                if (!iterator.next().isAlive()) {
+                    iterator.remove();
+                }
+            }
+        }
+
+        return session.results;
     }
 
     public Map<BenchmarkRecord, RunResult> getResults() {
@@ -187,91 +307,233 @@ public class BinaryLinkServer {
     }
 
     private final class Handler extends Thread {
-        private final InputStream is;
         private final Socket socket;
-        private ObjectInputStream ois;
-        private final OutputStream os;
-        private ObjectOutputStream oos;
+        private final MappedLink mappedLink;
+        private LinkInput input;
+        private LinkOutput output;
+        private ForkSession session;
+        private final List<DeferredCall> pendingOutput;
+        private final Map<BenchmarkRecord, List<IterationResult>> measured;
+        private final Set<BenchmarkRecord> completed;
+
+        public Handler(Socket socket) {
+            this(socket, null, null);
+        }
+
+        public Handler(MappedLink mappedLink, ForkSession session) {
+            this(null, mappedLink, session);
+        }
 
-        public Handler(Socket socket) throws IOException {
+        private Handler(Socket socket, MappedLink mappedLink, ForkSession session) {
             this.socket = socket;
-            this.is = socket.getInputStream();
-            this.os = socket.getOutputStream();
+            this.mappedLink = mappedLink;
+            this.session = session;
+            this.pendingOutput = new ArrayList<DeferredCall>();
+            this.measured = new TreeMap<BenchmarkRecord, List<IterationResult>>();
+            this.completed = new HashSet<BenchmarkRecord>();
         }
 
         @Override
         public void run() {
             try {
-                // late OIS initialization, otherwise we'll block reading the header
-                ois = new ObjectInputStream(is);
-                oos = new ObjectOutputStream(os);
-
-                Object obj;
-                while ((obj = ois.readObject()) != null) {
-                    if (obj instanceof OutputFormatFrame) {
-                        handleOutputFormat((OutputFormatFrame) obj);
-                    }
-                    if (obj instanceof InfraFrame) {
-                        handleInfra((InfraFrame) obj);
-                    }
-                    if (obj instanceof ResultsFrame) {
-                        handleResults((ResultsFrame)obj);
-                    }
-                    if (obj instanceof FinishingFrame) {
+                if (socket != null) {
+                    input = new LinkInput(new BufferedInputStream(socket.getInputStream()));
+                    output = new LinkOutput(new BufferedOutputStream(socket.getOutputStream()));
+                } else {
+                    input = new LinkInput(new BufferedInputStream(mappedLink.getInputStream()));
+                    output = new LinkOutput(new BufferedOutputStream(mappedLink.getOutputStream()));
+                }
+
+                int tag;
+                while ((tag = input.nextFrame()) != -1) {
+                    if (tag == LinkProtocol.FINISH) {
                         // close the streams
                         break;
                     }
+                    switch (tag) {
+                        case LinkProtocol.HANDSHAKE:
+                            handleHandshake(input);
+                            break;
+                        case LinkProtocol.OPTIONS_REQUEST:
+                            handleOptionsRequest();
+                            break;
+                        case LinkProtocol.ITERATION_RESULT:
+                            handleIterationResult();
+                            break;
+                        case LinkProtocol.BENCHMARK_COMPLETE:
+                            completed.add(input.readRecord());
+                            break;
+                        default:
+                            if (LinkProtocol.isOutput(tag)) {
+                                handleOutputFormat(tag, input);
+                            } else {
+                                throw new StreamCorruptedException("Unknown frame: " + tag);
+                            }
+                    }
                 }
-            } catch (ObjectStreamException e) {
-                throw new IllegalStateException(e);
-            } catch (InterruptedIOException e) {
-                throw new IllegalStateException(e);
+            } catch (EOFException e) {
+                // forked VM had died in the middle of the frame, keep what it had reported
+            } catch (SocketException e) {
+                // forked VM had died, or the link is terminated, keep what it had reported
             } catch (IOException e) {
                 throw new IllegalStateException(e);
-            } catch (ClassNotFoundException e) {
-                throw new IllegalStateException(e);
-            } catch (InvocationTargetException e) {
-                throw new IllegalStateException(e);
-            } catch (IllegalAccessException e) {
-                throw new IllegalStateException(e);
             } finally {
                 close();
+                finish();
             }
         }
 
-        private void handleResults(ResultsFrame obj) {
-            BenchmarkRecord bench = obj.getRecord();
-            results.put(bench, RunResult.merge(results.get(bench), obj.getResult()));
+        private void handleHandshake(LinkInput input) throws IOException {
+            int magic = input.readInt();
+            int version = input.readInt();
+            if (magic != LinkProtocol.MAGIC || version != LinkProtocol.VERSION) {
+                throw new StreamCorruptedException("Incompatible link protocol: magic = " + Integer.toHexString(magic) +
+                        ", version = " + version + ", expected version = " + LinkProtocol.VERSION);
+            }
+
+            int forkId = input.readInt();
+            long pid = input.readLong();
+
+            session = forks.get(forkId);
+            if (session != null) {
+                session.connectedAt = System.nanoTime();
+                session.pid = pid;
+                session.connected = true;
+            }
         }
 
-        private void handleInfra(InfraFrame req) throws IOException {
-            switch (req.getType()) {
-                case OPTIONS_REQUEST:
-                    oos.writeObject(new OptionsFrame(opts));
-                    oos.flush();
-                    break;
-                default:
-                    throw new IllegalStateException("Unknown infrastructure request: " + req);
+        private void finish() {
+            if (!pendingOutput.isEmpty()) {
+                synchronized (out) {
+                    if (session != null && session.banner != null) {
+                        out.println(session.banner);
+                    }
+                    for (DeferredCall call : pendingOutput) {
+                        try {
+                            invokeOutputFormat(call.tag, input.replay(call.payload));
+                        } catch (Exception e) {
+                            out.exception(e);
+                        }
+                    }
+                    out.flush();
+                }
+                pendingOutput.clear();
+            }
+
+            // assemble the results from the streamed iterations, even if the fork had not completed
+            for (Map.Entry<BenchmarkRecord, List<IterationResult>> e : measured.entrySet()) {
+                BenchmarkRecord bench = e.getKey();
+                RunResult result = new RunResult(e.getValue(), !completed.contains(bench));
+                results.put(bench, RunResult.merge(results.get(bench), result));
+                if (session != null) {
+                    session.results.put(bench, RunResult.merge(session.results.get(bench), result));
+                }
+            }
+
+            if (session != null) {
+                session.finished.countDown();
             }
         }
 
-        private boolean handleOutputFormat(OutputFormatFrame frame) throws IllegalAccessException, InvocationTargetException {
-            Method m = methods.get(frame.method);
+        private void handleIterationResult() throws IOException {
+            BenchmarkRecord bench = input.readRecord();
+            IterationResult result = input.readStreamedIterationResult();
 
-            if (m == null) {
-                out.println("WARNING: Unknown method to forward: " + frame.method);
-                return true;
+            List<IterationResult> list = measured.get(bench);
+            if (list == null) {
+                list = new ArrayList<IterationResult>();
+                measured.put(bench, list);
             }
+            list.add(result);
+        }
 
-            if (forbidden.contains(frame.method)) {
-                return true;
+        private void handleOptionsRequest() throws IOException {
+            output.beginFrame(LinkProtocol.OPTIONS);
+            output.writeOptions(opts);
+            output.endFrame();
+        }
+
+        private void handleOutputFormat(int tag, LinkInput input) throws IOException {
+            if (bufferOutput) {
+                pendingOutput.add(new DeferredCall(tag, input.getPayload()));
+                return;
+            }
+            synchronized (out) {
+                invokeOutputFormat(tag, input);
             }
+        }
 
-            m.invoke(out, frame.args);
-            return false;
+        private void invokeOutputFormat(int tag, LinkInput input) throws IOException {
+            switch (tag) {
+                case LinkProtocol.OUT_ITERATION: {
+                    BenchmarkRecord benchmark = input.readRecord();
+                    IterationParams params = input.readIterationParams();
+                    int iteration = input.readInt();
+                    IterationType type = input.readEnum(IterationType.class);
+                    out.iteration(benchmark, params, iteration, type);
+                    break;
+                }
+                case LinkProtocol.OUT_ITERATION_RESULT: {
+                    BenchmarkRecord benchmark = input.readRecord();
+                    IterationParams params = input.readIterationParams();
+                    int iteration = input.readInt();
+                    IterationType type = input.readEnum(IterationType.class);
+                    IterationResult data = input.readIterationRef();
+                    out.iterationResult(benchmark, params, iteration, type, data);
+                    break;
+                }
+                case LinkProtocol.OUT_START_BENCHMARK: {
+                    BenchmarkRecord benchmark = input.readRecord();
+                    BenchmarkParams params = input.readBenchmarkParams();
+                    boolean verbose = input.readBoolean();
+                    out.startBenchmark(benchmark, params, verbose);
+                    break;
+                }
+                case LinkProtocol.OUT_END_BENCHMARK: {
+                    BenchmarkRecord benchmark = input.readRecord();
+                    RunResult result = input.readRunResult();
+                    out.endBenchmark(benchmark, result);
+                    break;
+                }
+                case LinkProtocol.OUT_DETAILED_RESULTS: {
+                    BenchmarkRecord benchmark = input.readRecord();
+                    IterationParams params = input.readIterationParams();
+                    int iteration = input.readInt();
+                    IterationResult data = input.readIterationRef();
+                    out.detailedResults(benchmark, params, iteration, data);
+                    break;
+                }
+                case LinkProtocol.OUT_EXCEPTION:
+                    out.exception((Throwable) input.readOpaque());
+                    break;
+                case LinkProtocol.OUT_PRINTLN:
+                    out.println(input.readString());
+                    break;
+                case LinkProtocol.OUT_VERBOSE_PRINTLN:
+                    out.verbosePrintln(input.readString());
+                    break;
+                case LinkProtocol.OUT_FLUSH:
+                    out.flush();
+                    break;
+                case LinkProtocol.OUT_CLOSE:
+                    out.close();
+                    break;
+                case LinkProtocol.OUT_WRITE_BYTE:
+                    out.write(input.readByte());
+                    break;
+                case LinkProtocol.OUT_WRITE_BYTES:
+                    out.write(input.readBytes());
+                    break;
+                default:
+                    out.println("WARNING: Unknown call to forward: " + tag);
+            }
         }
 
         public void close() {
+            if (socket == null) {
+                mappedLink.close();
+                return;
+            }
             try {
                 socket.close();
             } catch (IOException e) {
@@ -281,4 +543,38 @@ public class BinaryLinkServer {
 
     }
 
+    /**
+     * OutputFormat call held back until the fork finishes, still in the encoded form.
+     */
+    private static final class DeferredCall {
+        private final int tag;
+        private final byte[] payload;
+
+        DeferredCall(int tag, byte[] payload) {
+            this.tag = tag;
+            this.payload = payload;
+        }
+    }
+
+    /**
+     * Host-side state of a single fork.
+     */
+    private static final class ForkSession {
+        private final String banner;
+        private final CountDownLatch finished;
+        private final Map<BenchmarkRecord, RunResult> results;
+        private final long registeredAt;
+        private volatile long connectedAt;
+        private volatile long pid;
+        private volatile boolean connected;
+        private volatile MappedLink mappedLink;
+
+        ForkSession(String banner) {
+            this.banner = banner;
+            this.registeredAt = System.nanoTime();
+            this.finished = new CountDownLatch(1);
+            this.results = Collections.synchronizedMap(new TreeMap<BenchmarkRecord, RunResult>());
+        }
+    }
+
 }
@@ -0,0 +1,452 @@
+/*
+ * Copyright (c) 2005, 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jmh.link;
+
+import org.openjdk.jmh.logic.results.RunResult;
+import org.openjdk.jmh.output.format.OutputFormat;
+import org.openjdk.jmh.runner.BenchmarkRecord;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.util.HardwareFingerprint;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.UnknownHostException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Hands the benchmarks out to the agents, which run them in their local forks, and collects the results.
+ *
+ * <p>The coordinator accepts the agents on the loopback address, unless the other address is given,
+ * and only admits the agents which present the random token generated for this run. Until then,
+ * the agent frames are kept short, and nothing is decoded from them but the introduction.
+ * Agents never send the Java-serialized objects, and the frames carrying those are refused.</p>
+ *
+ * <p>Agents pull the work one benchmark at a time, so faster agents take more of the plan.
+ * The first agent pins the hardware fingerprint, and the agents with other fingerprints are
+ * turned away, so that the results from the different hardware are never merged.
+ * The benchmark which agent had not finished, e.g. because the agent died, is handed out again,
+ * up to {@link #MAX_ATTEMPTS} times.</p>
+ */
+public class CoordinatorServer {
+
+    /**
+     * How many times to hand out the same benchmark, before giving up on it.
+     */
+    private static final int MAX_ATTEMPTS = 2;
+
+    /**
+     * Longest frame from the agent which had not introduced itself yet.
+     */
+    private static final int MAX_HELLO_LENGTH = 64 * 1024;
+
+    /**
+     * Longest frame from the admitted agent.
+     */
+    private static final int MAX_AGENT_FRAME_LENGTH = 64 * 1024 * 1024;
+
+    /**
+     * How long to wait for the agent to introduce itself, milliseconds.
+     */
+    private static final int HELLO_TIMEOUT_MS = 30 * 1000;
+
+    private final Options opts;
+    private final OutputFormat out;
+    private final ServerSocket server;
+    private final String token;
+    private final Acceptor acceptor;
+    private final List<Handler> handlers;
+
+    private final LinkedList<BenchmarkRecord> pending;
+    private final Map<BenchmarkRecord, Integer> attempts;
+    private final BlockingQueue<Completed> completed;
+    private int remaining;
+    private HardwareFingerprint fingerprint;
+
+    /**
+     * @param opts options to run the benchmarks with, agents pull those
+     * @param out output to report the agents on
+     * @param plan benchmarks to hand out, in order
+     * @throws IOException if server socket can not be opened
+     */
+    public CoordinatorServer(Options opts, OutputFormat out, Collection<BenchmarkRecord> plan) throws IOException {
+        this.opts = opts;
+        this.out = out;
+        this.pending = new LinkedList<BenchmarkRecord>(plan);
+        this.attempts = new HashMap<BenchmarkRecord, Integer>();
+        this.completed = new LinkedBlockingQueue<Completed>();
+        this.remaining = plan.size();
+        this.handlers = Collections.synchronizedList(new ArrayList<Handler>());
+
+        // null address resolves to the loopback one
+        server = new ServerSocket(opts.getCoordinatorPort(), 50, InetAddress.getByName(opts.getCoordinatorAddress()));
+        token = newToken();
+        acceptor = new Acceptor();
+        acceptor.start();
+    }
+
+    public String getHost() {
+        InetAddress address = server.getInetAddress();
+        if (!address.isAnyLocalAddress()) {
+            return address.getHostAddress();
+        }
+        try {
+            return InetAddress.getLocalHost().getHostAddress();
+        } catch (UnknownHostException e) {
+            throw new IllegalStateException("Unable to resolve local host", e);
+        }
+    }
+
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    /**
+     * @return token the agents should present to be admitted
+     */
+    public String getToken() {
+        return token;
+    }
+
+    private static String newToken() {
+        byte[] bytes = new byte[16];
+        new SecureRandom().nextBytes(bytes);
+        StringBuilder sb = new StringBuilder();
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b & 0xFF));
+        }
+        return sb.toString();
+    }
+
+    private boolean checkToken(String candidate) {
+        return candidate != null && MessageDigest.isEqual(token.getBytes(LinkOutput.UTF8), candidate.getBytes(LinkOutput.UTF8));
+    }
+    /**
+     * @return hardware fingerprint of the agents; null if no agent had joined yet
+     */
+    public synchronized HardwareFingerprint getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * Waits for the next benchmark to complete. Every benchmark in the plan completes exactly once,
+     * either with the agent result, or with no result if agents had failed to run it.
+     *
+     * @return completed benchmark
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public Completed take() throws InterruptedException {
+        return completed.take();
+    }
+
+    public void terminate() {
+        // release the agents waiting for work
+        synchronized (this) {
+            pending.clear();
+            remaining = 0;
+            notifyAll();
+        }
+
+        try {
+            server.close();
+        } catch (IOException e) {
+            // do nothing
+        }
+
+        synchronized (handlers) {
+            for (Handler h : handlers) {
+                h.close();
+            }
+        }
+
+        try {
+            acceptor.join();
+            synchronized (handlers) {
+                for (Handler h : handlers) {
+                    h.join();
+                }
+            }
+        } catch (InterruptedException e) {
+            // ignore
+        }
+    }
+
+    /**
+     * Pins the fingerprint of the first agent, and checks the rest against it.
+     *
+     * @return null if agent is accepted; the reason otherwise
+     */
+    private synchronized String admit(HardwareFingerprint fp) {
+        if (fingerprint == null) {
+            fingerprint = fp;
+            return null;
+        }
+        if (!fingerprint.equals(fp)) {
+            return "Hardware fingerprint \"" + fp + "\" does not match the fingerprint of the other agents: \"" + fingerprint + "\"";
+        }
+        return null;
+    }
+
+    /**
+     * @return next benchmark to run; null if there is no more work
+     */
+    private synchronized BenchmarkRecord nextWork() throws InterruptedException {
+        // benchmarks handed out to others might come back
+        while (pending.isEmpty() && remaining > 0) {
+            wait();
+        }
+        BenchmarkRecord benchmark = pending.poll();
+        if (benchmark != null) {
+            Integer a = attempts.get(benchmark);
+            attempts.put(benchmark, (a == null) ? 1 : a + 1);
+        }
+        return benchmark;
+    }
+
+    private synchronized void workCompleted(String agent, BenchmarkRecord benchmark, RunResult result) {
+        remaining--;
+        completed.add(new Completed(agent, benchmark, result));
+        notifyAll();
+    }
+
+    private synchronized void workAbandoned(String agent, BenchmarkRecord benchmark) {
+        if (attempts.get(benchmark) < MAX_ATTEMPTS) {
+            report("WARNING: Agent " + agent + " had not finished \"" + benchmark.getUsername() + "\", handing it out again");
+            pending.addFirst(benchmark);
+            notifyAll();
+        } else {
+            report("WARNING: Agent " + agent + " had not finished \"" + benchmark.getUsername() + "\", giving up after " + MAX_ATTEMPTS + " attempts");
+            workCompleted(agent, benchmark, null);
+        }
+    }
+
+    /**
+     * Agent threads print along with the runner thread, which holds the lock on the output.
+     */
+    private void report(String line) {
+        synchronized (out) {
+            out.println(line);
+        }
+    }
+
+    /**
+     * Benchmark completed by the agent.
+     */
+    public static final class Completed {
+        private final String agent;
+        private final BenchmarkRecord benchmark;
+        private final RunResult result;
+
+        Completed(String agent, BenchmarkRecord benchmark, RunResult result) {
+            this.agent = agent;
+            this.benchmark = benchmark;
+            this.result = result;
+        }
+
+        /**
+         * @return name of the agent which had run the benchmark
+         */
+        public String getAgent() {
+            return agent;
+        }
+
+        public BenchmarkRecord getBenchmark() {
+            return benchmark;
+        }
+
+        /**
+         * @return benchmark result; null if agents had failed to run the benchmark
+         */
+        public RunResult getResult() {
+            return result;
+        }
+    }
+
+    private final class Acceptor extends Thread {
+
+        public Acceptor() {
+            setName("jmh-coordinator");
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!Thread.interrupted()) {
+                    Socket socket = server.accept();
+                    Handler h = new Handler(socket);
+                    handlers.add(h);
+                    h.start();
+                }
+            } catch (SocketException e) {
+                // assume this is "Socket closed", return
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    private final class Handler extends Thread {
+        private final Socket socket;
+        private String agent;
+        private BenchmarkRecord inFlight;
+
+        public Handler(Socket socket) {
+            this.socket = socket;
+            this.agent = String.valueOf(socket.getRemoteSocketAddress());
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                // agent is not trusted until it presents the token
+                socket.setSoTimeout(HELLO_TIMEOUT_MS);
+                LinkInput input = new LinkInput(new BufferedInputStream(socket.getInputStream()), false);
+                input.setMaxFrameLength(MAX_HELLO_LENGTH);
+                LinkOutput output = new LinkOutput(new BufferedOutputStream(socket.getOutputStream()));
+
+                boolean admitted = false;
+                String rejection = null;
+                int tag;
+                while ((tag = input.nextFrame()) != -1) {
+                    switch (tag) {
+                        case LinkProtocol.AGENT_HELLO: {
+                            if (admitted || rejection != null) {
+                                throw new StreamCorruptedException("Agent had introduced itself twice");
+                            }
+                            int magic = input.readInt();
+                            int version = input.readInt();
+                            if (magic != LinkProtocol.MAGIC || version != LinkProtocol.VERSION) {
+                                throw new StreamCorruptedException("Incompatible link protocol: magic = " + Integer.toHexString(magic) +
+                                        ", version = " + version + ", expected version = " + LinkProtocol.VERSION);
+                            }
+                            if (!checkToken(input.readString())) {
+                                rejection = "Agent token does not match the coordinator token";
+                                report("WARNING: Agent " + agent + " is rejected: " + rejection);
+                                break;
+                            }
+                            agent = input.readString();
+                            HardwareFingerprint fp = new HardwareFingerprint(input.readString());
+
+                            rejection = admit(fp);
+                            if (rejection != null) {
+                                report("WARNING: Agent " + agent + " is rejected: " + rejection);
+                            } else {
+                                admitted = true;
+                                socket.setSoTimeout(0);
+                                input.setMaxFrameLength(MAX_AGENT_FRAME_LENGTH);
+                                report("# Agent " + agent + " joined: " + fp);
+                            }
+                            break;
+                        }
+                        case LinkProtocol.OPTIONS_REQUEST:
+                            if (rejection != null) {
+                                // agent learns it is rejected instead of getting the options
+                                output.beginFrame(LinkProtocol.AGENT_REJECTED);
+                                output.writeString(rejection);
+                                output.endFrame();
+                                return;
+                            }
+                            checkAdmitted(admitted);
+                            output.beginFrame(LinkProtocol.OPTIONS);
+                            output.writeOptions(opts);
+                            output.endFrame();
+                            break;
+                        case LinkProtocol.WORK_REQUEST:
+                            checkAdmitted(admitted);
+                            inFlight = nextWork();
+                            if (inFlight != null) {
+                                report("# Agent " + agent + " runs \"" + inFlight.getUsername() + "\"");
+                            }
+                            output.beginFrame(LinkProtocol.WORK);
+                            output.writeString((inFlight != null) ? inFlight.toLine() : null);
+                            output.endFrame();
+                            break;
+                        case LinkProtocol.WORK_RESULT: {
+                            checkAdmitted(admitted);
+                            BenchmarkRecord benchmark = input.readRecord();
+                            RunResult result = input.readBoolean() ? input.readRunResult() : null;
+                            if (!benchmark.equals(inFlight)) {
+                                throw new StreamCorruptedException("Agent had reported the benchmark it was not running: " + benchmark);
+                            }
+                            inFlight = null;
+                            workCompleted(agent, benchmark, result);
+                            break;
+                        }
+                        case LinkProtocol.FINISH:
+                            return;
+                        default:
+                            throw new StreamCorruptedException("Unknown frame: " + tag);
+                    }
+                }
+            } catch (EOFException e) {
+                // agent had died in the middle of the frame
+            } catch (SocketException e) {
+                // agent had died, or the coordinator is terminated
+            } catch (InterruptedException e) {
+                // coordinator is terminated
+            } catch (IOException e) {
+                report("WARNING: Agent " + agent + " link failed: " + e.getMessage());
+            } finally {
+                close();
+                if (inFlight != null) {
+                    workAbandoned(agent, inFlight);
+                }
+            }
+        }
+
+        private void checkAdmitted(boolean admitted) throws IOException {
+            if (!admitted) {
+                throw new StreamCorruptedException("Agent had not introduced itself");
+            }
+        }
+
+        public void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) 2005, 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jmh.link;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Buffers the link writes in memory, and sends them from the dedicated low-priority thread,
+ * so that the caller never blocks on the link, and never wakes up the host VM itself.
+ *
+ * <p>{@link #flush()} only tells the sender there is something to send. While the stream is
+ * {@link #hold() held}, the sender keeps quiet, and the writes pile up until {@link #release()}.
+ * {@link #drain()} and {@link #close()} are the barriers: they return when everything
+ * written so far is sent, held or not.</p>
+ */
+final class DeferredOutputStream extends OutputStream {
+
+    private final OutputStream os;
+    private final Thread sender;
+
+    private byte[] buf;
+    private int count;
+    private byte[] spare;
+
+    private boolean held;
+    private boolean forced;
+    private boolean sending;
+    private boolean closed;
+    private IOException failure;
+
+    DeferredOutputStream(OutputStream os) {
+        this.os = os;
+        this.buf = new byte[8192];
+        this.spare = new byte[8192];
+
+        sender = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                send();
+            }
+        }, "jmh-link-sender");
+        sender.setDaemon(true);
+        sender.setPriority(Thread.MIN_PRIORITY);
+        sender.start();
+    }
+
+    @Override
+    public synchronized void write(int b) throws IOException {
+        ensureCapacity(1);
+        buf[count++] = (byte) b;
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) throws IOException {
+        ensureCapacity(len);
+        System.arraycopy(b, off, buf, count, len);
+        count += len;
+    }
+
+    private void ensureCapacity(int len) throws IOException {
+        checkFailure();
+        if (closed) {
+            throw new IOException("Stream is closed");
+        }
+        if (count + len > buf.length) {
+            byte[] nb = new byte[Math.max(buf.length * 2, count + len)];
+            System.arraycopy(buf, 0, nb, 0, count);
+            buf = nb;
+        }
+    }
+
+    /**
+     * Tells the sender there is something to send. Does not wait for it to be sent.
+     */
+    @Override
+    public synchronized void flush() throws IOException {
+        checkFailure();
+        if (count > 0) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Sends everything written so far, then keeps the sender quiet until {@link #release()}.
+     *
+     * @throws IOException if sending had failed
+     */
+    synchronized void hold() throws IOException {
+        awaitSent();
+        held = true;
+    }
+
+    /**
+     * Lets the sender go, and send whatever was written while the stream was held.
+     */
+    synchronized void release() {
+        held = false;
+        notifyAll();
+    }
+
+    /**
+     * Waits for everything written so far to be sent, even if the stream is held.
+     *
+     * @throws IOException if sending had failed
+     */
+    synchronized void drain() throws IOException {
+        awaitSent();
+    }
+
+    /**
+     * Sends everything written so far, and stops the sender. Does not close the underlying stream.
+     *
+     * @throws IOException if sending had failed
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            try {
+                awaitSent();
+            } finally {
+                closed = true;
+                notifyAll();
+            }
+        }
+        try {
+            sender.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void awaitSent() throws IOException {
+        try {
+            forced = true;
+            while ((count > 0 || sending) && failure == null) {
+                notifyAll();
+                wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while sending");
+        } finally {
+            forced = false;
+        }
+        checkFailure();
+    }
+
+    private void checkFailure() throws IOException {
+        if (failure != null) {
+            IOException e = new IOException("Link failed");
+            e.initCause(failure);
+            throw e;
+        }
+    }
+
+    private void send() {
+        while (true) {
+            byte[] data;
+            int len;
+            synchronized (this) {
+                try {
+                    while (count == 0 || (held && !forced)) {
+                        if (closed) {
+                            return;
+                        }
+                        wait();
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+
+                data = buf;
+                len = count;
+                buf = spare;
+                count = 0;
+                sending = true;
+            }
+
+            IOException fail = null;
+            try {
+                os.write(data, 0, len);
+                os.flush();
+            } catch (IOException e) {
+                fail = e;
+            }
+
+            synchronized (this) {
+                spare = data;
+                sending = false;
+                if (fail != null) {
+                    failure = fail;
+                }
+                notifyAll();
+                if (fail != null) {
+                    return;
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2005, 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jmh.link;
+
+import org.openjdk.jmh.logic.results.RunResult;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+
+/**
+ * Encodes the run results the same way the link does, for the users which
+ * keep them outside of the link, e.g. the run journal.
+ */
+public final class LinkCodec {
+
+    private LinkCodec() {
+        // prevent instantiation
+    }
+
+    /**
+     * @return encoding version; the results encoded by the other version can not be decoded
+     */
+    public static int getVersion() {
+        return LinkProtocol.VERSION;
+    }
+
+    public static byte[] encode(RunResult result) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        LinkOutput out = new LinkOutput(bos);
+        out.beginFrame(LinkProtocol.RUN_RESULT);
+        out.writeRunResult(result);
+        out.endFrame();
+        return bos.toByteArray();
+    }
+
+    public static RunResult decodeRunResult(byte[] buf) throws IOException {
+        LinkInput in = new LinkInput(new ByteArrayInputStream(buf));
+        int tag = in.nextFrame();
+        if (tag != LinkProtocol.RUN_RESULT) {
+            throw new StreamCorruptedException("Not a run result: " + tag);
+        }
+        return in.readRunResult();
+    }
+
+}
@@ -0,0 +1,633 @@
+/*
+ * Copyright (c) 2005, 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jmh.link;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.logic.results.AverageTimePerOp;
+import org.openjdk.jmh.logic.results.IterationResult;
+import org.openjdk.jmh.logic.results.OpenLoopTimePerOp;
+import org.openjdk.jmh.logic.results.OpsPerTimeUnit;
+import org.openjdk.jmh.logic.results.Result;
+import org.openjdk.jmh.logic.results.ResultRole;
+import org.openjdk.jmh.logic.results.RunResult;
+import org.openjdk.jmh.logic.results.SampleTimePerOp;
+import org.openjdk.jmh.logic.results.SingleShotTime;
+import org.openjdk.jmh.output.OutputFormatType;
+import org.openjdk.jmh.profile.ProfilerResult;
+import org.openjdk.jmh.profile.ProfilerType;
+import org.openjdk.jmh.runner.BenchmarkRecord;
+import org.openjdk.jmh.runner.options.AffinityPolicy;
+import org.openjdk.jmh.runner.options.ExecutionOrder;
+import org.openjdk.jmh.runner.options.LinkTransport;
+import org.openjdk.jmh.runner.options.LoadSchedule;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.WarmupMode;
+import org.openjdk.jmh.runner.parameters.BenchmarkParams;
+import org.openjdk.jmh.runner.parameters.IterationParams;
+import org.openjdk.jmh.runner.parameters.TimeValue;
+import org.openjdk.jmh.util.CpuTopology;
+import org.openjdk.jmh.util.internal.SampleHistogram;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decodes the link frames, see {@link LinkProtocol} for the format.
+ * Not thread-safe.
+ */
+final class LinkInput {
+
+    private final InputStream is;
+    private final List<IterationResult> streamed;
+    private final boolean acceptOpaque;
+    private int maxFrameLength;
+    private byte[] buf;
+    private int pos;
+    private int limit;
+
+    LinkInput(InputStream is) {
+        this(is, true);
+    }
+
+    /**
+     * @param is stream to read from
+     * @param acceptOpaque accept the Java-serialized objects; false if the peer is not trusted
+     */
+    LinkInput(InputStream is, boolean acceptOpaque) {
+        this.is = is;
+        this.streamed = new ArrayList<IterationResult>();
+        this.acceptOpaque = acceptOpaque;
+        this.maxFrameLength = LinkProtocol.MAX_FRAME_LENGTH;
+        this.buf = new byte[256];
+    }
+
+    private LinkInput(byte[] payload, List<IterationResult> streamed) {
+        this.is = null;
+        this.streamed = streamed;
+        this.acceptOpaque = true;
+        this.maxFrameLength = LinkProtocol.MAX_FRAME_LENGTH;
+        this.buf = payload;
+        this.limit = payload.length;
+    }
+
+    /**
+     * Limits the length of the next frames, so that the peer which is not trusted
+     * can not make this side allocate the large buffers.
+     *
+     * @param maxFrameLength longest frame to accept
+     */
+    void setMaxFrameLength(int maxFrameLength) {
+        this.maxFrameLength = Math.min(maxFrameLength, LinkProtocol.MAX_FRAME_LENGTH);
+    }
+
+    /**
+     * Makes the input over the single frame payload, as returned by {@link #getPayload()}.
+     * The references to the streamed iteration results are resolved against this input.
+     *
+     * @param payload frame payload
+     * @return input to decode the payload with
+     */
+    LinkInput replay(byte[] payload) {
+        return new LinkInput(payload, streamed);
+    }
+
+    /**
+     * Reads the next frame.
+     *
+     * @return frame tag; -1 if link was closed at the frame boundary
+     * @throws IOException if link fails, or the frame is malformed
+     */
+    int nextFrame() throws IOException {
+        int b0 = is.read();
+        if (b0 < 0) {
+            return -1;
+        }
+        int length = (b0 << 24) | (readRaw() << 16) | (readRaw() << 8) | readRaw();
+        if (length < 1 || length > maxFrameLength) {
+            throw new StreamCorruptedException("Illegal frame length: " + length);
+        }
+
+        if (buf.length < length) {
+            buf = new byte[Math.max(length, buf.length * 2)];
+        }
+        int read = 0;
+        while (read < length) {
+            int r = is.read(buf, read, length - read);
+            if (r < 0) {
+                throw new EOFException("Link closed in the middle of the frame");
+            }
+            read += r;
+        }
+
+        pos = 1;
+        limit = length;
+        return buf[0] & 0xFF;
+    }
+
+    private int readRaw() throws IOException {
+        int b = is.read();
+        if (b < 0) {
+            throw new EOFException("Link closed in the middle of the frame");
+        }
+        return b;
+    }
+
+    /**
+     * @return copy of the unread part of the current frame
+     */
+    byte[] getPayload() {
+        byte[] copy = new byte[limit - pos];
+        System.arraycopy(buf, pos, copy, 0, copy.length);
+        return copy;
+    }
+
+    // ---------------------------------------------------------------------------
+    // primitives
+
+    int readByte() throws IOException {
+        if (pos >= limit) {
+            throw new EOFException("Frame is truncated");
+        }
+        return buf[pos++] & 0xFF;
+    }
+
+    boolean readBoolean() throws IOException {
+        return readByte() != 0;
+    }
+
+    long readVarLong() throws IOException {
+        long v = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return v;
+            }
+        }
+        throw new StreamCorruptedException("Malformed varint");
+    }
+
+    long readLong() throws IOException {
+        long v = readVarLong();
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    int readInt() throws IOException {
+        return (int) readLong();
+    }
+
+    double readDouble() throws IOException {
+        long bits = 0;
+        for (int i = 0; i < 8; i++) {
+            bits = (bits << 8) | readByte();
+        }
+        return Double.longBitsToDouble(bits);
+    }
+
+    byte[] readBytes() throws IOException {
+        int len = readInt();
+        checkAvailable(len);
+        byte[] b = new byte[len];
+        System.arraycopy(buf, pos, b, 0, len);
+        pos += len;
+        return b;
+    }
+
+    String readString() throws IOException {
+        long len = readVarLong();
+        if (len == 0) {
+            return null;
+        }
+        int n = (int) (len - 1);
+        checkAvailable(n);
+        String s = new String(buf, pos, n, LinkOutput.UTF8);
+        pos += n;
+        return s;
+    }
+
+    <E extends Enum<E>> E readEnum(Class<E> klass) throws IOException {
+        int v = (int) readVarLong();
+        if (v == 0) {
+            return null;
+        }
+        E[] values = klass.getEnumConstants();
+        if (v > values.length) {
+            throw new StreamCorruptedException("Unknown " + klass.getSimpleName() + " ordinal: " + (v - 1));
+        }
+        return values[v - 1];
+    }
+
+    Boolean readNullableBoolean() throws IOException {
+        switch (readByte()) {
+            case 0:
+                return null;
+            case 1:
+                return Boolean.FALSE;
+            default:
+                return Boolean.TRUE;
+        }
+    }
+
+    int[] readIntArray() throws IOException {
+        int[] a = new int[readCount()];
+        for (int i = 0; i < a.length; i++) {
+            a[i] = readInt();
+        }
+        return a;
+    }
+
+    /**
+     * @return strings; null if null collection was written
+     */
+    List<String> readStrings() throws IOException {
+        int n = readInt();
+        if (n < 0) {
+            return null;
+        }
+        List<String> list = new ArrayList<String>(Math.min(n, limit - pos));
+        for (int i = 0; i < n; i++) {
+            list.add(readString());
+        }
+        return list;
+    }
+
+    /**
+     * @return enums; null if null collection was written
+     */
+    <E extends Enum<E>> List<E> readEnums(Class<E> klass) throws IOException {
+        int n = readInt();
+        if (n < 0) {
+            return null;
+        }
+        List<E> list = new ArrayList<E>(Math.min(n, limit - pos));
+        for (int i = 0; i < n; i++) {
+            list.add(readEnum(klass));
+        }
+        return list;
+    }
+
+    Object readOpaque() throws IOException {
+        if (!acceptOpaque) {
+            throw new StreamCorruptedException("Serialized objects are not accepted from this peer");
+        }
+        ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(readBytes()));
+        try {
+            return ois.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Unable to decode the object: " + e.getMessage());
+        } finally {
+            ois.close();
+        }
+    }
+
+    SampleHistogram readHistogram() throws IOException {
+        int precision = readInt();
+        long sum = readLong();
+        long min = readLong();
+        long max = readLong();
+        int[] indices = new int[readCount()];
+        long[] counts = new long[indices.length];
+        int prev = -1;
+        for (int i = 0; i < indices.length; i++) {
+            prev += readInt();
+            indices[i] = prev;
+            counts[i] = readLong();
+        }
+        try {
+            return new SampleHistogram(precision, indices, counts, sum, min, max);
+        } catch (IllegalArgumentException e) {
+            throw new StreamCorruptedException("Malformed histogram: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reads the element count, and checks it against the frame size: every element takes at least one byte.
+     */
+    private int readCount() throws IOException {
+        int n = readInt();
+        if (n < 0) {
+            throw new StreamCorruptedException("Negative count: " + n);
+        }
+        checkAvailable(n);
+        return n;
+    }
+
+    private void checkAvailable(int n) throws IOException {
+        if (n < 0 || n > limit - pos) {
+            throw new EOFException("Frame is truncated");
+        }
+    }
+
+    // ---------------------------------------------------------------------------
+    // harness objects
+
+    TimeValue readTimeValue() throws IOException {
+        if (!readBoolean()) {
+            return null;
+        }
+        long time = readLong();
+        return new TimeValue(time, readEnum(TimeUnit.class));
+    }
+
+    BenchmarkRecord readRecord() throws IOException {
+        return new BenchmarkRecord(readString());
+    }
+
+    IterationParams readIterationParams() throws IOException {
+        int count = readInt();
+        TimeValue time = readTimeValue();
+        int threads = readInt();
+        return new IterationParams(count, time, threads);
+    }
+
+    CpuTopology.Placement readPlacement() throws IOException {
+        if (!readBoolean()) {
+            return null;
+        }
+        AffinityPolicy policy = readEnum(AffinityPolicy.class);
+        int[] workers = readIntArray();
+        int[] harness = readIntArray();
+        boolean oversubscribed = readBoolean();
+        return new CpuTopology.Placement(policy, workers, harness, oversubscribed);
+    }
+
+    BenchmarkParams readBenchmarkParams() throws IOException {
+        boolean synchIterations = readBoolean();
+        IterationParams warmup = readIterationParams();
+        IterationParams iteration = readIterationParams();
+        int threads = readInt();
+        int minIterations = readInt();
+        double targetError = readDouble();
+        boolean warmupSteadyState = readBoolean();
+        boolean warmupJitQuiescence = readBoolean();
+        CpuTopology.Placement placement = readPlacement();
+        String executor = readString();
+        int carrierThreads = readInt();
+        double targetRate = readDouble();
+        LoadSchedule schedule = readEnum(LoadSchedule.class);
+        int histogramPrecision = readInt();
+        return new BenchmarkParams(synchIterations, warmup, iteration, threads, minIterations, targetError,
+                warmupSteadyState, warmupJitQuiescence, placement, executor, carrierThreads, targetRate, schedule, histogramPrecision);
+    }
+
+    Result readResult() throws IOException {
+        int kind = readByte();
+        if (kind == LinkProtocol.RESULT_OPAQUE) {
+            return (Result) readOpaque();
+        }
+
+        ResultRole role = readEnum(ResultRole.class);
+        String label = readString();
+        switch (kind) {
+            case LinkProtocol.RESULT_OPS_PER_TIME: {
+                long ops = readLong();
+                long duration = readLong();
+                return new OpsPerTimeUnit(role, label, ops, duration, readEnum(TimeUnit.class));
+            }
+            case LinkProtocol.RESULT_AVG_TIME: {
+                long ops = readLong();
+                long duration = readLong();
+                return new AverageTimePerOp(role, label, ops, duration, readEnum(TimeUnit.class));
+            }
+            case LinkProtocol.RESULT_SINGLE_SHOT: {
+                long duration = readLong();
+                return new SingleShotTime(role, label, duration, readEnum(TimeUnit.class));
+            }
+            case LinkProtocol.RESULT_SAMPLE_TIME: {
+                TimeUnit tu = readEnum(TimeUnit.class);
+                return new SampleTimePerOp(role, label, readHistogram(), tu);
+            }
+            case LinkProtocol.RESULT_OPEN_LOOP: {
+                long ops = readLong();
+                long duration = readLong();
+                double rate = readDouble();
+                TimeUnit tu = readEnum(TimeUnit.class);
+                return new OpenLoopTimePerOp(role, label, readHistogram(), ops, duration, rate, tu);
+            }
+            default:
+                throw new StreamCorruptedException("Unknown result kind: " + kind);
+        }
+    }
+
+    IterationResult readIterationResult() throws IOException {
+        BenchmarkRecord record = readRecord();
+        IterationParams params = readIterationParams();
+        IterationResult ir = new IterationResult(record, params);
+
+        int results = readCount();
+        for (int i = 0; i < results; i++) {
+            ir.addResult(readResult());
+        }
+
+        int profilers = readCount();
+        for (int i = 0; i < profilers; i++) {
+            ir.addProfileResult((ProfilerResult) readOpaque());
+        }
+
+        if (readBoolean()) {
+            ir.markTimedOut();
+        }
+        long startSkew = readLong();
+        long stopSkew = readLong();
+        ir.setWorkerSkew(startSkew, stopSkew);
+        ir.setCpus(readString());
+        return ir;
+    }
+
+    IterationResult readStreamedIterationResult() throws IOException {
+        IterationResult ir = readIterationResult();
+        streamed.add(ir);
+        return ir;
+    }
+
+    IterationResult readIterationRef() throws IOException {
+        if (readBoolean()) {
+            int id = readInt();
+            if (id < 0 || id >= streamed.size()) {
+                throw new StreamCorruptedException("Unknown iteration result: " + id);
+            }
+            return streamed.get(id);
+        } else {
+            return readIterationResult();
+        }
+    }
+
+    RunResult readRunResult() throws IOException {
+        int n = readCount();
+        List<IterationResult> irs = new ArrayList<IterationResult>(n);
+        for (int i = 0; i < n; i++) {
+            irs.add(readIterationRef());
+        }
+        return new RunResult(irs, readBoolean());
+    }
+
+    Options readOptions() throws IOException {
+        return readOptions(null);
+    }
+
+    /**
+     * Reads the options, replacing the iteration counts with the ones
+     * explicitly set in overrides.
+     *
+     * @param overrides options to take iteration counts from; null for none
+     * @return options
+     * @throws IOException if read fails
+     */
+    Options readOptions(Options overrides) throws IOException {
+        OptionsBuilder b = new OptionsBuilder();
+
+        for (String s : orEmpty(readStrings())) {
+            b.include(s);
+        }
+        for (String s : orEmpty(readStrings())) {
+            b.exclude(s);
+        }
+        OutputFormatType ofType = readEnum(OutputFormatType.class);
+        if (ofType != null) {
+            b.outputFormat(ofType);
+        }
+        b.output(readString());
+        b.shouldDoGC(readBoolean());
+        b.usePersistentWorkers(readBoolean());
+        List<ProfilerType> profilers = readEnums(ProfilerType.class);
+        if (profilers != null) {
+            for (ProfilerType p : profilers) {
+                b.addProfiler(p);
+            }
+        }
+        b.verbose(readBoolean());
+        b.failOnError(readBoolean());
+        b.outputDetails(readBoolean());
+        b.threads(readInt());
+
+        int[] sweep = new int[readCount()];
+        for (int i = 0; i < sweep.length; i++) {
+            sweep[i] = readInt();
+        }
+        b.threadSweep(sweep);
+
+        AffinityPolicy affinity = readEnum(AffinityPolicy.class);
+        if (affinity != null) {
+            b.affinity(affinity);
+        }
+        b.executor(readString());
+        Boolean synchIterations = readNullableBoolean();
+        if (synchIterations != null) {
+            b.syncIterations(synchIterations);
+        }
+        b.warmupIterations(readInt());
+        b.warmupTime(readTimeValue());
+        b.warmupToSteadyState(readBoolean());
+        b.warmupToJitQuiescence(readBoolean());
+        WarmupMode warmupMode = readEnum(WarmupMode.class);
+        if (warmupMode != null) {
+            b.warmupMode(warmupMode);
+        }
+        for (String s : orEmpty(readStrings())) {
+            b.includeWarmup(s);
+        }
+        b.measurementIterations(readInt());
+        b.targetError(readDouble());
+        b.minMeasurementIterations(readInt());
+        b.measurementTime(readTimeValue());
+        b.timeout(readTimeValue());
+        b.forkTimeout(readTimeValue());
+        List<Mode> modes = readEnums(Mode.class);
+        if (modes != null) {
+            for (Mode m : modes) {
+                b.mode(m);
+            }
+        }
+        b.timeUnit(readEnum(TimeUnit.class));
+        b.forks(readInt());
+        b.warmupForks(readInt());
+        b.jvmClasspath(readString());
+        b.jvm(readString());
+        b.jvmArgs(readString());
+        b.parallelForks(readInt());
+        b.fastStartup(readBoolean());
+        LinkTransport transport = readEnum(LinkTransport.class);
+        if (transport != null) {
+            b.linkTransport(transport);
+        }
+        b.coordinatorPort(readInt());
+        b.coordinatorAddress(readString());
+        b.targetRate(readDouble());
+        LoadSchedule schedule = readEnum(LoadSchedule.class);
+        if (schedule != null) {
+            b.loadSchedule(schedule);
+        }
+
+        int[] loadSweep = new int[readCount()];
+        for (int i = 0; i < loadSweep.length; i++) {
+            loadSweep[i] = readInt();
+        }
+        b.loadSweep(loadSweep);
+        b.histogramPrecision(readInt());
+        b.trace(readString());
+        b.traceEvery(readInt());
+        b.journal(readString());
+        b.resume(readBoolean());
+        ExecutionOrder order = readEnum(ExecutionOrder.class);
+        if (order != null) {
+            b.executionOrder(order);
+        }
+        if (readBoolean()) {
+            b.seed(readLong());
+        }
+
+        int params = readCount();
+        for (int i = 0; i < params; i++) {
+            String name = readString();
+            List<String> values = orEmpty(readStrings());
+            b.param(name, values.toArray(new String[values.size()]));
+        }
+
+        if (overrides != null) {
+            if (overrides.getWarmupIterations() != -1) {
+                b.warmupIterations(overrides.getWarmupIterations());
+            }
+            if (overrides.getIterations() != -1) {
+                b.measurementIterations(overrides.getIterations());
+            }
+        }
+
+        return b.build();
+    }
+
+    private static List<String> orEmpty(List<String> list) {
+        return list == null ? Collections.<String>emptyList() : list;
+    }
+
+}
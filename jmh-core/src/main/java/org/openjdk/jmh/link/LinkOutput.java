@@ -0,0 +1,529 @@
+/*
+ * Copyright (c) 2005, 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jmh.link;
+
+import org.openjdk.jmh.logic.results.AverageTimePerOp;
+import org.openjdk.jmh.logic.results.IterationResult;
+import org.openjdk.jmh.logic.results.OpenLoopTimePerOp;
+import org.openjdk.jmh.logic.results.OpsPerTimeUnit;
+import org.openjdk.jmh.logic.results.Result;
+import org.openjdk.jmh.logic.results.RunResult;
+import org.openjdk.jmh.logic.results.SampleTimePerOp;
+import org.openjdk.jmh.logic.results.SingleShotTime;
+import org.openjdk.jmh.profile.ProfilerResult;
+import org.openjdk.jmh.runner.BenchmarkRecord;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.parameters.BenchmarkParams;
+import org.openjdk.jmh.runner.parameters.IterationParams;
+import org.openjdk.jmh.runner.parameters.TimeValue;
+import org.openjdk.jmh.util.CpuTopology;
+import org.openjdk.jmh.util.internal.SampleHistogram;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encodes the link frames, see {@link LinkProtocol} for the format.
+ * The frame payload is accumulated in memory, and written out with its length on {@link #endFrame()}.
+ * Not thread-safe.
+ */
+final class LinkOutput {
+
+    static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Do not hold on to the buffers bigger than that after the large frame was sent.
+     */
+    private static final int RETAINED_BUFFER_SIZE = 64 * 1024;
+
+    private final OutputStream os;
+    private final Map<IterationResult, Integer> streamed;
+    private final boolean writeOpaque;
+    private Payload payload;
+    private int tag;
+
+    LinkOutput(OutputStream os) {
+        this(os, true);
+    }
+
+    /**
+     * @param os stream to write to
+     * @param writeOpaque write the Java-serialized objects; false if peer does not accept those,
+     *                    then the profiler results are omitted, and the other objects fail the frame
+     */
+    LinkOutput(OutputStream os, boolean writeOpaque) {
+        this.os = os;
+        this.writeOpaque = writeOpaque;
+        this.streamed = new IdentityHashMap<IterationResult, Integer>();
+        this.payload = new Payload();
+        this.tag = -1;
+    }
+
+    /**
+     * Starts the new frame. The unfinished frame, if any, is discarded: its encoding had failed.
+     *
+     * @param tag frame tag
+     */
+    void beginFrame(int tag) {
+        this.tag = tag;
+        payload.reset();
+    }
+
+    void endFrame() throws IOException {
+        if (tag == -1) {
+            throw new IllegalStateException("No frame to finish");
+        }
+        int length = payload.size() + 1;
+        os.write(length >>> 24);
+        os.write(length >>> 16);
+        os.write(length >>> 8);
+        os.write(length);
+        os.write(tag);
+        payload.writeTo(os);
+        os.flush();
+
+        tag = -1;
+        if (payload.capacity() > RETAINED_BUFFER_SIZE) {
+            payload = new Payload();
+        }
+    }
+
+    /**
+     * Sends the frame without the payload.
+     *
+     * @param tag frame tag
+     * @throws IOException if link fails
+     */
+    void writeFrame(int tag) throws IOException {
+        beginFrame(tag);
+        endFrame();
+    }
+
+    // ---------------------------------------------------------------------------
+    // primitives
+
+    void writeByte(int b) {
+        payload.write(b);
+    }
+
+    void writeBoolean(boolean b) {
+        payload.write(b ? 1 : 0);
+    }
+
+    /**
+     * Writes unsigned varint: 7 bits per byte, high bit set on all bytes but the last.
+     */
+    void writeVarLong(long v) {
+        while ((v & ~0x7FL) != 0) {
+            payload.write((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        payload.write((int) v);
+    }
+
+    /**
+     * Writes zigzag-encoded varint, so that small negative values take a single byte as well.
+     */
+    void writeLong(long v) {
+        writeVarLong((v << 1) ^ (v >> 63));
+    }
+
+    void writeInt(int v) {
+        writeLong(v);
+    }
+
+    void writeDouble(double v) {
+        long bits = Double.doubleToLongBits(v);
+        for (int s = 56; s >= 0; s -= 8) {
+            payload.write((int) (bits >>> s));
+        }
+    }
+
+    void writeBytes(byte[] b) {
+        writeInt(b.length);
+        payload.write(b, 0, b.length);
+    }
+
+    void writeString(String s) {
+        if (s == null) {
+            writeVarLong(0);
+        } else {
+            byte[] b = s.getBytes(UTF8);
+            writeVarLong(b.length + 1L);
+            payload.write(b, 0, b.length);
+        }
+    }
+
+    void writeEnum(Enum<?> e) {
+        writeVarLong(e == null ? 0 : e.ordinal() + 1);
+    }
+
+    void writeNullableBoolean(Boolean b) {
+        writeByte(b == null ? 0 : (b ? 2 : 1));
+    }
+
+    void writeIntArray(int[] a) {
+        writeInt(a.length);
+        for (int v : a) {
+            writeInt(v);
+        }
+    }
+
+    void writeStrings(Collection<String> strings) {
+        if (strings == null) {
+            writeInt(-1);
+            return;
+        }
+        writeInt(strings.size());
+        for (String s : strings) {
+            writeString(s);
+        }
+    }
+
+    void writeEnums(Collection<? extends Enum<?>> enums) {
+        if (enums == null) {
+            writeInt(-1);
+            return;
+        }
+        writeInt(enums.size());
+        for (Enum<?> e : enums) {
+            writeEnum(e);
+        }
+    }
+
+    /**
+     * Writes the object the link does not know the layout of, via Java serialization.
+     */
+    void writeOpaque(Serializable obj) throws IOException {
+        if (!writeOpaque) {
+            throw new NotSerializableException(obj.getClass().getName() + " can not be sent to the peer which does not accept the serialized objects");
+        }
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        ObjectOutputStream oos = new ObjectOutputStream(bos);
+        oos.writeObject(obj);
+        oos.close();
+        writeBytes(bos.toByteArray());
+    }
+
+    /**
+     * Writes the non-empty sub-buckets of the histogram only, as the gaps between their indices.
+     * Timings cluster around a few typical values, and most of the sub-buckets are empty.
+     */
+    void writeHistogram(SampleHistogram histogram) {
+        int nonEmpty = 0;
+        for (int i = 0; i < histogram.size(); i++) {
+            if (histogram.getCountAt(i) != 0) {
+                nonEmpty++;
+            }
+        }
+
+        writeInt(histogram.getPrecision());
+        writeLong(histogram.getSum());
+        writeLong(histogram.getMin());
+        writeLong(histogram.getMax());
+        writeInt(nonEmpty);
+        int prev = -1;
+        for (int i = 0; i < histogram.size(); i++) {
+            long count = histogram.getCountAt(i);
+            if (count != 0) {
+                writeInt(i - prev);
+                writeLong(count);
+                prev = i;
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------------------
+    // harness objects
+
+    void writeTimeValue(TimeValue tv) {
+        writeBoolean(tv != null);
+        if (tv != null) {
+            writeLong(tv.getTime());
+            writeEnum(tv.getTimeUnit());
+        }
+    }
+
+    void writeRecord(BenchmarkRecord record) {
+        writeString(record.toLine());
+    }
+
+    void writeIterationParams(IterationParams params) {
+        writeInt(params.getCount());
+        writeTimeValue(params.getTime());
+        writeInt(params.getThreads());
+    }
+
+    void writePlacement(CpuTopology.Placement placement) {
+        writeBoolean(placement != null);
+        if (placement != null) {
+            writeEnum(placement.getPolicy());
+            writeIntArray(placement.getWorkerCpus());
+            writeIntArray(placement.getHarnessCpus());
+            writeBoolean(placement.isOversubscribed());
+        }
+    }
+
+    void writeBenchmarkParams(BenchmarkParams params) {
+        writeBoolean(params.shouldSynchIterations());
+        writeIterationParams(params.getWarmup());
+        writeIterationParams(params.getIteration());
+        writeInt(params.getThreads());
+        writeInt(params.getMinIterations());
+        writeDouble(params.getTargetError());
+        writeBoolean(params.shouldWarmupToSteadyState());
+        writeBoolean(params.shouldWarmupToJitQuiescence());
+        writePlacement(params.getPlacement());
+        writeString(params.getExecutor());
+        writeInt(params.getCarrierThreads());
+        writeDouble(params.getTargetRate());
+        writeEnum(params.getLoadSchedule());
+        writeInt(params.getHistogramPrecision());
+    }
+
+    void writeResult(Result result) throws IOException {
+        // aggregated results carry the statistics; those are never sent, but fall back to the
+        // opaque form rather than silently drop the data
+        boolean raw = result.getStatistics().getN() == 0 && result.getRole() != null;
+
+        if (raw && result.getClass() == OpsPerTimeUnit.class) {
+            OpsPerTimeUnit r = (OpsPerTimeUnit) result;
+            writeByte(LinkProtocol.RESULT_OPS_PER_TIME);
+            writeEnum(r.getRole());
+            writeString(r.getLabel());
+            writeLong(r.getOperations());
+            writeLong(r.getDurationNs());
+            writeEnum(r.getOutputTimeUnit());
+        } else if (raw && result.getClass() == AverageTimePerOp.class) {
+            AverageTimePerOp r = (AverageTimePerOp) result;
+            writeByte(LinkProtocol.RESULT_AVG_TIME);
+            writeEnum(r.getRole());
+            writeString(r.getLabel());
+            writeLong(r.getOperations());
+            writeLong(r.getDurationNs());
+            writeEnum(r.getOutputTimeUnit());
+        } else if (raw && result.getClass() == SingleShotTime.class) {
+            SingleShotTime r = (SingleShotTime) result;
+            writeByte(LinkProtocol.RESULT_SINGLE_SHOT);
+            writeEnum(r.getRole());
+            writeString(r.getLabel());
+            writeLong(r.getDuration());
+            writeEnum(r.getOutputTimeUnit());
+        } else if (result.getRole() != null && result.getClass() == SampleTimePerOp.class) {
+            SampleTimePerOp r = (SampleTimePerOp) result;
+            writeByte(LinkProtocol.RESULT_SAMPLE_TIME);
+            writeEnum(r.getRole());
+            writeString(r.getLabel());
+            writeEnum(r.getOutputTimeUnit());
+            writeHistogram(r.getHistogram());
+        } else if (result.getRole() != null && result.getClass() == OpenLoopTimePerOp.class) {
+            OpenLoopTimePerOp r = (OpenLoopTimePerOp) result;
+            writeByte(LinkProtocol.RESULT_OPEN_LOOP);
+            writeEnum(r.getRole());
+            writeString(r.getLabel());
+            writeLong(r.getOperations());
+            writeLong(r.getDurationNs());
+            writeDouble(r.getTargetRate());
+            writeEnum(r.getOutputTimeUnit());
+            writeHistogram(r.getHistogram());
+        } else {
+            writeByte(LinkProtocol.RESULT_OPAQUE);
+            writeOpaque(result);
+        }
+    }
+
+    void writeIterationResult(IterationResult ir) throws IOException {
+        writeRecord(ir.getBenchmark());
+        writeIterationParams(ir.getParams());
+
+        // primary results with the BOTH role are in the secondary results as well, send them once
+        List<Result> results = new ArrayList<Result>(ir.getRawPrimaryResults());
+        Map<Result, Boolean> seen = new IdentityHashMap<Result, Boolean>();
+        for (Result r : results) {
+            seen.put(r, Boolean.TRUE);
+        }
+        for (String label : ir.getRawSecondaryResults().keys()) {
+            for (Result r : ir.getRawSecondaryResults().get(label)) {
+                if (!seen.containsKey(r)) {
+                    results.add(r);
+                }
+            }
+        }
+
+        writeInt(results.size());
+        for (Result r : results) {
+            writeResult(r);
+        }
+
+        if (writeOpaque) {
+            writeInt(ir.getProfilerResults().size());
+            for (ProfilerResult pr : ir.getProfilerResults()) {
+                writeOpaque(pr);
+            }
+        } else {
+            writeInt(0);
+        }
+
+        writeBoolean(ir.isTimedOut());
+        writeLong(ir.getStartSkew());
+        writeLong(ir.getStopSkew());
+        writeString(ir.getCpus());
+    }
+
+    /**
+     * Writes the iteration result which the later frames can refer to, see {@link #writeIterationRef(IterationResult)}.
+     */
+    void writeStreamedIterationResult(IterationResult ir) throws IOException {
+        writeIterationResult(ir);
+        streamed.put(ir, streamed.size());
+    }
+
+    /**
+     * Writes the reference to the iteration result, if it was streamed already; or the result itself otherwise.
+     */
+    void writeIterationRef(IterationResult ir) throws IOException {
+        Integer id = streamed.get(ir);
+        if (id != null) {
+            writeBoolean(true);
+            writeInt(id);
+        } else {
+            writeBoolean(false);
+            writeIterationResult(ir);
+        }
+    }
+
+    void writeRunResult(RunResult rr) throws IOException {
+        writeInt(rr.getRawIterationResults().size());
+        for (IterationResult ir : rr.getRawIterationResults()) {
+            writeIterationRef(ir);
+        }
+        writeBoolean(rr.isPartial());
+    }
+
+    void writeOptions(Options opts) {
+        writeStrings(opts.getRegexps());
+        writeStrings(opts.getExcludes());
+        writeEnum(opts.getOutputFormat());
+        writeString(opts.getOutput());
+        writeBoolean(opts.shouldDoGC());
+        writeBoolean(opts.shouldUsePersistentWorkers());
+        writeEnums(opts.getProfilers());
+        writeBoolean(opts.isVerbose());
+        writeBoolean(opts.shouldFailOnError());
+        writeBoolean(opts.shouldOutputDetailedResults());
+        writeInt(opts.getThreads());
+
+        List<Integer> sweep = opts.getThreadSweep();
+        writeInt(sweep == null ? 0 : sweep.size());
+        if (sweep != null) {
+            for (int t : sweep) {
+                writeInt(t);
+            }
+        }
+
+        writeEnum(opts.getAffinity());
+        writeString(opts.getExecutor());
+        writeNullableBoolean(opts.getSynchIterations());
+        writeInt(opts.getWarmupIterations());
+        writeTimeValue(opts.getWarmupTime());
+        writeBoolean(opts.shouldWarmupToSteadyState());
+        writeBoolean(opts.shouldWarmupToJitQuiescence());
+        writeEnum(opts.getWarmupMode());
+        writeStrings(opts.getWarmupMicros());
+        writeInt(opts.getIterations());
+        writeDouble(opts.getTargetError());
+        writeInt(opts.getMinIterations());
+        writeTimeValue(opts.getRuntime());
+        writeTimeValue(opts.getTimeout());
+        writeTimeValue(opts.getForkTimeout());
+        writeEnums(opts.getBenchModes());
+        writeEnum(opts.getTimeUnit());
+        writeInt(opts.getForkCount());
+        writeInt(opts.getWarmupForkCount());
+        writeString(opts.getJvmClassPath());
+        writeString(opts.getJvm());
+        writeString(opts.getJvmArgs());
+        writeInt(opts.getParallelForks());
+        writeBoolean(opts.shouldUseFastStartup());
+        writeEnum(opts.getLinkTransport());
+        writeInt(opts.getCoordinatorPort());
+        writeString(opts.getCoordinatorAddress());
+        writeDouble(opts.getTargetRate());
+        writeEnum(opts.getLoadSchedule());
+
+        List<Integer> loadSweep = opts.getLoadSweep();
+        writeInt(loadSweep == null ? 0 : loadSweep.size());
+        if (loadSweep != null) {
+            for (int p : loadSweep) {
+                writeInt(p);
+            }
+        }
+        writeInt(opts.getHistogramPrecision());
+        writeString(opts.getTrace());
+        writeInt(opts.getTraceEvery());
+        writeString(opts.getJournal());
+        writeBoolean(opts.shouldResume());
+        writeEnum(opts.getExecutionOrder());
+
+        Long seed = opts.getSeed();
+        writeBoolean(seed != null);
+        if (seed != null) {
+            writeLong(seed);
+        }
+
+        Map<String, List<String>> params = opts.getParameters();
+        writeInt(params == null ? 0 : params.size());
+        if (params != null) {
+            for (Map.Entry<String, List<String>> e : params.entrySet()) {
+                writeString(e.getKey());
+                writeStrings(e.getValue());
+            }
+        }
+    }
+
+    /**
+     * Reports the buffer capacity, so that the oversized buffers could be dropped.
+     */
+    private static final class Payload extends ByteArrayOutputStream {
+        Payload() {
+            super(256);
+        }
+
+        int capacity() {
+            return buf.length;
+        }
+    }
+
+}
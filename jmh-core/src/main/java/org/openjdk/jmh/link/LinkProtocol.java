@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2005, 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jmh.link;
+
+/**
+ * Wire format of the host/fork link.
+ *
+ * <p>Every message is a frame: 4-byte big-endian length, then the 1-byte frame tag,
+ * then the tag-specific payload; length counts the tag and the payload. The first frame
+ * sent by the fork is {@link #HANDSHAKE}, which carries {@link #MAGIC} and {@link #VERSION},
+ * so that mismatched host and fork fail fast instead of misreading each other.</p>
+ *
+ * <p>Payloads are encoded explicitly by {@link LinkOutput} and decoded by {@link LinkInput}:
+ * integers are unsigned or zigzag varints, strings are UTF-8 with varint length,
+ * enums are ordinals. Only the objects the harness does not own (profiler results and
+ * exceptions) are carried as opaque serialized blobs.</p>
+ *
+ * <p>Iteration results are streamed in {@link #ITERATION_RESULT} frames, and the rest of the frames
+ * carrying the same results only refer to them, so the host has the data of the fork which
+ * had died half-way, and the data crosses the link once.</p>
+ *
+ * <p>The same frames carry the work and the results between the coordinator and its agents,
+ * see {@link CoordinatorServer}. Agents are not trusted as much as the forks: the coordinator
+ * does not accept the opaque blobs from them.</p>
+ */
+final class LinkProtocol {
+
+    private LinkProtocol() {
+        // prevent instantiation
+    }
+
+    /**
+     * "JMHL"
+     */
+    static final int MAGIC = 0x4A4D484C;
+
+    /**
+     * Bump on every incompatible change in the frame layout or payload encoding.
+     */
+    static final int VERSION = 7;
+
+    /**
+     * Upper bound for the frame length, guards against reading the garbage.
+     */
+    static final int MAX_FRAME_LENGTH = 512 * 1024 * 1024;
+
+    // infrastructure frames
+
+    static final int HANDSHAKE = 1;
+    static final int OPTIONS_REQUEST = 2;
+    static final int OPTIONS = 3;
+    static final int FINISH = 4;
+
+    /**
+     * Measurement iteration result, streamed by the fork as soon as the iteration completes.
+     * Later frames refer to it by its sequence number on the link.
+     */
+    static final int ITERATION_RESULT = 5;
+
+    /**
+     * Fork had completed the benchmark: all its iteration results are on the link.
+     */
+    static final int BENCHMARK_COMPLETE = 6;
+
+    // coordinator/agent frames; the agent also uses OPTIONS_REQUEST and FINISH
+
+    /**
+     * Agent introduces itself: magic, version, coordinator token, agent name, hardware fingerprint.
+     */
+    static final int AGENT_HELLO = 7;
+
+    /**
+     * Coordinator refuses to work with the agent, instead of sending the options: the reason.
+     */
+    static final int AGENT_REJECTED = 8;
+
+    static final int WORK_REQUEST = 9;
+
+    /**
+     * Next benchmark for the agent to run; null when there is no more work.
+     */
+    static final int WORK = 10;
+
+    /**
+     * Agent had run the benchmark: the benchmark, then the result, if any.
+     */
+    static final int WORK_RESULT = 11;
+
+    /**
+     * Run result kept outside of the link, see {@link LinkCodec}; never sent.
+     */
+    static final int RUN_RESULT = 12;
+
+    // forwarded OutputFormat calls, see OutputFormat for the signatures
+
+    static final int OUT_ITERATION = 16;
+    static final int OUT_ITERATION_RESULT = 17;
+    static final int OUT_START_BENCHMARK = 18;
+    static final int OUT_END_BENCHMARK = 19;
+    static final int OUT_DETAILED_RESULTS = 20;
+    static final int OUT_EXCEPTION = 21;
+    static final int OUT_PRINTLN = 22;
+    static final int OUT_VERBOSE_PRINTLN = 23;
+    static final int OUT_FLUSH = 24;
+    static final int OUT_CLOSE = 25;
+    static final int OUT_WRITE_BYTE = 26;
+    static final int OUT_WRITE_BYTES = 27;
+
+    static boolean isOutput(int tag) {
+        return tag >= OUT_ITERATION;
+    }
+
+    // result kinds
+
+    static final int RESULT_OPAQUE = 0;
+    static final int RESULT_OPS_PER_TIME = 1;
+    static final int RESULT_AVG_TIME = 2;
+    static final int RESULT_SINGLE_SHOT = 3;
+    static final int RESULT_SAMPLE_TIME = 4;
+    static final int RESULT_OPEN_LOOP = 5;
+
+}
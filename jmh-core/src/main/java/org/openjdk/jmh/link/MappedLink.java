@@ -0,0 +1,450 @@
+/*
+ * Copyright (c) 2005, 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jmh.link;
+
+import sun.misc.Unsafe;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Link between the host VM and the single fork over the memory-mapped file.
+ *
+ * <p>The file holds two single-producer single-consumer byte rings: the large one for the
+ * fork-to-host traffic, and the small one for the host replies. The frames are the same as
+ * on the socket, see {@link LinkProtocol}. The reader polls the ring, backing off to the
+ * sleep when there is no data, so the idle link costs neither syscalls nor wakeups on the fork side.</p>
+ *
+ * <p>Producer publishes the data with the ordered store of its sequence number, and consumer
+ * acknowledges the data the same way; the sequence numbers are on separate cache lines.</p>
+ *
+ * <p>The host VM which was killed can not close the rings, and the fork would wait for it forever.
+ * So the host bumps the heartbeat counter in the file while the link is open, and the fork fails
+ * its reads and writes once the counter had not moved for {@link #PEER_TIMEOUT_NS}. The host does
+ * not need the heartbeat from the fork: it watches the fork process instead.</p>
+ */
+final class MappedLink {
+
+    /**
+     * Capacity of the fork-to-host ring. Bigger frames go through in chunks.
+     */
+    private static final int HOST_BOUND_CAPACITY = Integer.getInteger("jmh.link.mmapSize", 16 * 1024 * 1024);
+
+    /**
+     * Capacity of the host-to-fork ring, only carries the options.
+     */
+    private static final int FORK_BOUND_CAPACITY = 256 * 1024;
+
+    private static final int WRITE_SEQ = 0;
+    private static final int READ_SEQ = 64;
+    private static final int WRITER_CLOSED = 128;
+    private static final int READER_CLOSED = 192;
+    private static final int HEARTBEAT = 256;
+    private static final int HEADER_SIZE = 320;
+
+    /**
+     * How often the host bumps the heartbeat.
+     */
+    private static final long HEARTBEAT_INTERVAL_NS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /**
+     * How long the fork waits for the heartbeat to move, before deciding the host is gone.
+     * Generous, so that the host VM pauses are not taken for its death.
+     */
+    static final long PEER_TIMEOUT_NS = TimeUnit.SECONDS.toNanos(30);
+
+    /**
+     * Poll backoff: yield for that many attempts, then sleep for progressively longer, up to the limit.
+     */
+    private static final int YIELDS = 100;
+    private static final long PARK_STEP_NS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final long MAX_PARK_NS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private static final Unsafe U;
+    private static final long ADDRESS_OFFSET;
+
+    static {
+        Unsafe u = null;
+        long offset = -1;
+        try {
+            Field unsafe = Unsafe.class.getDeclaredField("theUnsafe");
+            unsafe.setAccessible(true);
+            u = (Unsafe) unsafe.get(null);
+            offset = u.objectFieldOffset(Buffer.class.getDeclaredField("address"));
+        } catch (Throwable e) {
+            // not supported on this VM
+            u = null;
+        }
+        U = u;
+        ADDRESS_OFFSET = offset;
+    }
+
+    /**
+     * @return true, if this VM can share the rings with another process
+     */
+    static boolean isSupported() {
+        return U != null;
+    }
+
+    private final File file;
+    private final Ring hostBound;
+    private final Ring forkBound;
+    private final boolean host;
+    private final Heartbeat heartbeat;
+
+    private MappedLink(File file, boolean create, long peerTimeoutNs) throws IOException {
+        if (!isSupported()) {
+            throw new IOException("Memory-mapped link is not supported by this VM");
+        }
+
+        this.file = file;
+        this.host = create;
+
+        long hostBoundSize = HEADER_SIZE + (long) roundUp(HOST_BOUND_CAPACITY);
+        long size = hostBoundSize + HEADER_SIZE + roundUp(FORK_BOUND_CAPACITY);
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        MappedByteBuffer buf;
+        try {
+            if (create) {
+                raf.setLength(size);
+            } else if (raf.length() != size) {
+                throw new IOException("Unexpected link file size: " + raf.length() + ", expected " + size);
+            }
+            buf = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } finally {
+            // mapping stays valid after the channel is closed
+            raf.close();
+        }
+
+        long address = U.getLong(buf, ADDRESS_OFFSET);
+        // the heartbeat lives in the header of the first ring
+        long beat = create ? 0 : address + HEARTBEAT;
+        this.hostBound = new Ring(buf, address, 0, roundUp(HOST_BOUND_CAPACITY), beat, peerTimeoutNs);
+        this.forkBound = new Ring(buf, address, hostBoundSize, roundUp(FORK_BOUND_CAPACITY), beat, peerTimeoutNs);
+
+        if (create) {
+            heartbeat = new Heartbeat(buf, address + HEARTBEAT);
+            heartbeat.start();
+        } else {
+            heartbeat = null;
+        }
+    }
+
+    private static int roundUp(int capacity) {
+        int c = Integer.highestOneBit(Math.max(capacity, 4096));
+        return (c == capacity) ? c : c << 1;
+    }
+
+    /**
+     * Creates the link file, host VM side.
+     *
+     * @param file file to create
+     * @return link
+     * @throws IOException if file can not be mapped
+     */
+    static MappedLink create(File file) throws IOException {
+        return new MappedLink(file, true, 0);
+    }
+
+    /**
+     * Opens the link file created by the host VM, fork side.
+     *
+     * @param file file to open
+     * @return link
+     * @throws IOException if file can not be mapped
+     */
+    static MappedLink open(File file) throws IOException {
+        return open(file, PEER_TIMEOUT_NS);
+    }
+
+    /**
+     * Opens the link file created by the host VM, fork side.
+     *
+     * @param file file to open
+     * @param peerTimeoutNs how long to wait for the host heartbeat to move
+     * @return link
+     * @throws IOException if file can not be mapped
+     */
+    static MappedLink open(File file, long peerTimeoutNs) throws IOException {
+        return new MappedLink(file, false, peerTimeoutNs);
+    }
+
+    InputStream getInputStream() {
+        return host ? hostBound.reader() : forkBound.reader();
+    }
+
+    OutputStream getOutputStream() {
+        return host ? forkBound.writer() : hostBound.writer();
+    }
+
+    /**
+     * Tells the reader the other side is gone: no more data would come after what is in the ring.
+     * Host VM calls this once the fork process had exited, since the dead fork can not close the ring itself.
+     */
+    void peerGone() {
+        (host ? hostBound : forkBound).peerGone = true;
+    }
+
+    /**
+     * Closes both rings from this side, and wakes up the local reader.
+     */
+    void close() {
+        Ring in = host ? hostBound : forkBound;
+        Ring out = host ? forkBound : hostBound;
+        in.closed = true;
+        in.putFlag(READER_CLOSED);
+        out.putFlag(WRITER_CLOSED);
+        stopHeartbeat();
+    }
+
+    /**
+     * Removes the link file. The mapping itself is released when collected.
+     */
+    void delete() {
+        stopHeartbeat();
+        file.delete();
+    }
+
+    /**
+     * Stops bumping the heartbeat, host VM side. The fork would take the host for gone.
+     */
+    void stopHeartbeat() {
+        if (heartbeat != null) {
+            heartbeat.stopped = true;
+            LockSupport.unpark(heartbeat);
+        }
+    }
+
+    private static void backoff(int attempt) {
+        if (attempt < YIELDS) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(Math.min(MAX_PARK_NS, (attempt - YIELDS + 1) * PARK_STEP_NS));
+        }
+    }
+
+    /**
+     * Bumps the heartbeat counter while the host side of the link is open.
+     */
+    private static final class Heartbeat extends Thread {
+        /**
+         * Keeps the mapping alive while the heartbeat is written.
+         */
+        private final MappedByteBuffer buf;
+        private final long address;
+        private volatile boolean stopped;
+
+        Heartbeat(MappedByteBuffer buf, long address) {
+            this.buf = buf;
+            this.address = address;
+            setName("jmh-link-heartbeat");
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            long beat = 0;
+            while (!stopped) {
+                U.putLongVolatile(null, address, ++beat);
+                LockSupport.parkNanos(HEARTBEAT_INTERVAL_NS);
+            }
+        }
+    }
+
+    private static final class Ring {
+        private final long header;
+        private final int capacity;
+        private final ByteBuffer readView;
+        private final ByteBuffer writeView;
+
+        /**
+         * Local state: the reader should stop waiting for the data.
+         */
+        private volatile boolean closed;
+        private volatile boolean peerGone;
+
+        /**
+         * Address of the host heartbeat to watch, fork side; 0 on the host side.
+         */
+        private final long heartbeat;
+        private final long peerTimeoutNs;
+        private long lastBeat;
+        private long lastBeatTime;
+
+        Ring(MappedByteBuffer buf, long address, long offset, int capacity, long heartbeat, long peerTimeoutNs) {
+            this.header = address + offset;
+            this.capacity = capacity;
+            this.heartbeat = heartbeat;
+            this.peerTimeoutNs = peerTimeoutNs;
+            this.lastBeat = -1;
+
+            ByteBuffer dup = buf.duplicate();
+            dup.position((int) offset + HEADER_SIZE);
+            dup.limit((int) offset + HEADER_SIZE + capacity);
+            this.readView = dup.slice();
+            this.writeView = dup.slice();
+        }
+
+        private long getSeq(int field) {
+            return U.getLongVolatile(null, header + field);
+        }
+
+        private void putSeq(int field, long v) {
+            U.putOrderedLong(null, header + field, v);
+        }
+
+        private boolean getFlag(int field) {
+            return U.getIntVolatile(null, header + field) != 0;
+        }
+
+        void putFlag(int field) {
+            U.putIntVolatile(null, header + field, 1);
+        }
+
+        /**
+         * Checks the host is still alive, fork side.
+         *
+         * @throws IOException if the host heartbeat had not moved for too long
+         */
+        private void checkPeer() throws IOException {
+            if (heartbeat == 0) {
+                return;
+            }
+            long beat = U.getLongVolatile(null, heartbeat);
+            long now = System.nanoTime();
+            if (beat != lastBeat) {
+                lastBeat = beat;
+                lastBeatTime = now;
+            } else if (now - lastBeatTime > peerTimeoutNs) {
+                throw new IOException("Link is abandoned: host VM heartbeat had stopped " +
+                        TimeUnit.NANOSECONDS.toMillis(now - lastBeatTime) + " ms ago");
+            }
+        }
+
+        int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            int attempt = 0;
+            while (true) {
+                long r = getSeq(READ_SEQ);
+                long w = getSeq(WRITE_SEQ);
+                if (w > r) {
+                    int pos = (int) (r & (capacity - 1));
+                    int n = (int) Math.min(Math.min(w - r, len), capacity - pos);
+                    readView.position(pos);
+                    readView.get(b, off, n);
+                    putSeq(READ_SEQ, r + n);
+                    return n;
+                }
+
+                if (closed || peerGone || getFlag(WRITER_CLOSED)) {
+                    // writer might have published more before closing
+                    if (getSeq(WRITE_SEQ) == r) {
+                        return -1;
+                    }
+                    continue;
+                }
+                checkPeer();
+                backoff(attempt++);
+            }
+        }
+
+        void write(byte[] b, int off, int len) throws IOException {
+            // the ring might have the room, but nobody would read it
+            checkPeer();
+            int attempt = 0;
+            while (len > 0) {
+                if (getFlag(READER_CLOSED)) {
+                    throw new IOException("Link is closed by the reader");
+                }
+
+                long w = getSeq(WRITE_SEQ);
+                long r = getSeq(READ_SEQ);
+                long free = capacity - (w - r);
+                if (free == 0) {
+                    checkPeer();
+                    backoff(attempt++);
+                    continue;
+                }
+                attempt = 0;
+
+                int pos = (int) (w & (capacity - 1));
+                int n = (int) Math.min(Math.min(free, len), capacity - pos);
+                writeView.position(pos);
+                writeView.put(b, off, n);
+                putSeq(WRITE_SEQ, w + n);
+                off += n;
+                len -= n;
+            }
+        }
+
+        InputStream reader() {
+            return new InputStream() {
+                private final byte[] one = new byte[1];
+
+                @Override
+                public int read() throws IOException {
+                    int n = Ring.this.read(one, 0, 1);
+                    return (n < 0) ? -1 : (one[0] & 0xFF);
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    return Ring.this.read(b, off, len);
+                }
+            };
+        }
+
+        OutputStream writer() {
+            return new OutputStream() {
+                private final byte[] one = new byte[1];
+
+                @Override
+                public void write(int b) throws IOException {
+                    one[0] = (byte) b;
+                    Ring.this.write(one, 0, 1);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    Ring.this.write(b, off, len);
+                }
+            };
+        }
+    }
+
+}
@@ -24,6 +24,7 @@
  */
 package org.openjdk.jmh.logic;
 
+import org.openjdk.jmh.runner.ActualParams;
 import org.openjdk.jmh.runner.parameters.TimeValue;
 import sun.misc.Unsafe;
 
@@ -31,6 +32,7 @@ import java.lang.reflect.Field;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * The InfraControl logic class.
@@ -80,8 +82,16 @@ public class InfraControl extends InfraControlL4 {
         }
     }
 
-    public InfraControl(int threads, boolean syncIterations, TimeValue loopTime, CountDownLatch preSetup, CountDownLatch preTearDown, boolean lastIteration, TimeUnit timeUnit) {
-        super(threads, syncIterations, loopTime, preSetup, preTearDown, lastIteration, timeUnit);
+    private static final long PARK_THRESHOLD_NS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    /**
+     * Longest single park while waiting for the open-loop invocation: the iteration end is only
+     * noticed between the parks, and should not be overslept at the low rates.
+     */
+    private static final long PARK_MAX_NS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    public InfraControl(int threads, boolean syncIterations, TimeValue loopTime, CountDownLatch preSetup, CountDownLatch preTearDown, boolean lastIteration, TimeUnit timeUnit, ActualParams params, double targetRate, boolean poisson, int histogramPrecision, TraceFile trace) {
+        super(threads, syncIterations, loopTime, preSetup, preTearDown, lastIteration, timeUnit, params, targetRate, poisson, histogramPrecision, trace);
     }
 
     /**
@@ -132,6 +142,48 @@ public class InfraControl extends InfraControlL4 {
     public boolean isLastIteration() {
         return lastIteration;
     }
+
+    /**
+     * Sets the {@link org.openjdk.jmh.annotations.Param} fields of the new state object.
+     * @param state state object
+     */
+    public void injectParams(Object state) {
+        params.injectInto(state);
+    }
+
+    /**
+     * Gets the offset of the first open-loop invocation for the calling thread. The threads
+     * share the same period, and would otherwise fire in the bursts of all threads at once;
+     * the offsets spread the thread schedules evenly over the period, so that the aggregate
+     * rate is even as well.
+     *
+     * @return offset from the thread start, nanoseconds
+     */
+    public double openLoopPhase() {
+        return (openLoopThreads.getAndIncrement() % threads) * ratePeriodNs / threads;
+    }
+
+    /**
+     * Waits until the scheduled start of the next open-loop invocation. Returns immediately
+     * if the invocation is already late: the latency is counted from the scheduled start anyway,
+     * and the thread should catch up with the schedule.
+     *
+     * @param intended scheduled start, {@link System#nanoTime()} based
+     * @return false, if the iteration is over, and the invocation should not start
+     */
+    public boolean awaitIntendedStart(long intended) {
+        while (!isDone) {
+            long left = intended - System.nanoTime();
+            if (left <= 0) {
+                return true;
+            }
+            // parking is coarse, spin through the last stretch
+            if (left > PARK_THRESHOLD_NS) {
+                LockSupport.parkNanos(Math.min(left - PARK_THRESHOLD_NS, PARK_MAX_NS));
+            }
+        }
+        return false;
+    }
 }
 
 class InfraControlL0 {
@@ -163,15 +215,32 @@ class InfraControlL2 extends InfraControlL1 {
     public final TimeUnit timeUnit;
     public final int threads;
     public final boolean syncIterations;
+    public final ActualParams params;
+
+    /** Mean interval between the open-loop invocation starts in each thread; zero if the load is closed-loop */
+    public final double ratePeriodNs;
+
+    /** Are the open-loop intervals exponentially distributed, rather than fixed? */
+    public final boolean poisson;
+
+    /** Significant decimal digits to keep in the latency histograms */
+    public final int histogramPrecision;
+
+    /** Trace to record the operations to; null if not tracing */
+    public final TraceFile trace;
 
     public final AtomicInteger warmupVisited, warmdownVisited;
     public volatile boolean warmupShouldWait, warmdownShouldWait;
 
-    public InfraControlL2(int threads, boolean syncIterations, TimeValue loopTime, CountDownLatch preSetup, CountDownLatch preTearDown, boolean lastIteration, TimeUnit timeUnit) {
+    /** Open-loop threads started in this iteration, to stagger their schedules */
+    public final AtomicInteger openLoopThreads;
+
+    public InfraControlL2(int threads, boolean syncIterations, TimeValue loopTime, CountDownLatch preSetup, CountDownLatch preTearDown, boolean lastIteration, TimeUnit timeUnit, ActualParams params, double targetRate, boolean poisson, int histogramPrecision, TraceFile trace) {
         this.threads = threads;
         this.syncIterations = syncIterations;
         this.warmupVisited = new AtomicInteger();
         this.warmdownVisited = new AtomicInteger();
+        this.openLoopThreads = new AtomicInteger();
 
         warmupShouldWait = syncIterations;
         warmdownShouldWait = syncIterations;
@@ -180,6 +249,11 @@ class InfraControlL2 extends InfraControlL1 {
         this.duration = loopTime.convertTo(TimeUnit.NANOSECONDS);
         this.lastIteration = lastIteration;
         this.timeUnit = timeUnit;
+        this.params = params;
+        this.ratePeriodNs = (targetRate > 0) ? threads * 1e9 / targetRate : 0;
+        this.poisson = poisson;
+        this.histogramPrecision = histogramPrecision;
+        this.trace = trace;
     }
 
     public void announceWarmupReady() {
@@ -214,16 +288,16 @@ class InfraControlL3 extends InfraControlL2 {
     public int e21, e22, e23, e24, e25, e26, e27, e28;
     public int e31, e32, e33, e34, e35, e36, e37, e38;
 
-    public InfraControlL3(int threads, boolean syncIterations, TimeValue loopTime, CountDownLatch preSetup, CountDownLatch preTearDown, boolean lastIteration, TimeUnit timeUnit) {
-        super(threads, syncIterations, loopTime, preSetup, preTearDown, lastIteration, timeUnit);
+    public InfraControlL3(int threads, boolean syncIterations, TimeValue loopTime, CountDownLatch preSetup, CountDownLatch preTearDown, boolean lastIteration, TimeUnit timeUnit, ActualParams params, double targetRate, boolean poisson, int histogramPrecision, TraceFile trace) {
+        super(threads, syncIterations, loopTime, preSetup, preTearDown, lastIteration, timeUnit, params, targetRate, poisson, histogramPrecision, trace);
     }
 }
 
 class InfraControlL4 extends InfraControlL3 {
     public int markerEnd;
 
-    public InfraControlL4(int threads, boolean syncIterations, TimeValue loopTime, CountDownLatch preSetup, CountDownLatch preTearDown, boolean lastIteration, TimeUnit timeUnit) {
-        super(threads, syncIterations, loopTime, preSetup, preTearDown, lastIteration, timeUnit);
+    public InfraControlL4(int threads, boolean syncIterations, TimeValue loopTime, CountDownLatch preSetup, CountDownLatch preTearDown, boolean lastIteration, TimeUnit timeUnit, ActualParams params, double targetRate, boolean poisson, int histogramPrecision, TraceFile trace) {
+        super(threads, syncIterations, loopTime, preSetup, preTearDown, lastIteration, timeUnit, params, targetRate, poisson, histogramPrecision, trace);
     }
 }
 
@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2005, 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jmh.logic;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Memory-mapped trace of the benchmark operations, for a single benchmark run.
+ *
+ * <p>Only the measurement iterations are traced. The file is preallocated, and split into the
+ * equal slots, one per benchmark thread, each slot is split into the equal regions, one per
+ * measurement iteration. Every thread writes its own slot with {@link TraceWriter}, so there are
+ * neither locks nor allocations on the way, and nothing is shared between the threads. Since every
+ * iteration has its own region, the fast iteration can not starve the ones after it. The region
+ * starts with the number of bytes written, published at the end of the iteration, and then follows
+ * the records of {@link #RECORD_SIZE} bytes each:</p>
+ * <ul>
+ *     <li>iteration start: timestamp, {@link #MARK_MEASUREMENT}, iteration number;</li>
+ *     <li>operation: start timestamp, duration in nanoseconds, thread;</li>
+ *     <li>iteration end: timestamp, {@link #MARK_END}, number of the operations dropped on region overflow.</li>
+ * </ul>
+ * <p>The room for the iteration marks is always reserved, only the operations are dropped.</p>
+ * <p>All numbers are in the native byte order, the magic number tells which one.</p>
+ */
+public class TraceFile {
+
+    public static final int MAGIC = 0x4A4D4854;
+    public static final int VERSION = 2;
+
+    public static final int HEADER_SIZE = 4096;
+    public static final int RECORD_SIZE = 16;
+
+    public static final int MARK_MEASUREMENT = -2;
+    public static final int MARK_END = -3;
+
+    /**
+     * Size of the trace file, split among the threads.
+     */
+    private static final int SIZE = Integer.getInteger("jmh.trace.size", 256 * 1024 * 1024);
+
+    private final File file;
+    private final MappedByteBuffer buf;
+    private final int slots;
+    private final int iterations;
+    private final int regionSize;
+    private final int every;
+    private final AtomicInteger nextSlot;
+
+    /**
+     * Written by the harness before the iteration starts, read by the workers.
+     */
+    private volatile int iteration;
+
+    /**
+     * Creates the trace file.
+     *
+     * @param file file to create
+     * @param benchmark benchmark description to put in the header
+     * @param slots number of benchmark threads
+     * @param iterations number of measurement iterations
+     * @param every trace only every N-th operation
+     * @throws IOException if file can not be mapped
+     */
+    public TraceFile(File file, String benchmark, int slots, int iterations, int every) throws IOException {
+        this.file = file;
+        this.slots = slots;
+        this.iterations = iterations;
+        this.every = every;
+        this.regionSize = (int) ((((long) SIZE - HEADER_SIZE) / slots / iterations) / RECORD_SIZE * RECORD_SIZE);
+        this.nextSlot = new AtomicInteger();
+        if (regionSize < 3 * RECORD_SIZE) {
+            throw new IOException("Trace file is too small for " + slots + " threads and " + iterations + " iterations: " + SIZE + " bytes");
+        }
+
+        long size = HEADER_SIZE + (long) regionSize * iterations * slots;
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(size);
+            buf = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } finally {
+            // mapping stays valid after the channel is closed
+            raf.close();
+        }
+        buf.order(ByteOrder.nativeOrder());
+
+        byte[] name = utf8(benchmark);
+        if (name.length > HEADER_SIZE - 64) {
+            throw new IOException("Benchmark description is too long for the trace header: " + benchmark);
+        }
+        buf.putInt(0, MAGIC);
+        buf.putInt(4, VERSION);
+        buf.putInt(8, slots);
+        buf.putInt(12, iterations);
+        buf.putInt(16, regionSize);
+        buf.putInt(20, every);
+        buf.putInt(24, name.length);
+        for (int i = 0; i < name.length; i++) {
+            buf.put(28 + i, name[i]);
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Marks the measurement iteration the workers are about to run.
+     * The iterations past the number given at construction are not traced.
+     *
+     * @param iteration iteration number, as reported to the output, starting from 1
+     */
+    public void beginIteration(int iteration) {
+        this.iteration = iteration;
+    }
+
+    /**
+     * Claims the next free slot for the benchmark thread.
+     *
+     * @return writer for the slot
+     * @throws IllegalStateException if there are more threads than slots
+     */
+    public TraceWriter newWriter() {
+        int slot = nextSlot.getAndIncrement();
+        if (slot >= slots) {
+            throw new IllegalStateException("No free trace slots, file has " + slots);
+        }
+        ByteBuffer b = buf.duplicate();
+        b.order(ByteOrder.nativeOrder());
+        return new TraceWriter(this, b, HEADER_SIZE + slot * iterations * regionSize, regionSize, iterations, slot, every);
+    }
+
+    int getIteration() {
+        return iteration;
+    }
+
+    /**
+     * Flushes the trace to disk.
+     */
+    public void close() {
+        buf.force();
+    }
+
+    private static byte[] utf8(String s) {
+        try {
+            return s.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
@@ -0,0 +1,295 @@
+/*
+ * Copyright (c) 2005, 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jmh.logic;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-millisecond throughput and latency of every measurement iteration in the {@link TraceFile}.
+ * The iterations are numbered the same way as in the harness output, so the time series can be
+ * matched with the iteration results.
+ */
+public class TraceTimeline {
+
+    private static final long BIN_NS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final String benchmark;
+    private final int threads;
+    private final int every;
+    private final List<Iteration> iterations;
+
+    private TraceTimeline(String benchmark, int threads, int every, List<Iteration> iterations) {
+        this.benchmark = benchmark;
+        this.threads = threads;
+        this.every = every;
+        this.iterations = iterations;
+    }
+
+    /**
+     * Reads the trace file.
+     *
+     * @param file trace file
+     * @return time series for the iterations in the file
+     * @throws IOException if file can not be read, or it is not the trace file
+     */
+    public static TraceTimeline read(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        MappedByteBuffer buf;
+        try {
+            buf = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        } finally {
+            // mapping stays valid after the channel is closed
+            raf.close();
+        }
+
+        if (buf.capacity() < TraceFile.HEADER_SIZE) {
+            throw new IOException("Not a trace file: " + file);
+        }
+        buf.order(ByteOrder.BIG_ENDIAN);
+        if (buf.getInt(0) != TraceFile.MAGIC) {
+            buf.order(ByteOrder.LITTLE_ENDIAN);
+            if (buf.getInt(0) != TraceFile.MAGIC) {
+                throw new IOException("Not a trace file: " + file);
+            }
+        }
+        if (buf.getInt(4) != TraceFile.VERSION) {
+            throw new IOException("Unsupported trace version: " + buf.getInt(4) + ", expected " + TraceFile.VERSION);
+        }
+
+        int slots = buf.getInt(8);
+        int regions = buf.getInt(12);
+        int regionSize = buf.getInt(16);
+        int every = buf.getInt(20);
+        byte[] name = new byte[buf.getInt(24)];
+        for (int i = 0; i < name.length; i++) {
+            name[i] = buf.get(28 + i);
+        }
+        if (TraceFile.HEADER_SIZE + (long) slots * regions * regionSize > buf.capacity()) {
+            throw new IOException("Trace file is truncated: " + file);
+        }
+
+        // first pass: find the iteration bounds, second pass: fill in the time series
+        Map<Integer, Iteration> iterations = new LinkedHashMap<Integer, Iteration>();
+        for (int pass = 0; pass < 2; pass++) {
+            for (int r = 0; r < slots * regions; r++) {
+                int base = TraceFile.HEADER_SIZE + r * regionSize;
+                long used = Math.min(buf.getLong(base), regionSize - 8);
+                Iteration current = null;
+                for (int pos = base + 8; pos < base + 8 + used; pos += TraceFile.RECORD_SIZE) {
+                    long time = buf.getLong(pos);
+                    int duration = buf.getInt(pos + 8);
+                    int value = buf.getInt(pos + 12);
+                    if (duration == TraceFile.MARK_MEASUREMENT) {
+                        current = iterations.get(value);
+                        if (current == null) {
+                            current = new Iteration(value);
+                            iterations.put(value, current);
+                        }
+                        if (pass == 0) {
+                            current.begin(time);
+                        }
+                    } else if (duration == TraceFile.MARK_END) {
+                        if (current != null && pass == 0) {
+                            current.end(time, value);
+                        }
+                        current = null;
+                    } else if (current != null && pass == 1) {
+                        current.add(time, duration, every);
+                    }
+                }
+            }
+            if (pass == 0) {
+                for (Iteration it : iterations.values()) {
+                    it.allocate();
+                }
+            }
+        }
+
+        List<Iteration> list = new ArrayList<Iteration>(iterations.values());
+        Collections.sort(list, new Comparator<Iteration>() {
+            @Override
+            public int compare(Iteration o1, Iteration o2) {
+                return (o1.start < o2.start) ? -1 : ((o1.start == o2.start) ? 0 : 1);
+            }
+        });
+        return new TraceTimeline(new String(name, "UTF-8"), slots, every, list);
+    }
+
+    /**
+     * @return benchmark description, as written by the harness
+     */
+    public String getBenchmark() {
+        return benchmark;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * @return trace sampling interval: every N-th operation is traced
+     */
+    public int getEvery() {
+        return every;
+    }
+
+    /**
+     * @return iterations, in the order those were run
+     */
+    public List<Iteration> getIterations() {
+        return iterations;
+    }
+
+    /**
+     * Prints the time series for every iteration.
+     *
+     * @param out stream to print to
+     */
+    public void print(PrintStream out) {
+        out.println("# Benchmark: " + benchmark);
+        out.println("# Threads: " + threads + ((every > 1) ? ", every " + every + "th operation is traced, throughput is extrapolated" : ""));
+        for (Iteration it : iterations) {
+            out.println();
+            out.println(String.format("Iteration %d: %d ms%s", it.getNumber(), it.size(),
+                    (it.getDropped() > 0) ? ", " + it.getDropped() + " operations did not fit the trace" : ""));
+            out.println(String.format("%8s %14s %14s %14s", "ms", "ops/ms", "avg, us", "max, us"));
+            for (int ms = 0; ms < it.size(); ms++) {
+                out.println(String.format("%8d %14.1f %14.3f %14.3f", ms, it.getOperations(ms),
+                        it.getMeanLatency(ms) / 1000, it.getMaxLatency(ms) / 1000.0));
+            }
+        }
+    }
+
+    /**
+     * Time series of a single iteration, merged over all the threads, with millisecond bins.
+     */
+    public static class Iteration {
+        private final int number;
+        private long start = Long.MAX_VALUE;
+        private long end = Long.MIN_VALUE;
+        private long dropped;
+
+        private long[] ops;
+        private long[] latencySum;
+        private long[] latencyCount;
+        private long[] latencyMax;
+
+        Iteration(int number) {
+            this.number = number;
+        }
+
+        private void begin(long time) {
+            start = Math.min(start, time);
+        }
+
+        private void end(long time, int droppedOps) {
+            end = Math.max(end, time);
+            dropped += droppedOps;
+        }
+
+        private void allocate() {
+            if (end < start) {
+                // no thread had finished the iteration
+                end = start;
+            }
+            int size = (int) ((end - start + BIN_NS - 1) / BIN_NS);
+            ops = new long[size];
+            latencySum = new long[size];
+            latencyCount = new long[size];
+            latencyMax = new long[size];
+        }
+
+        private void add(long time, int duration, int every) {
+            long bin = (time - start) / BIN_NS;
+            if (bin < 0 || bin >= ops.length) {
+                return;
+            }
+            int b = (int) bin;
+            ops[b] += every;
+            latencySum[b] += duration;
+            latencyCount[b]++;
+            latencyMax[b] = Math.max(latencyMax[b], duration);
+        }
+
+        /**
+         * @return iteration number, as in the harness output
+         */
+        public int getNumber() {
+            return number;
+        }
+
+        /**
+         * @return number of the operations which did not fit the trace
+         */
+        public long getDropped() {
+            return dropped;
+        }
+
+        /**
+         * @return number of millisecond bins
+         */
+        public int size() {
+            return ops.length;
+        }
+
+        /**
+         * @param ms bin
+         * @return number of the operations started in the bin, extrapolated if not every operation is traced
+         */
+        public double getOperations(int ms) {
+            return ops[ms];
+        }
+
+        /**
+         * @param ms bin
+         * @return mean duration of the traced operations started in the bin, nanoseconds; NaN if there are none
+         */
+        public double getMeanLatency(int ms) {
+            return (latencyCount[ms] > 0) ? (double) latencySum[ms] / latencyCount[ms] : Double.NaN;
+        }
+
+        /**
+         * @param ms bin
+         * @return maximum duration of the traced operations started in the bin, nanoseconds
+         */
+        public long getMaxLatency(int ms) {
+            return latencyMax[ms];
+        }
+    }
+
+}
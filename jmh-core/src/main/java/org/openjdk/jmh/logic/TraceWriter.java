@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2005, 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jmh.logic;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Appends the records to the single slot of {@link TraceFile}, every iteration to its own region.
+ * Only the thread owning the slot writes to it: there are no locks, and no allocations.
+ * The records beyond the region capacity are dropped, and counted.
+ */
+public class TraceWriter {
+
+    private final TraceFile trace;
+    private final ByteBuffer buf;
+    private final int slotBase;
+    private final int regionSize;
+    private final int regions;
+    private final int thread;
+
+    /**
+     * Trace only every N-th operation.
+     * This is specifically the public field, so to spare one virtual call.
+     */
+    public final int every;
+
+    private int base;
+    private int limit;
+    private int pos;
+    private long dropped;
+
+    TraceWriter(TraceFile trace, ByteBuffer buf, int slotBase, int regionSize, int regions, int thread, int every) {
+        this.trace = trace;
+        this.buf = buf;
+        this.slotBase = slotBase;
+        this.regionSize = regionSize;
+        this.regions = regions;
+        this.thread = thread;
+        this.every = every;
+    }
+
+    public TraceFile getTrace() {
+        return trace;
+    }
+
+    /**
+     * Marks the start of the iteration in its region of this slot.
+     * The iterations without the region are not traced at all.
+     *
+     * @param time iteration start timestamp
+     */
+    public void beginIteration(long time) {
+        dropped = 0;
+        int iteration = trace.getIteration();
+        if (iteration < 1 || iteration > regions) {
+            base = limit = pos = 0;
+            return;
+        }
+        base = slotBase + (iteration - 1) * regionSize;
+        limit = base + regionSize;
+        pos = base + 8;
+
+        // the region always has room for the iteration marks
+        buf.putLong(pos, time);
+        buf.putInt(pos + 8, TraceFile.MARK_MEASUREMENT);
+        buf.putInt(pos + 12, iteration);
+        pos += TraceFile.RECORD_SIZE;
+    }
+
+    /**
+     * Records the operation.
+     *
+     * @param start start timestamp
+     * @param duration duration, nanoseconds
+     */
+    public void record(long start, long duration) {
+        put(start, (int) Math.min(duration, Integer.MAX_VALUE), thread);
+    }
+
+    /**
+     * Marks the end of the iteration, and publishes the region contents.
+     *
+     * @param time iteration end timestamp
+     */
+    public void endIteration(long time) {
+        if (limit == 0) {
+            return;
+        }
+        buf.putLong(pos, time);
+        buf.putInt(pos + 8, TraceFile.MARK_END);
+        buf.putInt(pos + 12, (int) Math.min(dropped, Integer.MAX_VALUE));
+        pos += TraceFile.RECORD_SIZE;
+        buf.putLong(base, pos - base - 8);
+    }
+
+    private void put(long time, int duration, int thread) {
+        // keep the room for the iteration end mark
+        if (pos + 2 * TraceFile.RECORD_SIZE > limit) {
+            dropped++;
+            return;
+        }
+        buf.putLong(pos, time);
+        buf.putInt(pos + 8, duration);
+        buf.putInt(pos + 12, thread);
+        pos += TraceFile.RECORD_SIZE;
+    }
+
+}
@@ -50,6 +50,10 @@ public class IterationResult implements Serializable {
     private final Multimap<String, Result> secondaryResults;
     private final List<ProfilerResult> profilerResults;
     private String scoreUnit;
+    private boolean timedOut;
+    private long startSkewNs = -1;
+    private long stopSkewNs = -1;
+    private String cpus;
 
     public IterationResult(BenchmarkRecord benchmark, IterationParams params) {
         this.benchmark = benchmark;
@@ -135,4 +139,57 @@ public class IterationResult implements Serializable {
         return scoreUnit;
     }
 
+    /**
+     * Marks the iteration abandoned on timeout.
+     * The results are partial then: only the workers which completed in time had reported.
+     */
+    public void markTimedOut() {
+        timedOut = true;
+    }
+
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+    /**
+     * Records how far apart in time the worker threads had entered and completed the iteration.
+     *
+     * @param startSkewNs spread of the start times, in nanoseconds
+     * @param stopSkewNs spread of the completion times, in nanoseconds
+     */
+    public void setWorkerSkew(long startSkewNs, long stopSkewNs) {
+        this.startSkewNs = startSkewNs;
+        this.stopSkewNs = stopSkewNs;
+    }
+
+    /**
+     * @return spread of the worker start times, in nanoseconds; -1 if not measured
+     */
+    public long getStartSkew() {
+        return startSkewNs;
+    }
+
+    /**
+     * @return spread of the worker completion times, in nanoseconds; -1 if not measured
+     */
+    public long getStopSkew() {
+        return stopSkewNs;
+    }
+
+    /**
+     * Records the CPUs the iteration ran on.
+     *
+     * @param cpus CPU list, e.g. "0-3,8"
+     */
+    public void setCpus(String cpus) {
+        this.cpus = cpus;
+    }
+
+    /**
+     * @return CPU slot the fork ran the iteration in, e.g. "0-3,8"; null, if the fork had not run in its own slot
+     */
+    public String getCpus() {
+        return cpus;
+    }
+
 }
@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2005, 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jmh.logic.results;
+
+import org.openjdk.jmh.util.internal.Statistics;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Open-loop results of the same benchmark measured at several target rates.
+ * <p>
+ * The benchmark sustains the load while it starts the operations at the target rate. Once the
+ * rate is above what it can serve, the operations queue up behind the schedule, the achieved
+ * rate stays at the maximum, and the latency grows with the iteration time.
+ */
+public class LoadCurve {
+
+    /**
+     * The step is saturated when the achieved rate falls below this fraction of the target.
+     */
+    public static final double SATURATION_THRESHOLD = 0.95;
+
+    private final double maxThroughput;
+    private final double[] targetRates;
+    private final OpenLoopTimePerOp[] results;
+
+    /**
+     * @param maxThroughput maximum throughput measured in the closed loop, ops/s; non-positive if unknown
+     * @param results open-loop results, by target rate
+     */
+    public LoadCurve(double maxThroughput, SortedMap<Double, OpenLoopTimePerOp> results) {
+        if (results.isEmpty()) {
+            throw new IllegalArgumentException("No results");
+        }
+        this.maxThroughput = maxThroughput;
+        this.targetRates = new double[results.size()];
+        this.results = new OpenLoopTimePerOp[results.size()];
+
+        int i = 0;
+        for (Map.Entry<Double, OpenLoopTimePerOp> e : results.entrySet()) {
+            targetRates[i] = e.getKey();
+            this.results[i] = e.getValue();
+            i++;
+        }
+    }
+
+    /**
+     * Makes the curve from the results at every target rate.
+     *
+     * @param maxThroughput maximum throughput measured in the closed loop, ops/s; non-positive if unknown
+     * @param results results, by target rate; those not measured in the open loop are skipped
+     * @return load curve; null if there are no open-loop results
+     */
+    public static LoadCurve of(double maxThroughput, SortedMap<Double, RunResult> results) {
+        SortedMap<Double, OpenLoopTimePerOp> steps = new TreeMap<Double, OpenLoopTimePerOp>();
+        for (Map.Entry<Double, RunResult> e : results.entrySet()) {
+            Result r = e.getValue().getPrimaryResult();
+            if (r instanceof OpenLoopTimePerOp) {
+                steps.put(e.getKey(), (OpenLoopTimePerOp) r);
+            }
+        }
+        return steps.isEmpty() ? null : new LoadCurve(maxThroughput, steps);
+    }
+
+    /**
+     * Converts the throughput score to operations per second.
+     *
+     * @param result result
+     * @return ops/s; -1 if result is not the throughput
+     */
+    public static double opsPerSecond(Result result) {
+        if (!(result instanceof OpsPerTimeUnit)) {
+            return -1;
+        }
+        TimeUnit tu = ((OpsPerTimeUnit) result).getOutputTimeUnit();
+        return result.getScore() * TimeUnit.SECONDS.toNanos(1) / tu.toNanos(1);
+    }
+
+    /**
+     * @param targetRate target rate, ops/s
+     * @param result open-loop result at that rate
+     * @return true, if the benchmark can not sustain the rate
+     */
+    public static boolean isSaturated(double targetRate, Result result) {
+        return (result instanceof OpenLoopTimePerOp) &&
+                ((OpenLoopTimePerOp) result).getAchievedRate() < targetRate * SATURATION_THRESHOLD;
+    }
+
+    /**
+     * @return maximum throughput measured in the closed loop, ops/s; non-positive if unknown
+     */
+    public double getMaxThroughput() {
+        return maxThroughput;
+    }
+
+    /**
+     * @return number of points
+     */
+    public int size() {
+        return targetRates.length;
+    }
+
+    /**
+     * @param point point index
+     * @return target rate at the point, ops/s
+     */
+    public double getTargetRate(int point) {
+        return targetRates[point];
+    }
+
+    /**
+     * @param point point index
+     * @return achieved rate at the point, ops/s
+     */
+    public double getAchievedRate(int point) {
+        return results[point].getAchievedRate();
+    }
+
+    /**
+     * @param point point index
+     * @return target rate relative to the maximum throughput; NaN if maximum is unknown
+     */
+    public double getLoad(int point) {
+        return (maxThroughput > 0) ? targetRates[point] / maxThroughput : Double.NaN;
+    }
+
+    /**
+     * @param point point index
+     * @param percentile percentile, 0..100
+     * @return latency at the point, in {@link #getScoreUnit()}
+     */
+    public double getLatency(int point, double percentile) {
+        Statistics stats = results[point].getStatistics();
+        return stats.getPercentile(percentile);
+    }
+
+    /**
+     * @return latency unit
+     */
+    public String getScoreUnit() {
+        return results[0].getScoreUnit();
+    }
+
+    /**
+     * @param point point index
+     * @return true, if the benchmark had not sustained the target rate at the point
+     */
+    public boolean isSaturated(int point) {
+        return isSaturated(targetRates[point], results[point]);
+    }
+
+    /**
+     * @return index of the first saturated point; -1 if the benchmark sustains every point
+     */
+    public int getSaturationPoint() {
+        for (int i = 0; i < size(); i++) {
+            if (isSaturated(i)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return highest rate sustained below the saturation point, ops/s; 0 if none was
+     */
+    public double getSustainedRate() {
+        int saturated = getSaturationPoint();
+        int last = (saturated == -1) ? size() : saturated;
+        double rate = 0;
+        for (int i = 0; i < last; i++) {
+            rate = Math.max(rate, getAchievedRate(i));
+        }
+        return rate;
+    }
+
+}
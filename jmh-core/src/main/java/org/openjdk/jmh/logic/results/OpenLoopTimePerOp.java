@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2005, 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jmh.logic.results;
+
+import org.openjdk.jmh.util.internal.SampleHistogram;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Result class that samples operation time under the open-loop load.
+ * The time is counted from the scheduled start of the operation, and also
+ * includes the time the operation had waited for the previous ones to complete.
+ */
+public class OpenLoopTimePerOp extends SampleTimePerOp {
+
+    /** Total number of operations during iteration */
+    private final long operations;
+    /** Duration of iteration in NanoSeconds */
+    private final long durationNs;
+    /** Requested rate, ops/s */
+    private final double targetRate;
+
+    /**
+     * Sets up the result
+     *
+     * @param operations     Total number of operations during iteration
+     * @param durationNs     Duration of iteration in NanoSeconds
+     * @param targetRate     Requested rate, ops/s
+     * @param outputTimeUnit The TimeUnit to use when calculating the score
+     */
+    public OpenLoopTimePerOp(ResultRole mode, String label, SampleHistogram histogram, long operations, long durationNs, double targetRate, TimeUnit outputTimeUnit) {
+        super(mode, label, histogram, outputTimeUnit);
+        this.operations = operations;
+        this.durationNs = durationNs;
+        this.targetRate = targetRate;
+    }
+
+    /**
+     * @return total number of operations during iteration
+     */
+    public long getOperations() {
+        return operations;
+    }
+
+    /**
+     * @return duration of iteration, in nanoseconds
+     */
+    public long getDurationNs() {
+        return durationNs;
+    }
+
+    /**
+     * @return requested rate, ops/s
+     */
+    public double getTargetRate() {
+        return targetRate;
+    }
+
+    /**
+     * @return rate the operations had actually started at, ops/s
+     */
+    public double getAchievedRate() {
+        return (durationNs > 0) ? operations * 1e9 / durationNs : 0;
+    }
+
+    @Override
+    public Aggregator getIterationAggregator() {
+        return new ThreadAggregator();
+    }
+
+    @Override
+    public Aggregator getRunAggregator() {
+        return new IterationAggregator();
+    }
+
+    @Override
+    public String toString() {
+        return rateInfo() + ", " + super.toString();
+    }
+
+    @Override
+    public String extendedInfo(String label) {
+        String info = super.extendedInfo(label);
+        int firstLine = info.indexOf('\n') + 1;
+        return info.substring(0, firstLine) + "  " + rateInfo() + "\n" + info.substring(firstLine);
+    }
+
+    private String rateInfo() {
+        return String.format("achieved %.1f of %.1f ops/s", getAchievedRate(), targetRate);
+    }
+
+    /**
+     * Aggregates the threads running at the same time: their rates add up.
+     */
+    public static class ThreadAggregator implements Aggregator<OpenLoopTimePerOp> {
+        @Override
+        public Result aggregate(Collection<OpenLoopTimePerOp> results) {
+            ResultRole role = null;
+            String label = null;
+            TimeUnit tu = null;
+            long operations = 0;
+            long duration = 0;
+            double rate = 0;
+            for (OpenLoopTimePerOp r : results) {
+                role = r.role;
+                label = r.label;
+                tu = r.getOutputTimeUnit();
+                operations += r.operations;
+                duration = Math.max(duration, r.durationNs);
+                rate += r.targetRate;
+            }
+            return new OpenLoopTimePerOp(role, label, joinHistograms(results), operations, duration, rate, tu);
+        }
+    }
+
+    /**
+     * Aggregates the iterations running one after another: their durations add up.
+     */
+    public static class IterationAggregator implements Aggregator<OpenLoopTimePerOp> {
+        @Override
+        public Result aggregate(Collection<OpenLoopTimePerOp> results) {
+            ResultRole role = null;
+            String label = null;
+            TimeUnit tu = null;
+            long operations = 0;
+            long duration = 0;
+            double rate = 0;
+            for (OpenLoopTimePerOp r : results) {
+                role = r.role;
+                label = r.label;
+                tu = r.getOutputTimeUnit();
+                operations += r.operations;
+                duration += r.durationNs;
+                rate += r.targetRate;
+            }
+            if (!results.isEmpty()) {
+                rate /= results.size();
+            }
+            return new OpenLoopTimePerOp(role, label, joinHistograms(results), operations, duration, rate, tu);
+        }
+    }
+
+}
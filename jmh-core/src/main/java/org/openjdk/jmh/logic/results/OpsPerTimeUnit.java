@@ -72,6 +72,27 @@ public class OpsPerTimeUnit extends Result {
         this.outputTimeUnit = outputTimeUnit;
     }
 
+    /**
+     * @return total number of operations during iteration
+     */
+    public long getOperations() {
+        return operations;
+    }
+
+    /**
+     * @return duration of iteration, in nanoseconds
+     */
+    public long getDurationNs() {
+        return durationNs;
+    }
+
+    /**
+     * @return the TimeUnit to use when calculating the score
+     */
+    public TimeUnit getOutputTimeUnit() {
+        return outputTimeUnit;
+    }
+
     /** {@inheritDoc} */
     @Override
     public String getScoreUnit() {
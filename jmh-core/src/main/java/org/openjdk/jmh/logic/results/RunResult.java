@@ -47,15 +47,35 @@ public class RunResult implements Serializable {
     private static final long serialVersionUID = 6467912427356048369L;
 
     private final Collection<IterationResult> iterationResults;
+    private final boolean partial;
 
     public RunResult(Collection<IterationResult> data) {
+        this(data, false);
+    }
+
+    /**
+     * @param data iteration results
+     * @param partial true, if the run did not complete, and only the iterations it had reported are here
+     */
+    public RunResult(Collection<IterationResult> data, boolean partial) {
         this.iterationResults = data;
+        this.partial = partial;
     }
 
     public Collection<IterationResult> getRawIterationResults() {
         return iterationResults;
     }
 
+    /**
+     * Is this a partial result? Forked VM which had crashed, or was killed,
+     * still yields the iterations it had reported before that.
+     *
+     * @return true, if any of the runs had not completed
+     */
+    public boolean isPartial() {
+        return partial;
+    }
+
     public Result getPrimaryResult() {
         Result next = iterationResults.iterator().next().getPrimaryResult();
 
@@ -108,10 +128,12 @@ public class RunResult implements Serializable {
 
     public static RunResult merge(Collection<RunResult> rrs) {
         List<IterationResult> rs = new ArrayList<IterationResult>();
+        boolean partial = false;
         for (RunResult rr : rrs) {
             if (rr == null) continue;
             rs.addAll(rr.getRawIterationResults());
+            partial |= rr.isPartial();
         }
-        return new RunResult(rs);
+        return new RunResult(rs, partial);
     }
 }
@@ -25,8 +25,8 @@
 package org.openjdk.jmh.logic.results;
 
 import org.openjdk.jmh.runner.parameters.TimeValue;
-import org.openjdk.jmh.util.internal.BootstrappedStatistics;
-import org.openjdk.jmh.util.internal.SampleBuffer;
+import org.openjdk.jmh.util.internal.HistogramStatistics;
+import org.openjdk.jmh.util.internal.SampleHistogram;
 import org.openjdk.jmh.util.internal.Statistics;
 
 import java.util.Collection;
@@ -39,14 +39,17 @@ import java.util.concurrent.TimeUnit;
  */
 public class SampleTimePerOp extends Result {
 
-    /** Sample buffer */
-    private final SampleBuffer buffer;
+    /** Percentiles to report */
+    private static final double[] PERCENTILES = {0.0, 0.50, 0.90, 0.95, 0.99, 0.999, 0.9999, 0.99999, 1.00};
+
+    /** Histogram of the operation times */
+    private final SampleHistogram histogram;
     /** The TimeUnit to use when calculating the score */
     private final TimeUnit outputTimeUnit;
 
     /** Sets up the result with the default output unit MilliSeconds */
-    public SampleTimePerOp(ResultRole mode, String label, SampleBuffer buffer) {
-        this(mode, label, buffer, TimeUnit.MILLISECONDS);
+    public SampleTimePerOp(ResultRole mode, String label, SampleHistogram histogram) {
+        this(mode, label, histogram, TimeUnit.MILLISECONDS);
     }
 
     /**
@@ -54,12 +57,26 @@ public class SampleTimePerOp extends Result {
      *
      * @param outputTimeUnit The TimeUnit to use when calculating the score
      */
-    public SampleTimePerOp(ResultRole mode, String label, SampleBuffer buffer, TimeUnit outputTimeUnit) {
+    public SampleTimePerOp(ResultRole mode, String label, SampleHistogram histogram, TimeUnit outputTimeUnit) {
         super(mode, label, null);
-        this.buffer = buffer;
+        this.histogram = histogram;
         this.outputTimeUnit = outputTimeUnit;
     }
 
+    /**
+     * @return histogram of the operation times, in nanoseconds
+     */
+    public SampleHistogram getHistogram() {
+        return histogram;
+    }
+
+    /**
+     * @return the TimeUnit to use when calculating the score
+     */
+    public TimeUnit getOutputTimeUnit() {
+        return outputTimeUnit;
+    }
+
     /** {@inheritDoc} */
     @Override
     public String getScoreUnit() {
@@ -69,20 +86,12 @@ public class SampleTimePerOp extends Result {
     /** {@inheritDoc} */
     @Override
     public double getScore() {
-        Statistics stats = new Statistics();
-        for (long l : buffer.getSamples()) {
-            stats.addValue(l);
-        }
-        return convertNs(stats.getMean());
+        return convertNs(histogram.getMean());
     }
 
     @Override
     public Statistics getStatistics() {
-        Statistics stats = new Statistics();
-        for (long l : buffer.getSamples()) {
-            stats.addValue(convertNs(l));
-        }
-        return stats;
+        return new HistogramStatistics(histogram, convertNs(1));
     }
 
     @Override
@@ -97,79 +106,62 @@ public class SampleTimePerOp extends Result {
 
     @Override
     public String toString() {
-        Statistics stats = new Statistics();
-        for (long l : buffer.getSamples()) {
-            stats.addValue(l);
-        }
-
         StringBuilder sb = new StringBuilder();
-        sb.append("n = ").append(stats.getN()).append(", ");
+        sb.append("n = ").append(histogram.getCount()).append(", ");
         sb.append(String.format("mean = %.0f %s",
-                convertNs(stats.getMean()),
-                getScoreUnit()));
-        sb.append(String.format(", p{0.00, 0.50, 0.90, 0.95, 0.99, 0.999, 0.9999, 1.00} = %.0f, %.0f, %.0f, %.0f, %.0f, %.0f, %.0f, %.0f %s",
-                convertNs(stats.getPercentile(Double.MIN_VALUE)),
-                convertNs(stats.getPercentile(50)),
-                convertNs(stats.getPercentile(90)),
-                convertNs(stats.getPercentile(95)),
-                convertNs(stats.getPercentile(99)),
-                convertNs(stats.getPercentile(99.9)),
-                convertNs(stats.getPercentile(99.99)),
-                convertNs(stats.getPercentile(100)),
+                convertNs(histogram.getMean()),
                 getScoreUnit()));
+        sb.append(", p{0.00, 0.50, 0.90, 0.95, 0.99, 0.999, 0.9999, 0.99999, 1.00} = ");
+        for (int i = 0; i < PERCENTILES.length; i++) {
+            sb.append((i > 0) ? ", " : "").append(String.format("%.0f", convertNs(histogram.getValueAtPercentile(PERCENTILES[i] * 100))));
+        }
+        sb.append(" ").append(getScoreUnit());
         return sb.toString();
     }
 
     @Override
     public String extendedInfo(String label) {
-
-        Statistics stats = new Statistics();
-        for (long l : buffer.getSamples()) {
-            stats.addValue(l);
-        }
+        Statistics stats = getStatistics();
 
         StringBuilder sb = new StringBuilder();
         sb.append("Run result \"").append(label).append("\": \n");
-        sb.append("  samples = ").append(stats.getN()).append("\n");
+        sb.append("  samples = ").append(histogram.getCount()).append("\n");
 
-        if (stats.getN() > 2) {
+        if (histogram.getCount() > 2) {
             double[] interval95 = stats.getConfidenceInterval(0.05);
             double[] interval99 = stats.getConfidenceInterval(0.01);
             sb.append(String.format("       mean = %10.3f \u00B1(95%%) %.3f \u00B1(99%%) %.3f",
-                    convertNs(stats.getMean()),
-                    convertNs((interval95[1] - interval95[0]) / 2),
-                    convertNs((interval99[1] - interval99[0]) / 2)
+                    stats.getMean(),
+                    (interval95[1] - interval95[0]) / 2,
+                    (interval99[1] - interval99[0]) / 2
             ));
         } else {
             sb.append(String.format("       mean = %10.3f (<= 2 iterations)",
-                    convertNs(stats.getMean())
+                    stats.getMean()
             ));
         }
         sb.append(" ").append(getScoreUnit()).append("\n");
 
-        sb.append(String.format("        min = %10.3f %s\n", convertNs(stats.getMin()), getScoreUnit()));
-
-        BootstrappedStatistics boot = new BootstrappedStatistics(stats);
-        for (double p : new double[] {Double.MIN_VALUE, 0.50, 0.90, 0.95, 0.99, 0.999, 0.9999, 1.00}) {
-            Statistics bootedStat = boot.getBootPercentile(p*100);
+        sb.append(String.format("        min = %10.3f %s\n", stats.getMin(), getScoreUnit()));
 
-            double[] interval95 = bootedStat.getConfidenceInterval(0.05);
-            double[] interval99 = bootedStat.getConfidenceInterval(0.01);
-
-            sb.append(String.format("  %9s = %10.3f \u00B1(95%%) %.3f \u00B1(99%%) %.3f %s\n",
-                    "p(" + String.format("%.4f", p) + ")",
-                    convertNs(bootedStat.getMean()),
-                    convertNs((interval95[1] - interval95[0]) / 2),
-                    convertNs((interval99[1] - interval99[0]) / 2),
+        // every sample is in the histogram, percentiles are known within its precision
+        for (double p : PERCENTILES) {
+            sb.append(String.format(" %10s = %10.3f %s\n",
+                    "p(" + formatPercentile(p) + ")",
+                    stats.getPercentile(p * 100),
                     getScoreUnit()
             ));
         }
 
-        sb.append(String.format("        max = %10.3f %s\n",  convertNs(stats.getMax()), getScoreUnit()));
+        sb.append(String.format("        max = %10.3f %s\n", stats.getMax(), getScoreUnit()));
 
         return sb.toString();
     }
 
+    private static String formatPercentile(double p) {
+        return String.format((p > 0.9999 && p < 1) ? "%.5f" : "%.4f", p);
+    }
+
     private double convertNs(double time) {
         return convert(time, TimeUnit.NANOSECONDS, outputTimeUnit);
     }
@@ -178,6 +170,23 @@ public class SampleTimePerOp extends Result {
         return time * to.convert(1, TimeUnit.DAYS) / from.convert(1, TimeUnit.DAYS);
     }
 
+    /**
+     * Merges the histograms of all the results.
+     *
+     * @param results results to merge
+     * @return merged histogram
+     */
+    static SampleHistogram joinHistograms(Collection<? extends SampleTimePerOp> results) {
+        SampleHistogram merged = null;
+        for (SampleTimePerOp r : results) {
+            if (merged == null) {
+                merged = new SampleHistogram(r.histogram.getPrecision());
+            }
+            merged.add(r.histogram);
+        }
+        return merged;
+    }
+
     /**
      * Always add up all the samples into final result.
      * This will allow aggregate result to achieve better accuracy.
@@ -186,26 +195,16 @@ public class SampleTimePerOp extends Result {
 
         @Override
         public Result aggregate(Collection<SampleTimePerOp> results) {
-            // estimate size
-            int size = 0;
-            for (SampleTimePerOp r : results) {
-                size += r.buffer.getSamples().length;
-            }
-
-            // generate new sample buffer
             ResultRole mode = null;
             String label = null;
-            SampleBuffer buffer = new SampleBuffer(size);
             TimeUnit tu = null;
             for (SampleTimePerOp r : results) {
                 tu = r.outputTimeUnit;
                 label = r.label;
-                buffer.addAll(r.buffer.getSamples());
             }
 
-            return new SampleTimePerOp(mode, label, buffer, tu);
+            return new SampleTimePerOp(mode, label, joinHistograms(results), tu);
         }
     }
 
 }
-
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2005, 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jmh.logic.results;
+
+import org.openjdk.jmh.annotations.Mode;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Scores of the same benchmark measured at several thread counts.
+ * <p>
+ * The speedup is computed against the smallest thread count measured, normally the single thread.
+ * Time-based modes report the time per operation for every thread, so their scores are converted
+ * to the total throughput first: doubling the threads at the same time per operation is the perfect
+ * speedup of 2.
+ */
+public class ScalabilityCurve {
+
+    private final Mode mode;
+    private final int[] threads;
+    private final double[] scores;
+
+    public ScalabilityCurve(Mode mode, SortedMap<Integer, Double> scores) {
+        if (scores.isEmpty()) {
+            throw new IllegalArgumentException("No scores");
+        }
+        this.mode = mode;
+        this.threads = new int[scores.size()];
+        this.scores = new double[scores.size()];
+
+        int i = 0;
+        for (Map.Entry<Integer, Double> e : scores.entrySet()) {
+            threads[i] = e.getKey();
+            this.scores[i] = e.getValue();
+            i++;
+        }
+    }
+
+    /**
+     * Makes the curve from the results at every thread count.
+     *
+     * @param mode benchmark mode
+     * @param results results, by thread count
+     * @return scalability curve
+     */
+    public static ScalabilityCurve of(Mode mode, SortedMap<Integer, RunResult> results) {
+        SortedMap<Integer, Double> scores = new TreeMap<Integer, Double>();
+        for (Map.Entry<Integer, RunResult> e : results.entrySet()) {
+            scores.put(e.getKey(), e.getValue().getPrimaryResult().getScore());
+        }
+        return new ScalabilityCurve(mode, scores);
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * @return number of points
+     */
+    public int size() {
+        return threads.length;
+    }
+
+    /**
+     * @param point point index
+     * @return thread count at the point
+     */
+    public int getThreads(int point) {
+        return threads[point];
+    }
+
+    /**
+     * @param point point index
+     * @return benchmark score at the point
+     */
+    public double getScore(int point) {
+        return scores[point];
+    }
+
+    /**
+     * @return thread count the speedup is computed against
+     */
+    public int getBaselineThreads() {
+        return threads[0];
+    }
+
+    /**
+     * Total throughput at the point, in arbitrary units.
+     *
+     * @param point point index
+     * @return throughput; higher is better
+     */
+    public double getCapacity(int point) {
+        switch (mode) {
+            case Throughput:
+                return scores[point];
+            default:
+                // time per operation in every thread
+                return threads[point] / scores[point];
+        }
+    }
+
+    /**
+     * @param point point index
+     * @return speedup against the baseline thread count
+     */
+    public double getSpeedup(int point) {
+        return getCapacity(point) / getCapacity(0);
+    }
+
+    /**
+     * Parallel efficiency: the speedup relative to the increase in threads.
+     *
+     * @param point point index
+     * @return efficiency; 1.0 if scaling is perfectly linear
+     */
+    public double getEfficiency(int point) {
+        return getSpeedup(point) * threads[0] / threads[point];
+    }
+
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright (c) 2005, 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jmh.logic.results;
+
+/**
+ * Scalability model fitted over the {@link ScalabilityCurve}.
+ * <p>
+ * The Universal Scalability Law predicts the capacity at N threads as
+ * {@code X(N) = lambda * N / (1 + alpha * (N - 1) + beta * N * (N - 1))}, where
+ * {@code alpha} is the contention (serialized fraction) and {@code beta} is the coherency
+ * (crosstalk) penalty. Amdahl's Law is the special case of {@code beta = 0}; it never
+ * predicts retrograde scaling, while any positive coherency term puts the peak at
+ * {@code sqrt((1 - alpha) / beta)} threads.
+ * <p>
+ * The coefficients are estimated with the usual linearization: with the single thread
+ * capacity known, {@code N / C(N) - 1 = alpha * (N - 1) + beta * N * (N - 1)} is linear in
+ * both coefficients. When the curve does not start at a single thread, the single thread
+ * capacity is searched for as well.
+ */
+public class ScalabilityModel {
+
+    public enum Law {
+        AMDAHL("Amdahl"),
+        USL("USL"),
+        ;
+
+        private final String label;
+
+        Law(String label) {
+            this.label = label;
+        }
+
+        public String label() {
+            return label;
+        }
+    }
+
+    private final Law law;
+    private final ScalabilityCurve curve;
+    private final double lambda;
+    private final double alpha;
+    private final double beta;
+    private final double rSquared;
+
+    private ScalabilityModel(Law law, ScalabilityCurve curve, double lambda, double alpha, double beta) {
+        this.law = law;
+        this.curve = curve;
+        this.lambda = lambda;
+        this.alpha = alpha;
+        this.beta = beta;
+        this.rSquared = computeRSquared();
+    }
+
+    /**
+     * Fits Amdahl's Law; needs at least two points.
+     *
+     * @param curve measured curve
+     * @return fitted model, or null if there are too few points
+     */
+    public static ScalabilityModel fitAmdahl(ScalabilityCurve curve) {
+        return fit(Law.AMDAHL, curve, 2);
+    }
+
+    /**
+     * Fits the Universal Scalability Law; needs at least three points.
+     *
+     * @param curve measured curve
+     * @return fitted model, or null if there are too few points
+     */
+    public static ScalabilityModel fitUSL(ScalabilityCurve curve) {
+        return fit(Law.USL, curve, 3);
+    }
+
+    private static ScalabilityModel fit(Law law, ScalabilityCurve curve, int minPoints) {
+        if (curve.size() < minPoints) {
+            return null;
+        }
+
+        int n0 = curve.getBaselineThreads();
+        double x0 = curve.getCapacity(0);
+        if (n0 == 1) {
+            return fitWith(law, curve, x0);
+        }
+
+        // single thread capacity is unknown: it is between the perfectly linear
+        // and perfectly serial extrapolations from the baseline, pick the best fit
+        double lo = x0 / n0;
+        double hi = x0;
+        ScalabilityModel best = null;
+        double phi = (Math.sqrt(5) - 1) / 2;
+        for (int i = 0; i < 50; i++) {
+            double l1 = hi - phi * (hi - lo);
+            double l2 = lo + phi * (hi - lo);
+            ScalabilityModel m1 = fitWith(law, curve, l1);
+            ScalabilityModel m2 = fitWith(law, curve, l2);
+            if (m1.sse() <= m2.sse()) {
+                hi = l2;
+                best = m1;
+            } else {
+                lo = l1;
+                best = m2;
+            }
+        }
+        return best;
+    }
+
+    private static ScalabilityModel fitWith(Law law, ScalabilityCurve curve, double lambda) {
+        // least squares for y = alpha * x + beta * z, without the intercept
+        double sxx = 0, sxz = 0, szz = 0, sxy = 0, szy = 0;
+        for (int i = 0; i < curve.size(); i++) {
+            double n = curve.getThreads(i);
+            double x = n - 1;
+            double z = n * (n - 1);
+            double y = n * lambda / curve.getCapacity(i) - 1;
+            sxx += x * x;
+            sxz += x * z;
+            szz += z * z;
+            sxy += x * y;
+            szy += z * y;
+        }
+
+        double alpha;
+        double beta;
+        double det = sxx * szz - sxz * sxz;
+        if (law == Law.USL && det > 0) {
+            alpha = (sxy * szz - szy * sxz) / det;
+            beta = (szy * sxx - sxy * sxz) / det;
+            // both coefficients are non-negative, refit the other one alone when they are not
+            if (alpha < 0) {
+                alpha = 0;
+                beta = szy / szz;
+            }
+            if (beta < 0) {
+                beta = 0;
+                alpha = (sxx > 0) ? sxy / sxx : 0;
+            }
+        } else {
+            alpha = (sxx > 0) ? sxy / sxx : 0;
+            beta = 0;
+        }
+
+        alpha = Math.min(1, Math.max(0, alpha));
+        beta = Math.max(0, beta);
+        return new ScalabilityModel(law, curve, lambda, alpha, beta);
+    }
+
+    private double sse() {
+        double sse = 0;
+        for (int i = 0; i < curve.size(); i++) {
+            double d = curve.getCapacity(i) - predictCapacity(curve.getThreads(i));
+            sse += d * d;
+        }
+        return sse;
+    }
+
+    private double computeRSquared() {
+        double mean = 0;
+        for (int i = 0; i < curve.size(); i++) {
+            mean += curve.getCapacity(i);
+        }
+        mean /= curve.size();
+
+        double sst = 0;
+        for (int i = 0; i < curve.size(); i++) {
+            double d = curve.getCapacity(i) - mean;
+            sst += d * d;
+        }
+
+        if (sst == 0) {
+            return (sse() == 0) ? 1.0 : 0.0;
+        }
+        return 1 - sse() / sst;
+    }
+
+    public Law getLaw() {
+        return law;
+    }
+
+    /**
+     * @return contention coefficient, the serialized fraction of work
+     */
+    public double getContention() {
+        return alpha;
+    }
+
+    /**
+     * @return coherency coefficient; always zero for Amdahl's Law
+     */
+    public double getCoherency() {
+        return beta;
+    }
+
+    /**
+     * @return coefficient of determination of the fit over the measured capacities
+     */
+    public double getRSquared() {
+        return rSquared;
+    }
+
+    /**
+     * @param threads thread count
+     * @return predicted speedup against the single thread
+     */
+    public double predictSpeedup(double threads) {
+        return threads / (1 + alpha * (threads - 1) + beta * threads * (threads - 1));
+    }
+
+    /**
+     * @param threads thread count
+     * @return predicted total throughput, in {@link ScalabilityCurve#getCapacity(int)} units
+     */
+    public double predictCapacity(double threads) {
+        return lambda * predictSpeedup(threads);
+    }
+
+    /**
+     * @param threads thread count
+     * @return predicted benchmark score, in the benchmark units
+     */
+    public double predictScore(double threads) {
+        switch (curve.getMode()) {
+            case Throughput:
+                return predictCapacity(threads);
+            default:
+                return threads / predictCapacity(threads);
+        }
+    }
+
+    /**
+     * @return whether the model predicts the throughput to peak and then decline
+     */
+    public boolean hasPeak() {
+        return beta > 0;
+    }
+
+    /**
+     * @return thread count with the highest predicted throughput, or -1 if there is no peak
+     */
+    public int getPeakThreads() {
+        if (!hasPeak()) {
+            return -1;
+        }
+        double peak = Math.sqrt((1 - alpha) / beta);
+        int lo = Math.max(1, (int) Math.floor(peak));
+        int hi = lo + 1;
+        return (predictSpeedup(lo) >= predictSpeedup(hi)) ? lo : hi;
+    }
+
+    /**
+     * @return highest speedup against the single thread the model predicts at any thread count
+     */
+    public double getMaxSpeedup() {
+        if (hasPeak()) {
+            return predictSpeedup(getPeakThreads());
+        }
+        return (alpha > 0) ? 1 / alpha : Double.POSITIVE_INFINITY;
+    }
+
+}
@@ -58,6 +58,20 @@ public class SingleShotTime extends Result {
         this.outputTimeUnit = outputTimeUnit;
     }
 
+    /**
+     * @return duration of iteration, in nanoseconds
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    /**
+     * @return the TimeUnit to use when calculating the score
+     */
+    public TimeUnit getOutputTimeUnit() {
+        return outputTimeUnit;
+    }
+
     /** {@inheritDoc} */
     @Override
     public String getScoreUnit() {
@@ -32,7 +32,6 @@ import org.openjdk.jmh.output.format.SilentFormat;
 import org.openjdk.jmh.output.format.TextReportFormat;
 
 import java.io.PrintStream;
-import java.lang.reflect.Proxy;
 
 public class OutputFormatFactory {
 
@@ -64,11 +63,7 @@ public class OutputFormatFactory {
      * @return
      */
     public static OutputFormat createBinaryHook(BinaryLinkClient link) {
-        return (OutputFormat) Proxy.newProxyInstance(
-                Thread.currentThread().getContextClassLoader(),
-                new Class[]{OutputFormat.class},
-                link.getOutputFormatHandler()
-        );
+        return link.getOutputFormat();
     }
 
     public static OutputFormat createFormatInstance(boolean verbose) {
@@ -29,6 +29,7 @@ import org.openjdk.jmh.logic.results.Result;
 import org.openjdk.jmh.logic.results.RunResult;
 import org.openjdk.jmh.profile.ProfilerResult;
 import org.openjdk.jmh.runner.BenchmarkRecord;
+import org.openjdk.jmh.runner.ExecutorType;
 import org.openjdk.jmh.runner.parameters.BenchmarkParams;
 import org.openjdk.jmh.runner.parameters.IterationParams;
 import org.openjdk.jmh.util.internal.Multimap;
@@ -54,6 +55,12 @@ public class PrettyPrintFormat extends AbstractOutputFormat {
     public void iterationResult(BenchmarkRecord name, IterationParams params, int iteration, IterationType type, IterationResult data) {
         StringBuilder sb = new StringBuilder();
         sb.append(data.getPrimaryResult().toString());
+        if (data.isTimedOut()) {
+            sb.append(" (timed out, ").append(data.getRawPrimaryResults().size()).append(" of ").append(params.getThreads()).append(" threads)");
+        }
+        if (data.getStartSkew() >= 0 && params.getThreads() > 1) {
+            sb.append(String.format(" (thread skew: start %.1f us, stop %.1f us)", data.getStartSkew() / 1e3, data.getStopSkew() / 1e3));
+        }
 
         if (type == IterationType.MEASUREMENT) {
             int prefixLen = String.format("Iteration %3d: ", iteration).length();
@@ -106,11 +113,34 @@ public class PrettyPrintFormat extends AbstractOutputFormat {
             out.println("# Starting run at: " + new Date());
         }
 
-        out.println("# Warmup: " + mbParams.getWarmup().getCount() + " iterations, " + mbParams.getWarmup().getTime() + " each");
-        out.println("# Measurement: " + mbParams.getIteration().getCount() + " iterations, " + mbParams.getIteration().getTime() + " each");
+        if (mbParams.shouldWarmupToSteadyState()) {
+            out.println("# Warmup: up to " + mbParams.getWarmup().getCount() + " iterations, " + mbParams.getWarmup().getTime() + " each, " +
+                    "until the steady state" + (mbParams.shouldWarmupToJitQuiescence() ? " and JIT quiescence" : ""));
+        } else {
+            out.println("# Warmup: " + mbParams.getWarmup().getCount() + " iterations, " + mbParams.getWarmup().getTime() + " each");
+        }
+        if (mbParams.isAdaptive()) {
+            out.println("# Measurement: " + mbParams.getMinIterations() + " to " + mbParams.getIteration().getCount() + " iterations, " + mbParams.getIteration().getTime() + " each, " +
+                    String.format("until the score error is below %.2f%%", mbParams.getTargetError() * 100));
+        } else {
+            out.println("# Measurement: " + mbParams.getIteration().getCount() + " iterations, " + mbParams.getIteration().getTime() + " each");
+        }
         out.println("# Threads: " + mbParams.getThreads() + " " + getThreadsString(mbParams.getThreads()) + (mbParams.shouldSynchIterations() ? ", will synchronize iterations" : ""));
+        if (!ExecutorType.FIXED_TPE.name().equalsIgnoreCase(mbParams.getExecutor())) {
+            out.println("# Executor: " + mbParams.getExecutor() +
+                    (mbParams.getCarrierThreads() >= 0 ? ", " + mbParams.getCarrierThreads() + " carrier " + getThreadsString(mbParams.getCarrierThreads()) : ""));
+        }
+        if (mbParams.getPlacement() != null) {
+            out.println("# Affinity: " + mbParams.getPlacement());
+        }
         out.println("# Benchmark mode: " + name.getMode().longLabel());
+        if (mbParams.getTargetRate() > 0) {
+            out.println(String.format("# Target rate: %.1f ops/s, %s", mbParams.getTargetRate(), mbParams.getLoadSchedule().label()));
+        }
         out.println("# Running: " + name.getUsername());
+        if (!name.getActualParams().isEmpty()) {
+            out.println("# Parameters: (" + name.getActualParams() + ")");
+        }
     }
 
     private final Multimap<BenchmarkRecord, RunResult> benchmarkResults = new TreeMultimap<BenchmarkRecord, RunResult>();
@@ -137,7 +167,8 @@ public class PrettyPrintFormat extends AbstractOutputFormat {
         for (BenchmarkRecord key : benchmarkResults.keys()) {
             Collection<RunResult> forkedResults = benchmarkResults.get(key);
             if (forkedResults.size() > 1) {
-                out.println("\"" + key.getUsername() + "\", aggregate over forked runs:");
+                String params = key.getActualParams().isEmpty() ? "" : " (" + key.getActualParams() + ")";
+                out.println("\"" + key.getUsername() + "\"" + params + ", aggregate over forked runs:");
                 out.println();
 
                 RunResult runResult = RunResult.merge(forkedResults);
@@ -24,8 +24,12 @@
  */
 package org.openjdk.jmh.output.format;
 
+import org.openjdk.jmh.annotations.Mode;
 import org.openjdk.jmh.logic.results.IterationResult;
+import org.openjdk.jmh.logic.results.LoadCurve;
 import org.openjdk.jmh.logic.results.RunResult;
+import org.openjdk.jmh.logic.results.ScalabilityCurve;
+import org.openjdk.jmh.logic.results.ScalabilityModel;
 import org.openjdk.jmh.runner.BenchmarkRecord;
 import org.openjdk.jmh.runner.parameters.BenchmarkParams;
 import org.openjdk.jmh.runner.parameters.IterationParams;
@@ -38,6 +42,7 @@ import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Map;
+import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.concurrent.TimeUnit;
 
@@ -51,17 +56,21 @@ public class TextReportFormat extends PrettyPrintFormat {
 
     private final Multimap<BenchmarkIdentifier, IterationResult> benchmarkResults;
     private final Map<BenchmarkRecord, IterationParams> benchmarkSettings;
+    private final Map<BenchmarkIdentifier, Integer> warmupCounts;
+    private boolean steadyStateWarmup;
 
     public TextReportFormat(PrintStream out, boolean verbose) {
         super(out, verbose);
         benchmarkResults = new TreeMultimap<BenchmarkIdentifier, IterationResult>();
         benchmarkSettings = new TreeMap<BenchmarkRecord, IterationParams>();
+        warmupCounts = new TreeMap<BenchmarkIdentifier, Integer>();
     }
 
     @Override
     public void startBenchmark(BenchmarkRecord name, BenchmarkParams mbParams, boolean verbose) {
         super.startBenchmark(name, mbParams, verbose);
         benchmarkSettings.put(name, mbParams.getIteration());
+        steadyStateWarmup |= mbParams.shouldWarmupToSteadyState();
     }
 
     @Override
@@ -70,6 +79,12 @@ public class TextReportFormat extends PrettyPrintFormat {
         if (type == IterationType.MEASUREMENT) {
             benchmarkResults.put(new BenchmarkIdentifier(name, params.getThreads()), data);
         }
+        if (type == IterationType.WARMUP) {
+            // the most warmup iterations any fork has needed
+            BenchmarkIdentifier key = new BenchmarkIdentifier(name, params.getThreads());
+            Integer count = warmupCounts.get(key);
+            warmupCounts.put(key, Math.max(iteration, (count == null) ? 0 : count));
+        }
     }
 
     @Override
@@ -105,8 +120,18 @@ public class TextReportFormat extends PrettyPrintFormat {
         }
         nameLen += 2;
 
-        out.printf("%-" + nameLen + "s %6s %3s %6s %4s %12s %12s %8s%n",
-                "Benchmark", "Mode", "Thr", "Cnt", "Sec",
+        // only show the parameters when there are any
+        int paramLen = 0;
+        for (BenchmarkIdentifier key : benchmarkResults.keys()) {
+            paramLen = Math.max(paramLen, paramsOf(key.benchmark).length());
+        }
+        String paramFormat = (paramLen > 0) ? "%-" + Math.max(paramLen, "Params".length()) + "s " : "%s";
+
+        // only show the warmup iterations when those vary
+        String wrmHeader = steadyStateWarmup ? String.format(" %5s", "Wrm") : "";
+
+        out.printf("%-" + nameLen + "s " + paramFormat + "%6s %3s %6s%s %4s %12s %12s %8s%n",
+                "Benchmark", (paramLen > 0) ? "Params" : "", "Mode", "Thr", "Cnt", wrmHeader, "Sec",
                 "Mean", "Mean error", "Units");
         for (BenchmarkIdentifier key : benchmarkResults.keys()) {
 
@@ -115,6 +140,14 @@ public class TextReportFormat extends PrettyPrintFormat {
             IterationParams settings = benchmarkSettings.get(key.benchmark);
             Collection<IterationResult> results = benchmarkResults.get(key);
 
+            String params = (paramLen > 0) ? paramsOf(key.benchmark) : "";
+
+            String wrm = "";
+            if (steadyStateWarmup) {
+                Integer count = warmupCounts.get(key);
+                wrm = String.format(" %5d", (count == null) ? 0 : count);
+            }
+
             if (results != null && !results.isEmpty()) {
                 RunResult runResult = new RunResult(results);
 
@@ -124,10 +157,10 @@ public class TextReportFormat extends PrettyPrintFormat {
                         interval = stats.getConfidenceInterval(0.01);
                     }
 
-                    out.printf("%-" + nameLen + "s %6s %3d %6d %4d %12.3f %12.3f %8s%n",
-                            benchPrefixes.get(key.benchmark.getUsername()),
+                    out.printf("%-" + nameLen + "s " + paramFormat + "%6s %3d %6d%s %4d %12.3f %12.3f %8s%n",
+                            benchPrefixes.get(key.benchmark.getUsername()), params,
                             key.benchmark.getMode().shortLabel(),
-                            key.threads, stats.getN(),
+                            key.threads, stats.getN(), wrm,
                             settings.getTime().convertTo(TimeUnit.SECONDS),
                             stats.getMean(), (interval[1] - interval[0]) / 2,
                             runResult.getScoreUnit());
@@ -139,27 +172,162 @@ public class TextReportFormat extends PrettyPrintFormat {
                         interval = stats.getConfidenceInterval(0.01);
                     }
 
-                    out.printf("%-" + nameLen + "s %6s %3d %6d %4d %12.3f %12.3f %8s%n",
-                            benchPrefixes.get(key.benchmark.getUsername() + ":" + label),
+                    out.printf("%-" + nameLen + "s " + paramFormat + "%6s %3d %6d%s %4d %12.3f %12.3f %8s%n",
+                            benchPrefixes.get(key.benchmark.getUsername() + ":" + label), params,
                             key.benchmark.getMode().shortLabel(),
-                            key.threads, stats.getN(),
+                            key.threads, stats.getN(), wrm,
                             settings.getTime().convertTo(TimeUnit.SECONDS),
                             stats.getMean(), (interval[1] - interval[0]) / 2,
                             runResult.getScoreUnit());
                 }
             } else {
-                out.printf("%-" + nameLen + "s %6s, %3d %6d %4d %12.3f %12.3f %8s%n",
-                        benchPrefixes.get(key.benchmark.getUsername()),
+                out.printf("%-" + nameLen + "s " + paramFormat + "%6s, %3d %6d%s %4d %12.3f %12.3f %8s%n",
+                        benchPrefixes.get(key.benchmark.getUsername()), params,
                         key.benchmark.getMode().shortLabel(),
-                        key.threads, 0,
+                        key.threads, 0, wrm,
                         settings.getTime().convertTo(TimeUnit.SECONDS),
                         Double.NaN, Double.NaN,
                         "N/A");
             }
 
         }
+
+        printScalability(benchPrefixes);
+        printLoadCurves(benchPrefixes);
+
         benchmarkResults.clear();
         benchmarkSettings.clear();
+        warmupCounts.clear();
+        steadyStateWarmup = false;
+    }
+
+    /**
+     * Prints the scalability tables for the benchmarks measured at several thread counts.
+     */
+    private void printScalability(Map<String, String> benchPrefixes) {
+        // same benchmark at different thread counts
+        Map<BenchmarkRecord, SortedMap<Integer, RunResult>> series = new TreeMap<BenchmarkRecord, SortedMap<Integer, RunResult>>();
+        for (BenchmarkIdentifier key : benchmarkResults.keys()) {
+            if (key.benchmark.getThreads() == -1) continue;
+
+            Collection<IterationResult> results = benchmarkResults.get(key);
+            if (results == null || results.isEmpty()) continue;
+
+            BenchmarkRecord common = key.benchmark.cloneWithThreads(-1);
+            SortedMap<Integer, RunResult> points = series.get(common);
+            if (points == null) {
+                points = new TreeMap<Integer, RunResult>();
+                series.put(common, points);
+            }
+            points.put(key.threads, new RunResult(results));
+        }
+
+        for (Map.Entry<BenchmarkRecord, SortedMap<Integer, RunResult>> e : series.entrySet()) {
+            if (e.getValue().size() < 2) continue;
+
+            BenchmarkRecord benchmark = e.getKey();
+            ScalabilityCurve curve = ScalabilityCurve.of(benchmark.getMode(), e.getValue());
+
+            out.println();
+            out.println("Scalability of " + benchPrefixes.get(benchmark.getUsername()) +
+                    (benchmark.getActualParams().isEmpty() ? "" : " (" + benchmark.getActualParams() + ")") +
+                    ", " + benchmark.getMode().shortLabel() + ", " + e.getValue().get(curve.getThreads(0)).getScoreUnit() +
+                    (curve.getBaselineThreads() != 1 ? ", speedup against " + curve.getBaselineThreads() + " threads" : "") + ":");
+            out.printf("%8s %12s %10s %11s%n", "Threads", "Score", "Speedup", "Efficiency");
+            for (int i = 0; i < curve.size(); i++) {
+                out.printf("%8d %12.3f %9.2fx %10.1f%%%n",
+                        curve.getThreads(i), curve.getScore(i), curve.getSpeedup(i), curve.getEfficiency(i) * 100);
+            }
+
+            printModel(ScalabilityModel.fitAmdahl(curve));
+            printModel(ScalabilityModel.fitUSL(curve));
+        }
+    }
+
+    /**
+     * Prints the load curves for the benchmarks measured at several open-loop rates.
+     */
+    private void printLoadCurves(Map<String, String> benchPrefixes) {
+        // same benchmark at different rates
+        Map<BenchmarkRecord, SortedMap<Double, RunResult>> series = new TreeMap<BenchmarkRecord, SortedMap<Double, RunResult>>();
+        Map<BenchmarkRecord, RunResult> maxThroughput = new TreeMap<BenchmarkRecord, RunResult>();
+        for (BenchmarkIdentifier key : benchmarkResults.keys()) {
+            Collection<IterationResult> results = benchmarkResults.get(key);
+            if (results == null || results.isEmpty()) continue;
+
+            if (key.benchmark.getMode() == Mode.Throughput) {
+                maxThroughput.put(key.benchmark.cloneWith(Mode.OpenLoop), new RunResult(results));
+            }
+            if (key.benchmark.getMode() != Mode.OpenLoop || key.benchmark.getTargetRate() <= 0) continue;
+
+            BenchmarkRecord common = key.benchmark.cloneWithTargetRate(-1);
+            SortedMap<Double, RunResult> points = series.get(common);
+            if (points == null) {
+                points = new TreeMap<Double, RunResult>();
+                series.put(common, points);
+            }
+            points.put(key.benchmark.getTargetRate(), new RunResult(results));
+        }
+
+        for (Map.Entry<BenchmarkRecord, SortedMap<Double, RunResult>> e : series.entrySet()) {
+            BenchmarkRecord benchmark = e.getKey();
+            RunResult max = maxThroughput.get(benchmark);
+            LoadCurve curve = LoadCurve.of((max != null) ? LoadCurve.opsPerSecond(max.getPrimaryResult()) : -1, e.getValue());
+            if (curve == null) continue;
+
+            out.println();
+            out.println("Load curve of " + benchPrefixes.get(benchmark.getUsername()) +
+                    (benchmark.getActualParams().isEmpty() ? "" : " (" + benchmark.getActualParams() + ")") +
+                    ", " + curve.getScoreUnit() +
+                    (curve.getMaxThroughput() > 0 ? String.format(", max throughput %.1f ops/s", curve.getMaxThroughput()) : "") + ":");
+            out.printf("%6s %12s %12s %10s %10s %10s %10s%n", "Load", "Target", "Achieved", "p0.50", "p0.90", "p0.99", "p0.999");
+            for (int i = 0; i < curve.size(); i++) {
+                out.printf("%5.0f%% %12.1f %12.1f %10.3f %10.3f %10.3f %10.3f%s%n",
+                        curve.getLoad(i) * 100, curve.getTargetRate(i), curve.getAchievedRate(i),
+                        curve.getLatency(i, 50), curve.getLatency(i, 90), curve.getLatency(i, 99), curve.getLatency(i, 99.9),
+                        curve.isSaturated(i) ? "  (saturated)" : "");
+            }
+
+            int saturated = curve.getSaturationPoint();
+            if (saturated == -1) {
+                out.printf("Saturation: not reached, sustains %.1f ops/s%n", curve.getSustainedRate());
+            } else {
+                out.printf("Saturation: sustains %.1f ops/s, falls behind at %.1f ops/s target (%.1f achieved)%n",
+                        curve.getSustainedRate(), curve.getTargetRate(saturated), curve.getAchievedRate(saturated));
+            }
+        }
+    }
+
+    /**
+     * @return parameters to show in the report, including the open-loop rate of the load sweep
+     */
+    private static String paramsOf(BenchmarkRecord benchmark) {
+        String params = benchmark.getActualParams().toString();
+        if (benchmark.getTargetRate() > 0) {
+            params += (params.isEmpty() ? "" : ", ") + String.format("rate = %.0f", benchmark.getTargetRate());
+        }
+        return params;
+    }
+
+    private void printModel(ScalabilityModel model) {
+        if (model == null) return;
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%8s: contention = %.4f", model.getLaw().label(), model.getContention()));
+        if (model.getLaw() == ScalabilityModel.Law.USL) {
+            sb.append(String.format(", coherency = %.6f", model.getCoherency()));
+        }
+        if (model.hasPeak()) {
+            int peak = model.getPeakThreads();
+            sb.append(String.format(", peak at %d threads (%.3f, %.2fx)",
+                    peak, model.predictScore(peak), model.getMaxSpeedup()));
+        } else if (!Double.isInfinite(model.getMaxSpeedup())) {
+            sb.append(String.format(", no peak, speedup limit %.2fx", model.getMaxSpeedup()));
+        } else {
+            sb.append(", no peak, linear");
+        }
+        sb.append(String.format(", R^2 = %.3f", model.getRSquared()));
+        out.println(sb.toString());
     }
 
     private static class BenchmarkIdentifier implements Comparable<BenchmarkIdentifier> {
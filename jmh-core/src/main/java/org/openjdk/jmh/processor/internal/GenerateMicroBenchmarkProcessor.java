@@ -38,17 +38,20 @@ import org.openjdk.jmh.annotations.Threads;
 import org.openjdk.jmh.annotations.Warmup;
 import org.openjdk.jmh.logic.BlackHole;
 import org.openjdk.jmh.logic.InfraControl;
+import org.openjdk.jmh.logic.TraceWriter;
 import org.openjdk.jmh.logic.results.AverageTimePerOp;
+import org.openjdk.jmh.logic.results.OpenLoopTimePerOp;
 import org.openjdk.jmh.logic.results.OpsPerTimeUnit;
 import org.openjdk.jmh.logic.results.RawResultPair;
 import org.openjdk.jmh.logic.results.Result;
 import org.openjdk.jmh.logic.results.ResultRole;
 import org.openjdk.jmh.logic.results.SampleTimePerOp;
 import org.openjdk.jmh.logic.results.SingleShotTime;
+import org.openjdk.jmh.runner.BenchmarkRecord;
 import org.openjdk.jmh.runner.MicroBenchmarkList;
 import org.openjdk.jmh.util.AnnotationUtils;
 import org.openjdk.jmh.util.internal.CollectionUtils;
-import org.openjdk.jmh.util.internal.SampleBuffer;
+import org.openjdk.jmh.util.internal.SampleHistogram;
 
 import javax.annotation.Generated;
 import javax.annotation.processing.AbstractProcessor;
@@ -121,8 +124,9 @@ public class GenerateMicroBenchmarkProcessor extends AbstractProcessor {
                     for (BenchmarkInfo info : benchmarkInfos) {
                         for (String method : info.methodGroups.keySet()) {
                             MethodGroup group = info.methodGroups.get(method);
+                            String params = group.getParamSpace().isEmpty() ? "" : ", " + BenchmarkRecord.encodeParamSpace(group.getParamSpace());
                             for (Mode m : group.getModes()) {
-                                writer.println(info.userName + "." + method + ", " + info.generatedName + "." + method + ", " + m);
+                                writer.println(info.userName + "." + method + ", " + info.generatedName + "." + method + ", " + m + params);
                             }
                         }
                     }
@@ -302,6 +306,9 @@ public class GenerateMicroBenchmarkProcessor extends AbstractProcessor {
                     }
                 }
 
+                MethodGroup group = info.methodGroups.get(groupName);
+                group.setParamSpace(states.getParamSpace(group.methods()));
+
                 for (Mode benchmarkKind : Mode.values()) {
                     if (benchmarkKind == Mode.All) continue;
                     generateMethod(benchmarkKind, writer, info.methodGroups.get(groupName), states);
@@ -401,8 +408,10 @@ public class GenerateMicroBenchmarkProcessor extends AbstractProcessor {
         writer.println("import " + OpsPerTimeUnit.class.getName() + ';');
         writer.println("import " + AverageTimePerOp.class.getName() + ';');
         writer.println("import " + SampleTimePerOp.class.getName() + ';');
+        writer.println("import " + OpenLoopTimePerOp.class.getName() + ';');
         writer.println("import " + SingleShotTime.class.getName() + ';');
-        writer.println("import " + SampleBuffer.class.getName() + ';');
+        writer.println("import " + SampleHistogram.class.getName() + ';');
+        writer.println("import " + TraceWriter.class.getName() + ';');
         writer.println("import " + Mode.class.getName() + ';');
         writer.println("import " + Fork.class.getName() + ';');
         writer.println("import " + Measurement.class.getName() + ';');
@@ -490,6 +499,7 @@ public class GenerateMicroBenchmarkProcessor extends AbstractProcessor {
                 generateAverageTime(writer, benchmarkKind, methodGroup, getOperationsPerInvocation(methodGroup), timeUnit, states);
                 break;
             case SampleTime:
+            case OpenLoop:
                 generateTimeDistribution(writer, benchmarkKind, methodGroup, timeUnit, states);
                 break;
             case SingleShotTime:
@@ -594,6 +604,40 @@ public class GenerateMicroBenchmarkProcessor extends AbstractProcessor {
         return 1;
     }
 
+    /**
+     * Generates the extra @Threads attributes, which are only meaningful for the whole benchmark.
+     */
+    private static String generateThreadsAttributes(Element method) {
+        Threads tAnnotation = method.getAnnotation(Threads.class);
+        Threads upperAnnotation = method.getEnclosingElement().getAnnotation(Threads.class);
+
+        int[] sweep = new int[0];
+        String executor = "";
+        for (Threads ann : new Threads[]{upperAnnotation, tAnnotation}) {
+            if (ann == null) continue;
+            if (ann.sweep().length > 0) {
+                sweep = ann.sweep();
+            }
+            if (!ann.executor().isEmpty()) {
+                executor = ann.executor();
+            }
+        }
+
+        StringBuilder sb = new StringBuilder();
+        if (sweep.length > 0) {
+            sb.append(", sweep = {");
+            for (int i = 0; i < sweep.length; i++) {
+                if (i > 0) sb.append(", ");
+                sb.append(sweep[i]);
+            }
+            sb.append("}");
+        }
+        if (!executor.isEmpty()) {
+            sb.append(", executor = \"").append(executor).append("\"");
+        }
+        return (sb.length() > 0) ? sb.toString() : null;
+    }
+
     private static Map<String, String> forkToMap(Map<String, String> map, Fork fAnnotation) {
         if (fAnnotation != null) {
             map = CollectionUtils.conditionalPutAndCreateTreeMapIfAbsentAndQuote(map, AnnotationUtils.isSet(fAnnotation.jvmArgs()),        "jvmArgs", fAnnotation.jvmArgs());
@@ -624,16 +668,22 @@ public class GenerateMicroBenchmarkProcessor extends AbstractProcessor {
         String warmupAnn = null;
         String measurementAnn = null;
         String forkAnn = null;
+        String threadsAttrs = null;
 
         for (Element method : methodGroup.methods()) {
             totalThreads += getThreads(method);
+            threadsAttrs = guardedSet(threadsAttrs, generateThreadsAttributes(method));
             warmupAnn = guardedSet(warmupAnn, generateWarmupAnnotation(method));
             measurementAnn = guardedSet(measurementAnn, generateMeasurementAnnotation(method));
             forkAnn = guardedSet(forkAnn, generateForkAnnotation(method));
         }
 
         List<String> annotations = new ArrayList<String>();
-        annotations.add("@" + Threads.class.getSimpleName() + "(" + totalThreads + ")");
+        if (threadsAttrs != null) {
+            annotations.add("@" + Threads.class.getSimpleName() + "(value = " + totalThreads + threadsAttrs + ")");
+        } else {
+            annotations.add("@" + Threads.class.getSimpleName() + "(" + totalThreads + ")");
+        }
         annotations = CollectionUtils.addIfNotNull(annotations, warmupAnn);
         annotations = CollectionUtils.addIfNotNull(annotations, measurementAnn);
         annotations = CollectionUtils.addIfNotNull(annotations, forkAnn);
@@ -673,6 +723,11 @@ public class GenerateMicroBenchmarkProcessor extends AbstractProcessor {
 
             iterationProlog(writer, 3, method, states);
 
+            // the trace slot is claimed once per thread
+            writer.println(ident(3) + "if (control.trace != null && (traceWriter == null || traceWriter.getTrace() != control.trace)) {");
+            writer.println(ident(3) + "    traceWriter = control.trace.newWriter();");
+            writer.println(ident(3) + "}");
+
             // synchronize iterations prolog: announce ready
             writer.println(ident(3) + "control.announceWarmupReady();");
 
@@ -692,8 +747,10 @@ public class GenerateMicroBenchmarkProcessor extends AbstractProcessor {
                 writer.println(ident(3) + so.localIdentifier + ".iterationTime = control.getDuration();");
             }
 
-            // measurement loop call
-            writer.println(ident(3) + "RawResultPair res = " + method.getSimpleName() + "_" + benchmarkKind + "_measurementLoop(control, " + states.getImplicit("bench").toLocal() + ", " + states.getImplicit("blackhole").toLocal() + prefix(states.getArgList(method)) + ");");
+            // measurement loop call, the traced one if requested
+            writer.println(ident(3) + "RawResultPair res = (control.trace == null) ?");
+            writer.println(ident(4) + method.getSimpleName() + "_" + benchmarkKind + "_measurementLoop(control, " + states.getImplicit("bench").toLocal() + ", " + states.getImplicit("blackhole").toLocal() + prefix(states.getArgList(method)) + ") :");
+            writer.println(ident(4) + method.getSimpleName() + "_" + benchmarkKind + "_tracedLoop(control, traceWriter, " + states.getImplicit("bench").toLocal() + ", " + states.getImplicit("blackhole").toLocal() + prefix(states.getArgList(method)) + ");");
 
             // control objects get a special treatment
             for (StateObject so : states.getControls()) {
@@ -742,6 +799,8 @@ public class GenerateMicroBenchmarkProcessor extends AbstractProcessor {
             writer.println("        return new RawResultPair(operations * " + opsPerInv + "L,  (realTime > 0) ? realTime : (stopTime - startTime));");
             writer.println("    }");
             writer.println();
+
+            generateTracedLoop(writer, benchmarkKind, methodGroup, method, opsPerInv, states);
         }
     }
 
@@ -763,6 +822,11 @@ public class GenerateMicroBenchmarkProcessor extends AbstractProcessor {
 
             iterationProlog(writer, 3, method, states);
 
+            // the trace slot is claimed once per thread
+            writer.println(ident(3) + "if (control.trace != null && (traceWriter == null || traceWriter.getTrace() != control.trace)) {");
+            writer.println(ident(3) + "    traceWriter = control.trace.newWriter();");
+            writer.println(ident(3) + "}");
+
             // synchronize iterations prolog: announce ready
             writer.println(ident(3) + "control.announceWarmupReady();");
 
@@ -782,8 +846,10 @@ public class GenerateMicroBenchmarkProcessor extends AbstractProcessor {
                 writer.println(ident(3) + so.localIdentifier + ".iterationTime = control.getDuration();");
             }
 
-            // measurement loop call
-            writer.println(ident(3) + "RawResultPair res = " + method.getSimpleName() + "_" + benchmarkKind + "_measurementLoop(control, " + states.getImplicit("bench").toLocal() + ", " + states.getImplicit("blackhole").toLocal() + prefix(states.getArgList(method)) + ");");
+            // measurement loop call, the traced one if requested
+            writer.println(ident(3) + "RawResultPair res = (control.trace == null) ?");
+            writer.println(ident(4) + method.getSimpleName() + "_" + benchmarkKind + "_measurementLoop(control, " + states.getImplicit("bench").toLocal() + ", " + states.getImplicit("blackhole").toLocal() + prefix(states.getArgList(method)) + ") :");
+            writer.println(ident(4) + method.getSimpleName() + "_" + benchmarkKind + "_tracedLoop(control, traceWriter, " + states.getImplicit("bench").toLocal() + ", " + states.getImplicit("blackhole").toLocal() + prefix(states.getArgList(method)) + ");");
 
             // control objects get a special treatment
             for (StateObject so : states.getControls()) {
@@ -831,9 +897,45 @@ public class GenerateMicroBenchmarkProcessor extends AbstractProcessor {
             writer.println("        return new RawResultPair(operations * " + opsPerInv + "L,  (realTime > 0) ? realTime : (end - start));");
             writer.println("    }");
             writer.println();
+
+            generateTracedLoop(writer, benchmarkKind, methodGroup, method, opsPerInv, states);
         }
     }
 
+    /**
+     * Traced measurement loop: same as the plain one, but every N-th invocation is timed, and recorded
+     * to the trace. Kept separate, so that the plain loop does not pay for the tracing checks.
+     */
+    private void generateTracedLoop(PrintWriter writer, Mode benchmarkKind, MethodGroup methodGroup, Element method, long opsPerInv, StateObjectHandler states) {
+        writer.println("    public " + (methodGroup.isStrictFP() ? "strictfp" : "") + " RawResultPair " + method.getSimpleName() + "_" + benchmarkKind + "_tracedLoop(InfraControl control, TraceWriter trace, " + states.getImplicit("bench").toTypeDef() + ", " + states.getImplicit("blackhole").toTypeDef() + prefix(states.getTypeArgList(method)) + ") throws Throwable {");
+        writer.println("        long operations = 0;");
+        writer.println("        long realTime = 0;");
+        writer.println("        int every = trace.every;");
+        writer.println("        int countdown = every;");
+        writer.println("        long start = System.nanoTime();");
+        writer.println("        trace.beginIteration(start);");
+        writer.println("        do {");
+
+        invocationProlog(writer, 3, method, states, true);
+        writer.println("            if (--countdown == 0) {");
+        writer.println("                countdown = every;");
+        writer.println("                long time = System.nanoTime();");
+        writer.println("                " + emitCall(method, states) + ';');
+        writer.println("                trace.record(time, System.nanoTime() - time);");
+        writer.println("            } else {");
+        writer.println("                " + emitCall(method, states) + ';');
+        writer.println("            }");
+        invocationEpilog(writer, 3, method, states, true);
+
+        writer.println("            operations++;");
+        writer.println("        } while(!control.isDone);");
+        writer.println("        long end = System.nanoTime();");
+        writer.println("        trace.endIteration(end);");
+        writer.println("        return new RawResultPair(operations * " + opsPerInv + "L,  (realTime > 0) ? realTime : (end - start));");
+        writer.println("    }");
+        writer.println();
+    }
+
     private void methodProlog(PrintWriter writer, MethodGroup methodGroup) {
         writer.println(ident(2) + "if (!threadId_inited) {");
         writer.println(ident(2) + "    threadId = threadSelector.getAndIncrement();");
@@ -872,6 +974,13 @@ public class GenerateMicroBenchmarkProcessor extends AbstractProcessor {
 
             iterationProlog(writer, 3, method, states);
 
+            // the histogram is allocated once per thread, and only cleared before the next iteration
+            writer.println(ident(3) + "if (sampleHistogram == null || sampleHistogram.getPrecision() != control.histogramPrecision) {");
+            writer.println(ident(3) + "    sampleHistogram = new SampleHistogram(control.histogramPrecision);");
+            writer.println(ident(3) + "} else {");
+            writer.println(ident(3) + "    sampleHistogram.reset();");
+            writer.println(ident(3) + "}");
+
             // synchronize iterations prolog: announce ready
             writer.println(ident(3) + "control.announceWarmupReady();");
 
@@ -923,42 +1032,80 @@ public class GenerateMicroBenchmarkProcessor extends AbstractProcessor {
 
         // measurement loop bodies
         for (Element method : methodGroup.methods()) {
+            if (benchmarkKind == Mode.OpenLoop) {
+                generateOpenLoopMeasurementLoop(writer, benchmarkKind, methodGroup, method, timeUnit, states);
+                continue;
+            }
+
             writer.println("    public " + (methodGroup.isStrictFP() ? "strictfp" : "") + " Result " + method.getSimpleName() + "_" + benchmarkKind + "_measurementLoop(InfraControl control, " + states.getImplicit("bench").toTypeDef() + ", " + states.getImplicit("blackhole").toTypeDef() + prefix(states.getTypeArgList(method)) + ") throws Throwable {");
-            writer.println("        SampleBuffer buffer = new SampleBuffer();");
+            writer.println("        SampleHistogram histogram = sampleHistogram;");
             writer.println("        long realTime = 0;");
-            writer.println("        long rnd = System.nanoTime();");
-            writer.println("        long rndMask = 1;");
-            writer.println("        long time = 0;");
             writer.println("        do {");
 
             invocationProlog(writer, 4, method, states, true);
 
-            writer.println("            rnd = (rnd * 0x5DEECE66DL + 0xBL) & (0xFFFFFFFFFFFFL);");
-            writer.println("            boolean sample = (rnd & rndMask) == 0;");
-            writer.println("            if (sample) {");
-            writer.println("                time = System.nanoTime();");
-            writer.println("            }");
+            writer.println("            long time = System.nanoTime();");
             writer.println("            " + emitCall(method, states) + ';');
-            writer.println("            if (sample) {");
-            writer.println("                boolean flipped = buffer.add(System.nanoTime() - time);");
-            writer.println("                if (flipped) {");
-            writer.println("                    if (rndMask != 0xFFFFFFFFFFFFL) {");
-            writer.println("                        rndMask = (rndMask << 1) + 1;");
-            writer.println("                    }");
-            writer.println("                }");
-            writer.println("            }");
+            writer.println("            histogram.record(System.nanoTime() - time);");
 
             invocationEpilog(writer, 4, method, states, true);
 
             writer.println("        } while(!control.isDone);");
 
             ResultRole mode = (methodGroup.methods().size() == 1) ? ResultRole.PRIMARY : ResultRole.BOTH;
-            writer.println("        return new SampleTimePerOp(ResultRole." + mode + ", \"" + method.getSimpleName() + "\", buffer, (control.timeUnit != null) ? control.timeUnit : TimeUnit." + timeUnit + ");");
+            writer.println("        return new SampleTimePerOp(ResultRole." + mode + ", \"" + method.getSimpleName() + "\", histogram.snapshot(), (control.timeUnit != null) ? control.timeUnit : TimeUnit." + timeUnit + ");");
             writer.println("    }");
             writer.println();
         }
     }
 
+    /**
+     * Open-loop measurement loop: the invocations start on schedule, not when the previous one
+     * returns, and the time is counted from the scheduled start. The late invocation then
+     * carries the queueing delay it had suffered, instead of omitting it from the distribution.
+     */
+    private void generateOpenLoopMeasurementLoop(PrintWriter writer, Mode benchmarkKind, MethodGroup methodGroup, Element method, TimeUnit timeUnit, StateObjectHandler states) {
+        writer.println("    public " + (methodGroup.isStrictFP() ? "strictfp" : "") + " Result " + method.getSimpleName() + "_" + benchmarkKind + "_measurementLoop(InfraControl control, " + states.getImplicit("bench").toTypeDef() + ", " + states.getImplicit("blackhole").toTypeDef() + prefix(states.getTypeArgList(method)) + ") throws Throwable {");
+        writer.println("        SampleHistogram histogram = sampleHistogram;");
+        writer.println("        long rnd = System.nanoTime();");
+        writer.println("        long ops = 0;");
+        writer.println("        double period = control.ratePeriodNs;");
+        writer.println("        boolean poisson = control.poisson;");
+        writer.println("        double offset = control.openLoopPhase();");
+        writer.println("        long start = System.nanoTime();");
+        writer.println("        long intended = start + (long) offset;");
+        writer.println("        do {");
+        writer.println("            if (control.awaitIntendedStart(intended)) {");
+
+        // invocation fixtures only run for the requests actually issued, and do not go stale
+        // while waiting; the setup delays the request, so it counts towards its latency
+        invocationProlog(writer, 5, method, states, false);
+
+        writer.println("                " + emitCall(method, states) + ';');
+        writer.println("                histogram.record(System.nanoTime() - intended);");
+        writer.println("                ops++;");
+
+        invocationEpilog(writer, 5, method, states, false);
+
+        writer.println("            }");
+
+        // the high bits of LCG are the random ones, (0, 1] is safe for log()
+        writer.println("            if (poisson) {");
+        writer.println("                rnd = (rnd * 0x5DEECE66DL + 0xBL) & (0xFFFFFFFFFFFFL);");
+        writer.println("                offset -= Math.log(1.0 - (rnd >>> 24) / (double) (1L << 24)) * period;");
+        writer.println("            } else {");
+        writer.println("                offset += period;");
+        writer.println("            }");
+        writer.println("            intended = start + (long) offset;");
+        writer.println("        } while(!control.isDone);");
+        writer.println("        long duration = System.nanoTime() - start;");
+
+        ResultRole mode = (methodGroup.methods().size() == 1) ? ResultRole.PRIMARY : ResultRole.BOTH;
+        writer.println("        return new OpenLoopTimePerOp(ResultRole." + mode + ", \"" + method.getSimpleName() + "\", histogram.snapshot(), ops, duration, (period > 0) ? 1e9 / period : 0, (control.timeUnit != null) ? control.timeUnit : TimeUnit." + timeUnit + ");");
+        writer.println("    }");
+        writer.println();
+    }
+
     private void generateSingleShot(PrintWriter writer, Mode benchmarkKind, MethodGroup methodGroup, TimeUnit timeUnit, StateObjectHandler states) {
         writer.println(ident(1) + "public Result " + methodGroup.getName() + "_" + benchmarkKind + "(InfraControl control) throws Throwable { ");
 
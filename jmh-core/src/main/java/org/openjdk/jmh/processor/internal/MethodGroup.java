@@ -32,18 +32,23 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
 public class MethodGroup implements Comparable<MethodGroup> {
     private final String name;
     private final Set<MethodInvocation> methods;
     private final EnumSet<Mode> modes;
     private boolean strictFP;
+    private SortedMap<String, List<String>> paramSpace;
 
     MethodGroup(String name) {
         this.name = name;
         this.methods = new LinkedHashSet<MethodInvocation>();
         this.modes = EnumSet.noneOf(Mode.class);
+        this.paramSpace = new TreeMap<String, List<String>>();
     }
 
     @Override
@@ -120,4 +125,12 @@ public class MethodGroup implements Comparable<MethodGroup> {
     public Set<Mode> getModes() {
         return modes;
     }
+
+    public void setParamSpace(SortedMap<String, List<String>> paramSpace) {
+        this.paramSpace = paramSpace;
+    }
+
+    public SortedMap<String, List<String>> getParamSpace() {
+        return paramSpace;
+    }
 }
@@ -25,6 +25,7 @@
 package org.openjdk.jmh.processor.internal;
 
 import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
 import org.openjdk.jmh.annotations.Scope;
 import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.State;
@@ -36,17 +37,26 @@ import org.openjdk.jmh.util.internal.TreesetMultimap;
 
 import javax.annotation.processing.ProcessingEnvironment;
 import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
 import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
 import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
 import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic.Kind;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.SortedMap;
 import java.util.SortedSet;
+import java.util.TreeMap;
 import java.util.TreeSet;
 
 public class StateObjectHandler {
@@ -56,6 +66,7 @@ public class StateObjectHandler {
     private final Map<String, StateObject> implicits;
     private final Set<StateObject> stateObjects;
     private final Multimap<StateObject, HelperMethodInvocation> helpersByState;
+    private final Multimap<StateObject, VariableElement> paramsByState;
 
     private final Map<String, Integer> globalIndexByType = new HashMap<String, Integer>();
     private final Map<String, Integer> groupIndexByType = new HashMap<String, Integer>();
@@ -72,6 +83,7 @@ public class StateObjectHandler {
         this.implicits = new HashMap<String, StateObject>();
         this.stateObjects = new HashSet<StateObject>();
         this.helpersByState = new TreesetMultimap<StateObject, HelperMethodInvocation>();
+        this.paramsByState = new HashMultimap<StateObject, VariableElement>();
     }
 
     private String getJMHtype(String type) {
@@ -147,11 +159,19 @@ public class StateObjectHandler {
             args.put(execMethod.getSimpleName().toString(), so);
         }
 
-        stateObjects.add(so);
+        boolean firstBind = stateObjects.add(so);
 
-        // walk the type hierarchy up to discover inherited helper methods
+        // walk the type hierarchy up to discover inherited helper methods and parameters
         TypeElement walk = element;
         do {
+            if (firstBind) {
+                for (VariableElement f : ElementFilter.fieldsIn(walk.getEnclosedElements())) {
+                    if (f.getAnnotation(Param.class) != null && checkParam(f)) {
+                        paramsByState.put(so, f);
+                    }
+                }
+            }
+
             for (ExecutableElement m : ElementFilter.methodsIn(walk.getEnclosedElements())) {
                 Setup setupAnn = m.getAnnotation(Setup.class);
                 if (setupAnn != null) {
@@ -166,6 +186,62 @@ public class StateObjectHandler {
         } while ((walk = (TypeElement) processingEnv.getTypeUtils().asElement(walk.getSuperclass())) != null);
     }
 
+    private boolean checkParam(VariableElement f) {
+        if (f.getModifiers().contains(Modifier.STATIC) || f.getModifiers().contains(Modifier.FINAL)) {
+            processingEnv.getMessager().printMessage(Kind.ERROR,
+                    "@" + Param.class.getSimpleName() + " field should be neither static, nor final.", f);
+            return false;
+        }
+
+        TypeMirror t = f.asType();
+        if (t.getKind().isPrimitive()) {
+            return true;
+        }
+        if (t.getKind() == TypeKind.DECLARED) {
+            Element e = processingEnv.getTypeUtils().asElement(t);
+            if (e.getKind() == ElementKind.ENUM || PARAM_TYPES.contains(t.toString())) {
+                return true;
+            }
+        }
+
+        processingEnv.getMessager().printMessage(Kind.ERROR,
+                "@" + Param.class.getSimpleName() + " field should be primitive, primitive box, String, or enum.", f);
+        return false;
+    }
+
+    private static final Set<String> PARAM_TYPES = new HashSet<String>(Arrays.asList(
+            String.class.getName(), Integer.class.getName(), Long.class.getName(), Short.class.getName(),
+            Byte.class.getName(), Double.class.getName(), Float.class.getName(), Boolean.class.getName(),
+            Character.class.getName()));
+
+    /**
+     * Collects the declared parameter values for the state objects the methods use.
+     *
+     * @param methods methods of the benchmark group
+     * @return parameter values, by parameter name
+     */
+    public SortedMap<String, List<String>> getParamSpace(Collection<Element> methods) {
+        Collection<StateObject> states = new ArrayList<StateObject>(implicits.values());
+        for (Element method : methods) {
+            states.addAll(args.get(method.getSimpleName().toString()));
+        }
+
+        SortedMap<String, List<String>> space = new TreeMap<String, List<String>>();
+        for (StateObject so : cons(states)) {
+            for (VariableElement f : paramsByState.get(so)) {
+                String name = f.getSimpleName().toString();
+                List<String> values = Arrays.asList(f.getAnnotation(Param.class).value());
+                List<String> prev = space.put(name, values);
+                if (prev != null && !prev.equals(values)) {
+                    processingEnv.getMessager().printMessage(Kind.ERROR,
+                            "@" + Param.class.getSimpleName() + " \"" + name + "\" is declared with different values " +
+                                    "in the state objects used by the same benchmark.", f);
+                }
+            }
+        }
+        return space;
+    }
+
     public String getArgList(Element method) {
         StringBuilder sb = new StringBuilder();
 
@@ -320,11 +396,16 @@ public class StateObjectHandler {
 
             result.add("");
             result.add("static volatile " + so.type + " " + so.fieldIdentifier + ";");
+            result.add("static volatile Object " + so.fieldIdentifier + "_params;");
             result.add("");
-            result.add(so.type + " tryInit_" + so.fieldIdentifier + "(" + so.type + " val) throws Throwable {");
+            result.add(so.type + " tryInit_" + so.fieldIdentifier + "(InfraControl control, " + so.type + " val) throws Throwable {");
             result.add("    synchronized(this.getClass()) {");
-            result.add("        if (" + so.fieldIdentifier + " == null) {");
+            result.add("        if (" + so.fieldIdentifier + " == null || !control.params.equals(" + so.fieldIdentifier + "_params)) {");
+            if (!paramsByState.get(so).isEmpty()) {
+                result.add("            control.injectParams(val);");
+            }
             result.add("            " + so.fieldIdentifier + " = val;");
+            result.add("            " + so.fieldIdentifier + "_params = control.params;");
             result.add("        }");
             result.add("        if (!" + so.fieldIdentifier + ".ready" + Level.Trial + ") {");
             for (HelperMethodInvocation hmi : helpersByState.get(so)) {
@@ -345,8 +426,11 @@ public class StateObjectHandler {
             result.add("");
             result.add(so.type + " " + so.fieldIdentifier + ";");
             result.add("");
-            result.add(so.type + " tryInit_" + so.fieldIdentifier + "(" + so.type + " val) throws Throwable {");
+            result.add(so.type + " tryInit_" + so.fieldIdentifier + "(InfraControl control, " + so.type + " val) throws Throwable {");
             result.add("    if (" + so.fieldIdentifier + " == null) {");
+            if (!paramsByState.get(so).isEmpty()) {
+                result.add("                control.injectParams(val);");
+            }
             for (HelperMethodInvocation hmi : helpersByState.get(so)) {
                 if (hmi.helperLevel != Level.Trial) continue;
                 if (hmi.type != HelperType.SETUP) continue;
@@ -364,11 +448,19 @@ public class StateObjectHandler {
 
             result.add("");
             result.add("static java.util.Map<Integer, " + so.type + "> " + so.fieldIdentifier + "_map = java.util.Collections.synchronizedMap(new java.util.HashMap<Integer, " + so.type + ">());");
+            result.add("static volatile Object " + so.fieldIdentifier + "_params;");
             result.add("");
-            result.add(so.type + " tryInit_" + so.fieldIdentifier + "(int groupId, " + so.type + " val) throws Throwable {");
-            result.add("    if (!" + so.fieldIdentifier + "_map.containsKey(groupId)) {");
+            result.add(so.type + " tryInit_" + so.fieldIdentifier + "(InfraControl control, int groupId, " + so.type + " val) throws Throwable {");
+            result.add("    if (!control.params.equals(" + so.fieldIdentifier + "_params) || !" + so.fieldIdentifier + "_map.containsKey(groupId)) {");
             result.add("        synchronized(this.getClass()) {");
+            result.add("            if (!control.params.equals(" + so.fieldIdentifier + "_params)) {");
+            result.add("                " + so.fieldIdentifier + "_map.clear();");
+            result.add("                " + so.fieldIdentifier + "_params = control.params;");
+            result.add("            }");
             result.add("            if (!" + so.fieldIdentifier + "_map.containsKey(groupId)) {");
+            if (!paramsByState.get(so).isEmpty()) {
+                result.add("                control.injectParams(val);");
+            }
             for (HelperMethodInvocation hmi : helpersByState.get(so)) {
                 if (hmi.helperLevel != Level.Trial) continue;
                 if (hmi.type != HelperType.SETUP) continue;
@@ -391,10 +483,10 @@ public class StateObjectHandler {
             switch (so.scope) {
                 case Benchmark:
                 case Thread:
-                    result.add(so.type + " " + so.localIdentifier + " = tryInit_" + so.fieldIdentifier + "(new " + so.type + "());");
+                    result.add(so.type + " " + so.localIdentifier + " = tryInit_" + so.fieldIdentifier + "(control, new " + so.type + "());");
                     break;
                 case Group:
-                    result.add(so.type + " " + so.localIdentifier + " = tryInit_" + so.fieldIdentifier + "(groupId, new " + so.type + "());");
+                    result.add(so.type + " " + so.localIdentifier + " = tryInit_" + so.fieldIdentifier + "(control, groupId, new " + so.type + "());");
                     break;
                 default:
                     throw new IllegalStateException("Unhandled scope: " + so.scope);
@@ -475,6 +567,8 @@ public class StateObjectHandler {
         result.add("private static final java.util.concurrent.atomic.AtomicInteger threadSelector = new java.util.concurrent.atomic.AtomicInteger();");
         result.add("private int threadId = 0;");
         result.add("private boolean threadId_inited = false;");
+        result.add("private SampleHistogram sampleHistogram;");
+        result.add("private TraceWriter traceWriter;");
         return result;
     }
 
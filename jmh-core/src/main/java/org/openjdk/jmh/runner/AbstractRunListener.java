@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2005, 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jmh.runner;
+
+import org.openjdk.jmh.logic.results.IterationResult;
+import org.openjdk.jmh.logic.results.RunResult;
+import org.openjdk.jmh.output.format.IterationType;
+import org.openjdk.jmh.runner.parameters.BenchmarkParams;
+import org.openjdk.jmh.runner.parameters.IterationParams;
+
+import java.util.Map;
+
+/**
+ * Run listener which ignores all the events; override the interesting ones.
+ */
+public abstract class AbstractRunListener implements RunListener {
+
+    @Override
+    public void benchmarkStarted(BenchmarkRecord benchmark, BenchmarkParams params) {
+
+    }
+
+    @Override
+    public void iterationFinished(BenchmarkRecord benchmark, IterationParams params, int iteration, IterationType type, IterationResult result) {
+
+    }
+
+    @Override
+    public void forkFinished(BenchmarkRecord benchmark, int fork, RunResult result) {
+
+    }
+
+    @Override
+    public void benchmarkFinished(BenchmarkRecord benchmark, RunResult result) {
+
+    }
+
+    @Override
+    public void runFinished(Map<BenchmarkRecord, RunResult> results, Throwable failure) {
+
+    }
+
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2005, 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jmh.runner;
+
+import org.openjdk.jmh.annotations.Param;
+
+import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Values of {@link Param} fields for the single benchmark run.
+ */
+public class ActualParams implements Comparable<ActualParams>, Serializable {
+
+    private final SortedMap<String, String> params;
+
+    public ActualParams() {
+        this.params = new TreeMap<String, String>();
+    }
+
+    private ActualParams(SortedMap<String, String> params) {
+        this.params = params;
+    }
+
+    /**
+     * Makes new parameters with the value added.
+     *
+     * @param name parameter name
+     * @param value parameter value
+     * @return new parameters
+     */
+    public ActualParams with(String name, String value) {
+        SortedMap<String, String> copy = new TreeMap<String, String>(params);
+        copy.put(name, value);
+        return new ActualParams(copy);
+    }
+
+    /**
+     * @param name parameter name
+     * @return parameter value; null if there is no such parameter
+     */
+    public String get(String name) {
+        return params.get(name);
+    }
+
+    public Set<String> keys() {
+        return Collections.unmodifiableSet(params.keySet());
+    }
+
+    public boolean isEmpty() {
+        return params.isEmpty();
+    }
+
+    /**
+     * Sets the {@link Param} fields of the state object.
+     *
+     * @param state state object
+     * @throws IllegalStateException if the value is missing, or can not be converted to field type
+     */
+    public void injectInto(Object state) {
+        for (Class<?> c = state.getClass(); c != null; c = c.getSuperclass()) {
+            for (Field f : c.getDeclaredFields()) {
+                if (f.getAnnotation(Param.class) == null) continue;
+
+                String value = params.get(f.getName());
+                if (value == null) {
+                    throw new IllegalStateException("No value for @Param " + c.getName() + "." + f.getName());
+                }
+
+                try {
+                    f.setAccessible(true);
+                    f.set(state, convert(value, f.getType()));
+                } catch (IllegalAccessException e) {
+                    throw new IllegalStateException("Unable to set @Param " + c.getName() + "." + f.getName(), e);
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalStateException("Unable to set @Param " + c.getName() + "." + f.getName() + " to \"" + value + "\"", e);
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static Object convert(String value, Class<?> type) {
+        if (type == String.class) return value;
+        if (type == int.class || type == Integer.class) return Integer.valueOf(value.trim());
+        if (type == long.class || type == Long.class) return Long.valueOf(value.trim());
+        if (type == short.class || type == Short.class) return Short.valueOf(value.trim());
+        if (type == byte.class || type == Byte.class) return Byte.valueOf(value.trim());
+        if (type == double.class || type == Double.class) return Double.valueOf(value.trim());
+        if (type == float.class || type == Float.class) return Float.valueOf(value.trim());
+        if (type == boolean.class || type == Boolean.class) return Boolean.valueOf(value.trim());
+        if (type == char.class || type == Character.class) {
+            if (value.length() != 1) {
+                throw new IllegalArgumentException("Not a single character: " + value);
+            }
+            return value.charAt(0);
+        }
+        if (type.isEnum()) return Enum.valueOf((Class<Enum>) type, value.trim());
+        throw new IllegalArgumentException("Unsupported @Param type: " + type);
+    }
+
+    @Override
+    public int compareTo(ActualParams o) {
+        Iterator<Map.Entry<String, String>> it1 = params.entrySet().iterator();
+        Iterator<Map.Entry<String, String>> it2 = o.params.entrySet().iterator();
+        while (it1.hasNext() && it2.hasNext()) {
+            Map.Entry<String, String> e1 = it1.next();
+            Map.Entry<String, String> e2 = it2.next();
+
+            int c = e1.getKey().compareTo(e2.getKey());
+            if (c != 0) return c;
+
+            c = compareValues(e1.getValue(), e2.getValue());
+            if (c != 0) return c;
+        }
+        if (it1.hasNext()) return 1;
+        if (it2.hasNext()) return -1;
+        return 0;
+    }
+
+    /**
+     * Compares the numbers numerically, so that the sizes are sorted naturally.
+     */
+    private static int compareValues(String v1, String v2) {
+        try {
+            int c = Double.compare(Double.parseDouble(v1), Double.parseDouble(v2));
+            if (c != 0) return c;
+        } catch (NumberFormatException e) {
+            // not numbers
+        }
+        return v1.compareTo(v2);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        ActualParams that = (ActualParams) o;
+
+        return params.equals(that.params);
+    }
+
+    @Override
+    public int hashCode() {
+        return params.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, String> e : params.entrySet()) {
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(e.getKey()).append(" = ").append(e.getValue());
+        }
+        return sb.toString();
+    }
+
+}
@@ -30,13 +30,11 @@ import org.openjdk.jmh.profile.Profiler;
 import org.openjdk.jmh.profile.ProfilerType;
 import org.openjdk.jmh.runner.options.Options;
 import org.openjdk.jmh.runner.parameters.BenchmarkParams;
+import org.openjdk.jmh.util.ThreadAffinity;
 
-import java.lang.reflect.Constructor;
-import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
@@ -56,18 +54,50 @@ public abstract class BaseMicroBenchmarkHandler implements MicroBenchmarkHandler
      */
     protected final ExecutorService executor;
 
-    // (Aleksey) Forgive me, Father, for I have sinned.
-    protected final ThreadLocal<InstanceProvider> threadLocal;
+    /**
+     * Provider of the executor above
+     */
+    protected final ExecutorProvider executorProvider;
+
+    /**
+     * Benchmark instances, by the benchmark thread index.
+     * Bound to the task slot rather than the thread, since thread-per-task executors
+     * run every iteration in the new thread.
+     */
+    private final List<InstanceProvider> instances;
+    private final Class<?> clazz;
+
+    /**
+     * Benchmark instances, by the benchmark thread.
+     * Used with the thread pools, which are free to run the task slot on any pooled thread.
+     */
+    private final ThreadLocal<InstanceProvider> threadLocal;
 
     protected final OutputFormat format;
     protected final TimeUnit timeUnit;
 
     private final List<Profiler> registeredProfilers;
 
+    /**
+     * Set when some iteration was abandoned, and its workers may still be stuck
+     */
+    protected volatile boolean abandoned;
+
     public BaseMicroBenchmarkHandler(OutputFormat format, BenchmarkRecord microbenchmark, final Class<?> clazz, Options options, BenchmarkParams executionParams) {
         this.microbenchmark = microbenchmark;
         this.registeredProfilers = createProfilers(options);
-        this.executor = EXECUTOR_TYPE.createExecutor(executionParams.getThreads(), microbenchmark.getUsername());
+        this.executorProvider = ExecutorType.forName(executionParams.getExecutor());
+        this.executor = executorProvider.createExecutor(executionParams.getThreads(),
+                new HarnessThreadFactory(microbenchmark.getUsername(), executionParams.getPlacement()));
+        if (executionParams.getPlacement() != null) {
+            if (!ThreadAffinity.isAvailable()) {
+                format.println("WARNING: taskset or /proc/thread-self is not available, benchmark threads will not be pinned");
+            } else if (!usesThreadFactory()) {
+                format.println("WARNING: " + executionParams.getExecutor() + " executor does not support pinning, benchmark threads will not be pinned");
+            }
+        }
+        this.clazz = clazz;
+        this.instances = new ArrayList<InstanceProvider>();
         this.threadLocal = new ThreadLocal<InstanceProvider>() {
             @Override
             protected InstanceProvider initialValue() {
@@ -78,6 +108,43 @@ public abstract class BaseMicroBenchmarkHandler implements MicroBenchmarkHandler
         this.timeUnit = options.getTimeUnit();
     }
 
+    /**
+     * @return true, if the benchmark threads are the platform threads from the harness thread factory
+     */
+    protected boolean usesThreadFactory() {
+        return (executorProvider instanceof ExecutorType) && ((ExecutorType) executorProvider).usesThreadFactory();
+    }
+
+    /**
+     * @return true, if the executor reuses its threads across the iterations
+     */
+    protected boolean reusesThreads() {
+        return (executorProvider instanceof ExecutorType) && executorProvider != ExecutorType.VIRTUAL;
+    }
+
+    /**
+     * Gets the benchmark instance provider for the benchmark thread.
+     * Pooled threads keep their instance, so that thread-scoped state stays on its thread
+     * across the iterations; thread-per-task executors get the instance by the thread index.
+     *
+     * @param thread benchmark thread index
+     * @return instance provider
+     */
+    protected synchronized InstanceProvider getInstanceProvider(int thread) {
+        if (reusesThreads()) {
+            return new InstanceProvider() {
+                @Override
+                public Object getInstance() {
+                    return threadLocal.get().getInstance();
+                }
+            };
+        }
+        while (instances.size() <= thread) {
+            instances.add(new EagerInstanceProvider(clazz));
+        }
+        return instances.get(thread);
+    }
+
     private static List<Profiler> createProfilers(Options options) {
         List<Profiler> list = new ArrayList<Profiler>();
         // register the profilers
@@ -87,78 +154,6 @@ public abstract class BaseMicroBenchmarkHandler implements MicroBenchmarkHandler
         return list;
     }
 
-    private static final ExecutorType EXECUTOR_TYPE = Enum.valueOf(ExecutorType.class, System.getProperty("harness.executor", ExecutorType.FIXED_TPE.toString()));
-
-    private enum ExecutorType {
-
-        /**
-         * Use Executors.newCachedThreadPool
-         */
-        CACHED_TPE {
-            @Override
-            ExecutorService createExecutor(int maxThreads, String prefix) {
-                return Executors.newCachedThreadPool(new HarnessThreadFactory(prefix));
-            }
-        },
-
-        /**
-         * Use Executors.newFixedThreadPool
-         */
-        FIXED_TPE {
-            @Override
-            ExecutorService createExecutor(int maxThreads, String prefix) {
-                return Executors.newFixedThreadPool(maxThreads, new HarnessThreadFactory(prefix));
-            }
-        },
-
-        /**
-         * Use new ForkJoinPool (JDK 7+)
-         */
-        FJP {
-            @Override
-            ExecutorService createExecutor(int maxThreads, String prefix) {
-                try {
-                    // (Aleksey):
-                    // requires some of the reflection magic to untie from JDK 7 compile-time dependencies
-                    Constructor<?> c = Class.forName("java.util.concurrent.ForkJoinPool").getConstructor(int.class);
-                    return (ExecutorService) c.newInstance(maxThreads);
-                } catch (Exception e) {
-                    throw new IllegalStateException(e);
-                }
-            }
-        },
-
-        /**
-         * Use ForkJoinPool.commonPool (JDK 8+)
-         */
-        FJP_COMMON {
-            @Override
-            ExecutorService createExecutor(int maxThreads, String prefix) {
-                try {
-                    // (Aleksey):
-                    // requires some of the reflection magic to untie from JDK 8 compile-time dependencies
-                    Method m = Class.forName("java.util.concurrent.ForkJoinPool").getMethod("commonPool");
-                    return (ExecutorService) m.invoke(null);
-                } catch (Exception e) {
-                    throw new IllegalStateException(e);
-                }
-            }
-
-            @Override
-            boolean shutdownForbidden() {
-                // this is a system-wide executor, don't shutdown
-                return true;
-            }
-
-        };
-
-        abstract ExecutorService createExecutor(int maxThreads, String prefix);
-
-        boolean shutdownForbidden() {
-            return false;
-        }
-    }
-
     /**
      * Forces ExecutorService to terminate.
      * This method returns only if requested executor had shut down.
@@ -166,8 +161,8 @@ public abstract class BaseMicroBenchmarkHandler implements MicroBenchmarkHandler
      *
      * @param executor service to shutdown
      */
-    static void shutdownExecutor(ExecutorService executor) {
-        if (EXECUTOR_TYPE.shutdownForbidden() || (executor == null)) {
+    void shutdownExecutor(ExecutorService executor) {
+        if (executorProvider.isShared() || (executor == null)) {
             return;
         }
         while (true) {
@@ -236,7 +231,14 @@ public abstract class BaseMicroBenchmarkHandler implements MicroBenchmarkHandler
      */
     @Override
     public void shutdown() {
-        shutdownExecutor(executor);
+        if (abandoned) {
+            // stuck workers would never let the executor terminate, leave those behind
+            if (!executorProvider.isShared()) {
+                executor.shutdownNow();
+            }
+        } else {
+            shutdownExecutor(executor);
+        }
     }
 
     public interface InstanceProvider {
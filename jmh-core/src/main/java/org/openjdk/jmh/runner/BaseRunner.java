@@ -24,20 +24,33 @@
  */
 package org.openjdk.jmh.runner;
 
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Threads;
 import org.openjdk.jmh.logic.results.IterationResult;
 import org.openjdk.jmh.logic.results.RunResult;
 import org.openjdk.jmh.output.format.IterationType;
 import org.openjdk.jmh.output.format.OutputFormat;
+import org.openjdk.jmh.runner.options.AffinityPolicy;
 import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.WarmupMode;
 import org.openjdk.jmh.runner.parameters.BenchmarkParams;
+import org.openjdk.jmh.runner.parameters.Defaults;
 import org.openjdk.jmh.runner.parameters.IterationParams;
 import org.openjdk.jmh.util.ClassUtils;
+import org.openjdk.jmh.util.CpuTopology;
+import org.openjdk.jmh.util.internal.Statistics;
+import org.openjdk.jmh.util.internal.SteadyStateDetector;
 
+import java.lang.management.CompilationMXBean;
 import java.lang.management.GarbageCollectorMXBean;
 import java.lang.management.ManagementFactory;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -53,6 +66,9 @@ public abstract class BaseRunner {
 
     protected final OutputFormat out;
 
+    /** CPU topology, detected once per run */
+    private CpuTopology topology;
+
     public BaseRunner(Options options, OutputFormat handler) {
         this.options = options;
         this.out = handler;
@@ -64,7 +80,7 @@ public abstract class BaseRunner {
             Class<?> clazz = ClassUtils.loadClass(benchmark.generatedClass());
             Method method = MicroBenchmarkHandlers.findBenchmarkMethod(clazz, benchmark.generatedMethod());
 
-            BenchmarkParams executionParams = BenchmarkParams.makeParams(options, benchmark, method, doWarmup, doMeasurement);
+            BenchmarkParams executionParams = BenchmarkParams.makeParams(options, benchmark, method, doWarmup, doMeasurement, getTopology());
             handler = MicroBenchmarkHandlers.getInstance(out, benchmark, clazz, method, executionParams, options);
 
             return runBenchmark(executionParams, handler);
@@ -82,6 +98,23 @@ public abstract class BaseRunner {
         return null;
     }
 
+    /**
+     * Detects the CPU topology on the first call, and reuses it for the rest of the run.
+     * Pinning the harness thread may later narrow the CPUs this process reports, but the
+     * benchmark threads are still placed on the original ones.
+     *
+     * @return CPU topology; null, if the affinity is not requested
+     */
+    protected synchronized CpuTopology getTopology() {
+        if (options.getAffinity() == AffinityPolicy.NONE) {
+            return null;
+        }
+        if (topology == null) {
+            topology = CpuTopology.forCurrentProcess();
+        }
+        return topology;
+    }
+
     protected RunResult runBenchmark(BenchmarkParams executionParams, MicroBenchmarkHandler handler) {
         List<IterationResult> allResults = new ArrayList<IterationResult>();
 
@@ -89,21 +122,63 @@ public abstract class BaseRunner {
 
         // warmup
         IterationParams wp = executionParams.getWarmup();
+        SteadyStateDetector steadyState = executionParams.shouldWarmupToSteadyState() ?
+                new SteadyStateDetector(Defaults.STEADY_STATE_WINDOW, Defaults.STEADY_STATE_TOLERANCE) :
+                null;
+        CompilationMXBean jit = executionParams.shouldWarmupToJitQuiescence() ? getCompilationBean() : null;
+        boolean steady = false;
+        boolean timedOut = false;
+        int warmupCount = 0;
         for (int i = 1; i <= wp.getCount(); i++) {
             // will run system gc if we should
             if (runSystemGC()) {
                 out.verbosePrintln("System.gc() executed");
             }
 
+            long compilationTime = (jit != null) ? jit.getTotalCompilationTime() : 0;
+            long startTime = System.nanoTime();
+
             out.iteration(handler.getBenchmark(), wp, i, IterationType.WARMUP);
             boolean isLastIteration = (executionParams.getIteration().getCount() == 0);
-            IterationResult iterData = handler.runIteration(wp, isLastIteration);
-            out.iterationResult(handler.getBenchmark(), wp, i, IterationType.WARMUP, iterData);
+            IterationResult iterData = runIteration(handler, wp, isLastIteration);
+            if (!iterData.isTimedOut() || !iterData.isResultsEmpty()) {
+                out.iterationResult(handler.getBenchmark(), wp, i, IterationType.WARMUP, iterData);
+            }
+            warmupCount = i;
+
+            if (iterData.isTimedOut()) {
+                timedOut = true;
+                break;
+            }
+
+            if (steadyState != null && !iterData.isResultsEmpty()) {
+                steadyState.addValue(iterData.getPrimaryResult().getScore());
+                steady = steadyState.isSteady();
+
+                if (steady && jit != null) {
+                    long compiledMs = jit.getTotalCompilationTime() - compilationTime;
+                    long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+                    steady = compiledMs <= elapsedMs * Defaults.JIT_QUIESCENCE_TOLERANCE;
+                }
+
+                if (steady) {
+                    break;
+                }
+            }
+        }
+
+        if (steadyState != null && !timedOut) {
+            if (steady) {
+                out.println("# Warmup: steady state reached after " + warmupCount + " iterations");
+            } else {
+                out.println("# Warmup: steady state not reached after " + warmupCount + " iterations");
+            }
         }
 
         // measurement
         IterationParams mp = executionParams.getIteration();
-        for (int i = 1; i <= mp.getCount(); i++) {
+        boolean converged = false;
+        for (int i = 1; i <= mp.getCount() && !timedOut; i++) {
             // will run system gc if we should
             if (runSystemGC()) {
                 out.verbosePrintln("System.gc() executed");
@@ -112,23 +187,52 @@ public abstract class BaseRunner {
             // run benchmark iteration
             out.iteration(handler.getBenchmark(), mp, i, IterationType.MEASUREMENT);
 
-            boolean isLastIteration = (i == mp.getCount());
-            IterationResult iterData = handler.runIteration(mp, isLastIteration);
+            boolean isLastIteration = (i == mp.getCount()) || converged;
+            IterationResult iterData = runIteration(handler, mp, isLastIteration);
 
             // might get an exception above, in which case the results list will be empty
             if (iterData.isResultsEmpty()) {
-                out.println("WARNING: No results returned, benchmark payload threw exception?");
+                if (!iterData.isTimedOut()) {
+                    out.println("WARNING: No results returned, benchmark payload threw exception?");
+                }
             } else {
+                allResults.add(iterData);
+                iterationMeasured(handler.getBenchmark(), iterData);
+
                 out.iterationResult(handler.getBenchmark(), mp, i, IterationType.MEASUREMENT, iterData);
 
                 if (options.shouldOutputDetailedResults()) {
                     out.detailedResults(handler.getBenchmark(), mp, i, iterData);
                 }
+            }
 
-                allResults.add(iterData);
+            if (isLastIteration) {
+                break;
+            }
+
+            if (iterData.isTimedOut()) {
+                timedOut = true;
+                break;
+            }
+
+            // Once the score converges, do the single last iteration to let the fixtures tear down.
+            if (executionParams.isAdaptive() && i >= executionParams.getMinIterations()) {
+                converged = getRelativeError(allResults) <= executionParams.getTargetError();
             }
         }
 
+        if (timedOut) {
+            out.println("# Timed out: skipping the rest of the iterations, moving on");
+        }
+
+        if (executionParams.isAdaptive() && !allResults.isEmpty() && !timedOut) {
+            double error = getRelativeError(allResults);
+            out.println(String.format("# %s: %.2f%% score error at %.0f%% confidence after %d iterations, target is %.2f%%",
+                    (error <= executionParams.getTargetError()) ? "Converged" : "Not converged",
+                    error * 100, (1 - Defaults.TARGET_ERROR_ALPHA) * 100, allResults.size(),
+                    executionParams.getTargetError() * 100));
+        }
+
         // only print end-of-run output if we have actual results
         if (!allResults.isEmpty()) {
             RunResult result = new RunResult(allResults);
@@ -140,6 +244,234 @@ public abstract class BaseRunner {
         }
     }
 
+    private IterationResult runIteration(MicroBenchmarkHandler handler, IterationParams params, boolean last) {
+        iterationStarting();
+        try {
+            return handler.runIteration(params, last);
+        } finally {
+            iterationFinished();
+        }
+    }
+
+    /**
+     * Called right before the iteration starts its workers. Nothing outside the benchmark
+     * should run from here until {@link #iterationFinished()}: the workers set up, measure,
+     * and tear down in between.
+     */
+    protected void iterationStarting() {
+        // do nothing
+    }
+
+    /**
+     * Called once the iteration workers are done, or abandoned.
+     */
+    protected void iterationFinished() {
+        // do nothing
+    }
+
+    /**
+     * Called as soon as the measurement iteration result is available,
+     * before it is printed and before the rest of the iterations run.
+     *
+     * @param benchmark benchmark
+     * @param result iteration result
+     */
+    protected void iterationMeasured(BenchmarkRecord benchmark, IterationResult result) {
+        // do nothing
+    }
+
+    private CompilationMXBean getCompilationBean() {
+        CompilationMXBean bean = ManagementFactory.getCompilationMXBean();
+        if (bean == null || !bean.isCompilationTimeMonitoringSupported()) {
+            out.println("WARNING: MXBeans can not report JIT compilation time, will only wait for the steady state.");
+            return null;
+        }
+        return bean;
+    }
+
+    /**
+     * Overrides the benchmark modes as requested, and expands {@link Mode#All} into the individual modes.
+     *
+     * @param benchmarks benchmarks to expand
+     * @return expanded benchmarks
+     */
+    protected Set<BenchmarkRecord> expandModes(Set<BenchmarkRecord> benchmarks) {
+        // override the benchmark types;
+        // this may yield new benchmark records
+        Set<BenchmarkRecord> overridden = new TreeSet<BenchmarkRecord>();
+        if (options.getBenchModes() != null) {
+            for (BenchmarkRecord br : benchmarks) {
+                for (Mode m : options.getBenchModes()) {
+                    overridden.add(br.cloneWith(m));
+                }
+            }
+        } else {
+            overridden.addAll(benchmarks);
+        }
+
+        // clone with all the modes
+        Set<BenchmarkRecord> result = new TreeSet<BenchmarkRecord>();
+        for (BenchmarkRecord br : overridden) {
+            if (br.getMode() == Mode.All) {
+                for (Mode mode : Mode.values()) {
+                    if (mode == Mode.All) continue;
+                    // open loop needs the target rate to run at
+                    if (mode == Mode.OpenLoop && options.getTargetRate() <= 0) continue;
+                    result.add(br.cloneWith(mode));
+                }
+            } else {
+                result.add(br);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Expands the benchmarks with {@link org.openjdk.jmh.annotations.Param} fields into
+     * the benchmarks for every combination of the parameter values. The values given
+     * in the options override the declared ones.
+     *
+     * @param benchmarks benchmarks to expand
+     * @return expanded benchmarks
+     * @throws IllegalArgumentException if some parameter has no values
+     */
+    protected Set<BenchmarkRecord> expandParams(Set<BenchmarkRecord> benchmarks) {
+        Set<BenchmarkRecord> result = new TreeSet<BenchmarkRecord>();
+        for (BenchmarkRecord br : benchmarks) {
+            List<ActualParams> combinations = Collections.singletonList(br.getActualParams());
+            for (Map.Entry<String, List<String>> e : br.getParamSpace().entrySet()) {
+                String name = e.getKey();
+                if (br.getActualParams().get(name) != null) {
+                    // already chosen
+                    continue;
+                }
+
+                List<String> values = options.getParameters().get(name);
+                if (values == null) {
+                    values = e.getValue();
+                }
+                if (values.isEmpty()) {
+                    throw new IllegalArgumentException("No values for @Param \"" + name + "\" of " + br.getUsername() +
+                            ", set them with -p " + name + "=<values>");
+                }
+
+                List<ActualParams> next = new ArrayList<ActualParams>();
+                for (ActualParams ps : combinations) {
+                    for (String v : values) {
+                        next.add(ps.with(name, v));
+                    }
+                }
+                combinations = next;
+            }
+
+            for (ActualParams ps : combinations) {
+                result.add(br.cloneWith(ps));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Expands the benchmarks into the series of thread counts, when the thread count sweep
+     * is requested either in options, or with {@link Threads#sweep()}. The single thread
+     * count set in the options overrides the sweep in the annotation.
+     *
+     * @param benchmarks benchmarks to expand
+     * @return expanded benchmarks
+     */
+    protected Set<BenchmarkRecord> expandThreads(Set<BenchmarkRecord> benchmarks) {
+        Set<BenchmarkRecord> result = new TreeSet<BenchmarkRecord>();
+        for (BenchmarkRecord br : benchmarks) {
+            List<Integer> sweep = options.getThreadSweep();
+            if (sweep.isEmpty() && options.getThreads() == -1) {
+                Threads ann = MicroBenchmarkHandlers.findBenchmarkMethod(br).getAnnotation(Threads.class);
+                if (ann != null) {
+                    sweep = new ArrayList<Integer>();
+                    for (int t : ann.sweep()) {
+                        sweep.add(t);
+                    }
+                }
+            }
+
+            if (sweep.isEmpty()) {
+                result.add(br);
+            } else {
+                for (int t : sweep) {
+                    result.add(br.cloneWithThreads((t == Threads.MAX) ? Runtime.getRuntime().availableProcessors() : t));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return true, if some benchmarks should be warmed up before measuring any
+     */
+    protected boolean isBulkWarmup() {
+        return !options.getWarmupMicros().isEmpty() || (options.getWarmupMode() == WarmupMode.BEFOREANY);
+    }
+
+    /**
+     * Finds the benchmarks to warmup before measuring any of the given benchmarks.
+     *
+     * @param list benchmark list to look the warmup benchmarks up in
+     * @param benchmarks benchmarks to be measured
+     * @return benchmarks to warmup
+     */
+    protected Set<BenchmarkRecord> findBulkWarmupBenchmarks(MicroBenchmarkList list, Set<BenchmarkRecord> benchmarks) {
+        Set<BenchmarkRecord> warmupMicros = new TreeSet<BenchmarkRecord>();
+
+        List<String> warmupMicrosRegexp = options.getWarmupMicros();
+        if (warmupMicrosRegexp != null && !warmupMicrosRegexp.isEmpty()) {
+            warmupMicros.addAll(expandParams(list.find(out, warmupMicrosRegexp, Collections.<String>emptyList())));
+        }
+        if (options.getWarmupMode() == WarmupMode.BEFOREANY) {
+            warmupMicros.addAll(benchmarks);
+        }
+        return warmupMicros;
+    }
+
+    /**
+     * Runs the warmup iterations of the given benchmarks prior to measuring anything.
+     * This has the effect of getting all the classes loaded, getting the JITed code
+     * to the final state, possibly invalidating optimizations that might not be
+     * invalidated until later, and quite possibly invalidated during measurement
+     * iterations causing a performance shift or simply increased variance.
+     *
+     * @param warmupMicros benchmarks to warmup
+     * @param fork fork label to print
+     */
+    protected void runBulkWarmup(Set<BenchmarkRecord> warmupMicros, String fork) {
+        int count = 0;
+        for (BenchmarkRecord benchmark : warmupMicros) {
+            out.println("# Fork: " + fork + ", bulk warmup in progress, " + (++count) + " of " + warmupMicros.size());
+            runBenchmark(benchmark, true, false);
+            out.println("");
+        }
+    }
+
+    /**
+     * Relative error of the mean primary score across the iterations.
+     *
+     * @param results iteration results
+     * @return error relative to the mean score; infinity, if not enough data to tell
+     */
+    static double getRelativeError(List<IterationResult> results) {
+        if (results.size() < 2) {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        Statistics stats = new Statistics();
+        for (IterationResult r : results) {
+            stats.addValue(r.getPrimaryResult().getScore());
+        }
+
+        double mean = Math.abs(stats.getMean());
+        if (mean == 0) {
+            return (stats.getStandardDeviation() == 0) ? 0 : Double.POSITIVE_INFINITY;
+        }
+        return stats.getMeanError(Defaults.TARGET_ERROR_ALPHA) / mean;
+    }
 
     /**
      * Execute System.gc() if we the System.gc option is set.
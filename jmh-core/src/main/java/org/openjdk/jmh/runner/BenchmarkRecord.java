@@ -27,37 +27,179 @@ package org.openjdk.jmh.runner;
 import org.openjdk.jmh.annotations.Mode;
 
 import java.io.Serializable;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
 public class BenchmarkRecord implements Comparable<BenchmarkRecord>, Serializable {
 
     private final String userName;
     private final String generatedName;
     private final Mode mode;
+    private final SortedMap<String, List<String>> paramSpace;
+    private final ActualParams params;
+    private final int threads;
+    private final double targetRate;
 
     public BenchmarkRecord(String userName, String generatedName, Mode mode) {
+        this(userName, generatedName, mode, new TreeMap<String, List<String>>(), new ActualParams());
+    }
+
+    /**
+     * @param paramSpace declared values for every {@link org.openjdk.jmh.annotations.Param}
+     * @param params values for this benchmark run
+     */
+    public BenchmarkRecord(String userName, String generatedName, Mode mode, SortedMap<String, List<String>> paramSpace, ActualParams params) {
+        this(userName, generatedName, mode, paramSpace, params, -1);
+    }
+
+    /**
+     * @param paramSpace declared values for every {@link org.openjdk.jmh.annotations.Param}
+     * @param params values for this benchmark run
+     * @param threads thread count for this benchmark run, overriding the options and annotations; -1 to use those
+     */
+    public BenchmarkRecord(String userName, String generatedName, Mode mode, SortedMap<String, List<String>> paramSpace, ActualParams params, int threads) {
+        this(userName, generatedName, mode, paramSpace, params, threads, -1);
+    }
+
+    /**
+     * @param paramSpace declared values for every {@link org.openjdk.jmh.annotations.Param}
+     * @param params values for this benchmark run
+     * @param threads thread count for this benchmark run, overriding the options and annotations; -1 to use those
+     * @param targetRate open-loop rate for this benchmark run, overriding the options; -1 to use those
+     */
+    public BenchmarkRecord(String userName, String generatedName, Mode mode, SortedMap<String, List<String>> paramSpace, ActualParams params, int threads, double targetRate) {
         this.userName = userName;
         this.generatedName = generatedName;
         this.mode = mode;
+        this.paramSpace = paramSpace;
+        this.params = params;
+        this.threads = threads;
+        this.targetRate = targetRate;
     }
 
     public BenchmarkRecord(String line) {
         String[] args = line.split(",");
 
-        if (args.length != 3) {
+        if (args.length < 3 || args.length > 7) {
             throw new IllegalStateException("Mismatched format for the line: " + line);
         }
 
         this.userName = args[0].trim();
         this.generatedName = args[1].trim();
         this.mode = Mode.deepValueOf(args[2].trim());
+        this.paramSpace = (args.length > 3) ? decodeParamSpace(args[3].trim()) : new TreeMap<String, List<String>>();
+        this.params = (args.length > 4) ? decodeParams(args[4].trim()) : new ActualParams();
+        this.threads = (args.length > 5) ? Integer.parseInt(args[5].trim()) : -1;
+        this.targetRate = (args.length > 6) ? Double.parseDouble(args[6].trim()) : -1;
     }
 
     public String toLine() {
-        return userName + "," + generatedName + "," + mode;
+        String line = userName + "," + generatedName + "," + mode;
+        if (!paramSpace.isEmpty() || threads != -1 || targetRate != -1) {
+            line += "," + encodeParamSpace(paramSpace) + "," + encodeParams(params);
+        }
+        if (threads != -1 || targetRate != -1) {
+            line += "," + threads;
+        }
+        if (targetRate != -1) {
+            line += "," + targetRate;
+        }
+        return line;
+    }
+
+    /*
+     * Parameters are encoded as "name=value1|value2;name2=value3".
+     * Names and values are URL-encoded, so they never clash with the separators.
+     */
+
+    public static String encodeParamSpace(Map<String, List<String>> space) {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, List<String>> e : space.entrySet()) {
+            if (sb.length() > 0) sb.append(';');
+            sb.append(encode(e.getKey())).append('=');
+            boolean first = true;
+            for (String v : e.getValue()) {
+                if (!first) sb.append('|');
+                sb.append(encode(v));
+                first = false;
+            }
+        }
+        return sb.toString();
+    }
+
+    private static SortedMap<String, List<String>> decodeParamSpace(String s) {
+        SortedMap<String, List<String>> space = new TreeMap<String, List<String>>();
+        for (String param : s.split(";")) {
+            if (param.isEmpty()) continue;
+            int idx = param.indexOf('=');
+            List<String> values = new ArrayList<String>();
+            String vs = param.substring(idx + 1);
+            if (!vs.isEmpty()) {
+                for (String v : vs.split("\\|", -1)) {
+                    values.add(decode(v));
+                }
+            }
+            space.put(decode(param.substring(0, idx)), values);
+        }
+        return space;
+    }
+
+    private static String encodeParams(ActualParams params) {
+        StringBuilder sb = new StringBuilder();
+        for (String k : params.keys()) {
+            if (sb.length() > 0) sb.append(';');
+            sb.append(encode(k)).append('=').append(encode(params.get(k)));
+        }
+        return sb.toString();
+    }
+
+    private static ActualParams decodeParams(String s) {
+        ActualParams params = new ActualParams();
+        for (String param : s.split(";")) {
+            if (param.isEmpty()) continue;
+            int idx = param.indexOf('=');
+            params = params.with(decode(param.substring(0, idx)), decode(param.substring(idx + 1)));
+        }
+        return params;
+    }
+
+    private static String encode(String s) {
+        try {
+            return URLEncoder.encode(s, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String decode(String s) {
+        try {
+            return URLDecoder.decode(s, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
     }
 
     public BenchmarkRecord cloneWith(Mode mode) {
-        return new BenchmarkRecord(userName, generatedName, mode);
+        return new BenchmarkRecord(userName, generatedName, mode, paramSpace, params, threads, targetRate);
+    }
+
+    public BenchmarkRecord cloneWith(ActualParams params) {
+        return new BenchmarkRecord(userName, generatedName, mode, paramSpace, params, threads, targetRate);
+    }
+
+    public BenchmarkRecord cloneWithThreads(int threads) {
+        return new BenchmarkRecord(userName, generatedName, mode, paramSpace, params, threads, targetRate);
+    }
+
+    public BenchmarkRecord cloneWithTargetRate(double targetRate) {
+        return new BenchmarkRecord(userName, generatedName, mode, paramSpace, params, threads, targetRate);
     }
 
     @Override
@@ -67,7 +209,22 @@ public class BenchmarkRecord implements Comparable<BenchmarkRecord>, Serializabl
             return v;
         }
 
-        return userName.compareTo(o.userName);
+        v = userName.compareTo(o.userName);
+        if (v != 0) {
+            return v;
+        }
+
+        v = params.compareTo(o.params);
+        if (v != 0) {
+            return v;
+        }
+
+        v = (threads < o.threads) ? -1 : ((threads == o.threads) ? 0 : 1);
+        if (v != 0) {
+            return v;
+        }
+
+        return Double.compare(targetRate, o.targetRate);
     }
 
     @Override
@@ -79,6 +236,9 @@ public class BenchmarkRecord implements Comparable<BenchmarkRecord>, Serializabl
 
         if (mode != that.mode) return false;
         if (!userName.equals(that.userName)) return false;
+        if (!params.equals(that.params)) return false;
+        if (threads != that.threads) return false;
+        if (Double.compare(targetRate, that.targetRate) != 0) return false;
 
         return true;
     }
@@ -87,6 +247,10 @@ public class BenchmarkRecord implements Comparable<BenchmarkRecord>, Serializabl
     public int hashCode() {
         int result = userName.hashCode();
         result = 31 * result + mode.hashCode();
+        result = 31 * result + params.hashCode();
+        result = 31 * result + threads;
+        long rateBits = Double.doubleToLongBits(targetRate);
+        result = 31 * result + (int) (rateBits ^ (rateBits >>> 32));
         return result;
     }
 
@@ -116,12 +280,43 @@ public class BenchmarkRecord implements Comparable<BenchmarkRecord>, Serializabl
         return mode;
     }
 
+    /**
+     * @return declared values for every parameter; empty if benchmark has no parameters
+     */
+    public SortedMap<String, List<String>> getParamSpace() {
+        return Collections.unmodifiableSortedMap(paramSpace);
+    }
+
+    /**
+     * @return parameter values for this run; empty if parameters are not yet chosen
+     */
+    public ActualParams getActualParams() {
+        return params;
+    }
+
+    /**
+     * @return thread count for this run, overriding the options and annotations; -1 if not overridden
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * @return open-loop rate for this run, ops/s, overriding the options; -1 if not overridden
+     */
+    public double getTargetRate() {
+        return targetRate;
+    }
+
     @Override
     public String toString() {
         return "BenchmarkRecord{" +
                 "userName='" + userName + '\'' +
                 ", generatedName='" + generatedName + '\'' +
                 ", mode=" + mode +
+                (params.isEmpty() ? "" : ", params={" + params + "}") +
+                (threads == -1 ? "" : ", threads=" + threads) +
+                (targetRate == -1 ? "" : ", targetRate=" + targetRate) +
                 '}';
     }
 }
@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2005, 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jmh.runner;
+
+import org.openjdk.jmh.util.CpuTopology;
+
+/**
+ * Partitions the machine CPUs into the disjoint slots for the concurrently running forks.
+ */
+class CpuSlots {
+
+    private final int[] cpus;
+    private final boolean[] busy;
+
+    private long nextTicket;
+    private long servingTicket;
+
+    CpuSlots(int[] cpus) {
+        if (cpus.length == 0) {
+            throw new IllegalArgumentException("No CPUs to partition");
+        }
+        this.cpus = cpus;
+        this.busy = new boolean[cpus.length];
+    }
+
+    /**
+     * @return total number of CPUs to partition
+     */
+    int size() {
+        return cpus.length;
+    }
+
+    /**
+     * Acquires the slot of the given width, blocking until enough CPUs are free.
+     * Requests are served in the arrival order, so the wide slots are not starved by the narrow ones.
+     * Requests wider than the machine get all the CPUs.
+     *
+     * @param width number of CPUs requested
+     * @return acquired slot
+     * @throws InterruptedException if interrupted while waiting
+     */
+    synchronized Slot acquire(int width) throws InterruptedException {
+        width = Math.max(1, Math.min(width, cpus.length));
+
+        long ticket = nextTicket++;
+        try {
+            while (ticket != servingTicket || freeCount() < width) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            // give up our turn, otherwise the subsequent requests would wait forever
+            servingTicket = Math.max(servingTicket, ticket + 1);
+            notifyAll();
+            throw e;
+        }
+        servingTicket++;
+
+        int[] indices = pickContiguous(width);
+        if (indices == null) {
+            indices = pickLowest(width);
+        }
+
+        int[] ids = new int[width];
+        for (int i = 0; i < width; i++) {
+            busy[indices[i]] = true;
+            ids[i] = cpus[indices[i]];
+        }
+
+        notifyAll();
+        return new Slot(indices, ids);
+    }
+
+    /**
+     * Returns the slot CPUs back to the pool.
+     * @param slot slot to release
+     */
+    synchronized void release(Slot slot) {
+        for (int idx : slot.indices) {
+            busy[idx] = false;
+        }
+        notifyAll();
+    }
+
+    private int freeCount() {
+        int free = 0;
+        for (boolean b : busy) {
+            if (!b) free++;
+        }
+        return free;
+    }
+
+    private int[] pickContiguous(int width) {
+        int run = 0;
+        for (int i = 0; i < busy.length; i++) {
+            run = busy[i] ? 0 : run + 1;
+            if (run == width) {
+                int[] r = new int[width];
+                for (int c = 0; c < width; c++) {
+                    r[c] = i - width + 1 + c;
+                }
+                return r;
+            }
+        }
+        return null;
+    }
+
+    private int[] pickLowest(int width) {
+        int[] r = new int[width];
+        int c = 0;
+        for (int i = 0; i < busy.length && c < width; i++) {
+            if (!busy[i]) {
+                r[c++] = i;
+            }
+        }
+        return r;
+    }
+
+    /**
+     * Set of CPUs exclusively owned by one fork.
+     */
+    static class Slot {
+        private final int[] indices;
+        private final int[] ids;
+
+        Slot(int[] indices, int[] ids) {
+            this.indices = indices;
+            this.ids = ids;
+        }
+
+        int[] getCpus() {
+            return ids;
+        }
+
+        int size() {
+            return ids.length;
+        }
+
+        @Override
+        public String toString() {
+            return CpuTopology.toCpuList(ids);
+        }
+    }
+
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2005, 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jmh.runner;
+
+import org.openjdk.jmh.runner.options.ExecutionOrder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Orders the forks of the benchmarks for execution.
+ * Interleaving the forks spreads the slow drifts of the machine state, like thermal
+ * throttling, frequency scaling, or noisy neighbours, across all the benchmarks,
+ * instead of biasing the whole benchmarks which happened to run at the wrong time.
+ */
+class ExecutionPlan {
+
+    private ExecutionPlan() {
+
+    }
+
+    /**
+     * Makes the execution plan.
+     *
+     * @param forkCounts number of forks for each benchmark, in the benchmark order
+     * @param order execution order
+     * @param random source of randomness for {@link ExecutionOrder#RANDOMIZED}
+     * @return forks to run, in order
+     */
+    static List<PlannedFork> plan(List<Integer> forkCounts, ExecutionOrder order, Random random) {
+        List<PlannedFork> plan = new ArrayList<PlannedFork>();
+
+        if (order == ExecutionOrder.SEQUENTIAL) {
+            for (int b = 0; b < forkCounts.size(); b++) {
+                for (int f = 0; f < forkCounts.get(b); f++) {
+                    plan.add(new PlannedFork(b, f));
+                }
+            }
+            return plan;
+        }
+
+        int rounds = 0;
+        for (int count : forkCounts) {
+            rounds = Math.max(rounds, count);
+        }
+
+        for (int f = 0; f < rounds; f++) {
+            List<PlannedFork> round = new ArrayList<PlannedFork>();
+            for (int b = 0; b < forkCounts.size(); b++) {
+                if (f < forkCounts.get(b)) {
+                    round.add(new PlannedFork(b, f));
+                }
+            }
+            if (order == ExecutionOrder.RANDOMIZED) {
+                Collections.shuffle(round, random);
+            }
+            plan.addAll(round);
+        }
+        return plan;
+    }
+
+    /**
+     * Single measured fork of some benchmark.
+     */
+    static class PlannedFork {
+        private final int benchmark;
+        private final int fork;
+
+        PlannedFork(int benchmark, int fork) {
+            this.benchmark = benchmark;
+            this.fork = fork;
+        }
+
+        /**
+         * @return benchmark index
+         */
+        int getBenchmark() {
+            return benchmark;
+        }
+
+        /**
+         * @return fork index, starting from zero
+         */
+        int getFork() {
+            return fork;
+        }
+
+        @Override
+        public String toString() {
+            return benchmark + ":" + fork;
+        }
+    }
+
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2005, 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jmh.runner;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Provides the executor to run the benchmark threads on.
+ * <p>
+ * Built-in providers are listed in {@link ExecutorType}. Custom providers are selected by
+ * the class name, with {@code -ex} option, or with {@link org.openjdk.jmh.annotations.Threads#executor()}.
+ * The implementation should have the public no-arg constructor.
+ * <p>
+ * Every benchmark thread is submitted as the separate task, and runs for the entire iteration.
+ * With the built-in thread pools, thread-scoped state is bound to the pooled thread, and stays
+ * with it across the iterations. With {@link ExecutorType#VIRTUAL} and with the custom providers,
+ * it is bound to the benchmark thread index instead, not to the thread executing the task, so
+ * those are free to run each task in the new thread.
+ */
+public interface ExecutorProvider {
+
+    /**
+     * Creates the executor for the benchmark.
+     *
+     * @param maxThreads maximum number of benchmark threads running at once
+     * @param threadFactory harness thread factory; names the platform threads, and pins them to CPUs, if requested
+     * @return executor
+     */
+    ExecutorService createExecutor(int maxThreads, ThreadFactory threadFactory);
+
+    /**
+     * Reports the number of platform threads the benchmark threads would be running on.
+     * This is the thread count itself for thread pools, and the carrier thread count for
+     * the virtual threads.
+     *
+     * @param maxThreads maximum number of benchmark threads running at once
+     * @return number of platform threads; -1 if unknown
+     */
+    int getCarrierThreads(int maxThreads);
+
+    /**
+     * @return true, if executor is shared with others, and harness should not shut it down
+     */
+    boolean isShared();
+
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2005, 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jmh.runner;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Built-in executors for the benchmark threads.
+ */
+public enum ExecutorType implements ExecutorProvider {
+
+    /**
+     * Use Executors.newCachedThreadPool
+     */
+    CACHED_TPE {
+        @Override
+        public ExecutorService createExecutor(int maxThreads, ThreadFactory threadFactory) {
+            return Executors.newCachedThreadPool(threadFactory);
+        }
+    },
+
+    /**
+     * Use Executors.newFixedThreadPool
+     */
+    FIXED_TPE {
+        @Override
+        public ExecutorService createExecutor(int maxThreads, ThreadFactory threadFactory) {
+            return Executors.newFixedThreadPool(maxThreads, threadFactory);
+        }
+    },
+
+    /**
+     * Use new ForkJoinPool (JDK 7+)
+     */
+    FJP {
+        @Override
+        public ExecutorService createExecutor(int maxThreads, ThreadFactory threadFactory) {
+            try {
+                // (Aleksey):
+                // requires some of the reflection magic to untie from JDK 7 compile-time dependencies
+                Constructor<?> c = Class.forName("java.util.concurrent.ForkJoinPool").getConstructor(int.class);
+                return (ExecutorService) c.newInstance(maxThreads);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    },
+
+    /**
+     * Use ForkJoinPool.commonPool (JDK 8+)
+     */
+    FJP_COMMON {
+        @Override
+        public ExecutorService createExecutor(int maxThreads, ThreadFactory threadFactory) {
+            try {
+                // (Aleksey):
+                // requires some of the reflection magic to untie from JDK 8 compile-time dependencies
+                Method m = Class.forName("java.util.concurrent.ForkJoinPool").getMethod("commonPool");
+                return (ExecutorService) m.invoke(null);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public int getCarrierThreads(int maxThreads) {
+            try {
+                Method m = Class.forName("java.util.concurrent.ForkJoinPool").getMethod("getCommonPoolParallelism");
+                return (Integer) m.invoke(null);
+            } catch (Exception e) {
+                return -1;
+            }
+        }
+
+        @Override
+        public boolean isShared() {
+            // this is a system-wide executor, don't shutdown
+            return true;
+        }
+    },
+
+    /**
+     * Use Executors.newVirtualThreadPerTaskExecutor (JDK 21+): every benchmark thread is
+     * the virtual thread, multiplexed over the carrier threads. Every iteration runs in the
+     * new virtual threads, and thread-scoped state is bound to the benchmark thread index.
+     */
+    VIRTUAL {
+        @Override
+        public ExecutorService createExecutor(int maxThreads, ThreadFactory threadFactory) {
+            try {
+                // requires some of the reflection magic to untie from JDK 21 compile-time dependencies
+                Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                return (ExecutorService) m.invoke(null);
+            } catch (NoSuchMethodException e) {
+                throw new IllegalStateException("Virtual threads are not supported by this JVM: " + System.getProperty("java.version"));
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public int getCarrierThreads(int maxThreads) {
+            // default virtual thread scheduler parallelism
+            return Integer.getInteger("jdk.virtualThreadScheduler.parallelism", Runtime.getRuntime().availableProcessors());
+        }
+    },
+
+    ;
+
+    @Override
+    public int getCarrierThreads(int maxThreads) {
+        return maxThreads;
+    }
+
+    @Override
+    public boolean isShared() {
+        return false;
+    }
+
+    /**
+     * @return true, if executor runs the benchmark threads on the threads from the harness thread factory
+     */
+    public boolean usesThreadFactory() {
+        return this == CACHED_TPE || this == FIXED_TPE;
+    }
+
+    /**
+     * @return default executor name, as set by harness.executor property
+     */
+    public static String defaultName() {
+        return System.getProperty("harness.executor", FIXED_TPE.name());
+    }
+
+    /**
+     * Finds the executor provider by name: either the built-in executor type,
+     * or the name of the class implementing {@link ExecutorProvider}.
+     *
+     * @param name executor name
+     * @return executor provider
+     * @throws IllegalArgumentException if there is no such executor
+     */
+    public static ExecutorProvider forName(String name) {
+        for (ExecutorType type : values()) {
+            if (type.name().equalsIgnoreCase(name)) {
+                return type;
+            }
+        }
+
+        try {
+            Class<?> klass = Class.forName(name);
+            if (!ExecutorProvider.class.isAssignableFrom(klass)) {
+                throw new IllegalArgumentException("Executor " + name + " does not implement " + ExecutorProvider.class.getName());
+            }
+            return (ExecutorProvider) klass.newInstance();
+        } catch (ClassNotFoundException e) {
+            StringBuilder known = new StringBuilder();
+            for (ExecutorType type : values()) {
+                known.append(type.name()).append(", ");
+            }
+            throw new IllegalArgumentException("Unknown executor: " + name + "; should be one of " + known +
+                    "or the class implementing " + ExecutorProvider.class.getName());
+        } catch (InstantiationException e) {
+            throw new IllegalArgumentException("Unable to instantiate executor " + name, e);
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("Unable to instantiate executor " + name, e);
+        }
+    }
+
+}
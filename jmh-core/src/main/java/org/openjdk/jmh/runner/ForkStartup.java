@@ -0,0 +1,328 @@
+/*
+ * Copyright (c) 2005, 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jmh.runner;
+
+import org.openjdk.jmh.util.InputStreamDrainer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Speeds up the forked VM startup:
+ * <ul>
+ *     <li>passes the JVM options and classpath through the argument file (JDK 9+), so that
+ *     the command line stays short regardless of classpath and compiler hints;</li>
+ *     <li>dumps the dynamic AppCDS archive of the loaded classes in the dedicated fork, and maps
+ *     the archive in the subsequent forks with the same JVM options (JDK 13+, JAR classpath only).</li>
+ * </ul>
+ * The features the target JVM does not support are silently skipped.
+ * <p>
+ * The measured forks never dump the archive themselves, since dumping at exit skews their
+ * results. The dumping fork writes the archive to the temporary file, which is renamed
+ * once that fork exits, so that the concurrent forks never map the half-written archive:
+ * they run without the archive until it is ready.
+ */
+class ForkStartup {
+
+    private final int jvmVersion;
+    private final File dir;
+
+    private final Map<List<String>, File> argFiles;
+    private final Map<List<String>, Archive> archives;
+
+    ForkStartup(String jvm) throws IOException {
+        this.jvmVersion = (jvm == null) ?
+                parseVersion(System.getProperty("java.specification.version")) :
+                probeVersion(jvm);
+        this.argFiles = new HashMap<List<String>, File>();
+        this.archives = new HashMap<List<String>, Archive>();
+
+        this.dir = File.createTempFile("jmh-fork", "");
+        if (!dir.delete() || !dir.mkdir()) {
+            throw new IOException("Unable to create the temporary directory: " + dir);
+        }
+        dir.deleteOnExit();
+    }
+
+    boolean supportsArgFiles() {
+        return jvmVersion >= 9;
+    }
+
+    boolean supportsDynamicArchive() {
+        return jvmVersion >= 13;
+    }
+
+    /**
+     * Claims the archive dump for the fork command. Only the first caller for the given
+     * JVM options gets to dump the archive, and should run the fork with
+     * {@link #rewrite(String[], String, boolean)} asking for the dump.
+     *
+     * @param command fork command: JVM binary, JVM options, main class, and main class arguments
+     * @param mainClass main class name, separates the JVM options from the main class arguments
+     * @return true, if the caller should run the fork dumping the archive
+     */
+    synchronized boolean claimArchive(String[] command, String mainClass) {
+        List<String> key = jvmOptions(command, mainClass);
+        if (!supportsDynamicArchive() || !isArchivable(key) || archives.containsKey(key)) {
+            return false;
+        }
+
+        File file = new File(dir, "classes-" + archives.size() + ".jsa");
+        archives.put(key, new Archive(file, new File(dir, file.getName() + ".tmp")));
+        return true;
+    }
+
+    /**
+     * Publishes the archive dumped by the fork, once the fork had exited.
+     *
+     * @param command rewritten command of the dumping fork
+     * @param success true, if the fork had exited normally; the killed fork may leave the archive half-written
+     * @return true, if the archive is ready for the subsequent forks
+     */
+    synchronized boolean archiveDumped(Command command, boolean success) {
+        Archive archive = command.archive;
+        if (archive == null) {
+            return false;
+        }
+
+        // rename is atomic: the archive is either absent, or complete
+        if (success && archive.temp.length() > 0 && archive.temp.renameTo(archive.file)) {
+            archive.file.deleteOnExit();
+            archive.ready = true;
+        } else {
+            // failed to dump; the forks with these options run without the archive
+            archive.temp.delete();
+        }
+        return archive.ready;
+    }
+
+    /**
+     * Rewrites the fork command to start faster.
+     *
+     * @param command fork command: JVM binary, JVM options, main class, and main class arguments
+     * @param mainClass main class name, separates the JVM options from the main class arguments
+     * @param dumpArchive true, if the fork should dump the archive claimed with {@link #claimArchive(String[], String)}
+     * @return rewritten command
+     */
+    synchronized Command rewrite(String[] command, String mainClass, boolean dumpArchive) throws IOException {
+        List<String> jvmOpts = jvmOptions(command, mainClass);
+        int mainIdx = jvmOpts.size() + 1;
+
+        String state = "no CDS archive";
+        Archive dumping = null;
+
+        Archive archive = archives.get(jvmOpts);
+        if (archive != null) {
+            if (archive.ready) {
+                jvmOpts.add("-XX:SharedArchiveFile=" + archive.file.getAbsolutePath());
+                state = "using CDS archive";
+            } else if (dumpArchive) {
+                archive.temp.deleteOnExit();
+                jvmOpts.add("-XX:ArchiveClassesAtExit=" + archive.temp.getAbsolutePath());
+                // dumping VM warns about every class it is unable to archive
+                jvmOpts.add("-Xlog:cds*=error");
+                state = "dumping CDS archive";
+                dumping = archive;
+            }
+            // otherwise, archive is still being dumped, or failed to dump; run as usual
+        }
+
+        List<String> result = new ArrayList<String>();
+        result.add(command[0]);
+
+        if (supportsArgFiles()) {
+            List<String> fileKey = new ArrayList<String>(jvmOpts);
+            fileKey.add(mainClass);
+            File argFile = argFiles.get(fileKey);
+            if (argFile == null) {
+                argFile = new File(dir, "args-" + argFiles.size());
+                argFile.deleteOnExit();
+                writeArgFile(argFile, fileKey);
+                argFiles.put(fileKey, argFile);
+            }
+            result.add("@" + argFile.getAbsolutePath());
+        } else {
+            result.addAll(jvmOpts);
+            result.add(mainClass);
+        }
+
+        result.addAll(Arrays.asList(command).subList(mainIdx + 1, command.length));
+        return new Command(result.toArray(new String[result.size()]), state, dumping);
+    }
+
+    private static List<String> jvmOptions(String[] command, String mainClass) {
+        int mainIdx = Arrays.asList(command).indexOf(mainClass);
+        if (mainIdx == -1) {
+            throw new IllegalArgumentException("Main class " + mainClass + " is not found in " + Arrays.toString(command));
+        }
+        return new ArrayList<String>(Arrays.asList(command).subList(1, mainIdx));
+    }
+
+    /**
+     * AppCDS can only archive the classes coming from JAR files:
+     * VM refuses to dump the archive when classpath has non-empty directories.
+     */
+    private static boolean isArchivable(List<String> jvmOpts) {
+        int cpIdx = Math.max(jvmOpts.lastIndexOf("-cp"), jvmOpts.lastIndexOf("-classpath"));
+        if (cpIdx == -1 || cpIdx + 1 >= jvmOpts.size()) {
+            return false;
+        }
+
+        String classPath = jvmOpts.get(cpIdx + 1);
+        if (classPath.length() > 1 && classPath.startsWith("\"") && classPath.endsWith("\"")) {
+            classPath = classPath.substring(1, classPath.length() - 1);
+        }
+
+        for (String entry : classPath.split(File.pathSeparator)) {
+            File f = new File(entry);
+            if (f.isDirectory()) {
+                String[] list = f.list();
+                if (list == null || list.length > 0) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static void writeArgFile(File file, List<String> args) throws IOException {
+        PrintWriter pw = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+        try {
+            for (String arg : args) {
+                pw.println(quote(arg));
+            }
+        } finally {
+            pw.close();
+        }
+        if (pw.checkError()) {
+            throw new IOException("Unable to write the argument file: " + file);
+        }
+    }
+
+    /**
+     * Quotes the argument for the JVM argument file.
+     * Backslash is the escape character in argument files, hence it is doubled.
+     */
+    static String quote(String arg) {
+        // classpath may come pre-quoted for Windows command line
+        if (arg.length() > 1 && arg.startsWith("\"") && arg.endsWith("\"")) {
+            arg = arg.substring(1, arg.length() - 1);
+        }
+        return '"' + arg.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+    }
+
+    private static final Pattern VERSION_PATTERN = Pattern.compile("version \"([^\"]+)\"");
+
+    private static int probeVersion(String jvm) {
+        try {
+            Process p = new ProcessBuilder(jvm, "-version").redirectErrorStream(true).start();
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            InputStreamDrainer drainer = new InputStreamDrainer(p.getInputStream(), bos);
+            drainer.start();
+            p.waitFor();
+            drainer.join();
+
+            Matcher m = VERSION_PATTERN.matcher(bos.toString());
+            if (m.find()) {
+                return parseVersion(m.group(1));
+            }
+        } catch (IOException e) {
+            // fall through
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return 0;
+    }
+
+    /**
+     * Parses the major Java version: "1.8.0_40" is 8, "17.0.9" is 17, "9-ea" is 9.
+     * @return major version; 0 if unknown
+     */
+    static int parseVersion(String version) {
+        if (version == null) {
+            return 0;
+        }
+        if (version.startsWith("1.")) {
+            version = version.substring(2);
+        }
+        Matcher m = Pattern.compile("^(\\d+)").matcher(version);
+        if (m.find()) {
+            return Integer.parseInt(m.group(1));
+        }
+        return 0;
+    }
+
+    /**
+     * Archive for the set of JVM options.
+     */
+    private static class Archive {
+        private final File file;
+        private final File temp;
+        private boolean ready;
+
+        Archive(File file, File temp) {
+            this.file = file;
+            this.temp = temp;
+        }
+    }
+
+    /**
+     * Rewritten fork command.
+     */
+    static class Command {
+        private final String[] command;
+        private final String state;
+        private final Archive archive;
+
+        Command(String[] command, String state, Archive archive) {
+            this.command = command;
+            this.state = state;
+            this.archive = archive;
+        }
+
+        String[] getCommand() {
+            return command;
+        }
+
+        /**
+         * @return human-readable CDS state of this fork
+         */
+        String getState() {
+            return state;
+        }
+    }
+
+}
@@ -25,11 +25,14 @@
 package org.openjdk.jmh.runner;
 
 import org.openjdk.jmh.link.BinaryLinkClient;
-import org.openjdk.jmh.logic.results.RunResult;
+import org.openjdk.jmh.logic.results.IterationResult;
 import org.openjdk.jmh.output.OutputFormatFactory;
 import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.WarmupMode;
+import org.openjdk.jmh.util.CpuTopology;
 
 import java.io.IOException;
+import java.util.Set;
 
 /**
  * Runner frontend class. Responsible for running micro benchmarks in forked JVM.
@@ -40,9 +43,17 @@ public class ForkedRunner extends BaseRunner {
 
     private final BinaryLinkClient link;
 
+    /**
+     * CPU slot the host had confined this VM to; null, if forks do not run concurrently.
+     */
+    private final String cpuSlot;
+
     public ForkedRunner(Options options, BinaryLinkClient link) {
         super(options, OutputFormatFactory.createBinaryHook(link));
         this.link = link;
+
+        // host runs the concurrent forks with taskset, confining each to its slot
+        this.cpuSlot = (options.getParallelForks() > 1) ? CpuTopology.toCpuList(CpuTopology.allowedCpus()) : null;
     }
 
     public void run(BenchmarkRecord benchmark) throws IOException {
@@ -53,12 +64,47 @@ public class ForkedRunner extends BaseRunner {
         }
         out.startRun();
 
-        RunResult result = runBenchmark(benchmark, true, true);
-        link.pushResults(benchmark, result);
+        if (isBulkWarmup()) {
+            MicroBenchmarkList list = MicroBenchmarkList.defaultList();
+            Set<BenchmarkRecord> benchmarks = expandThreads(expandParams(expandModes(list.find(out, options.getRegexps(), options.getExcludes()))));
+            runBulkWarmup(findBulkWarmupBenchmarks(list, benchmarks), "this VM");
+        }
+
+        // the benchmark had been warmed up in bulk already
+        boolean doWarmup = (options.getWarmupMode() != WarmupMode.BEFOREANY);
+
+        // iteration results are streamed to the host as they come
+        runBenchmark(benchmark, doWarmup, true);
+        link.benchmarkCompleted(benchmark);
 
         out.endRun();
         out.flush();
         out.close();
     }
 
+    @Override
+    protected void iterationStarting() {
+        // the host VM gets everything printed so far, and then nothing until the iteration ends
+        try {
+            link.holdOutput();
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to send the output to the host VM", e);
+        }
+    }
+
+    @Override
+    protected void iterationFinished() {
+        link.releaseOutput();
+    }
+
+    @Override
+    protected void iterationMeasured(BenchmarkRecord benchmark, IterationResult result) {
+        result.setCpus(cpuSlot);
+        try {
+            link.pushIterationResult(benchmark, result);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to report the iteration result to the host VM", e);
+        }
+    }
+
 }
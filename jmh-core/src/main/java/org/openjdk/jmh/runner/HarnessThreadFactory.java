@@ -24,6 +24,9 @@
  */
 package org.openjdk.jmh.runner;
 
+import org.openjdk.jmh.util.CpuTopology;
+import org.openjdk.jmh.util.ThreadAffinity;
+
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -32,15 +35,39 @@ public class HarnessThreadFactory implements ThreadFactory {
 
     private final AtomicInteger counter = new AtomicInteger();
     private final String prefix;
+    private final CpuTopology.Placement placement;
 
     public HarnessThreadFactory(String prefix) {
+        this(prefix, null);
+    }
+
+    /**
+     * @param prefix thread name prefix
+     * @param placement placement to pin the threads with, in their creation order; null to leave threads unpinned
+     */
+    public HarnessThreadFactory(String prefix, CpuTopology.Placement placement) {
         this.prefix = prefix;
+        this.placement = placement;
     }
 
     @Override
-    public Thread newThread(Runnable r) {
-        Thread thread = Executors.defaultThreadFactory().newThread(r);
-        thread.setName(prefix + "-worker" + counter.incrementAndGet());
+    public Thread newThread(final Runnable r) {
+        int idx = counter.incrementAndGet();
+
+        Runnable task = r;
+        if (placement != null) {
+            final int cpu = placement.getWorkerCpu(idx - 1);
+            task = new Runnable() {
+                @Override
+                public void run() {
+                    ThreadAffinity.pinCurrentThread(cpu);
+                    r.run();
+                }
+            };
+        }
+
+        Thread thread = Executors.defaultThreadFactory().newThread(task);
+        thread.setName(prefix + "-worker" + idx);
         thread.setDaemon(true);
         return thread;
     }
@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2005, 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jmh.runner;
+
+import org.openjdk.jmh.logic.results.IterationResult;
+import org.openjdk.jmh.logic.results.RunResult;
+import org.openjdk.jmh.output.format.IterationType;
+import org.openjdk.jmh.output.format.OutputFormat;
+import org.openjdk.jmh.runner.parameters.BenchmarkParams;
+import org.openjdk.jmh.runner.parameters.IterationParams;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Forwards the calls to the actual output format, and notifies the run listeners.
+ * <p>
+ * Parallel forks report through this format concurrently. The listeners are notified
+ * while holding the lock on this format, the same one the harness holds while printing
+ * the output of the fork. Therefore, the listeners are called one at a time, and never
+ * in the middle of the other fork output.
+ * <p>
+ * The results reported so far are kept, so that the listeners get the partial results
+ * of the failed run.
+ */
+public class ListeningOutputFormat implements OutputFormat {
+
+    private final OutputFormat out;
+    private final List<RunListener> listeners;
+
+    private final Map<BenchmarkRecord, RunResult> finishedBenchmarks;
+    private final Map<BenchmarkRecord, RunResult> finishedForks;
+
+    ListeningOutputFormat(OutputFormat out) {
+        this.out = out;
+        this.listeners = new CopyOnWriteArrayList<RunListener>();
+        this.finishedBenchmarks = new TreeMap<BenchmarkRecord, RunResult>();
+        this.finishedForks = new TreeMap<BenchmarkRecord, RunResult>();
+    }
+
+    void addListener(RunListener listener) {
+        listeners.add(listener);
+    }
+
+    void removeListener(RunListener listener) {
+        listeners.remove(listener);
+    }
+
+    private void listenerFailed(RunListener listener, RuntimeException e) {
+        out.println("WARNING: Run listener " + listener + " failed: " + e);
+    }
+
+    synchronized void forkFinished(BenchmarkRecord benchmark, int fork, RunResult result) {
+        if (result != null) {
+            finishedForks.put(benchmark, RunResult.merge(finishedForks.get(benchmark), result));
+        }
+        for (RunListener l : listeners) {
+            try {
+                l.forkFinished(benchmark, fork, result);
+            } catch (RuntimeException e) {
+                listenerFailed(l, e);
+            }
+        }
+    }
+
+    synchronized void benchmarkFinished(BenchmarkRecord benchmark, RunResult result) {
+        finishedForks.remove(benchmark);
+        if (result != null) {
+            finishedBenchmarks.put(benchmark, RunResult.merge(finishedBenchmarks.get(benchmark), result));
+        }
+        for (RunListener l : listeners) {
+            try {
+                l.benchmarkFinished(benchmark, result);
+            } catch (RuntimeException e) {
+                listenerFailed(l, e);
+            }
+        }
+    }
+
+    /**
+     * @param results results of the completed run; null, if the run had failed
+     * @param failure failure which had stopped the run; null, if the run had completed
+     */
+    synchronized void runFinished(Map<BenchmarkRecord, RunResult> results, Throwable failure) {
+        if (results == null) {
+            // benchmarks which had not finished in all their forks are partial
+            results = new TreeMap<BenchmarkRecord, RunResult>(finishedBenchmarks);
+            for (Map.Entry<BenchmarkRecord, RunResult> e : finishedForks.entrySet()) {
+                results.put(e.getKey(), new RunResult(e.getValue().getRawIterationResults(), true));
+            }
+        }
+        finishedBenchmarks.clear();
+        finishedForks.clear();
+
+        for (RunListener l : listeners) {
+            try {
+                l.runFinished(results, failure);
+            } catch (RuntimeException e) {
+                listenerFailed(l, e);
+            }
+        }
+    }
+
+    @Override
+    public void iteration(BenchmarkRecord benchmark, IterationParams params, int iteration, IterationType type) {
+        out.iteration(benchmark, params, iteration, type);
+    }
+
+    @Override
+    public synchronized void iterationResult(BenchmarkRecord name, IterationParams params, int iteration, IterationType type, IterationResult data) {
+        out.iterationResult(name, params, iteration, type, data);
+        for (RunListener l : listeners) {
+            try {
+                l.iterationFinished(name, params, iteration, type, data);
+            } catch (RuntimeException e) {
+                listenerFailed(l, e);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void startBenchmark(BenchmarkRecord name, BenchmarkParams mbParams, boolean verbose) {
+        out.startBenchmark(name, mbParams, verbose);
+        for (RunListener l : listeners) {
+            try {
+                l.benchmarkStarted(name, mbParams);
+            } catch (RuntimeException e) {
+                listenerFailed(l, e);
+            }
+        }
+    }
+
+    @Override
+    public void endBenchmark(BenchmarkRecord name, RunResult result) {
+        out.endBenchmark(name, result);
+    }
+
+    @Override
+    public void startRun() {
+        out.startRun();
+    }
+
+    @Override
+    public void endRun() {
+        out.endRun();
+    }
+
+    @Override
+    public void detailedResults(BenchmarkRecord name, IterationParams params, int iteration, IterationResult data) {
+        out.detailedResults(name, params, iteration, data);
+    }
+
+    @Override
+    public void exception(Throwable ex) {
+        out.exception(ex);
+    }
+
+    @Override
+    public void println(String s) {
+        out.println(s);
+    }
+
+    @Override
+    public void flush() {
+        out.flush();
+    }
+
+    @Override
+    public void close() {
+        out.close();
+    }
+
+    @Override
+    public void verbosePrintln(String s) {
+        out.verbosePrintln(s);
+    }
+
+    @Override
+    public void write(int b) {
+        out.write(b);
+    }
+
+    @Override
+    public void write(byte[] b) throws IOException {
+        out.write(b);
+    }
+
+}
@@ -27,22 +27,31 @@ package org.openjdk.jmh.runner;
 
 import org.openjdk.jmh.annotations.Mode;
 import org.openjdk.jmh.logic.InfraControl;
+import org.openjdk.jmh.logic.TraceFile;
 import org.openjdk.jmh.logic.results.IterationResult;
 import org.openjdk.jmh.logic.results.Result;
 import org.openjdk.jmh.output.format.OutputFormat;
+import org.openjdk.jmh.runner.options.LoadSchedule;
 import org.openjdk.jmh.runner.options.Options;
 import org.openjdk.jmh.runner.parameters.BenchmarkParams;
+import org.openjdk.jmh.runner.parameters.Defaults;
 import org.openjdk.jmh.runner.parameters.IterationParams;
 import org.openjdk.jmh.runner.parameters.TimeValue;
+import org.openjdk.jmh.util.CpuTopology;
+import org.openjdk.jmh.util.Utils;
 
+import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
 /**
@@ -59,13 +68,87 @@ public class LoopMicroBenchmarkHandler extends BaseMicroBenchmarkHandler {
 
     private final Method method;
     private final boolean shouldSynchIterations;
+    private final double targetRate;
+    private final boolean poisson;
+    private final int histogramPrecision;
     private final boolean shouldFailOnError;
+    private final long timeoutNs;
+    private final boolean usePersistentWorkers;
+    private final CpuTopology.Placement placement;
+
+    /**
+     * Trace of the operations; null if not tracing
+     */
+    private final TraceFile trace;
+    private final IterationParams warmupParams;
+    private int measurementIterations;
+
+    /**
+     * Persistent workers, created lazily
+     */
+    private WorkerPool pool;
 
     LoopMicroBenchmarkHandler(OutputFormat format, BenchmarkRecord microbenchmark, Class<?> clazz, Method method, Options options, BenchmarkParams executionParams) {
         super(format, microbenchmark, clazz, options, executionParams);
         this.method = method;
         this.shouldSynchIterations = (microbenchmark.getMode() != Mode.SingleShotTime) && executionParams.shouldSynchIterations();
         this.shouldFailOnError = options.shouldFailOnError();
+
+        TimeValue timeout = options.getTimeout();
+        this.timeoutNs = (timeout == null || timeout.getTime() < 0) ? -1 : timeout.convertTo(TimeUnit.NANOSECONDS);
+        if (options.shouldUsePersistentWorkers() && !usesThreadFactory()) {
+            format.println("WARNING: " + executionParams.getExecutor() + " executor does not run on harness threads, persistent workers are not used");
+            this.usePersistentWorkers = false;
+        } else {
+            this.usePersistentWorkers = options.shouldUsePersistentWorkers();
+        }
+        this.placement = executionParams.getPlacement();
+        this.targetRate = executionParams.getTargetRate();
+        this.poisson = executionParams.getLoadSchedule() == LoadSchedule.POISSON;
+        this.histogramPrecision = executionParams.getHistogramPrecision();
+        this.trace = openTrace(format, microbenchmark, options, executionParams);
+        this.warmupParams = executionParams.getWarmup();
+    }
+
+    /**
+     * Creates the trace file for the run, if tracing is requested, supported by the benchmark mode,
+     * and there are measurement iterations to trace.
+     */
+    private static TraceFile openTrace(OutputFormat format, BenchmarkRecord microbenchmark, Options options, BenchmarkParams executionParams) {
+        if (options.getTrace() == null) {
+            return null;
+        }
+        Mode mode = microbenchmark.getMode();
+        if (mode != Mode.Throughput && mode != Mode.AverageTime) {
+            return null;
+        }
+        int iterations = executionParams.getIteration().getCount();
+        if (iterations <= 0) {
+            return null;
+        }
+        int every = (options.getTraceEvery() > 0) ? options.getTraceEvery() : Defaults.TRACE_EVERY;
+        try {
+            File file = File.createTempFile(microbenchmark.getUsername() + "-" + mode.shortLabel() + "-", ".trace", new File(options.getTrace()));
+            TraceFile trace = new TraceFile(file, microbenchmark.toLine(), executionParams.getThreads(), iterations, every);
+            format.println("# Trace: " + file.getAbsolutePath());
+            return trace;
+        } catch (IOException e) {
+            format.println("WARNING: Can not create the trace file, operations will not be traced: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Tells the trace which iteration the workers are about to run.
+     *
+     * @return trace for the iteration; null for the warmup iterations, which are not traced
+     */
+    private TraceFile traceIteration(IterationParams params) {
+        if (trace == null || params == warmupParams) {
+            return null;
+        }
+        trace.beginIteration(++measurementIterations);
+        return trace;
     }
 
     /**
@@ -73,6 +156,10 @@ public class LoopMicroBenchmarkHandler extends BaseMicroBenchmarkHandler {
      */
     @Override
     public IterationResult runIteration(IterationParams params, boolean last) {
+        if (usePersistentWorkers) {
+            return runPooledIteration(params, last);
+        }
+
         int numThreads = params.getThreads();
         TimeValue runtime = params.getTime();
 
@@ -82,12 +169,14 @@ public class LoopMicroBenchmarkHandler extends BaseMicroBenchmarkHandler {
         // result object to accumulate the results in
         IterationResult iterationResults = new IterationResult(microbenchmark, params);
 
-        InfraControl control = new InfraControl(numThreads, shouldSynchIterations, runtime, preSetupBarrier, preTearDownBarrier, last, timeUnit);
+        TraceFile iterationTrace = traceIteration(params);
+
+        InfraControl control = new InfraControl(numThreads, shouldSynchIterations, runtime, preSetupBarrier, preTearDownBarrier, last, timeUnit, microbenchmark.getActualParams(), targetRate, poisson, histogramPrecision, iterationTrace);
 
         // preparing the worker runnables
         BenchmarkTask[] runners = new BenchmarkTask[numThreads];
         for (int i = 0; i < runners.length; i++) {
-            runners[i] = new BenchmarkTask(threadLocal, control);
+            runners[i] = new BenchmarkTask(getInstanceProvider(i), control);
         }
 
         // submit tasks to threadpool
@@ -97,10 +186,8 @@ public class LoopMicroBenchmarkHandler extends BaseMicroBenchmarkHandler {
         }
 
         // wait for all workers to initialize and ready to go
-        try {
-            preSetupBarrier.await();
-        } catch (InterruptedException ex) {
-            log(ex);
+        if (!await(preSetupBarrier)) {
+            return abandon(iterationResults, results, control, "during setup");
         }
 
         // profilers start when iteration starts
@@ -115,23 +202,25 @@ public class LoopMicroBenchmarkHandler extends BaseMicroBenchmarkHandler {
         control.isDone = true;
 
         // wait for all workers to complete run and ready to proceed
-        try {
-            preTearDownBarrier.await();
-        } catch (InterruptedException ex) {
-            log(ex);
-        }
+        long deadline = System.nanoTime() + timeoutNs;
+        boolean completed = await(preTearDownBarrier);
 
         // profilers stop when iteration ends
         stopProfilers(iterationResults);
 
-        // Wait for the result, continuously polling the worker threads.
+        if (!completed) {
+            return abandon(iterationResults, results, control, "after its time is up");
+        }
+
+        // Wait for the results, polling each worker in turn until it completes.
         // The abrupt exception in any worker will float up here.
-        int expected = numThreads;
-        while (expected > 0) {
-            for (Future<Result> fr : results) {
+        long pollNs = Math.max(TimeUnit.MILLISECONDS.toNanos(10), runtime.convertTo(TimeUnit.NANOSECONDS) * 2);
+        List<Result> completedResults = new ArrayList<Result>(numThreads);
+        for (Future<Result> fr : results) {
+            while (true) {
                 try {
-                    fr.get(runtime.getTime() * 2, runtime.getTimeUnit());
-                    expected--;
+                    completedResults.add(fr.get(pollNs, TimeUnit.NANOSECONDS));
+                    break;
                 } catch (InterruptedException ex) {
                     log(ex);
                     iterationResults.clearResults();
@@ -145,36 +234,285 @@ public class LoopMicroBenchmarkHandler extends BaseMicroBenchmarkHandler {
                     }
                     return iterationResults;
                 } catch (TimeoutException e) {
-                    // do nothing, respin
+                    if (timeoutNs >= 0 && System.nanoTime() - deadline > 0) {
+                        return abandon(iterationResults, results, control, "during teardown");
+                    }
+                    // respin
+                }
+            }
+        }
+
+        for (Result r : completedResults) {
+            iterationResults.addResult(r);
+        }
+        return iterationResults;
+    }
+
+    /**
+     * Runs the iteration on the persistent workers.
+     * Mirrors {@link #runIteration(IterationParams, boolean)}, but the workers are not
+     * handed the new tasks, and they report into the preallocated slots.
+     */
+    private IterationResult runPooledIteration(IterationParams params, boolean last) {
+        int numThreads = params.getThreads();
+        TimeValue runtime = params.getTime();
+
+        CountDownLatch preSetupBarrier = new CountDownLatch(numThreads);
+        CountDownLatch preTearDownBarrier = new CountDownLatch(numThreads);
+
+        IterationResult iterationResults = new IterationResult(microbenchmark, params);
+
+        TraceFile iterationTrace = traceIteration(params);
+
+        InfraControl control = new InfraControl(numThreads, shouldSynchIterations, runtime, preSetupBarrier, preTearDownBarrier, last, timeUnit, microbenchmark.getActualParams(), targetRate, poisson, histogramPrecision, iterationTrace);
+
+        WorkerPool workers = getPool(numThreads);
+        workers.start(control, numThreads);
+
+        if (!await(preSetupBarrier)) {
+            return abandon(iterationResults, workers, numThreads, control, "during setup");
+        }
+
+        startProfilers();
+
+        try {
+            runtime.sleep();
+        } catch (InterruptedException e) {
+            // regardless...
+        }
+        control.isDone = true;
+
+        boolean completed = await(preTearDownBarrier);
+
+        stopProfilers(iterationResults);
+
+        if (!completed) {
+            return abandon(iterationResults, workers, numThreads, control, "after its time is up");
+        }
+
+        try {
+            if (!workers.await(timeoutNs)) {
+                return abandon(iterationResults, workers, numThreads, control, "during teardown");
+            }
+        } catch (InterruptedException ex) {
+            log(ex);
+            iterationResults.clearResults();
+            return iterationResults;
+        }
+
+        for (int i = 0; i < numThreads; i++) {
+            Throwable cause = workers.getError(i);
+            if (cause != null) {
+                log(cause);
+                iterationResults.clearResults();
+                if (shouldFailOnError) {
+                    throw new IllegalStateException(cause.getMessage(), cause);
                 }
+                return iterationResults;
             }
         }
 
-        // Get the results.
-        // Should previous loop allow us to get to this point, we can fully expect
-        // all the results ready without the exceptions.
+        for (int i = 0; i < numThreads; i++) {
+            iterationResults.addResult(workers.getResult(i));
+        }
+        iterationResults.setWorkerSkew(workers.getStartSkew(), workers.getStopSkew());
+
+        return iterationResults;
+    }
+
+    private WorkerPool getPool(int numThreads) {
+        if (pool != null && pool.size() < numThreads) {
+            pool.terminate(false);
+            pool = null;
+        }
+        if (pool == null) {
+            pool = new WorkerPool(numThreads, new HarnessThreadFactory(microbenchmark.getUsername(), placement),
+                    new WorkerPool.Body() {
+                        @Override
+                        public Result run(int worker, InfraControl control) throws Throwable {
+                            try {
+                                return invokeBenchmark(getInstanceProvider(worker).getInstance(), control);
+                            } catch (Throwable e) {
+                                releaseBarriers(control);
+                                throw e;
+                            }
+                        }
+                    });
+        }
+        return pool;
+    }
+
+    @Override
+    public void shutdown() {
+        if (pool != null) {
+            pool.terminate(abandoned);
+            pool = null;
+        }
+        if (trace != null) {
+            trace.close();
+        }
+        super.shutdown();
+    }
+
+    /**
+     * Waits on the iteration barrier, bounded by the iteration timeout, if any.
+     * <p>
+     * With the timeout, harness polls the barrier instead of queueing behind the workers: the
+     * released workers wake up each other one by one, and with many more workers than CPUs, the
+     * workers already spinning in the benchmark loop would delay the timeout indefinitely.
+     *
+     * @return false, if timed out
+     */
+    private boolean await(CountDownLatch latch) {
+        try {
+            if (timeoutNs < 0) {
+                latch.await();
+                return true;
+            }
+
+            long deadline = System.nanoTime() + timeoutNs;
+            while (!latch.await(BARRIER_POLL_NS, TimeUnit.NANOSECONDS)) {
+                if (System.nanoTime() - deadline > 0) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (InterruptedException ex) {
+            log(ex);
+            return true;
+        }
+    }
+
+    private static final long BARRIER_POLL_NS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static final long ABANDON_GRACE_NS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /**
+     * Abandons the hung iteration: dumps the worker threads, interrupts those, and keeps
+     * the results of the workers which managed to complete. The workers released from
+     * the harness barriers get the short grace period to complete.
+     */
+    private IterationResult abandon(IterationResult iterationResults, List<Future<Result>> results, InfraControl control, String phase) {
+        releaseHung(control, results.size(), phase);
+
+        long deadline = System.nanoTime() + ABANDON_GRACE_NS;
         for (Future<Result> fr : results) {
             try {
-                iterationResults.addResult(fr.get());
-            } catch (InterruptedException ex) {
-                throw new IllegalStateException("Impossible to be here");
-            } catch (ExecutionException ex) {
-                throw new IllegalStateException("Impossible to be here");
+                iterationResults.addResult(fr.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+            } catch (InterruptedException e) {
+                // no result then
+            } catch (ExecutionException e) {
+                // no result then
+            } catch (TimeoutException e) {
+                // no result then
+            } catch (CancellationException e) {
+                // no result then
             }
+            fr.cancel(true);
         }
 
+        iterationResults.markTimedOut();
+        abandoned = true;
         return iterationResults;
     }
 
+    /**
+     * Abandons the hung iteration on persistent workers. The pool is discarded,
+     * the next iteration starts with the fresh workers.
+     */
+    private IterationResult abandon(IterationResult iterationResults, WorkerPool workers, int numThreads, InfraControl control, String phase) {
+        releaseHung(control, numThreads, phase);
+
+        try {
+            workers.await(ABANDON_GRACE_NS);
+        } catch (InterruptedException e) {
+            // collect what we have
+        }
+
+        for (int i = 0; i < numThreads; i++) {
+            if (workers.isCompleted(i) && workers.getResult(i) != null) {
+                iterationResults.addResult(workers.getResult(i));
+            }
+        }
+
+        workers.terminate(true);
+        pool = null;
+
+        iterationResults.markTimedOut();
+        abandoned = true;
+        return iterationResults;
+    }
+
+    /**
+     * Dumps the worker threads, and lets the workers blocked on harness barriers through.
+     * The workers waiting in the synchronized warmup or warmdown for the hung ones are let
+     * through as well, so that they complete with their results.
+     */
+    private void releaseHung(InfraControl control, int numThreads, String phase) {
+        format.println("");
+        format.println("WARNING: Iteration timed out " + phase + ", abandoning it. Worker threads:");
+        format.println(Utils.threadDump(microbenchmark.getUsername() + "-worker"));
+
+        control.isDone = true;
+        control.warmupShouldWait = false;
+        control.warmdownShouldWait = false;
+        for (int i = 0; i < numThreads; i++) {
+            control.preSetupForce();
+            control.preTearDownForce();
+        }
+    }
+
+    /**
+     * Compensates for the harness barriers the failing worker would miss,
+     * we don't care about those anymore.
+     */
+    private void releaseBarriers(InfraControl control) {
+        control.preSetupForce();
+        control.preTearDownForce();
+
+        if (shouldSynchIterations) {
+            try {
+                control.announceWarmupReady();
+            } catch (Exception e1) {
+                // more threads than expected
+            }
+
+            try {
+                control.announceWarmdownReady();
+            } catch (Exception e1) {
+                // more threads than expected
+            }
+        }
+    }
+
+    /**
+     * Helper method for running the benchmark in a given instance.
+     */
+    private Result invokeBenchmark(Object instance, InfraControl control) throws Throwable {
+        Result result;
+        if (method != null) {
+            try {
+                result = (Result) method.invoke(instance, control);
+            } catch (IllegalAccessException e) {
+                throw new RuntimeException("Can't invoke " + method.getDeclaringClass().getName() + "." + method.getName(), e);
+            } catch (InvocationTargetException e) {
+                throw e.getCause(); // unwrap
+            }
+        } else {
+            throw new IllegalStateException("Unable to find method to run");
+        }
+        return result;
+    }
+
     /**
      * Worker body.
      */
     class BenchmarkTask implements Callable<Result> {
 
-        private final ThreadLocal<InstanceProvider> invocationHandler;
+        private final InstanceProvider invocationHandler;
         private final InfraControl control;
 
-        BenchmarkTask(ThreadLocal<InstanceProvider> invocationHandler, InfraControl control) {
+        BenchmarkTask(InstanceProvider invocationHandler, InfraControl control) {
             this.invocationHandler = invocationHandler;
             this.control = control;
         }
@@ -182,50 +520,14 @@ public class LoopMicroBenchmarkHandler extends BaseMicroBenchmarkHandler {
         @Override
         public Result call() throws Exception {
             try {
-                return invokeBenchmark(invocationHandler.get().getInstance(), control);
+                return invokeBenchmark(invocationHandler.getInstance(), control);
             } catch (Throwable e) {
-                // about to fail the iteration;
-                // compensate for missed sync-iteration latches, we don't care about that anymore
-                control.preSetupForce();
-                control.preTearDownForce();
-
-                if (shouldSynchIterations) {
-                    try {
-                        control.announceWarmupReady();
-                    } catch (Exception e1) {
-                        // more threads than expected
-                    }
-
-                    try {
-                        control.announceWarmdownReady();
-                    } catch (Exception e1) {
-                        // more threads than expected
-                    }
-                }
-
+                // about to fail the iteration
+                releaseBarriers(control);
                 throw new Exception(e); // wrapping Throwable
             }
         }
 
-        /**
-         * Helper method for running the benchmark in a given instance.
-         */
-        private Result invokeBenchmark(Object instance, InfraControl control) throws Throwable {
-            Result result;
-            if (method != null) {
-                try {
-                    result = (Result) method.invoke(instance, control);
-                } catch (IllegalAccessException e) {
-                    throw new RuntimeException("Can't invoke " + method.getDeclaringClass().getName() + "." + method.getName(), e);
-                } catch (InvocationTargetException e) {
-                    throw e.getCause(); // unwrap
-                }
-            } else {
-                throw new IllegalStateException("Unable to find method to run");
-            }
-            return result;
-        }
-
     }
 
 }
@@ -0,0 +1,378 @@
+/*
+ * Copyright (c) 2005, 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jmh.runner;
+
+import org.openjdk.jmh.link.LinkCodec;
+import org.openjdk.jmh.logic.results.RunResult;
+import org.openjdk.jmh.runner.options.Options;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only on-disk journal of the completed forks and benchmarks.
+ * <p>
+ * Each record is the benchmark, the fork index and the run result in the link
+ * encoding, prefixed with its length and checksum, so that the torn record at
+ * the end of the journal left by the crashed run is detected and dropped.
+ * Records are written as they arrive, and synced to the disk in batches.
+ * <p>
+ * The header carries the digest of the options which affect the results, and
+ * the journal written with the different options is not resumed: the forks
+ * completed with, say, another iteration count would be silently mixed with
+ * the new ones otherwise.
+ */
+class RunJournal {
+
+    private static final long MAGIC = 0x4A4D484A524E4C33L; // "JMHJRNL3"
+
+    /**
+     * Sync after this many records...
+     */
+    private static final int SYNC_BATCH = 16;
+
+    /**
+     * ...or after this much time since the last sync, whichever comes first.
+     */
+    private static final long SYNC_INTERVAL_NS = TimeUnit.SECONDS.toNanos(1);
+
+    private final File file;
+    private final String digest;
+    private final RandomAccessFile raf;
+
+    private final Map<BenchmarkRecord, RunResult> benchmarks;
+    private final Map<BenchmarkRecord, Map<Integer, RunResult>> forks;
+
+    private int unsynced;
+    private long lastSync;
+
+    /**
+     * Opens the journal.
+     *
+     * @param file journal file
+     * @param digest digest of the run options, see {@link #digest(Options)}
+     * @param resume true, if the completed records should be read back; otherwise, the journal is started afresh
+     * @throws IOException if journal can not be opened, or it already exists, and is not resumed,
+     *                     or it was written with the different options
+     */
+    RunJournal(File file, String digest, boolean resume) throws IOException {
+        if (!resume && file.length() > 0) {
+            throw new IOException("Run journal already exists, resume it or remove the file: " + file);
+        }
+
+        this.file = file;
+        this.digest = digest;
+        this.benchmarks = new TreeMap<BenchmarkRecord, RunResult>();
+        this.forks = new TreeMap<BenchmarkRecord, Map<Integer, RunResult>>();
+
+        long validLength = 0;
+        if (resume && file.exists()) {
+            validLength = read();
+        }
+
+        raf = new RandomAccessFile(file, "rw");
+        if (validLength == 0) {
+            raf.setLength(0);
+            raf.writeLong(MAGIC);
+            raf.writeInt(LinkCodec.getVersion());
+            raf.writeUTF(digest);
+        } else {
+            // drop the torn tail, if any
+            raf.setLength(validLength);
+            raf.seek(validLength);
+        }
+        raf.getFD().sync();
+        lastSync = System.nanoTime();
+    }
+
+    private long read() throws IOException {
+        DataInputStream dis = new DataInputStream(new FileInputStream(file));
+        try {
+            try {
+                if (dis.readLong() != MAGIC) {
+                    throw new IOException("Not a run journal: " + file);
+                }
+                if (dis.readInt() != LinkCodec.getVersion()) {
+                    throw new IOException("Run journal is incompatible with the current harness: " + file);
+                }
+                if (!digest.equals(dis.readUTF())) {
+                    throw new IOException("Run journal was written with the different benchmark options, " +
+                            "run with the same options to resume it, or remove the file: " + file);
+                }
+            } catch (EOFException e) {
+                return 0;
+            }
+            long valid = 8 + 4 + 2 + digest.length();
+
+            while (true) {
+                byte[] buf;
+                long crc;
+                try {
+                    int len = dis.readInt();
+                    crc = dis.readLong();
+                    if (len < 0 || len > file.length()) {
+                        break;
+                    }
+                    buf = new byte[len];
+                    dis.readFully(buf);
+                } catch (EOFException e) {
+                    break;
+                }
+
+                CRC32 actual = new CRC32();
+                actual.update(buf);
+                if (actual.getValue() != crc) {
+                    break;
+                }
+
+                remember(Entry.decode(buf));
+
+                valid += 4 + 8 + buf.length;
+            }
+            return valid;
+        } finally {
+            dis.close();
+        }
+    }
+
+    private void remember(Entry entry) {
+        if (entry.fork < 0) {
+            benchmarks.put(entry.benchmark, entry.result);
+        } else {
+            Map<Integer, RunResult> map = forks.get(entry.benchmark);
+            if (map == null) {
+                map = new HashMap<Integer, RunResult>();
+                forks.put(entry.benchmark, map);
+            }
+            map.put(entry.fork, entry.result);
+        }
+    }
+
+    /**
+     * Computes the digest of the options which affect the benchmark results.
+     * The output, journal and benchmark selection options are not included,
+     * so that the run can be resumed for the subset of benchmarks.
+     *
+     * @param options run options
+     * @return hex digest
+     */
+    static String digest(Options options) {
+        List<String> modes = new ArrayList<String>();
+        if (options.getBenchModes() != null) {
+            for (Object mode : options.getBenchModes()) {
+                modes.add(String.valueOf(mode));
+            }
+        }
+        Collections.sort(modes);
+
+        Map<String, List<String>> params = new TreeMap<String, List<String>>();
+        if (options.getParameters() != null) {
+            params.putAll(options.getParameters());
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("wi=").append(options.getWarmupIterations()).append('\n');
+        sb.append("w=").append(options.getWarmupTime()).append('\n');
+        sb.append("wm=").append(options.getWarmupMode()).append('\n');
+        sb.append("wmb=").append(options.getWarmupMicros()).append('\n');
+        sb.append("wss=").append(options.shouldWarmupToSteadyState()).append('\n');
+        sb.append("wjq=").append(options.shouldWarmupToJitQuiescence()).append('\n');
+        sb.append("i=").append(options.getIterations()).append('\n');
+        sb.append("r=").append(options.getRuntime()).append('\n');
+        sb.append("mi=").append(options.getMinIterations()).append('\n');
+        sb.append("te=").append(options.getTargetError()).append('\n');
+        sb.append("f=").append(options.getForkCount()).append('\n');
+        sb.append("wf=").append(options.getWarmupForkCount()).append('\n');
+        sb.append("t=").append(options.getThreads()).append('\n');
+        sb.append("ts=").append(options.getThreadSweep()).append('\n');
+        sb.append("si=").append(options.getSynchIterations()).append('\n');
+        sb.append("bm=").append(modes).append('\n');
+        sb.append("tu=").append(options.getTimeUnit()).append('\n');
+        sb.append("rate=").append(options.getTargetRate()).append('\n');
+        sb.append("ls=").append(options.getLoadSchedule()).append('\n');
+        sb.append("lsw=").append(options.getLoadSweep()).append('\n');
+        sb.append("jvm=").append(options.getJvm()).append('\n');
+        sb.append("jvmArgs=").append(options.getJvmArgs()).append('\n');
+        sb.append("p=").append(params).append('\n');
+
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-1").digest(sb.toString().getBytes("UTF-8"));
+            StringBuilder hex = new StringBuilder();
+            for (byte b : hash) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+                hex.append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @param benchmark benchmark
+     * @return result of the benchmark completed earlier; null, if it had not completed
+     */
+    public synchronized RunResult getCompleted(BenchmarkRecord benchmark) {
+        return benchmarks.get(benchmark);
+    }
+
+    /**
+     * @param benchmark benchmark
+     * @param fork measured fork index, starting from zero
+     * @return result of the fork completed earlier; null, if it had not completed
+     */
+    public synchronized RunResult getCompleted(BenchmarkRecord benchmark, int fork) {
+        Map<Integer, RunResult> map = forks.get(benchmark);
+        return (map == null) ? null : map.get(fork);
+    }
+
+    /**
+     * @param benchmark benchmark
+     * @return true, if any fork of the benchmark had completed earlier
+     */
+    public synchronized boolean hasCompletedForks(BenchmarkRecord benchmark) {
+        Map<Integer, RunResult> map = forks.get(benchmark);
+        return map != null && !map.isEmpty();
+    }
+
+    public synchronized int getCompletedBenchmarkCount() {
+        return benchmarks.size();
+    }
+
+    public synchronized int getCompletedForkCount() {
+        int count = 0;
+        for (Map<Integer, RunResult> map : forks.values()) {
+            count += map.size();
+        }
+        return count;
+    }
+
+    /**
+     * Records the completed benchmark.
+     */
+    public void benchmarkCompleted(BenchmarkRecord benchmark, RunResult result) throws IOException {
+        append(new Entry(benchmark, -1, result));
+    }
+
+    /**
+     * Records the completed measured fork.
+     */
+    public void forkCompleted(BenchmarkRecord benchmark, int fork, RunResult result) throws IOException {
+        append(new Entry(benchmark, fork, result));
+    }
+
+    private synchronized void append(Entry entry) throws IOException {
+        byte[] buf = entry.encode();
+
+        CRC32 crc = new CRC32();
+        crc.update(buf);
+
+        // single write, so the record is either appended whole, or torn at the end
+        ByteArrayOutputStream rec = new ByteArrayOutputStream(buf.length + 12);
+        DataOutputStream dos = new DataOutputStream(rec);
+        dos.writeInt(buf.length);
+        dos.writeLong(crc.getValue());
+        dos.write(buf);
+        dos.close();
+        raf.write(rec.toByteArray());
+
+        remember(entry);
+
+        unsynced++;
+        if (unsynced >= SYNC_BATCH || System.nanoTime() - lastSync >= SYNC_INTERVAL_NS) {
+            sync();
+        }
+    }
+
+    private void sync() throws IOException {
+        raf.getFD().sync();
+        unsynced = 0;
+        lastSync = System.nanoTime();
+    }
+
+    public synchronized void close() throws IOException {
+        try {
+            sync();
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static class Entry {
+        private final BenchmarkRecord benchmark;
+        private final int fork;
+        private final RunResult result;
+
+        Entry(BenchmarkRecord benchmark, int fork, RunResult result) {
+            this.benchmark = benchmark;
+            this.fork = fork;
+            this.result = result;
+        }
+
+        byte[] encode() throws IOException {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            DataOutputStream dos = new DataOutputStream(bos);
+            dos.writeUTF(benchmark.toLine());
+            dos.writeInt(fork);
+            dos.write(LinkCodec.encode(result));
+            dos.close();
+            return bos.toByteArray();
+        }
+
+        static Entry decode(byte[] buf) throws IOException {
+            ByteArrayInputStream bis = new ByteArrayInputStream(buf);
+            DataInputStream dis = new DataInputStream(bis);
+            BenchmarkRecord benchmark = new BenchmarkRecord(dis.readUTF());
+            int fork = dis.readInt();
+            byte[] result = Arrays.copyOfRange(buf, buf.length - bis.available(), buf.length);
+            return new Entry(benchmark, fork, LinkCodec.decodeRunResult(result));
+        }
+    }
+
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2005, 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jmh.runner;
+
+import org.openjdk.jmh.logic.results.IterationResult;
+import org.openjdk.jmh.logic.results.RunResult;
+import org.openjdk.jmh.output.format.IterationType;
+import org.openjdk.jmh.runner.parameters.BenchmarkParams;
+import org.openjdk.jmh.runner.parameters.IterationParams;
+
+import java.util.Map;
+
+/**
+ * Receives the results as the run progresses, along with the output format.
+ * <p>
+ * Listeners are called from the harness threads, possibly from different threads when
+ * parallel forks are enabled, but never concurrently: the calls are serialized with
+ * the output of the forks. Listeners should return quickly, as the output waits on them.
+ * Exceptions thrown by the listener are reported, and do not affect the run.
+ *
+ * @see Runner#addListener(RunListener)
+ */
+public interface RunListener {
+
+    /**
+     * Benchmark starts, either in this VM, or in the forked VM.
+     * Called once for every fork of the benchmark.
+     *
+     * @param benchmark benchmark
+     * @param params benchmark parameters
+     */
+    void benchmarkStarted(BenchmarkRecord benchmark, BenchmarkParams params);
+
+    /**
+     * Benchmark iteration had finished.
+     *
+     * @param benchmark benchmark
+     * @param params iteration parameters
+     * @param iteration iteration number, starting from one
+     * @param type iteration type
+     * @param result iteration result
+     */
+    void iterationFinished(BenchmarkRecord benchmark, IterationParams params, int iteration, IterationType type, IterationResult result);
+
+    /**
+     * Measured fork of the benchmark had finished.
+     *
+     * @param benchmark benchmark
+     * @param fork fork index, starting from zero
+     * @param result fork result; null if fork had failed
+     */
+    void forkFinished(BenchmarkRecord benchmark, int fork, RunResult result);
+
+    /**
+     * Benchmark had finished in all its forks.
+     *
+     * @param benchmark benchmark
+     * @param result result merged over the forks; null if benchmark had failed
+     */
+    void benchmarkFinished(BenchmarkRecord benchmark, RunResult result);
+
+    /**
+     * Run had finished, either completed, or failed. Once the benchmarks had started to run,
+     * this is always called, including when the run is cancelled.
+     *
+     * @param results results of all the benchmarks; if the run had failed, the results of the benchmarks
+     *                finished before that, along with the partial results of those which had completed
+     *                some of their forks
+     * @param failure failure which had stopped the run; null, if the run had completed
+     */
+    void runFinished(Map<BenchmarkRecord, RunResult> results, Throwable failure);
+
+}
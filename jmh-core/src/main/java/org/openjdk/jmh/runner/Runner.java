@@ -27,15 +27,27 @@ package org.openjdk.jmh.runner;
 import org.openjdk.jmh.ForkedMain;
 import org.openjdk.jmh.annotations.Fork;
 import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.link.AgentClient;
 import org.openjdk.jmh.link.BinaryLinkServer;
+import org.openjdk.jmh.link.CoordinatorServer;
+import org.openjdk.jmh.logic.results.IterationResult;
+import org.openjdk.jmh.logic.results.LoadCurve;
 import org.openjdk.jmh.logic.results.RunResult;
 import org.openjdk.jmh.output.OutputFormatFactory;
+import org.openjdk.jmh.output.format.IterationType;
 import org.openjdk.jmh.output.format.OutputFormat;
+import org.openjdk.jmh.runner.options.AffinityPolicy;
+import org.openjdk.jmh.runner.options.ExecutionOrder;
 import org.openjdk.jmh.runner.options.Options;
 import org.openjdk.jmh.runner.options.WarmupMode;
+import org.openjdk.jmh.runner.parameters.BenchmarkParams;
 import org.openjdk.jmh.runner.parameters.Defaults;
+import org.openjdk.jmh.runner.parameters.TimeValue;
 import org.openjdk.jmh.util.AnnotationUtils;
+import org.openjdk.jmh.util.CpuTopology;
+import org.openjdk.jmh.util.HardwareFingerprint;
 import org.openjdk.jmh.util.InputStreamDrainer;
+import org.openjdk.jmh.util.ThreadAffinity;
 import org.openjdk.jmh.util.Utils;
 
 import java.io.BufferedOutputStream;
@@ -47,15 +59,26 @@ import java.io.PrintStream;
 import java.lang.management.ManagementFactory;
 import java.lang.management.RuntimeMXBean;
 import java.lang.reflect.Method;
+import java.net.InetAddress;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Random;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -69,10 +92,45 @@ import java.util.logging.Logger;
 public class Runner extends BaseRunner {
 
     private final MicroBenchmarkList list;
+    private final AtomicInteger forkIds = new AtomicInteger();
+
+    /**
+     * CPUs the forks are allowed to run on.
+     */
+    private int[] forkCpus;
+    private final AtomicLong forkStartupTotal = new AtomicLong();
+    private final AtomicLong forkStartupCount = new AtomicLong();
+    private ForkStartup forkStartup;
+    private RunJournal journal;
+    private final ListeningOutputFormat listeners;
 
     public Runner(Options options) {
-        super(options, createOutputFormat(options));
+        this(options, new ListeningOutputFormat(createOutputFormat(options)));
+    }
+
+    private Runner(Options options, ListeningOutputFormat out) {
+        super(options, out);
         this.list = MicroBenchmarkList.defaultList();
+        this.listeners = out;
+    }
+
+    /**
+     * Adds the listener to receive the results as the run progresses.
+     * The output format still receives all the results as usual.
+     *
+     * @param listener listener to add
+     */
+    public void addListener(RunListener listener) {
+        listeners.addListener(listener);
+    }
+
+    /**
+     * Removes the listener added earlier.
+     *
+     * @param listener listener to remove
+     */
+    public void removeListener(RunListener listener) {
+        listeners.removeListener(listener);
     }
 
     /** Setup helper method, creates OutputFormat according to argv options. */
@@ -121,6 +179,27 @@ public class Runner extends BaseRunner {
         }
     }
 
+    /**
+     * Run benchmarks in the background thread.
+     * Cancelling the returned future interrupts the run: the running forks are killed,
+     * and no further benchmarks are started.
+     *
+     * @return future of the map of benchmark results
+     */
+    public Future<Map<BenchmarkRecord, RunResult>> runAsync() {
+        FutureTask<Map<BenchmarkRecord, RunResult>> task = new FutureTask<Map<BenchmarkRecord, RunResult>>(
+                new Callable<Map<BenchmarkRecord, RunResult>>() {
+                    @Override
+                    public Map<BenchmarkRecord, RunResult> call() throws Exception {
+                        return run();
+                    }
+                });
+
+        Thread thread = new Thread(task, "jmh-runner");
+        thread.start();
+        return task;
+    }
+
     /**
      * Run benchmarks.
      *
@@ -141,43 +220,63 @@ public class Runner extends BaseRunner {
             list();
         }
 
-        // override the benchmark types;
-        // this may yield new benchmark records
-        if (options.getBenchModes() != null) {
-            List<BenchmarkRecord> newBenchmarks = new ArrayList<BenchmarkRecord>();
+        benchmarks = expandThreads(expandParams(expandModes(benchmarks)));
+
+        if (options.getTargetRate() <= 0 && options.getLoadSweep().isEmpty()) {
             for (BenchmarkRecord br : benchmarks) {
-                for (Mode m : options.getBenchModes()) {
-                    newBenchmarks.add(br.cloneWith(m));
+                if (br.getMode() == Mode.OpenLoop) {
+                    throw new IllegalArgumentException("OpenLoop mode requires the target rate, set it with -rate");
                 }
-
             }
+        }
 
-            benchmarks.clear();
-            benchmarks.addAll(newBenchmarks);
+        if (options.getTrace() != null) {
+            if (options.getTraceEvery() != -1 && options.getTraceEvery() < 1) {
+                throw new IllegalArgumentException("Trace interval should be positive: " + options.getTraceEvery());
+            }
+            File dir = new File(options.getTrace());
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new RunnerException(new IOException("Can not create the trace directory: " + dir));
+            }
+            out.println("# Tracing operations to: " + dir.getAbsolutePath());
         }
 
-        // clone with all the modes
-        List<BenchmarkRecord> newBenchmarks = new ArrayList<BenchmarkRecord>();
-        for (BenchmarkRecord br : benchmarks) {
-            if (br.getMode() == Mode.All) {
-                for (Mode mode : Mode.values()) {
-                    if (mode == Mode.All) continue;
-                    newBenchmarks.add(br.cloneWith(mode));
-                }
-            } else {
-                newBenchmarks.add(br);
+        if (options.getJournal() != null) {
+            try {
+                journal = new RunJournal(new File(options.getJournal()), RunJournal.digest(options), options.shouldResume());
+            } catch (IOException e) {
+                throw new RunnerException(e);
+            }
+            out.println("# Run journal: " + journal.getFile());
+            if (options.shouldResume()) {
+                out.println("# Resuming: " + journal.getCompletedBenchmarkCount() + " benchmarks and " +
+                        journal.getCompletedForkCount() + " forks completed earlier");
             }
+        } else if (options.shouldResume()) {
+            throw new IllegalArgumentException("Resuming requires the run journal");
         }
 
-        benchmarks.clear();
-        benchmarks.addAll(newBenchmarks);
+        Map<BenchmarkRecord, RunResult> results = null;
+        Throwable failure = null;
+        try {
+            results = options.getLoadSweep().isEmpty() ? runBenchmarks(benchmarks) : runLoadSweep(benchmarks);
+        } catch (RuntimeException e) {
+            failure = e;
+            throw e;
+        } catch (Error e) {
+            failure = e;
+            throw e;
+        } finally {
+            listeners.runFinished(failure == null ? results : null, failure);
 
-        Map<BenchmarkRecord, RunResult> results;
-        if ((!options.getWarmupMicros().isEmpty()) ||
-                (options.getWarmupMode() == WarmupMode.BEFOREANY)) {
-            results = runBulkWarmupBenchmarks(benchmarks);
-        } else {
-            results = runBenchmarks(benchmarks);
+            if (journal != null) {
+                try {
+                    journal.close();
+                } catch (IOException e) {
+                    out.println("WARNING: Unable to close the run journal: " + e.getMessage());
+                }
+                journal = null;
+            }
         }
 
         out.flush();
@@ -187,51 +286,47 @@ public class Runner extends BaseRunner {
     }
 
     /**
-     * Run specified warmup microbenchmarks prior to running any requested mircobenchmarks.
-     * TODO: Currently valid only for non-external JVM runs
+     * Runs the benchmark in this VM, unless the journal says it had completed earlier.
      */
-    private Map<BenchmarkRecord, RunResult> runBulkWarmupBenchmarks(Set<BenchmarkRecord> benchmarks) {
-        out.startRun();
-
-        // list of micros executed before iteration
-        Set<BenchmarkRecord> warmupMicros = new TreeSet<BenchmarkRecord>();
-
-        List<String> warmupMicrosRegexp = options.getWarmupMicros();
-        if (warmupMicrosRegexp != null && !warmupMicrosRegexp.isEmpty()) {
-            warmupMicros.addAll(list.find(out, warmupMicrosRegexp, Collections.<String>emptyList()));
-        }
-        if (options.getWarmupMode() == WarmupMode.BEFOREANY) {
-            warmupMicros.addAll(benchmarks);
+    private RunResult runEmbedded(BenchmarkRecord benchmark, boolean doWarmup) {
+        String banner = "# Fork: N/A, test runs in same VM";
+        RunResult r = (journal != null) ? journal.getCompleted(benchmark) : null;
+        if (r != null) {
+            replayResult(benchmark, banner + ", restored from the journal", r);
+            return r;
         }
 
-        if (!warmupMicros.isEmpty()) {
-            // run warmup iterations of the requested benchmarks before running
-            // any measured iterations of any of the requested benchmarks. This
-            // has the effect of getting all the classes loaded getting the JITed
-            // code the the final state, possibly invalidating optimizations that
-            // might not be invalided until later and quite possibly invalidated
-            // during measurement iteration causing a performance shift or simply
-            // increased variance.
-            // currently valid only for non-external JVM runs
-
-            int count = 0;
-            for (BenchmarkRecord benchmark : warmupMicros) {
-                out.println("# Fork: N/A, bulk warmup in progress, " + (++count) + " of " + warmupMicros.size());
-                runBenchmark(benchmark, true, false);
-                out.println("");
+        out.println(banner);
+        r = runBenchmark(benchmark, doWarmup, true);
+        if (journal != null && r != null) {
+            try {
+                journal.benchmarkCompleted(benchmark, r);
+            } catch (IOException e) {
+                out.println("WARNING: Unable to write the run journal: " + e.getMessage());
             }
         }
-        // run microbenchmarks
-        //
-        Map<BenchmarkRecord, RunResult> results = new TreeMap<BenchmarkRecord, RunResult>();
-        for (BenchmarkRecord benchmark : benchmarks) {
-            out.println("# Fork: N/A, test runs in same VM");
-            RunResult result = runBenchmark(benchmark, false, true);
-            results.put(benchmark, RunResult.merge(results.get(benchmark), result));
-        }
-        out.endRun();
+        return r;
+    }
 
-        return results;
+    /**
+     * Feeds the results measured elsewhere, e.g. restored from the journal, to the output, as if those were just measured.
+     */
+    private void replayResult(BenchmarkRecord benchmark, String banner, RunResult result) {
+        Method method = MicroBenchmarkHandlers.findBenchmarkMethod(benchmark);
+        BenchmarkParams params = BenchmarkParams.makeParams(options, benchmark, method, false, true, getTopology());
+
+        // concurrent forks also print under this lock
+        synchronized (out) {
+            out.println(banner);
+            out.startBenchmark(benchmark, params, options.isVerbose());
+            int i = 0;
+            for (IterationResult ir : result.getRawIterationResults()) {
+                i++;
+                out.iteration(benchmark, ir.getParams(), i, IterationType.MEASUREMENT);
+                out.iterationResult(benchmark, ir.getParams(), i, IterationType.MEASUREMENT, ir);
+            }
+            out.endBenchmark(benchmark, result);
+        }
     }
 
     private int decideForks(int optionForks, int benchForks) {
@@ -255,10 +350,72 @@ public class Runner extends BaseRunner {
     }
 
     private Map<BenchmarkRecord, RunResult> runBenchmarks(Set<BenchmarkRecord> benchmarks) {
+        out.startRun();
+        Map<BenchmarkRecord, RunResult> results = measureBenchmarks(benchmarks);
+        out.endRun();
+        return results;
+    }
+
+    /**
+     * Measures the maximum throughput of every benchmark, and then runs it in the open loop at
+     * the requested fractions of that maximum, from the lowest up. The benchmark is not stepped
+     * any further once it falls behind the target rate.
+     */
+    private Map<BenchmarkRecord, RunResult> runLoadSweep(Set<BenchmarkRecord> benchmarks) {
+        Set<BenchmarkRecord> probes = new TreeSet<BenchmarkRecord>();
+        for (BenchmarkRecord br : benchmarks) {
+            probes.add(br.cloneWith(Mode.Throughput).cloneWithTargetRate(-1));
+        }
+
+        List<Integer> steps = new ArrayList<Integer>(options.getLoadSweep());
+        Collections.sort(steps);
+
+        out.startRun();
+        Map<BenchmarkRecord, RunResult> results = measureBenchmarks(probes);
+
+        // open-loop benchmark, mapped to its maximum throughput
+        Map<BenchmarkRecord, Double> maxRates = new TreeMap<BenchmarkRecord, Double>();
+        for (BenchmarkRecord probe : probes) {
+            RunResult r = results.get(probe);
+            double max = (r != null && !r.getRawIterationResults().isEmpty()) ? LoadCurve.opsPerSecond(r.getPrimaryResult()) : -1;
+            if (max > 0) {
+                maxRates.put(probe.cloneWith(Mode.OpenLoop), max);
+            } else {
+                out.println("WARNING: Maximum throughput of " + probe.getUsername() + " is not known, skipping its load sweep");
+            }
+        }
+
+        for (int step : steps) {
+            if (maxRates.isEmpty()) {
+                break;
+            }
+            checkInterrupted();
+
+            Set<BenchmarkRecord> stepBenchmarks = new TreeSet<BenchmarkRecord>();
+            for (Map.Entry<BenchmarkRecord, Double> e : maxRates.entrySet()) {
+                stepBenchmarks.add(e.getKey().cloneWithTargetRate(e.getValue() * step / 100));
+            }
+
+            Map<BenchmarkRecord, RunResult> stepResults = measureBenchmarks(stepBenchmarks);
+            results.putAll(stepResults);
+
+            for (BenchmarkRecord br : stepBenchmarks) {
+                RunResult r = stepResults.get(br);
+                if (r == null || r.getRawIterationResults().isEmpty() ||
+                        LoadCurve.isSaturated(br.getTargetRate(), r.getPrimaryResult())) {
+                    maxRates.remove(br.cloneWithTargetRate(-1));
+                }
+            }
+        }
+
+        out.endRun();
+        return results;
+    }
+
+    private Map<BenchmarkRecord, RunResult> measureBenchmarks(Set<BenchmarkRecord> benchmarks) {
         Set<BenchmarkRecord> embedded = new TreeSet<BenchmarkRecord>();
         Set<BenchmarkRecord> forked = new TreeSet<BenchmarkRecord>();
 
-        out.startRun();
         for (BenchmarkRecord benchmark : benchmarks) {
             int f = decideForks(options.getForkCount(), benchForks(benchmark));
             if (f > 0) {
@@ -268,40 +425,408 @@ public class Runner extends BaseRunner {
             }
         }
 
+        // forked VMs do their own bulk warmup
+        if (!embedded.isEmpty() && isBulkWarmup()) {
+            runBulkWarmup(findBulkWarmupBenchmarks(list, embedded), "N/A");
+        }
+
+        ExecutionOrder order = options.getExecutionOrder();
+        Random random = null;
+        if (order == ExecutionOrder.RANDOMIZED) {
+            long seed = (options.getSeed() != null) ? options.getSeed() : new Random().nextLong();
+            random = new Random(seed);
+            out.println("# Execution order: " + order + ", seed: " + seed);
+        } else if (order != ExecutionOrder.SEQUENTIAL) {
+            out.println("# Execution order: " + order);
+        }
+
+        List<BenchmarkRecord> embeddedOrder = new ArrayList<BenchmarkRecord>(embedded);
+        if (random != null) {
+            Collections.shuffle(embeddedOrder, random);
+        }
+
         Map<BenchmarkRecord, RunResult> results = new TreeMap<BenchmarkRecord, RunResult>();
-        for (BenchmarkRecord benchmark : embedded) {
-            out.println("# Fork: N/A, test runs in same VM");
-            RunResult r = runBenchmark(benchmark, true, true);
+        for (BenchmarkRecord benchmark : embeddedOrder) {
+            checkInterrupted();
+            RunResult r = runEmbedded(benchmark, options.getWarmupMode() != WarmupMode.BEFOREANY);
+            listeners.benchmarkFinished(benchmark, r);
             results.put(benchmark, RunResult.merge(results.get(benchmark), r));
         }
 
-        Map<BenchmarkRecord, RunResult> separateResults = runSeparate(forked);
+        Map<BenchmarkRecord, RunResult> separateResults;
+        if (options.getCoordinatorPort() >= 0) {
+            separateResults = runDistributed(forked, random);
+        } else {
+            separateResults = runSeparate(forked, order, random);
+        }
         for (Map.Entry<BenchmarkRecord, RunResult> e : separateResults.entrySet()) {
             results.put(e.getKey(), RunResult.merge(results.get(e.getKey()), e.getValue()));
         }
 
-        out.endRun();
-
         return results;
     }
 
-    private Map<BenchmarkRecord, RunResult> runSeparate(Set<BenchmarkRecord> benchmarksToFork) {
+    private Map<BenchmarkRecord, RunResult> runSeparate(Set<BenchmarkRecord> benchmarksToFork, ExecutionOrder order, Random random) {
+        forkCpus = CpuTopology.allowedCpus();
+        boolean harnessPinned = false;
+
         BinaryLinkServer server = null;
         try {
+            // link server and stream drainers inherit the affinity from this thread
+            harnessPinned = pinHarness(benchmarksToFork);
+
             server = new BinaryLinkServer(options, out);
-            for (BenchmarkRecord benchmark : benchmarksToFork) {
-                runSeparateMicroBenchmark(server, benchmark, server.getHost(), server.getPort());
+
+            if (options.shouldUseFastStartup()) {
+                forkStartup = new ForkStartup(options.getJvm());
+                out.println("# Fast fork startup: " +
+                        (forkStartup.supportsArgFiles() ? "argument files" : "no argument files") + ", " +
+                        (forkStartup.supportsDynamicArchive() ? "AppCDS archives" : "no AppCDS archives"));
+            }
+
+            Map<BenchmarkRecord, RunResult> results;
+            if (order != ExecutionOrder.SEQUENTIAL) {
+                results = runSeparatePlanned(server, benchmarksToFork, order, random);
+            } else if (options.getParallelForks() > 1) {
+                results = runSeparateParallel(server, benchmarksToFork);
+            } else {
+                results = new TreeMap<BenchmarkRecord, RunResult>();
+                for (BenchmarkRecord benchmark : benchmarksToFork) {
+                    checkInterrupted();
+                    RunResult r = runSeparateMicroBenchmark(server, benchmark, null);
+                    results.put(benchmark, RunResult.merge(results.get(benchmark), r));
+                }
+            }
+
+            long count = forkStartupCount.get();
+            if (count > 0) {
+                String msg = "# Average fork launch latency: " + TimeUnit.NANOSECONDS.toMillis(forkStartupTotal.get() / count) + " ms over " + count + " forks";
+                if (forkStartup != null) {
+                    out.println(msg);
+                } else {
+                    out.verbosePrintln(msg);
+                }
             }
-            return server.getResults();
+            return results;
         } catch (IOException e) {
             throw new IllegalStateException(e);
         } finally {
             if (server != null) {
                 server.terminate();
             }
+            if (harnessPinned) {
+                ThreadAffinity.pinCurrentThread(forkCpus);
+            }
+        }
+    }
+
+    /**
+     * Hands the forked benchmarks out to the agents, and collects their results as those come.
+     * Benchmarks are the work items; their forks run on the single agent.
+     */
+    private Map<BenchmarkRecord, RunResult> runDistributed(Set<BenchmarkRecord> benchmarksToFork, Random random) {
+        Map<BenchmarkRecord, RunResult> results = new TreeMap<BenchmarkRecord, RunResult>();
+
+        List<BenchmarkRecord> plan = new ArrayList<BenchmarkRecord>();
+        for (BenchmarkRecord benchmark : benchmarksToFork) {
+            RunResult r = (journal != null) ? journal.getCompleted(benchmark) : null;
+            if (r != null) {
+                replayResult(benchmark, "# Agent: N/A, restored from the journal", r);
+                listeners.benchmarkFinished(benchmark, r);
+                results.put(benchmark, r);
+            } else {
+                plan.add(benchmark);
+            }
+        }
+        if (random != null) {
+            Collections.shuffle(plan, random);
+        }
+        if (plan.isEmpty()) {
+            return results;
+        }
+
+        CoordinatorServer server = null;
+        try {
+            server = new CoordinatorServer(options, out, plan);
+            out.println("# Coordinator: waiting for agents on " + server.getHost() + ":" + server.getPort() + ", " +
+                    plan.size() + " benchmarks to hand out");
+            out.println("# Coordinator: start the agents with --agent " + server.getToken() + "@" + server.getHost() + ":" + server.getPort());
+
+            for (int i = 0; i < plan.size(); i++) {
+                CoordinatorServer.Completed c = server.take();
+                BenchmarkRecord benchmark = c.getBenchmark();
+                RunResult r = c.getResult();
+                if (r == null) {
+                    out.println("WARNING: No results for \"" + benchmark.getUsername() + "\" from agent " + c.getAgent());
+                    continue;
+                }
+
+                replayResult(benchmark, "# Agent: " + c.getAgent(), r);
+                if (!r.isPartial()) {
+                    journalBenchmark(benchmark, r);
+                }
+                listeners.benchmarkFinished(benchmark, r);
+                results.put(benchmark, RunResult.merge(results.get(benchmark), r));
+            }
+            out.println("# Coordinator: all benchmarks are done on " + server.getFingerprint());
+            return results;
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Run is interrupted", e);
+        } finally {
+            if (server != null) {
+                server.terminate();
+            }
+        }
+    }
+
+    /**
+     * Runs as the agent: pulls the benchmarks from the coordinator, runs them in the local forks,
+     * and pushes the results back, until the coordinator has no more work.
+     * All options come from the coordinator.
+     *
+     * @param address coordinator token and address, TOKEN@HOST:PORT
+     * @throws RunnerException if coordinator is not reachable, or had rejected this agent
+     */
+    public static void runAgent(String address) throws RunnerException {
+        int at = address.indexOf('@');
+        int idx = address.lastIndexOf(':');
+        if (at <= 0 || idx <= at + 1) {
+            throw new IllegalArgumentException("Coordinator address should be in TOKEN@HOST:PORT format: " + address);
+        }
+        String token = address.substring(0, at);
+        String host = address.substring(at + 1, idx);
+        int port = Integer.parseInt(address.substring(idx + 1));
+
+        AgentClient agent = null;
+        try {
+            String name = InetAddress.getLocalHost().getHostName() + "/" + Utils.getPid();
+            agent = new AgentClient(host, port, token, name, HardwareFingerprint.forCurrentMachine());
+            Options options = agent.requestOptions();
+            new Runner(options).serveAgent(agent);
+        } catch (IOException e) {
+            throw new RunnerException(e);
+        } finally {
+            if (agent != null) {
+                try {
+                    agent.close();
+                } catch (IOException e) {
+                    // coordinator is gone already
+                }
+            }
+        }
+    }
+
+    private void serveAgent(AgentClient agent) throws IOException {
+        out.startRun();
+        BenchmarkRecord benchmark;
+        while ((benchmark = agent.requestWork()) != null) {
+            checkInterrupted();
+            RunResult r = runSeparate(Collections.singleton(benchmark), ExecutionOrder.SEQUENTIAL, null).get(benchmark);
+            if (!agent.pushResult(benchmark, r) && r != null) {
+                out.println("WARNING: Results for \"" + benchmark.getUsername() + "\" can not be sent to the coordinator without the Java serialization");
+            }
+        }
+        out.endRun();
+        out.flush();
+        out.close();
+    }
+
+    /**
+     * Pins the current thread, and so the harness threads it starts, off the CPUs the benchmarks
+     * would run their workers on. Concurrent forks use all the CPUs, so there is nothing to pin to.
+     *
+     * @return true, if the thread was pinned
+     */
+    private boolean pinHarness(Set<BenchmarkRecord> benchmarksToFork) {
+        AffinityPolicy policy = options.getAffinity();
+        if (policy == AffinityPolicy.NONE || benchmarksToFork.isEmpty()) {
+            return false;
+        }
+        if (!ThreadAffinity.isAvailable()) {
+            out.println("WARNING: taskset or /proc/thread-self is not available, harness threads will not be pinned");
+            return false;
+        }
+        if (options.getParallelForks() > 1) {
+            out.println("# Affinity: " + policy.label() + ", harness threads are not pinned with parallel forks");
+            return false;
+        }
+
+        // placements are prefixes of the same CPU order, so the widest one covers the rest
+        int maxThreads = 1;
+        for (BenchmarkRecord benchmark : benchmarksToFork) {
+            maxThreads = Math.max(maxThreads, benchThreads(benchmark));
+        }
+        CpuTopology topology = getTopology();
+        int[] harness = topology.place(policy, maxThreads).getHarnessCpus();
+
+        out.println("# CPU topology: " + topology.packages() + " socket(s), " + topology.cores() + " core(s), " + topology.size() + " CPU(s)");
+        if (harness.length == 0) {
+            out.println("# Affinity: " + policy.label() + ", no CPUs left for harness threads, they are not pinned");
+            return false;
+        }
+        out.println("# Affinity: " + policy.label() + ", harness threads on CPUs " + CpuTopology.toCpuList(harness));
+        return ThreadAffinity.pinCurrentThread(harness);
+    }
+
+    /**
+     * Runs the forks of different benchmarks concurrently, each benchmark on its own disjoint CPU slot.
+     * The slot is as wide as the benchmark thread count, so the concurrent forks do not compete for CPUs.
+     */
+    private Map<BenchmarkRecord, RunResult> runSeparateParallel(final BinaryLinkServer server, Set<BenchmarkRecord> benchmarksToFork) {
+        final CpuSlots slots = openCpuSlots();
+        ExecutorService executor = Executors.newFixedThreadPool(options.getParallelForks(), new HarnessThreadFactory("fork-scheduler"));
+        try {
+            Map<BenchmarkRecord, Future<RunResult>> futures = new TreeMap<BenchmarkRecord, Future<RunResult>>();
+            for (final BenchmarkRecord benchmark : benchmarksToFork) {
+                final int width = benchThreads(benchmark);
+                futures.put(benchmark, executor.submit(new Callable<RunResult>() {
+                    @Override
+                    public RunResult call() throws Exception {
+                        CpuSlots.Slot slot = slots.acquire(width);
+                        try {
+                            return runSeparateMicroBenchmark(server, benchmark, slot);
+                        } finally {
+                            slots.release(slot);
+                        }
+                    }
+                }));
+            }
+
+            Map<BenchmarkRecord, RunResult> results = new TreeMap<BenchmarkRecord, RunResult>();
+            for (Map.Entry<BenchmarkRecord, Future<RunResult>> e : futures.entrySet()) {
+                results.put(e.getKey(), RunResult.merge(results.get(e.getKey()), getFutureResult(e.getValue())));
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
         }
     }
 
+    /**
+     * Runs the forks in the order of the execution plan. The forks of the same benchmark
+     * are merged in their fork order, so the results do not depend on the execution order.
+     * Warmup forks of the benchmark run right before its first measured fork.
+     */
+    private Map<BenchmarkRecord, RunResult> runSeparatePlanned(final BinaryLinkServer server, Set<BenchmarkRecord> benchmarksToFork,
+                                                               ExecutionOrder order, Random random) {
+        final List<ForkedBenchmark> benchmarks = new ArrayList<ForkedBenchmark>();
+        List<Integer> forkCounts = new ArrayList<Integer>();
+        for (BenchmarkRecord benchmark : benchmarksToFork) {
+            ForkedBenchmark fb = prepareForks(server, benchmark);
+            benchmarks.add(fb);
+            forkCounts.add(fb.forkCount);
+        }
+
+        List<ExecutionPlan.PlannedFork> plan = ExecutionPlan.plan(forkCounts, order, random);
+        out.verbosePrintln("Execution plan (benchmark:fork): " + plan);
+
+        final RunResult[][] forkResults = new RunResult[benchmarks.size()][];
+        for (int b = 0; b < benchmarks.size(); b++) {
+            forkResults[b] = new RunResult[benchmarks.get(b).forkCount];
+        }
+
+        if (options.getParallelForks() > 1) {
+            final CpuSlots slots = openCpuSlots();
+            ExecutorService executor = Executors.newFixedThreadPool(options.getParallelForks(), new HarnessThreadFactory("fork-scheduler"));
+            try {
+                // pool picks up the forks in the submission order
+                List<Future<?>> futures = new ArrayList<Future<?>>();
+                for (final ExecutionPlan.PlannedFork pf : plan) {
+                    final ForkedBenchmark fb = benchmarks.get(pf.getBenchmark());
+                    futures.add(executor.submit(new Callable<Void>() {
+                        @Override
+                        public Void call() throws Exception {
+                            CpuSlots.Slot slot = slots.acquire(fb.threads);
+                            try {
+                                if (pf.getFork() == 0) {
+                                    runWarmupForks(server, fb, slot);
+                                }
+                                forkResults[pf.getBenchmark()][pf.getFork()] = runMeasuredFork(server, fb, pf.getFork(), slot);
+                            } finally {
+                                slots.release(slot);
+                            }
+                            return null;
+                        }
+                    }));
+                }
+                for (Future<?> f : futures) {
+                    getFutureResult(f);
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+        } else {
+            for (ExecutionPlan.PlannedFork pf : plan) {
+                checkInterrupted();
+                ForkedBenchmark fb = benchmarks.get(pf.getBenchmark());
+                if (pf.getFork() == 0) {
+                    runWarmupForks(server, fb, null);
+                }
+                forkResults[pf.getBenchmark()][pf.getFork()] = runMeasuredFork(server, fb, pf.getFork(), null);
+            }
+        }
+
+        Map<BenchmarkRecord, RunResult> results = new TreeMap<BenchmarkRecord, RunResult>();
+        for (int b = 0; b < benchmarks.size(); b++) {
+            BenchmarkRecord benchmark = benchmarks.get(b).benchmark;
+            RunResult result = null;
+            for (RunResult r : forkResults[b]) {
+                result = RunResult.merge(result, r);
+            }
+            journalBenchmark(benchmark, result);
+            listeners.benchmarkFinished(benchmark, result);
+            results.put(benchmark, RunResult.merge(results.get(benchmark), result));
+        }
+        return results;
+    }
+
+    private CpuSlots openCpuSlots() {
+        CpuSlots slots = new CpuSlots(forkCpus);
+        out.println("# Parallel forks: up to " + options.getParallelForks() + " forks at once, over " + slots.size() + " CPUs");
+        if (!isPinningAvailable()) {
+            out.println("WARNING: taskset is not available, concurrent forks will not be pinned to their CPU slots");
+        }
+        return slots;
+    }
+
+    private static <T> T getFutureResult(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Stops the run, if the runner thread was interrupted, e.g. when the run was cancelled.
+     */
+    private static void checkInterrupted() {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new IllegalStateException("Run is interrupted");
+        }
+    }
+
+    /**
+     * Computes the thread count the benchmark would run with.
+     */
+    private int benchThreads(BenchmarkRecord benchmark) {
+        Method m = MicroBenchmarkHandlers.findBenchmarkMethod(benchmark);
+        return BenchmarkParams.makeParams(options, benchmark, m, true, true, getTopology()).getThreads();
+    }
+
+    private static boolean isPinningAvailable() {
+        return ThreadAffinity.getTaskset() != null;
+    }
+
     /**
      * Tests if the benchmark has the fork annotation
      */
@@ -315,10 +840,47 @@ public class Runner extends BaseRunner {
      * Run the micro benchmark in a separate JVM process
      *
      * @param benchmark micro to run
-     * @param host host VM host
-     * @param port host VM port
+     * @param slot CPU slot to pin the forks to; null if forks should not be pinned
+     * @return results of the measured forks
+     */
+    private RunResult runSeparateMicroBenchmark(BinaryLinkServer reader, BenchmarkRecord benchmark, CpuSlots.Slot slot) {
+        ForkedBenchmark fb = prepareForks(reader, benchmark);
+
+        runWarmupForks(reader, fb, slot);
+
+        RunResult result = null;
+        for (int i = 0; i < fb.forkCount; i++) {
+            checkInterrupted();
+            result = RunResult.merge(result, runMeasuredFork(reader, fb, i, slot));
+        }
+
+        journalBenchmark(benchmark, result);
+        listeners.benchmarkFinished(benchmark, result);
+        return result;
+    }
+
+    /**
+     * Benchmark to run in separate JVM processes, along with the command to fork them with.
      */
-    private void runSeparateMicroBenchmark(BinaryLinkServer reader, BenchmarkRecord benchmark, String host, int port) {
+    private static class ForkedBenchmark {
+        private final BenchmarkRecord benchmark;
+        private final String[] command;
+        private final String[] warmupCommand;
+        private final int forkCount;
+        private final int warmupForkCount;
+        private final int threads;
+
+        ForkedBenchmark(BenchmarkRecord benchmark, String[] command, int forkCount, int warmupForkCount, int threads) {
+            this.benchmark = benchmark;
+            this.command = command;
+            this.warmupCommand = Utils.concat(command, new String[]{"-wi", "1", "-i", "0"});
+            this.forkCount = forkCount;
+            this.warmupForkCount = warmupForkCount;
+            this.threads = threads;
+        }
+    }
+
+    private ForkedBenchmark prepareForks(BinaryLinkServer reader, BenchmarkRecord benchmark) {
 
         // Running microbenchmark in separate JVM requires to read some options from annotations.
 
@@ -340,29 +902,127 @@ public class Runner extends BaseRunner {
             annJvmArgsPrepend = forkAnnotation.jvmArgsPrepend().trim();
         }
 
-        String[] commandString = getSeparateExecutionCommand(benchmark, annJvmArgs, annJvmArgsPrepend, annJvmArgsAppend, host, port);
+        String[] commandString = getSeparateExecutionCommand(benchmark, annJvmArgs, annJvmArgsPrepend, annJvmArgsAppend, reader.getHost(), reader.getPort(), reader.getMappedLinkDirectory());
 
         int forkCount = decideForks(options.getForkCount(), benchForks(benchmark));
         int warmupForkCount = decideWarmupForks(options.getWarmupForkCount(), forkAnnotation);
+
+        // the machine was warmed up already, if the benchmark was half-way done
+        if (journal != null && journal.hasCompletedForks(benchmark)) {
+            warmupForkCount = 0;
+        }
+
+        ForkedBenchmark fb = new ForkedBenchmark(benchmark, commandString, forkCount, warmupForkCount, benchThreads(benchmark));
+
         if (warmupForkCount > 0) {
-            String[] warmupForkCheat = Utils.concat(commandString, new String[]{"-wi", "1", "-i", "0"});
-            out.verbosePrintln("Warmup forking " + warmupForkCount + " times using command: " + Arrays.toString(warmupForkCheat));
-            for (int i = 0; i < warmupForkCount; i++) {
-                out.println("# Warmup Fork: " + (i+1) + " of " + forkCount);
-                doFork(reader, warmupForkCheat);
+            out.verbosePrintln("Warmup forking " + warmupForkCount + " times using command: " + Arrays.toString(fb.warmupCommand));
+        }
+        out.verbosePrintln("Forking " + forkCount + " times using command: " + Arrays.toString(commandString));
+
+        return fb;
+    }
+
+    private void runWarmupForks(BinaryLinkServer reader, ForkedBenchmark fb, CpuSlots.Slot slot) {
+        String slotLabel = (slot != null) ? ", CPU slot: " + slot : "";
+
+        // CDS archive for these JVM options is dumped by the first warmup fork, or by the throwaway
+        // fork when there are no warmup forks, so that the measured forks do not dump at exit
+        boolean dumpArchive = forkStartup != null && forkStartup.claimArchive(fb.command, ForkedMain.class.getName());
+        if (dumpArchive && fb.warmupForkCount == 0) {
+            doFork(reader, fb.warmupCommand, "# Archive Fork: dumping CDS archive" + slotLabel, slot, true);
+        }
+
+        for (int i = 0; i < fb.warmupForkCount; i++) {
+            // warmup fork results are ignored
+            doFork(reader, fb.warmupCommand, "# Warmup Fork: " + (i + 1) + " of " + fb.warmupForkCount + slotLabel, slot,
+                    dumpArchive && i == 0);
+        }
+    }
+
+    /**
+     * Runs the measured fork, unless the journal says it had completed earlier.
+     *
+     * @param fork fork index, starting from zero
+     * @return fork results
+     */
+    private RunResult runMeasuredFork(BinaryLinkServer reader, ForkedBenchmark fb, int fork, CpuSlots.Slot slot) {
+        String slotLabel = (slot != null) ? ", CPU slot: " + slot : "";
+        String banner = "# Fork: " + (fork + 1) + " of " + fb.forkCount + slotLabel;
+
+        RunResult r = (journal != null) ? journal.getCompleted(fb.benchmark, fork) : null;
+        if (r != null) {
+            replayResult(fb.benchmark, banner + ", restored from the journal", r);
+        } else {
+            r = doFork(reader, fb.command, banner, slot, false).get(fb.benchmark);
+
+            // partial fork should run again on resume
+            if (journal != null && r != null && !r.isPartial()) {
+                try {
+                    journal.forkCompleted(fb.benchmark, fork, r);
+                } catch (IOException e) {
+                    out.println("WARNING: Unable to write the run journal: " + e.getMessage());
+                }
             }
         }
+        listeners.forkFinished(fb.benchmark, fork, r);
+        return r;
+    }
 
-        out.verbosePrintln("Forking " + forkCount + " times using command: " + Arrays.toString(commandString));
-        for (int i = 0; i < forkCount; i++) {
-            out.println("# Fork: " + (i+1) + " of " + forkCount);
-            doFork(reader, commandString);
+    private void journalBenchmark(BenchmarkRecord benchmark, RunResult result) {
+        if (journal != null && result != null && journal.getCompleted(benchmark) == null) {
+            try {
+                journal.benchmarkCompleted(benchmark, result);
+            } catch (IOException e) {
+                out.println("WARNING: Unable to write the run journal: " + e.getMessage());
+            }
         }
     }
 
-    private void doFork(BinaryLinkServer reader, String[] commandString) {
+    /**
+     * Runs the fork and waits for it to finish.
+     *
+     * @param reader link server
+     * @param commandString command to run; fork id is appended to it
+     * @param banner fork banner
+     * @param slot CPU slot to pin the fork to; null if fork is not running concurrently with others
+     * @param dumpArchive true, if the fork should dump the CDS archive claimed for its JVM options
+     * @return results pushed by this fork
+     */
+    private Map<BenchmarkRecord, RunResult> doFork(BinaryLinkServer reader, String[] commandString, String banner, CpuSlots.Slot slot,
+                                                   boolean dumpArchive) {
+        int forkId = forkIds.incrementAndGet();
+        String[] command = Utils.concat(commandString, new String[]{String.valueOf(forkId)});
+
+        String startupState = null;
+        ForkStartup.Command fast = null;
+        if (forkStartup != null) {
+            try {
+                fast = forkStartup.rewrite(command, ForkedMain.class.getName(), dumpArchive);
+                command = fast.getCommand();
+                startupState = fast.getState();
+            } catch (IOException e) {
+                out.println("WARNING: Unable to prepare fast fork startup, forking as usual: " + e.getMessage());
+            }
+        }
+
+        if (slot != null && isPinningAvailable()) {
+            command = Utils.concat(new String[]{ThreadAffinity.getTaskset(), "-c", slot.toString()}, command);
+        } else if (options.getAffinity() != AffinityPolicy.NONE && isPinningAvailable()) {
+            // do not inherit the harness affinity
+            command = Utils.concat(new String[]{ThreadAffinity.getTaskset(), "-c", CpuTopology.toCpuList(forkCpus)}, command);
+        }
+
+        Process p = null;
         try {
-            Process p = Runtime.getRuntime().exec(commandString);
+            // concurrent fork output would be printed by link server along with the banner
+            if (slot != null) {
+                reader.registerFork(forkId, banner);
+            } else {
+                reader.registerFork(forkId, null);
+                out.println(banner);
+            }
+
+            p = Runtime.getRuntime().exec(command);
 
             // drain streams, else we might lock up
             InputStreamDrainer errDrainer = new InputStreamDrainer(p.getErrorStream(), System.err);
@@ -371,14 +1031,32 @@ public class Runner extends BaseRunner {
             errDrainer.start();
             outDrainer.start();
 
-            int ecode = p.waitFor();
+            int ecode = waitForFork(p, reader, forkId);
 
             errDrainer.join();
             outDrainer.join();
 
+            if (dumpArchive && fast != null && !forkStartup.archiveDumped(fast, ecode == 0)) {
+                out.println("WARNING: Unable to dump the CDS archive, forks will run without it");
+            }
+
+            long startupNs = reader.getStartupNanos(forkId);
+            if (startupNs >= 0) {
+                forkStartupTotal.addAndGet(startupNs);
+                forkStartupCount.incrementAndGet();
+
+                String msg = "# Fork launch latency: " + TimeUnit.NANOSECONDS.toMillis(startupNs) + " ms" +
+                        (startupState != null ? ", " + startupState : "");
+                if (forkStartup != null) {
+                    out.println(msg);
+                } else {
+                    out.verbosePrintln(msg);
+                }
+            }
+
             // need to wait for all pending messages to be processed
             // before starting the next benchmark
-            reader.waitFinish();
+            Map<BenchmarkRecord, RunResult> results = reader.waitFork(forkId);
 
             if (ecode != 0) {
                 out.println("WARNING: Forked process returned code: " + ecode);
@@ -387,22 +1065,78 @@ public class Runner extends BaseRunner {
                 }
             }
 
+            for (Map.Entry<BenchmarkRecord, RunResult> e : results.entrySet()) {
+                if (e.getValue().isPartial()) {
+                    out.println("WARNING: Fork had not completed \"" + e.getKey().getUsername() + "\", keeping " +
+                            e.getValue().getRawIterationResults().size() + " measurement iterations it had reported");
+                }
+            }
+
+            return results;
         } catch (IOException ex) {
             out.exception(ex);
         } catch (InterruptedException ex) {
-            out.exception(ex);
+            // the run is cancelled, do not leave the fork behind
+            p.destroy();
+            throw new IllegalStateException("Run is interrupted", ex);
+        }
+        return Collections.emptyMap();
+    }
+
+    /**
+     * Waits for the forked VM to exit. Kills it, should it run past the fork timeout.
+     *
+     * @return exit code
+     */
+    private int waitForFork(Process p, BinaryLinkServer reader, int forkId) throws InterruptedException {
+        TimeValue timeout = options.getForkTimeout();
+        if (timeout == null || timeout.getTime() < 0) {
+            return p.waitFor();
+        }
+
+        long deadline = System.nanoTime() + timeout.convertTo(TimeUnit.NANOSECONDS);
+        while (System.nanoTime() - deadline < 0) {
+            try {
+                return p.exitValue();
+            } catch (IllegalThreadStateException e) {
+                // still running
+            }
+            TimeUnit.MILLISECONDS.sleep(100);
         }
+
+        out.println("WARNING: Forked VM timed out after " + timeout + ", killing it");
+
+        // SIGQUIT makes HotSpot print the thread dump to the stdout we are draining
+        long pid = reader.getForkPid(forkId);
+        if (pid > 0 && KILL != null) {
+            try {
+                Runtime.getRuntime().exec(new String[]{KILL, "-QUIT", String.valueOf(pid)}).waitFor();
+                TimeUnit.SECONDS.sleep(1);
+            } catch (IOException e) {
+                out.println("WARNING: Unable to dump the threads of the forked VM: " + e.getMessage());
+            }
+        } else {
+            out.println("WARNING: Unable to dump the threads of the forked VM");
+        }
+
+        p.destroy();
+        int ecode = p.waitFor();
+        out.println("# Fork timed out: only the iterations it had completed are kept");
+        return ecode;
     }
 
+    private static final String KILL = Utils.findExecutable("/bin/kill", "/usr/bin/kill");
+
     /**
      * Helper method for assembling the command to execute the forked JVM with
      *
      * @param benchmark benchmark to execute
      * @param host host VM host
      * @param port host VM port
+     * @param linkDir directory with memory-mapped link files; null if forked VM should use the socket
      * @return the final command to execute
      */
-    public String[] getSeparateExecutionCommand(BenchmarkRecord benchmark, String annJvmArgs, String annJvmArgsPrepend, String annJvmArgsAppend, String host, int port) {
+    public String[] getSeparateExecutionCommand(BenchmarkRecord benchmark, String annJvmArgs, String annJvmArgsPrepend, String annJvmArgsAppend, String host, int port, File linkDir) {
 
         Properties props = System.getProperties();
         String javaHome = (String) props.get("java.home");
@@ -484,9 +1218,14 @@ public class Runner extends BaseRunner {
         //   1) host name to back-connect
         //   2) host port to back-connect
         //   3) benchmark to execute (saves benchmark lookup via Options)
+        //   4) optional directory with memory-mapped link files
+        //   5) fork id, appended at fork time
         command.add(host);
         command.add(String.valueOf(port));
         command.add(benchmark.toLine());
+        if (linkDir != null) {
+            command.add(linkDir.getAbsolutePath());
+        }
 
         return command.toArray(new String[command.size()]);
     }
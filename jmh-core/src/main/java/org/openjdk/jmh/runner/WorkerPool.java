@@ -0,0 +1,251 @@
+/*
+ * Copyright (c) 2005, 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jmh.runner;
+
+import org.openjdk.jmh.logic.InfraControl;
+import org.openjdk.jmh.logic.results.Result;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Long-lived benchmark workers, reused across iterations.
+ * <p>
+ * Between iterations, workers wait on the phased barrier: the harness publishes the
+ * iteration control and bumps the phase, workers spin for a while before parking, so
+ * that the back-to-back iterations start without the thread wake-up latency. Workers
+ * publish their results into the preallocated per-thread slots, and the last worker
+ * to complete wakes up the harness.
+ */
+class WorkerPool {
+
+    /**
+     * How many times to poll the barrier before parking.
+     */
+    private static final int SPIN_LIMIT = Integer.getInteger("jmh.workerPool.spins", 100000);
+
+    interface Body {
+        /**
+         * Runs the iteration in the worker thread.
+         *
+         * @param worker worker index
+         * @param control iteration control
+         * @return iteration result
+         * @throws Throwable if benchmark fails
+         */
+        Result run(int worker, InfraControl control) throws Throwable;
+    }
+
+    private final Body body;
+    private final Thread[] threads;
+
+    private final Result[] results;
+    private final Throwable[] errors;
+    private final long[] startNanos;
+    private final long[] stopNanos;
+
+    private final AtomicInteger pending;
+
+    private volatile int phase;
+    private volatile InfraControl control;
+    private volatile int active;
+    private volatile boolean terminated;
+    private volatile Thread waiter;
+
+    WorkerPool(int size, ThreadFactory factory, Body body) {
+        this.body = body;
+        this.threads = new Thread[size];
+        this.results = new Result[size];
+        this.errors = new Throwable[size];
+        this.startNanos = new long[size];
+        this.stopNanos = new long[size];
+        this.pending = new AtomicInteger();
+
+        for (int i = 0; i < size; i++) {
+            threads[i] = factory.newThread(new Worker(i));
+            threads[i].start();
+        }
+    }
+
+    /**
+     * @return maximum number of workers
+     */
+    int size() {
+        return threads.length;
+    }
+
+    /**
+     * Releases the workers into the next iteration.
+     *
+     * @param control iteration control
+     * @param count number of workers to run the iteration with
+     */
+    void start(InfraControl control, int count) {
+        if (count > threads.length) {
+            throw new IllegalArgumentException("Pool has " + threads.length + " workers, but " + count + " are requested");
+        }
+        for (int i = 0; i < count; i++) {
+            results[i] = null;
+            errors[i] = null;
+        }
+
+        this.waiter = Thread.currentThread();
+        this.control = control;
+        this.active = count;
+        pending.set(count);
+        phase++;
+
+        for (int i = 0; i < count; i++) {
+            LockSupport.unpark(threads[i]);
+        }
+    }
+
+    /**
+     * Waits for all the workers to complete the iteration.
+     *
+     * @param timeoutNs timeout, in nanoseconds; negative to wait forever
+     * @return false, if timed out
+     * @throws InterruptedException if interrupted while waiting
+     */
+    boolean await(long timeoutNs) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutNs;
+        while (pending.get() > 0) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            if (timeoutNs < 0) {
+                LockSupport.park(this);
+            } else {
+                long left = deadline - System.nanoTime();
+                if (left <= 0) {
+                    return false;
+                }
+                LockSupport.parkNanos(this, left);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true, if the worker had completed the current iteration
+     */
+    boolean isCompleted(int worker) {
+        return results[worker] != null || errors[worker] != null;
+    }
+
+    Result getResult(int worker) {
+        return results[worker];
+    }
+
+    Throwable getError(int worker) {
+        return errors[worker];
+    }
+
+    /**
+     * @return spread of the times the workers had entered the iteration, in nanoseconds
+     */
+    long getStartSkew() {
+        return spread(startNanos);
+    }
+
+    /**
+     * @return spread of the times the workers had completed the iteration, in nanoseconds
+     */
+    long getStopSkew() {
+        return spread(stopNanos);
+    }
+
+    private long spread(long[] times) {
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (int i = 0; i < active; i++) {
+            min = Math.min(min, times[i]);
+            max = Math.max(max, times[i]);
+        }
+        return max - min;
+    }
+
+    /**
+     * Stops the workers waiting for the next iteration.
+     * The workers stuck in the benchmark code are interrupted, and left behind.
+     *
+     * @param interrupt should interrupt the workers?
+     */
+    void terminate(boolean interrupt) {
+        terminated = true;
+        for (Thread t : threads) {
+            if (interrupt) {
+                t.interrupt();
+            }
+            LockSupport.unpark(t);
+        }
+    }
+
+    private final class Worker implements Runnable {
+        private final int idx;
+
+        Worker(int idx) {
+            this.idx = idx;
+        }
+
+        @Override
+        public void run() {
+            int seen = 0;
+            while (true) {
+                int spins = SPIN_LIMIT;
+                int p;
+                while ((p = phase) == seen && !terminated) {
+                    if (spins > 0) {
+                        spins--;
+                    } else {
+                        LockSupport.park(WorkerPool.this);
+                    }
+                }
+                if (terminated) {
+                    return;
+                }
+                seen = p;
+
+                if (idx >= active) {
+                    continue;
+                }
+
+                startNanos[idx] = System.nanoTime();
+                try {
+                    results[idx] = body.run(idx, control);
+                } catch (Throwable e) {
+                    errors[idx] = e;
+                }
+                stopNanos[idx] = System.nanoTime();
+
+                if (pending.decrementAndGet() == 0) {
+                    LockSupport.unpark(waiter);
+                }
+            }
+        }
+    }
+
+}
@@ -22,52 +22,51 @@
  * or visit www.oracle.com if you need additional information or have any
  * questions.
  */
-package org.openjdk.jmh.util.internal;
-
-import java.io.Serializable;
-import java.util.Arrays;
+package org.openjdk.jmh.runner.options;
 
 /**
- * Sampling buffer accepts samples.
- *
- * @author Aleksey Shipilev, aleksey.shipilev@oracle.com
+ * Placement of the benchmark worker threads on CPUs.
  */
-public class SampleBuffer implements Serializable {
+public enum AffinityPolicy {
 
-    private final long[] samples;
-    private final int size;
-    private int index;
+    /**
+     * Do not pin the threads, let OS schedule them.
+     */
+    NONE("none"),
 
-    private boolean full;
+    /**
+     * Pack the workers on as few sockets and cores as possible, using SMT siblings.
+     */
+    COMPACT("compact"),
 
-    public SampleBuffer() {
-        this(10000);
-    }
+    /**
+     * Spread the workers round-robin across the sockets, one per physical core, then on SMT siblings.
+     */
+    SCATTER("scatter"),
 
-    public SampleBuffer(int size) {
-        this.size = size;
-        this.samples = new long[size];
-    }
+    /**
+     * One worker per physical core, socket after socket; SMT siblings are used only when cores run out.
+     */
+    PHYSICAL("physical cores"),
 
-    public boolean add(long sample) {
-        samples[index++] = sample;
+    /**
+     * One worker per physical core, never on SMT siblings; the siblings of measurement cores are kept idle.
+     */
+    NO_SMT("no SMT"),
 
-        if (index >= size) {
-            index = 0;
-            full = true;
-            return true;
-        }
-        return false;
-    }
+    ;
+
+    private final String label;
 
-    public long[] getSamples() {
-        return full ? Arrays.copyOf(samples, size) : Arrays.copyOf(samples, index);
+    AffinityPolicy(String label) {
+        this.label = label;
     }
 
-    public void addAll(long[] samples) {
-        for (long l : samples) {
-            add(l);
-        }
+    public String label() {
+        return label;
     }
 
+    static AffinityPolicy defaultPolicy() {
+        return NONE;
+    }
 }
@@ -78,6 +78,13 @@ public interface ChainedOptionsBuilder {
      */
     ChainedOptionsBuilder shouldDoGC(boolean value);
 
+    /**
+     * Keep the same worker threads across iterations, spinning on the barrier in between.
+     * @param value flag
+     * @return builder
+     */
+    ChainedOptionsBuilder usePersistentWorkers(boolean value);
+
     /**
      * Add the profiler in the run
      * @param prof profiler type
@@ -113,6 +120,29 @@ public interface ChainedOptionsBuilder {
      */
     ChainedOptionsBuilder threads(int count);
 
+    /**
+     * Thread counts to run every benchmark with, one after another.
+     * Results are summarized in the scalability table.
+     * @param counts thread counts; 0 means the maximum number of threads
+     * @return builder
+     */
+    ChainedOptionsBuilder threadSweep(int... counts);
+
+    /**
+     * Pin the benchmark threads to CPUs with the given policy.
+     * The harness threads are kept off the CPUs used by the benchmark.
+     * @param policy affinity policy
+     * @return builder
+     */
+    ChainedOptionsBuilder affinity(AffinityPolicy policy);
+
+    /**
+     * Executor to run the benchmark threads on.
+     * @param name built-in executor name, e.g. "VIRTUAL", or the name of the class implementing ExecutorProvider
+     * @return builder
+     */
+    ChainedOptionsBuilder executor(String name);
+
     /**
      * Should synchronize measurementIterations?
      * @param value flag
@@ -141,6 +171,21 @@ public interface ChainedOptionsBuilder {
      */
     ChainedOptionsBuilder warmupMode(WarmupMode mode);
 
+    /**
+     * Should warmup until the iteration scores reach the steady state?
+     * The number of warmup iterations becomes the upper bound then.
+     * @param value flag
+     * @return builder
+     */
+    ChainedOptionsBuilder warmupToSteadyState(boolean value);
+
+    /**
+     * Should warmup until both the iteration scores are steady, and the JIT compilation quiesced?
+     * @param value flag
+     * @return builder
+     */
+    ChainedOptionsBuilder warmupToJitQuiescence(boolean value);
+
     /**
      * What other benchmarks to warmup along the way
      * @param regexp to match benchmarks against
@@ -155,6 +200,66 @@ public interface ChainedOptionsBuilder {
      */
     ChainedOptionsBuilder measurementIterations(int count);
 
+    /**
+     * Stop measuring once the relative score error at 99% confidence gets below the target.
+     * The number of measurement iterations becomes the upper bound then.
+     * @param value target error, e.g. 0.01 for 1%
+     * @return builder
+     */
+    ChainedOptionsBuilder targetError(double value);
+
+    /**
+     * Target rate for the open-loop benchmarks, see {@link org.openjdk.jmh.annotations.Mode#OpenLoop}.
+     * @param value invocations per second, shared by all the benchmark threads
+     * @return builder
+     */
+    ChainedOptionsBuilder targetRate(double value);
+
+    /**
+     * Schedule of the invocation starts for the open-loop benchmarks.
+     * @param schedule schedule
+     * @return builder
+     */
+    ChainedOptionsBuilder loadSchedule(LoadSchedule schedule);
+
+    /**
+     * Measure the maximum throughput of every benchmark, and then run it in the open loop at
+     * the given fractions of that maximum, until it saturates.
+     * Results are summarized in the load curve table.
+     * @param percents load steps, in percent of the maximum throughput
+     * @return builder
+     */
+    ChainedOptionsBuilder loadSweep(int... percents);
+
+    /**
+     * Precision of the latency histograms.
+     * @param digits number of significant decimal digits to keep
+     * @return builder
+     */
+    ChainedOptionsBuilder histogramPrecision(int digits);
+
+    /**
+     * Record the start and the duration of the operations in the measurement iterations into the memory-mapped
+     * trace files in the directory, one file per benchmark run. Tracing takes the timestamps around the traced operations, and skews the score.
+     * @param dir directory to create the trace files in
+     * @return builder
+     */
+    ChainedOptionsBuilder trace(String dir);
+
+    /**
+     * Trace only every N-th operation.
+     * @param n trace sampling interval
+     * @return builder
+     */
+    ChainedOptionsBuilder traceEvery(int n);
+
+    /**
+     * How many measurement iterations to do at least, before checking the target error
+     * @param count number of iterations
+     * @return builder
+     */
+    ChainedOptionsBuilder minMeasurementIterations(int count);
+
     /**
      * How long each measurement iteration should take?
      * @param value time
@@ -162,6 +267,22 @@ public interface ChainedOptionsBuilder {
      */
     ChainedOptionsBuilder measurementTime(TimeValue value);
 
+    /**
+     * How long to wait for the iteration to complete after its time is up?
+     * The timed out iteration is abandoned, and the harness moves on to the next benchmark.
+     * @param value timeout
+     * @return builder
+     */
+    ChainedOptionsBuilder timeout(TimeValue value);
+
+    /**
+     * How long to wait for the forked VM to complete?
+     * The timed out fork is killed, and the harness moves on to the next fork.
+     * @param value timeout
+     * @return builder
+     */
+    ChainedOptionsBuilder forkTimeout(TimeValue value);
+
     /**
      * Benchmark mode.
      * (Can be used multiple times)
@@ -216,4 +337,87 @@ public interface ChainedOptionsBuilder {
      */
     ChainedOptionsBuilder jvmArgs(String value);
 
+    /**
+     * Number of forked VMs to run at once.
+     * Each fork gets its own disjoint CPU slot sized after the benchmark thread count.
+     *
+     * @param value number of concurrent forks
+     * @return builder
+     */
+    ChainedOptionsBuilder parallelForks(int value);
+
+    /**
+     * Should speed up the fork startup?
+     * Forks would get their options through the argument file, and reuse the AppCDS
+     * archive dumped by the first warmup fork or the throwaway fork, when forked JVM supports those.
+     *
+     * @param value flag
+     * @return builder
+     */
+    ChainedOptionsBuilder fastStartup(boolean value);
+
+    /**
+     * Transport to talk to the forked VMs over.
+     * @param transport link transport
+     * @return builder
+     */
+    ChainedOptionsBuilder linkTransport(LinkTransport transport);
+
+    /**
+     * Run as the coordinator: accept the agents on the given port, and hand the forked
+     * benchmarks out to them, instead of forking locally.
+     * Agents are started with {@code --agent TOKEN@HOST:PORT}, the coordinator prints the token.
+     *
+     * @param port port to listen on; 0 for any free port; -1 to run forks locally
+     * @return builder
+     */
+    ChainedOptionsBuilder coordinatorPort(int port);
+
+    /**
+     * Address to accept the agents on, see {@link #coordinatorPort(int)}.
+     * The coordinator accepts the agents on the loopback address only, unless the address is given.
+     *
+     * @param address interface address or host name
+     * @return builder
+     */
+    ChainedOptionsBuilder coordinatorAddress(String address);
+
+    /**
+     * Journal the completed forks and benchmarks to the file, so that the interrupted run can be resumed.
+     * The existing journal is only appended to when resuming, see {@link #resume(boolean)}.
+     * @param filename journal file name
+     * @return builder
+     */
+    ChainedOptionsBuilder journal(String filename);
+
+    /**
+     * Should skip the forks and benchmarks completed according to the journal?
+     * The journal written with the different benchmark options is not resumed.
+     * @param value flag
+     * @return builder
+     */
+    ChainedOptionsBuilder resume(boolean value);
+
+    /**
+     * Order to run the benchmarks and their forks in.
+     * @param order execution order
+     * @return builder
+     */
+    ChainedOptionsBuilder executionOrder(ExecutionOrder order);
+
+    /**
+     * Seed for the randomized execution order.
+     * @param value seed
+     * @return builder
+     */
+    ChainedOptionsBuilder seed(long value);
+
+    /**
+     * Values for the benchmark parameter, overriding the declared ones.
+     * @param name parameter name
+     * @param values parameter values
+     * @return builder
+     */
+    ChainedOptionsBuilder param(String name, String... values);
+
 }
@@ -34,6 +34,7 @@ import org.openjdk.jmh.profile.ProfilerType;
 import org.openjdk.jmh.runner.options.handlers.BenchmarkModeTypeOptionHandler;
 import org.openjdk.jmh.runner.options.handlers.BooleanOptionHandler;
 import org.openjdk.jmh.runner.options.handlers.ForkOptionHandler;
+import org.openjdk.jmh.runner.options.handlers.LoadSweepOptionHandler;
 import org.openjdk.jmh.runner.options.handlers.ProfilersOptionHandler;
 import org.openjdk.jmh.runner.options.handlers.ThreadsOptionHandler;
 import org.openjdk.jmh.runner.options.handlers.TimeUnitOptionHandler;
@@ -42,11 +43,14 @@ import org.openjdk.jmh.runner.parameters.Defaults;
 import org.openjdk.jmh.runner.parameters.TimeValue;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -77,27 +81,75 @@ public class CommandLineOptions implements Options {
     @Option(name = "-i", aliases = {"--iterations"}, metaVar = "INT", usage = "Number of iterations.")
     protected int iterations = -1;
 
+    @Option(name = "-te", aliases = {"--targeterror"}, metaVar = "DOUBLE", usage = "Target relative error of the score at 99% confidence, e.g. 0.01 for 1%. Measurement stops as soon as the error gets below the target, -i becomes the upper bound for the number of iterations.")
+    protected double targetError = -1;
+
+    @Option(name = "-rate", aliases = {"--targetrate"}, metaVar = "OPS/S", usage = "Target rate for OpenLoop mode, invocations per second, shared by all the benchmark threads. Required for OpenLoop mode.")
+    protected double targetRate = -1;
+
+    @Option(name = "-ls", aliases = {"--loadschedule"}, usage = "Schedule of the invocation starts in OpenLoop mode: FIXED intervals, or POISSON arrivals. Default is FIXED")
+    protected LoadSchedule loadSchedule = LoadSchedule.defaultSchedule();
+
+    @Option(name = "-sweep", aliases = {"--loadsweep"}, usage = "Measure the maximum throughput of every benchmark, then run it in OpenLoop mode at the given percents of that maximum, e.g. 25,50,75,90,100,110, stopping at the first step it cannot sustain. Reports the latency at every step, and the saturation point", handler = LoadSweepOptionHandler.class)
+    protected List<Integer> loadSweep = new ArrayList<Integer>();
+
+    @Option(name = "-hp", aliases = {"--histogramprecision"}, metaVar = "INT", usage = "Number of significant decimal digits to keep in the latency histograms of SampleTime and OpenLoop modes, 1 to 4. Higher precision takes more memory for every benchmark thread. Default is " + Defaults.HISTOGRAM_PRECISION)
+    protected int histogramPrecision = -1;
+
+    @Option(name = "-trace", aliases = {"--trace"}, metaVar = "DIR", usage = "Record the start and the duration of Throughput and AverageTime operations in the measurement iterations into the memory-mapped trace files in DIR, one per benchmark run. Timestamps skew the score; print the trace with --readtrace.")
+    protected String trace = null;
+
+    @Option(name = "-tre", aliases = {"--traceevery"}, metaVar = "INT", usage = "Trace only every INT-th operation. Default is " + Defaults.TRACE_EVERY)
+    protected int traceEvery = -1;
+
+    @Option(name = "--readtrace", metaVar = "FILE", usage = "Print the per-millisecond throughput and latency of every measurement iteration in the trace FILE, and exit.")
+    protected String readTrace = null;
+
+    @Option(name = "-mi", aliases = {"--miniterations"}, metaVar = "INT", usage = "Minimal number of iterations to run before checking the target error. Default is " + Defaults.MIN_ITERATION_COUNT)
+    protected int minIterations = -1;
+
     @Option(name = "-r", aliases = {"--runtime"}, metaVar = "TIME", usage = "Run time for each iteration. Examples: 100s, 200ms; defaults to " + Defaults.ITERATION_TIME_SECS + "s", handler = TimeValueOptionHandler.class)
     protected TimeValue runTime = null;
 
+    @Option(name = "-to", aliases = {"--timeout"}, metaVar = "TIME", usage = "How long to wait for the iteration to complete after its time is up. Timed out iteration is abandoned with thread dumps of the workers, and the harness moves on to the next benchmark. Examples: 100s, 200ms; waits indefinitely by default", handler = TimeValueOptionHandler.class)
+    protected TimeValue timeout = null;
+
+    @Option(name = "-fto", aliases = {"--forktimeout"}, metaVar = "TIME", usage = "How long to wait for the forked VM to complete. Timed out fork is killed after dumping its threads. Examples: 10m, 600s; waits indefinitely by default", handler = TimeValueOptionHandler.class)
+    protected TimeValue forkTimeout = null;
+
     @Option(name = "-wi", aliases = {"--warmupiterations"}, metaVar = "INT", usage = "Number of warmup iterations to run.")
     protected int warmupIterations = -1;
 
     @Option(name = "-w", aliases = {"--warmup"}, metaVar = "TIME", usage = "Run time for warmup iterations. Result not used when calculating score. Examples 100s, 200ms; defaults to " + Defaults.WARMUP_TIME_SECS + "", handler = TimeValueOptionHandler.class)
     protected TimeValue warmupTime = null;
 
+    @Option(name = "-wss", aliases = {"--warmupsteadystate"}, usage = "Warmup until the iteration scores reach the steady state, -wi becomes the upper bound for the number of warmup iterations (default " + Defaults.STEADY_STATE_WARMUP_COUNT + "). Default is false", handler = BooleanOptionHandler.class)
+    protected boolean warmupSteadyState = false;
+
+    @Option(name = "-wjit", aliases = {"--warmupjit"}, usage = "Warmup until the iteration scores reach the steady state, and the JIT compilation quiesces. Default is false", handler = BooleanOptionHandler.class)
+    protected boolean warmupJitQuiescence = false;
+
     @Option(name = "-bm", aliases = {"--mode"}, multiValued = false, metaVar = "MODE", usage = "Benchmark mode", handler = BenchmarkModeTypeOptionHandler.class)
     protected List<Mode> benchMode = null;
 
-    @Option(name = "-t", aliases = {"--threads"}, usage = "Number of threads to run the microbenchmark with. Special value \"max\" or 0 will use Runtime.availableProcessors()", handler = ThreadsOptionHandler.class)
-    protected int threads = -1;
+    @Option(name = "-t", aliases = {"--threads"}, usage = "Number of threads to run the microbenchmark with. Special value \"max\" or 0 will use Runtime.availableProcessors(). Comma-separated list, e.g. 1,2,4,max, runs the benchmark with every thread count, and reports how it scales", handler = ThreadsOptionHandler.class)
+    protected List<Integer> threads = new ArrayList<Integer>();
+
+    @Option(name = "-af", aliases = {"--affinity"}, usage = "Pin the benchmark threads to CPUs (Linux only). COMPACT packs them on SMT siblings and cores of one socket; SCATTER spreads them across sockets; PHYSICAL puts one per physical core; NO_SMT also keeps SMT siblings idle. Harness threads run on the remaining CPUs. Default is NONE")
+    protected AffinityPolicy affinity = AffinityPolicy.defaultPolicy();
 
-    @Option(name = "-si", aliases = {"--synciterations"}, usage = "Should the harness continue to load each thread with work untill all threads are done with their measured work? Default is " + Defaults.SHOULD_SYNCH_ITERATIONS, handler = BooleanOptionHandler.class)
+    @Option(name = "-ex", aliases = {"--executor"}, metaVar = "NAME", usage = "Executor to run the benchmark threads on: CACHED_TPE, FIXED_TPE, FJP, FJP_COMMON, VIRTUAL (JDK 21+), or the name of the class implementing ExecutorProvider. Overrides @Threads(executor). Default is FIXED_TPE")
+    protected String executor = null;
+
+    @Option(name = "-si", aliases = {"--synciterations"}, usage = "Should the harness continue to load each thread with work untill all threads are done with their measured work? Not available when there are more threads than the executor carrier threads. Default is " + Defaults.SHOULD_SYNCH_ITERATIONS, handler = BooleanOptionHandler.class)
     protected Boolean synchIterations = null; // true
 
     @Option(name = "-gc", usage = "Should do System.gc() between iterations?", handler = BooleanOptionHandler.class)
     protected boolean gcEachIteration = false;
 
+    @Option(name = "-pw", aliases = {"--persistentworkers"}, usage = "Should the harness keep the same worker threads across iterations, waiting on the spinning barrier in between? Reduces the start and stop skew between threads for short iterations, at the expense of burning CPU between iterations. Default is false", handler = BooleanOptionHandler.class)
+    protected boolean persistentWorkers = false;
+
     @Option(name = "-v", aliases = {"--verbose"}, usage = "Verbose mode, default off", handler = BooleanOptionHandler.class)
     protected boolean verbose = false;
 
@@ -140,6 +192,39 @@ public class CommandLineOptions implements Options {
     @Option(name = "--jvmclasspath", metaVar = "CLASSPATH", usage = "Custom classpath for --jvm, default is to use parent process's classpath")
     protected String jvmClassPath = null;
 
+    @Option(name = "-pf", aliases = {"--parallelforks"}, metaVar = "INT", usage = "Number of forked VMs to run concurrently. Each fork is pinned to its own disjoint CPU slot, sized after the benchmark thread count (Linux only, requires taskset). Default is to run forks one by one.")
+    protected int parallelForks = -1;
+
+    @Option(name = "-fs", aliases = {"--faststartup"}, usage = "Speed up the fork startup: pass the fork options via the argument file (JDK 9+), and reuse the AppCDS archive dumped by the first warmup fork, or by the throwaway fork (JDK 13+). Default is false", handler = BooleanOptionHandler.class)
+    protected boolean fastStartup = false;
+
+    @Option(name = "-lt", aliases = {"--linktransport"}, usage = "Transport for the forked VM to talk to the host VM. TCP uses the socket; MMAP uses the memory-mapped file, polled by the host, and falls back to TCP if the file can not be mapped. Default is TCP")
+    protected LinkTransport linkTransport = LinkTransport.defaultTransport();
+
+    @Option(name = "-coord", aliases = {"--coordinator"}, metaVar = "PORT", usage = "Run as the coordinator: accept the agents on PORT (0 for any free port), and hand the forked benchmarks out to them instead of forking locally. Only the agents with the token the coordinator prints, and with the same hardware fingerprint as the first one are accepted. Default is to fork locally.")
+    protected int coordinatorPort = -1;
+
+    @Option(name = "-coordaddr", aliases = {"--coordinatoraddress"}, metaVar = "ADDR", usage = "Accept the agents on the interface ADDR. Default is the loopback address only.")
+    protected String coordinatorAddress = null;
+
+    @Option(name = "--agent", metaVar = "TOKEN@HOST:PORT", usage = "Run as the agent: connect to the coordinator at HOST:PORT with the TOKEN it prints, run the benchmarks it hands out in local forks, send the results back, and exit when there is no more work.")
+    protected String agent = null;
+
+    @Option(name = "--journal", metaVar = "FILE", usage = "Journal the completed forks and benchmarks to FILE, so that the interrupted run can be resumed. Existing FILE is only appended to with --resume")
+    protected String journal = null;
+
+    @Option(name = "--resume", usage = "Skip the forks and benchmarks completed according to the --journal, and append the rest to it. The journal written with the different benchmark options is refused. Default is false", handler = BooleanOptionHandler.class)
+    protected boolean resume = false;
+
+    @Option(name = "-eo", aliases = {"--executionorder"}, usage = "Order to run the benchmarks and their forks in. SEQUENTIAL runs all forks of the benchmark back to back; INTERLEAVED runs the first fork of every benchmark before the second fork of any; RANDOMIZED also shuffles the benchmarks in every round. Default is SEQUENTIAL")
+    protected ExecutionOrder executionOrder = ExecutionOrder.defaultOrder();
+
+    @Option(name = "--seed", metaVar = "LONG", usage = "Seed for the RANDOMIZED execution order, to reproduce the earlier run. Default is to pick the random seed, and print it")
+    protected Long seed = null;
+
+    @Option(name = "-p", aliases = {"--param"}, multiValued = true, metaVar = "PARAM=V1,V2", usage = "Values for the benchmark @Param, overriding the declared ones. The benchmark runs once for every combination of the parameter values.")
+    protected List<String> params = new ArrayList<String>();
+
     @Option(name = "-e", aliases = {"--exclude"}, multiValued = true, metaVar = "REGEXP", usage = "Microbenchmarks to exclude. Regexp filtering out classes or methods which are MicroBenchmarks.")
     protected List<String> excludes = new ArrayList<String>();
 
@@ -362,6 +447,95 @@ public class CommandLineOptions implements Options {
         return iterations;
     }
 
+    /**
+     * Getter
+     *
+     * @return the value
+     */
+    @Override
+    public double getTargetError() {
+        return targetError;
+    }
+
+    /**
+     * Getter
+     *
+     * @return the value
+     */
+    @Override
+    public double getTargetRate() {
+        return targetRate;
+    }
+
+    /**
+     * Getter
+     *
+     * @return the value
+     */
+    @Override
+    public LoadSchedule getLoadSchedule() {
+        return loadSchedule;
+    }
+
+    /**
+     * Getter
+     *
+     * @return the value
+     */
+    @Override
+    public List<Integer> getLoadSweep() {
+        return loadSweep;
+    }
+
+    /**
+     * Getter
+     *
+     * @return the value
+     */
+    @Override
+    public int getHistogramPrecision() {
+        return histogramPrecision;
+    }
+
+    /**
+     * Getter
+     *
+     * @return the value
+     */
+    @Override
+    public String getTrace() {
+        return trace;
+    }
+
+    /**
+     * Getter
+     *
+     * @return the value
+     */
+    @Override
+    public int getTraceEvery() {
+        return traceEvery;
+    }
+
+    /**
+     * Getter
+     *
+     * @return the value
+     */
+    public String getReadTrace() {
+        return readTrace;
+    }
+
+    /**
+     * Getter
+     *
+     * @return the value
+     */
+    @Override
+    public int getMinIterations() {
+        return minIterations;
+    }
+
     /**
      * Getter
      *
@@ -382,6 +556,46 @@ public class CommandLineOptions implements Options {
         return warmupTime;
     }
 
+    /**
+     * Getter
+     *
+     * @return the value
+     */
+    @Override
+    public TimeValue getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Getter
+     *
+     * @return the value
+     */
+    @Override
+    public TimeValue getForkTimeout() {
+        return forkTimeout;
+    }
+
+    /**
+     * Getter
+     *
+     * @return the value
+     */
+    @Override
+    public boolean shouldWarmupToSteadyState() {
+        return warmupSteadyState;
+    }
+
+    /**
+     * Getter
+     *
+     * @return the value
+     */
+    @Override
+    public boolean shouldWarmupToJitQuiescence() {
+        return warmupJitQuiescence;
+    }
+
     /**
      * Getter
      *
@@ -399,7 +613,37 @@ public class CommandLineOptions implements Options {
      */
     @Override
     public int getThreads() {
-        return threads;
+        return (threads.size() == 1) ? threads.get(0) : -1;
+    }
+
+    /**
+     * Getter
+     *
+     * @return the value
+     */
+    @Override
+    public List<Integer> getThreadSweep() {
+        return (threads.size() > 1) ? threads : Collections.<Integer>emptyList();
+    }
+
+    /**
+     * Getter
+     *
+     * @return the value
+     */
+    @Override
+    public AffinityPolicy getAffinity() {
+        return affinity;
+    }
+
+    /**
+     * Getter
+     *
+     * @return the value
+     */
+    @Override
+    public String getExecutor() {
+        return executor;
     }
 
     /**
@@ -412,6 +656,16 @@ public class CommandLineOptions implements Options {
         return gcEachIteration;
     }
 
+    /**
+     * Getter
+     *
+     * @return the value
+     */
+    @Override
+    public boolean shouldUsePersistentWorkers() {
+        return persistentWorkers;
+    }
+
     /**
      * Getter
      *
@@ -475,5 +729,128 @@ public class CommandLineOptions implements Options {
         return benchMode;
     }
 
+    /**
+     * Getter
+     *
+     * @return the value
+     */
+    @Override
+    public int getParallelForks() {
+        return parallelForks;
+    }
+
+    /**
+     * Getter
+     *
+     * @return the value
+     */
+    @Override
+    public boolean shouldUseFastStartup() {
+        return fastStartup;
+    }
+
+    /**
+     * Getter
+     *
+     * @return the value
+     */
+    @Override
+    public LinkTransport getLinkTransport() {
+        return linkTransport;
+    }
+
+    /**
+     * Getter
+     *
+     * @return the value
+     */
+    @Override
+    public int getCoordinatorPort() {
+        return coordinatorPort;
+    }
+
+    /**
+     * Getter
+     *
+     * @return the value
+     */
+    @Override
+    public String getCoordinatorAddress() {
+        return coordinatorAddress;
+    }
+
+    /**
+     * Getter
+     *
+     * @return the value
+     */
+    public String getAgent() {
+        return agent;
+    }
+
+    /**
+     * Getter
+     *
+     * @return the value
+     */
+    @Override
+    public String getJournal() {
+        return journal;
+    }
+
+    /**
+     * Getter
+     *
+     * @return the value
+     */
+    @Override
+    public boolean shouldResume() {
+        return resume;
+    }
+
+    /**
+     * Getter
+     *
+     * @return the value
+     */
+    @Override
+    public ExecutionOrder getExecutionOrder() {
+        return executionOrder;
+    }
+
+    /**
+     * Getter
+     *
+     * @return the value
+     */
+    @Override
+    public Long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Getter
+     *
+     * @return the value
+     */
+    @Override
+    public Map<String, List<String>> getParameters() {
+        Map<String, List<String>> result = new TreeMap<String, List<String>>();
+        for (String p : params) {
+            int idx = p.indexOf('=');
+            if (idx <= 0) {
+                throw new IllegalArgumentException("Parameter should be in PARAM=V1,V2 format: " + p);
+            }
+            String name = p.substring(0, idx).trim();
+            List<String> values = result.get(name);
+            if (values == null) {
+                values = new ArrayList<String>();
+                result.put(name, values);
+            }
+            values.addAll(Arrays.asList(p.substring(idx + 1).split(",")));
+        }
+        return result;
+    }
+
 
 }
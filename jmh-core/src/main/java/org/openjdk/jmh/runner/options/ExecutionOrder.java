@@ -22,22 +22,33 @@
  * or visit www.oracle.com if you need additional information or have any
  * questions.
  */
-package org.openjdk.jmh.link.frames;
-
-import java.io.Serializable;
+package org.openjdk.jmh.runner.options;
 
 /**
- * Encapsulates the OutputFormat call
- *   - method name
- *   - arguments (assumed to be serializable)
+ * Order to run the benchmarks and their forks in.
  */
-public class OutputFormatFrame implements Serializable {
-    private static final long serialVersionUID = -7151852354574635295L;
-    public final String method;
-    public final Object[] args;
+public enum ExecutionOrder {
+
+    /**
+     * Run the benchmarks one after another, all forks of the benchmark back to back.
+     */
+    SEQUENTIAL,
+
+    /**
+     * Run the forks round-robin across the benchmarks: first fork of every benchmark
+     * runs before the second fork of any benchmark.
+     */
+    INTERLEAVED,
+
+    /**
+     * Same as {@link #INTERLEAVED}, but shuffle the benchmarks in every round,
+     * and shuffle the benchmarks running in the same VM.
+     */
+    RANDOMIZED,
+
+    ;
 
-    public OutputFormatFrame(String method, Object[] args) {
-        this.method = method;
-        this.args = args;
+    static ExecutionOrder defaultOrder() {
+        return SEQUENTIAL;
     }
 }
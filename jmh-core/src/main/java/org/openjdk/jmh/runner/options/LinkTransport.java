@@ -22,27 +22,38 @@
  * or visit www.oracle.com if you need additional information or have any
  * questions.
  */
-package org.openjdk.jmh.link.frames;
+package org.openjdk.jmh.runner.options;
 
-import org.openjdk.jmh.logic.results.RunResult;
-import org.openjdk.jmh.runner.BenchmarkRecord;
+/**
+ * Transport for the traffic between the forked VMs and the host VM.
+ */
+public enum LinkTransport {
+
+    /**
+     * TCP socket to the host VM.
+     */
+    TCP("TCP socket"),
+
+    /**
+     * Ring buffers in the memory-mapped file shared by the host VM and the fork.
+     * Forked VM does no network calls, and host VM polls the ring for data.
+     * Falls back to TCP if the file can not be mapped.
+     */
+    MMAP("memory-mapped file"),
 
-import java.io.Serializable;
+    ;
 
-public class ResultsFrame implements Serializable {
-    private final BenchmarkRecord record;
-    private final RunResult result;
+    private final String label;
 
-    public ResultsFrame(BenchmarkRecord record, RunResult result) {
-        this.record = record;
-        this.result = result;
+    LinkTransport(String label) {
+        this.label = label;
     }
 
-    public BenchmarkRecord getRecord() {
-        return record;
+    public String label() {
+        return label;
     }
 
-    public RunResult getResult() {
-        return result;
+    static LinkTransport defaultTransport() {
+        return TCP;
     }
 }
@@ -22,24 +22,36 @@
  * or visit www.oracle.com if you need additional information or have any
  * questions.
  */
-package org.openjdk.jmh.link.frames;
+package org.openjdk.jmh.runner.options;
 
-import java.io.Serializable;
+/**
+ * Schedule of the invocation start times in {@link org.openjdk.jmh.annotations.Mode#OpenLoop} mode.
+ */
+public enum LoadSchedule {
 
-public class InfraFrame implements Serializable {
+    /**
+     * Invocations start at the fixed intervals.
+     */
+    FIXED("fixed intervals"),
 
-    private final Type type;
+    /**
+     * Invocations start at the exponentially distributed intervals, as the independent requests arrive.
+     */
+    POISSON("Poisson arrivals"),
 
-    public InfraFrame(Type type) {
-        this.type = type;
-    }
+    ;
 
-    public Type getType() {
-        return type;
+    private final String label;
+
+    LoadSchedule(String label) {
+        this.label = label;
     }
 
-    public enum Type {
-        OPTIONS_REQUEST,
+    public String label() {
+        return label;
     }
 
+    static LoadSchedule defaultSchedule() {
+        return FIXED;
+    }
 }
@@ -32,6 +32,7 @@ import org.openjdk.jmh.runner.parameters.TimeValue;
 import java.io.Serializable;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 public interface Options extends Serializable {
@@ -66,6 +67,12 @@ public interface Options extends Serializable {
      */
     boolean shouldDoGC();
 
+    /**
+     * Should reuse the same worker threads across iterations?
+     * @return should use persistent workers?
+     */
+    boolean shouldUsePersistentWorkers();
+
     /**
      * Profilers to use for the run.
      * @return profilers to use; empty set if no profilers are required
@@ -96,6 +103,24 @@ public interface Options extends Serializable {
      */
     int getThreads();
 
+    /**
+     * Thread counts to run every benchmark with, one after another
+     * @return thread counts, 0 meaning the maximum number of threads; empty list if no sweep is requested
+     */
+    List<Integer> getThreadSweep();
+
+    /**
+     * Placement of the benchmark threads on CPUs
+     * @return affinity policy
+     */
+    AffinityPolicy getAffinity();
+
+    /**
+     * Executor to run the benchmark threads on
+     * @return executor name or provider class name; null to use default
+     */
+    String getExecutor();
+
     /**
      * Should synchronize iterations?
      * TODO: Rework "null" interface?
@@ -115,6 +140,19 @@ public interface Options extends Serializable {
      */
     TimeValue getWarmupTime();
 
+    /**
+     * Should warmup until the iteration scores reach the steady state?
+     * The number of warmup iterations becomes the upper bound then.
+     * @return should we?
+     */
+    boolean shouldWarmupToSteadyState();
+
+    /**
+     * Should the steady state warmup also wait for the JIT compilation to quiesce?
+     * @return should we?
+     */
+    boolean shouldWarmupToJitQuiescence();
+
     /**
      * Warmup mode.
      * @return warmup mode
@@ -133,12 +171,77 @@ public interface Options extends Serializable {
      */
     int getIterations();
 
+    /**
+     * Target relative error of the score for adaptive measurement.
+     * When set, the measurement stops as soon as the score error gets below the target,
+     * and the number of measurement iterations becomes the upper bound.
+     * @return target error, e.g. 0.01 for 1%; negative if measurement is not adaptive
+     */
+    double getTargetError();
+
+    /**
+     * Target rate for {@link org.openjdk.jmh.annotations.Mode#OpenLoop} benchmarks, shared by all the benchmark threads.
+     * @return invocations per second; non-positive if not set
+     */
+    double getTargetRate();
+
+    /**
+     * Schedule of the invocation starts for {@link org.openjdk.jmh.annotations.Mode#OpenLoop} benchmarks.
+     * @return schedule
+     */
+    LoadSchedule getLoadSchedule();
+
+    /**
+     * Load steps to run every benchmark at, one after another, in {@link org.openjdk.jmh.annotations.Mode#OpenLoop}
+     * mode, after measuring its maximum throughput
+     * @return load steps, in percent of the maximum throughput; empty list if no sweep is requested
+     */
+    List<Integer> getLoadSweep();
+
+    /**
+     * Precision of the latency histograms in {@link org.openjdk.jmh.annotations.Mode#SampleTime} and
+     * {@link org.openjdk.jmh.annotations.Mode#OpenLoop} modes
+     * @return number of significant decimal digits; -1 to use default
+     */
+    int getHistogramPrecision();
+
+    /**
+     * Directory to write the per-operation traces of {@link org.openjdk.jmh.annotations.Mode#Throughput}
+     * and {@link org.openjdk.jmh.annotations.Mode#AverageTime} benchmarks to
+     * @return directory name; null if operations should not be traced
+     */
+    String getTrace();
+
+    /**
+     * Trace only every N-th operation
+     * @return N; -1 to use default
+     */
+    int getTraceEvery();
+
+    /**
+     * Minimal number of measurement iterations for adaptive measurement
+     * @return minimal number of iterations; -1 to use default
+     */
+    int getMinIterations();
+
     /**
      * The duration for measurement iterations
      * @return duration; null, if use default
      */
     TimeValue getRuntime();
 
+    /**
+     * How long to wait for the iteration to complete after its time is up, before abandoning it
+     * @return timeout; null, if should wait indefinitely
+     */
+    TimeValue getTimeout();
+
+    /**
+     * How long to wait for the forked VM to complete, before killing it
+     * @return timeout; null, if should wait indefinitely
+     */
+    TimeValue getForkTimeout();
+
     /**
      * Benchmarks modes to execute.
      * @return modes to execute the benchmarks in; null to use the default mode
@@ -181,4 +284,64 @@ public interface Options extends Serializable {
      */
     String getJvmArgs();
 
+    /**
+     * Number of forked VMs to run at once, each pinned to its own CPU slot.
+     * @return number of concurrent forks; -1 or 1 to run forks one by one
+     */
+    int getParallelForks();
+
+    /**
+     * Should speed up the fork startup with argument files and class-data sharing archives?
+     * @return should we?
+     */
+    boolean shouldUseFastStartup();
+
+    /**
+     * Transport to talk to the forked VMs over
+     * @return link transport
+     */
+    LinkTransport getLinkTransport();
+
+    /**
+     * Port to accept the agents on, which run the forks instead of this VM.
+     * @return port; 0 for any free port; -1 if forks should run locally
+     */
+    int getCoordinatorPort();
+
+    /**
+     * Address to accept the agents on.
+     * @return address; null to accept the agents on the loopback address only
+     */
+    String getCoordinatorAddress();
+
+    /**
+     * File to journal the completed forks and benchmarks to
+     * @return journal file name; null if run should not be journaled
+     */
+    String getJournal();
+
+    /**
+     * Should skip the forks and benchmarks completed according to the journal?
+     * @return should we?
+     */
+    boolean shouldResume();
+
+    /**
+     * Order to run the benchmarks and their forks in.
+     * @return execution order
+     */
+    ExecutionOrder getExecutionOrder();
+
+    /**
+     * Seed for the randomized execution order
+     * @return seed; null to pick the random one
+     */
+    Long getSeed();
+
+    /**
+     * Values for the benchmark parameters, overriding the values declared with {@link org.openjdk.jmh.annotations.Param}
+     * @return parameter values, by parameter name; empty map if declared values should be used
+     */
+    Map<String, List<String>> getParameters();
+
 }
@@ -30,10 +30,13 @@ import org.openjdk.jmh.profile.ProfilerType;
 import org.openjdk.jmh.runner.parameters.TimeValue;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.TimeUnit;
 
 public class OptionsBuilder implements Options, ChainedOptionsBuilder {
@@ -130,6 +133,21 @@ public class OptionsBuilder implements Options, ChainedOptionsBuilder {
 
     // ---------------------------------------------------------------------------
 
+    private boolean usePersistentWorkers;
+
+    @Override
+    public ChainedOptionsBuilder usePersistentWorkers(boolean value) {
+        usePersistentWorkers = value;
+        return this;
+    }
+
+    @Override
+    public boolean shouldUsePersistentWorkers() {
+        return usePersistentWorkers;
+    }
+
+    // ---------------------------------------------------------------------------
+
     private EnumSet<ProfilerType> profilers = EnumSet.noneOf(ProfilerType.class);
 
     @Override
@@ -205,6 +223,54 @@ public class OptionsBuilder implements Options, ChainedOptionsBuilder {
 
     // ---------------------------------------------------------------------------
 
+    private final List<Integer> threadSweep = new ArrayList<Integer>();
+
+    @Override
+    public ChainedOptionsBuilder threadSweep(int... counts) {
+        threadSweep.clear();
+        for (int c : counts) {
+            threadSweep.add(c);
+        }
+        return this;
+    }
+
+    @Override
+    public List<Integer> getThreadSweep() {
+        return threadSweep;
+    }
+
+    // ---------------------------------------------------------------------------
+
+    private AffinityPolicy affinity = AffinityPolicy.defaultPolicy();
+
+    @Override
+    public ChainedOptionsBuilder affinity(AffinityPolicy policy) {
+        this.affinity = policy;
+        return this;
+    }
+
+    @Override
+    public AffinityPolicy getAffinity() {
+        return affinity;
+    }
+
+    // ---------------------------------------------------------------------------
+
+    private String executor;
+
+    @Override
+    public ChainedOptionsBuilder executor(String name) {
+        this.executor = name;
+        return this;
+    }
+
+    @Override
+    public String getExecutor() {
+        return executor;
+    }
+
+    // ---------------------------------------------------------------------------
+
     private Boolean syncIterations;
 
     @Override
@@ -250,6 +316,36 @@ public class OptionsBuilder implements Options, ChainedOptionsBuilder {
 
     // ---------------------------------------------------------------------------
 
+    private boolean warmupSteadyState;
+
+    @Override
+    public ChainedOptionsBuilder warmupToSteadyState(boolean value) {
+        this.warmupSteadyState = value;
+        return this;
+    }
+
+    @Override
+    public boolean shouldWarmupToSteadyState() {
+        return warmupSteadyState;
+    }
+
+    // ---------------------------------------------------------------------------
+
+    private boolean warmupJitQuiescence;
+
+    @Override
+    public ChainedOptionsBuilder warmupToJitQuiescence(boolean value) {
+        this.warmupJitQuiescence = value;
+        return this;
+    }
+
+    @Override
+    public boolean shouldWarmupToJitQuiescence() {
+        return warmupJitQuiescence;
+    }
+
+    // ---------------------------------------------------------------------------
+
     private WarmupMode warmupMode = WarmupMode.defaultMode();
 
     @Override
@@ -295,6 +391,129 @@ public class OptionsBuilder implements Options, ChainedOptionsBuilder {
 
     // ---------------------------------------------------------------------------
 
+    private double targetError = -1;
+
+    @Override
+    public ChainedOptionsBuilder targetError(double value) {
+        this.targetError = value;
+        return this;
+    }
+
+    @Override
+    public double getTargetError() {
+        return targetError;
+    }
+
+    // ---------------------------------------------------------------------------
+
+    private double targetRate = -1;
+
+    @Override
+    public ChainedOptionsBuilder targetRate(double value) {
+        this.targetRate = value;
+        return this;
+    }
+
+    @Override
+    public double getTargetRate() {
+        return targetRate;
+    }
+
+    // ---------------------------------------------------------------------------
+
+    private LoadSchedule loadSchedule = LoadSchedule.defaultSchedule();
+
+    @Override
+    public ChainedOptionsBuilder loadSchedule(LoadSchedule schedule) {
+        this.loadSchedule = schedule;
+        return this;
+    }
+
+    @Override
+    public LoadSchedule getLoadSchedule() {
+        return loadSchedule;
+    }
+
+    // ---------------------------------------------------------------------------
+
+    private final List<Integer> loadSweep = new ArrayList<Integer>();
+
+    @Override
+    public ChainedOptionsBuilder loadSweep(int... percents) {
+        loadSweep.clear();
+        for (int p : percents) {
+            loadSweep.add(p);
+        }
+        return this;
+    }
+
+    @Override
+    public List<Integer> getLoadSweep() {
+        return loadSweep;
+    }
+
+    // ---------------------------------------------------------------------------
+
+    private int histogramPrecision = -1;
+
+    @Override
+    public ChainedOptionsBuilder histogramPrecision(int digits) {
+        this.histogramPrecision = digits;
+        return this;
+    }
+
+    @Override
+    public int getHistogramPrecision() {
+        return histogramPrecision;
+    }
+
+    // ---------------------------------------------------------------------------
+
+    private String trace;
+
+    @Override
+    public ChainedOptionsBuilder trace(String dir) {
+        this.trace = dir;
+        return this;
+    }
+
+    @Override
+    public String getTrace() {
+        return trace;
+    }
+
+    // ---------------------------------------------------------------------------
+
+    private int traceEvery = -1;
+
+    @Override
+    public ChainedOptionsBuilder traceEvery(int n) {
+        this.traceEvery = n;
+        return this;
+    }
+
+    @Override
+    public int getTraceEvery() {
+        return traceEvery;
+    }
+
+    // ---------------------------------------------------------------------------
+
+    private int minIterations = -1;
+
+    @Override
+    public ChainedOptionsBuilder minMeasurementIterations(int count) {
+        this.minIterations = count;
+        return this;
+    }
+
+    @Override
+    public int getMinIterations() {
+        return minIterations;
+    }
+
+    // ---------------------------------------------------------------------------
+
     private TimeValue measurementTime;
 
     @Override
@@ -310,6 +529,36 @@ public class OptionsBuilder implements Options, ChainedOptionsBuilder {
 
     // ---------------------------------------------------------------------------
 
+    private TimeValue timeout;
+
+    @Override
+    public ChainedOptionsBuilder timeout(TimeValue value) {
+        this.timeout = value;
+        return this;
+    }
+
+    @Override
+    public TimeValue getTimeout() {
+        return timeout;
+    }
+
+    // ---------------------------------------------------------------------------
+
+    private TimeValue forkTimeout;
+
+    @Override
+    public ChainedOptionsBuilder forkTimeout(TimeValue value) {
+        this.forkTimeout = value;
+        return this;
+    }
+
+    @Override
+    public TimeValue getForkTimeout() {
+        return forkTimeout;
+    }
+
+    // ---------------------------------------------------------------------------
+
     private EnumSet<Mode> benchModes;
 
     @Override
@@ -416,4 +665,154 @@ public class OptionsBuilder implements Options, ChainedOptionsBuilder {
         return jvmArgs;
     }
 
+    // ---------------------------------------------------------------------------
+
+    private int parallelForks = -1;
+
+    @Override
+    public ChainedOptionsBuilder parallelForks(int value) {
+        this.parallelForks = value;
+        return this;
+    }
+
+    @Override
+    public int getParallelForks() {
+        return parallelForks;
+    }
+
+    // ---------------------------------------------------------------------------
+
+    private boolean fastStartup;
+
+    @Override
+    public ChainedOptionsBuilder fastStartup(boolean value) {
+        this.fastStartup = value;
+        return this;
+    }
+
+    @Override
+    public boolean shouldUseFastStartup() {
+        return fastStartup;
+    }
+
+    // ---------------------------------------------------------------------------
+
+    private LinkTransport linkTransport = LinkTransport.defaultTransport();
+
+    @Override
+    public ChainedOptionsBuilder linkTransport(LinkTransport transport) {
+        this.linkTransport = transport;
+        return this;
+    }
+
+    @Override
+    public LinkTransport getLinkTransport() {
+        return linkTransport;
+    }
+
+    // ---------------------------------------------------------------------------
+
+    private int coordinatorPort = -1;
+
+    @Override
+    public ChainedOptionsBuilder coordinatorPort(int port) {
+        this.coordinatorPort = port;
+        return this;
+    }
+
+    @Override
+    public int getCoordinatorPort() {
+        return coordinatorPort;
+    }
+
+    // ---------------------------------------------------------------------------
+
+    private String coordinatorAddress;
+
+    @Override
+    public ChainedOptionsBuilder coordinatorAddress(String address) {
+        this.coordinatorAddress = address;
+        return this;
+    }
+
+    @Override
+    public String getCoordinatorAddress() {
+        return coordinatorAddress;
+    }
+
+    // ---------------------------------------------------------------------------
+
+    private String journal;
+
+    @Override
+    public ChainedOptionsBuilder journal(String filename) {
+        this.journal = filename;
+        return this;
+    }
+
+    @Override
+    public String getJournal() {
+        return journal;
+    }
+
+    // ---------------------------------------------------------------------------
+
+    private boolean resume;
+
+    @Override
+    public ChainedOptionsBuilder resume(boolean value) {
+        this.resume = value;
+        return this;
+    }
+
+    @Override
+    public boolean shouldResume() {
+        return resume;
+    }
+
+    // ---------------------------------------------------------------------------
+
+    private ExecutionOrder executionOrder = ExecutionOrder.defaultOrder();
+
+    @Override
+    public ChainedOptionsBuilder executionOrder(ExecutionOrder order) {
+        this.executionOrder = order;
+        return this;
+    }
+
+    @Override
+    public ExecutionOrder getExecutionOrder() {
+        return executionOrder;
+    }
+
+    // ---------------------------------------------------------------------------
+
+    private Long seed;
+
+    @Override
+    public ChainedOptionsBuilder seed(long value) {
+        this.seed = value;
+        return this;
+    }
+
+    @Override
+    public Long getSeed() {
+        return seed;
+    }
+
+    // ---------------------------------------------------------------------------
+
+    private final Map<String, List<String>> params = new TreeMap<String, List<String>>();
+
+    @Override
+    public ChainedOptionsBuilder param(String name, String... values) {
+        params.put(name, Arrays.asList(values));
+        return this;
+    }
+
+    @Override
+    public Map<String, List<String>> getParameters() {
+        return params;
+    }
+
 }
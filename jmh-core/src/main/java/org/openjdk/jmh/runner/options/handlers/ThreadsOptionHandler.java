@@ -27,18 +27,19 @@ package org.openjdk.jmh.runner.options.handlers;
 import org.kohsuke.args4j.CmdLineException;
 import org.kohsuke.args4j.CmdLineParser;
 import org.kohsuke.args4j.OptionDef;
-import org.kohsuke.args4j.spi.IntOptionHandler;
+import org.kohsuke.args4j.spi.OptionHandler;
 import org.kohsuke.args4j.spi.Parameters;
 import org.kohsuke.args4j.spi.Setter;
 
 /**
  * OptionHandler for the -t/--threads option. Will parse the special value "max" and assign
  * 0 if set (later 0 will be changed to Runtime.availableProcessors()),
- * else treat it like normal integer parsing.
+ * else treat it like normal integer parsing. Comma-separated list of thread counts
+ * requests the thread count sweep.
  *
  * @author anders.astrand@oracle.com
  */
-public class ThreadsOptionHandler extends IntOptionHandler {
+public class ThreadsOptionHandler extends OptionHandler<Integer> {
 
     /**
      * Constructor
@@ -53,16 +54,28 @@ public class ThreadsOptionHandler extends IntOptionHandler {
 
     @Override
     public int parseArguments(Parameters params) throws CmdLineException {
-        if ("max".equals(params.getParameter(0))) {
-            setter.addValue(0);
-            return 1;
-        } else {
-            return super.parseArguments(params);
+        String param = params.getParameter(0);
+        for (String c : param.split(",")) {
+            c = c.trim();
+            if ("max".equals(c)) {
+                setter.addValue(0);
+            } else {
+                try {
+                    int v = Integer.parseInt(c);
+                    if (v < 0) {
+                        throw new CmdLineException(owner, "Thread count should be non-negative: " + c);
+                    }
+                    setter.addValue(v);
+                } catch (NumberFormatException ex) {
+                    throw new CmdLineException(owner, param + " could not be parsed: " + ex.getMessage());
+                }
+            }
         }
+        return 1;
     }
 
     @Override
     public String getDefaultMetaVariable() {
-        return "INT (or \"max\")";
+        return "INT (or \"max\"),...";
     }
 }
@@ -30,17 +30,25 @@ import org.openjdk.jmh.annotations.Mode;
 import org.openjdk.jmh.annotations.Threads;
 import org.openjdk.jmh.annotations.Warmup;
 import org.openjdk.jmh.runner.BenchmarkRecord;
+import org.openjdk.jmh.runner.ExecutorType;
+import org.openjdk.jmh.runner.options.AffinityPolicy;
+import org.openjdk.jmh.runner.options.LoadSchedule;
 import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.util.CpuTopology;
+import org.openjdk.jmh.util.internal.SampleHistogram;
 
 import java.io.Serializable;
 import java.lang.reflect.Method;
 
 public class BenchmarkParams implements Serializable {
 
-    public static BenchmarkParams makeParams(Options options, BenchmarkRecord benchmark, Method method, boolean doWarmup, boolean doMeasurement) {
+    /**
+     * @param topology CPU topology to place the threads on; only used when the affinity is requested
+     */
+    public static BenchmarkParams makeParams(Options options, BenchmarkRecord benchmark, Method method, boolean doWarmup, boolean doMeasurement, CpuTopology topology) {
         boolean shouldSynchIterations = getBoolean(options.getSynchIterations(), Defaults.SHOULD_SYNCH_ITERATIONS);
 
-        int threads = getThreads(options, method);
+        int threads = getThreads(options, benchmark, method);
         if (threads == 0) {
             threads = Runtime.getRuntime().availableProcessors();
         }
@@ -49,23 +57,64 @@ public class BenchmarkParams implements Serializable {
                 getMeasurement(options, benchmark, method, threads) :
                 new IterationParams(0, TimeValue.NONE, 1);
 
+        boolean warmupSteadyState = doWarmup && (options.shouldWarmupToSteadyState() || options.shouldWarmupToJitQuiescence());
+        boolean warmupJitQuiescence = doWarmup && options.shouldWarmupToJitQuiescence();
+
         IterationParams warmup = doWarmup ?
-                getWarmup(options, benchmark, method, threads) :
+                getWarmup(options, benchmark, method, threads, warmupSteadyState) :
                 new IterationParams(0, TimeValue.NONE, 1);
 
+        double targetError = doMeasurement ? options.getTargetError() : -1;
+        int minIterations = measurement.getCount();
+        if (targetError > 0) {
+            minIterations = Math.max(2, Math.min(minIterations,
+                    getInteger(options.getMinIterations(), -1, Defaults.MIN_ITERATION_COUNT)));
+        }
+
+        String executor = getExecutor(options, method);
+        int carrierThreads = ExecutorType.forName(executor).getCarrierThreads(threads);
+        if (carrierThreads >= 0 && carrierThreads < threads) {
+            // workers spinning in the synchronized warmup would never let the rest of them run
+            shouldSynchIterations = false;
+        }
+
+        CpuTopology.Placement placement = (options.getAffinity() != AffinityPolicy.NONE) ?
+                topology.place(options.getAffinity(), threads) :
+                null;
+
+        double targetRate = -1;
+        LoadSchedule schedule = null;
+        if (benchmark.getMode() == Mode.OpenLoop) {
+            targetRate = (benchmark.getTargetRate() > 0) ? benchmark.getTargetRate() : options.getTargetRate();
+            if (targetRate <= 0) {
+                throw new IllegalArgumentException("OpenLoop mode requires the target rate, set it with -rate");
+            }
+            schedule = options.getLoadSchedule();
+        }
+
+        int histogramPrecision = getInteger(options.getHistogramPrecision(), -1, Defaults.HISTOGRAM_PRECISION);
+        if (histogramPrecision < SampleHistogram.MIN_PRECISION || histogramPrecision > SampleHistogram.MAX_PRECISION) {
+            throw new IllegalArgumentException("Histogram precision should be within [" + SampleHistogram.MIN_PRECISION + ", " +
+                    SampleHistogram.MAX_PRECISION + "]: " + histogramPrecision);
+        }
+
         return new BenchmarkParams(
                 shouldSynchIterations,
                 warmup, measurement,
-                threads);
+                threads,
+                minIterations, targetError,
+                warmupSteadyState, warmupJitQuiescence,
+                placement, executor, carrierThreads,
+                targetRate, schedule, histogramPrecision);
     }
 
-    private static IterationParams getWarmup(Options options, BenchmarkRecord benchmark, Method method, int threads) {
+    private static IterationParams getWarmup(Options options, BenchmarkRecord benchmark, Method method, int threads, boolean steadyState) {
         boolean isSingleShot = (benchmark.getMode() == Mode.SingleShotTime);
         Warmup warAnn = method.getAnnotation(Warmup.class);
         int iters = (warAnn == null) ? -1 : warAnn.iterations();
         if (isSingleShot) {
             return new IterationParams(
-                    getInteger(options.getWarmupIterations(), iters, Defaults.SINGLE_SHOT_WARMUP_COUNT),
+                    getInteger(options.getWarmupIterations(), iters, steadyState ? Defaults.STEADY_STATE_WARMUP_COUNT : Defaults.SINGLE_SHOT_WARMUP_COUNT),
                     TimeValue.NONE,
                     threads);
         } else {
@@ -77,7 +126,7 @@ public class BenchmarkParams implements Serializable {
                     timeValue = Defaults.WARMUP_TIME;
                 }
             }
-            return new IterationParams(getInteger(options.getWarmupIterations(), iters, Defaults.WARMUP_COUNT), timeValue, threads);
+            return new IterationParams(getInteger(options.getWarmupIterations(), iters, steadyState ? Defaults.STEADY_STATE_WARMUP_COUNT : Defaults.WARMUP_COUNT), timeValue, threads);
         }
     }
 
@@ -105,7 +154,22 @@ public class BenchmarkParams implements Serializable {
         }
     }
 
-    private static int getThreads(Options options, Method method) {
+    private static String getExecutor(Options options, Method method) {
+        if (options.getExecutor() != null) {
+            return options.getExecutor();
+        }
+        Threads threadsAnn = method.getAnnotation(Threads.class);
+        if (threadsAnn != null && !threadsAnn.executor().isEmpty()) {
+            return threadsAnn.executor();
+        }
+        return ExecutorType.defaultName();
+    }
+
+    private static int getThreads(Options options, BenchmarkRecord benchmark, Method method) {
+        if (benchmark.getThreads() != -1) {
+            // thread count sweep point
+            return benchmark.getThreads();
+        }
         Threads threadsAnn = method.getAnnotation(Threads.class);
         return getInteger(options.getThreads(), (threadsAnn == null) ? -1 : threadsAnn.value(), Defaults.THREADS);
 
@@ -115,12 +179,36 @@ public class BenchmarkParams implements Serializable {
     private final int threads;
     private final IterationParams warmup;
     private final IterationParams iteration;
+    private final int minIterations;
+    private final double targetError;
+    private final boolean warmupSteadyState;
+    private final boolean warmupJitQuiescence;
+    private final CpuTopology.Placement placement;
+    private final String executor;
+    private final int carrierThreads;
+    private final double targetRate;
+    private final LoadSchedule schedule;
+    private final int histogramPrecision;
 
-    public BenchmarkParams(boolean synchIterations, IterationParams warmup, IterationParams iteration, int threads) {
+    public BenchmarkParams(boolean synchIterations, IterationParams warmup, IterationParams iteration, int threads,
+                           int minIterations, double targetError,
+                           boolean warmupSteadyState, boolean warmupJitQuiescence,
+                           CpuTopology.Placement placement, String executor, int carrierThreads,
+                           double targetRate, LoadSchedule schedule, int histogramPrecision) {
         this.synchIterations = synchIterations;
         this.warmup = warmup;
         this.iteration = iteration;
         this.threads = threads;
+        this.minIterations = minIterations;
+        this.targetError = targetError;
+        this.warmupSteadyState = warmupSteadyState;
+        this.warmupJitQuiescence = warmupJitQuiescence;
+        this.placement = placement;
+        this.executor = executor;
+        this.carrierThreads = carrierThreads;
+        this.targetRate = targetRate;
+        this.schedule = schedule;
+        this.histogramPrecision = histogramPrecision;
     }
 
     public boolean shouldSynchIterations() {
@@ -139,6 +227,91 @@ public class BenchmarkParams implements Serializable {
         return threads;
     }
 
+    /**
+     * Is measurement adaptive? Adaptive measurement stops as soon as the score
+     * error drops below the target, running between {@link #getMinIterations()}
+     * and {@link #getIteration()} count iterations.
+     *
+     * @return true, if measurement should stop on convergence
+     */
+    public boolean isAdaptive() {
+        return targetError > 0;
+    }
+
+    public int getMinIterations() {
+        return minIterations;
+    }
+
+    /**
+     * @return target relative error of the score with {@link Defaults#TARGET_ERROR_ALPHA} alpha;
+     *         non-positive if measurement is not adaptive
+     */
+    public double getTargetError() {
+        return targetError;
+    }
+
+    /**
+     * Should warmup until the scores are steady? The warmup iteration count is the upper bound then.
+     *
+     * @return true, if warmup should stop at the steady state
+     */
+    public boolean shouldWarmupToSteadyState() {
+        return warmupSteadyState;
+    }
+
+    /**
+     * Should the steady state also require the JIT compilation to quiesce?
+     *
+     * @return true, if warmup should wait for JIT compilation to stop
+     */
+    public boolean shouldWarmupToJitQuiescence() {
+        return warmupJitQuiescence;
+    }
+
+    /**
+     * Placement of the worker threads on CPUs, computed in the VM running the benchmark.
+     *
+     * @return placement; null if threads are not pinned
+     */
+    public CpuTopology.Placement getPlacement() {
+        return placement;
+    }
+
+    /**
+     * @return executor name, see {@link ExecutorType#forName(String)}
+     */
+    public String getExecutor() {
+        return executor;
+    }
+
+    /**
+     * @return number of platform threads the benchmark threads run on; -1 if unknown
+     */
+    public int getCarrierThreads() {
+        return carrierThreads;
+    }
+
+    /**
+     * @return open-loop invocation rate, shared by all the threads, ops/s; non-positive if the load is closed-loop
+     */
+    public double getTargetRate() {
+        return targetRate;
+    }
+
+    /**
+     * @return schedule of the open-loop invocation starts; null if the load is closed-loop
+     */
+    public LoadSchedule getLoadSchedule() {
+        return schedule;
+    }
+
+    /**
+     * @return significant decimal digits kept in the latency histograms
+     */
+    public int getHistogramPrecision() {
+        return histogramPrecision;
+    }
+
     private static boolean getBoolean(Boolean value, boolean defaultValue) {
         return value == null ? defaultValue : value;
     }
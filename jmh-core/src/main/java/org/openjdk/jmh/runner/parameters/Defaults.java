@@ -41,10 +41,12 @@ public class Defaults {
     public static final int ITERATION_TIME_SECS = 5;  // seconds
     public static final int ITERATION_COUNT = 20;
     public static final int SINGLE_SHOT_ITERATION_COUNT = 1;
+    public static final int MIN_ITERATION_COUNT = 5;
 
     public static final int WARMUP_TIME_SECS = 3;     // seconds
     public static final int WARMUP_COUNT = 5;
     public static final int SINGLE_SHOT_WARMUP_COUNT = 0;
+    public static final int STEADY_STATE_WARMUP_COUNT = 50;
 
     public static final TimeValue WARMUP_TIME = new TimeValue(WARMUP_TIME_SECS, TimeUnit.SECONDS);
     public static final TimeValue ITERATION_TIME = new TimeValue(ITERATION_TIME_SECS, TimeUnit.SECONDS);
@@ -56,4 +58,35 @@ public class Defaults {
 //--- no annotation
     public static final boolean SHOULD_SYNCH_ITERATIONS = true;
 
+    /**
+     * Alpha for the target error of adaptive measurement, that is, 99% confidence.
+     */
+    public static final double TARGET_ERROR_ALPHA = 0.01;
+
+    /**
+     * Number of the recent warmup iterations to look for the steady state at.
+     */
+    public static final int STEADY_STATE_WINDOW = 5;
+
+    /**
+     * Relative score drift across the steady state window which is considered negligible.
+     */
+    public static final double STEADY_STATE_TOLERANCE = 0.02;
+
+    /**
+     * Share of the warmup iteration time the JIT compilers may spend for the compilation to be considered quiescent.
+     */
+    public static final double JIT_QUIESCENCE_TOLERANCE = 0.01;
+
+    /**
+     * Significant decimal digits kept in the latency histograms.
+     */
+    public static final int HISTOGRAM_PRECISION = 3;
+
+    /**
+     * Trace every 100th operation: the fast benchmark would otherwise overflow the trace
+     * within the first milliseconds of the iteration.
+     */
+    public static final int TRACE_EVERY = 100;
+
 }
@@ -0,0 +1,449 @@
+/*
+ * Copyright (c) 2005, 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jmh.util;
+
+import org.openjdk.jmh.runner.options.AffinityPolicy;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * CPU topology of the machine: which CPUs share the physical core, and which cores share the socket.
+ * Only the CPUs this process is allowed to run on are included.
+ */
+public class CpuTopology {
+
+    private static final String SYSFS_CPU = "/sys/devices/system/cpu";
+
+    private final Cpu[] cpus;
+
+    /**
+     * @param ids CPU ids
+     * @param packages socket (physical package) id for every CPU
+     * @param cores physical core id for every CPU, unique within the socket
+     */
+    public CpuTopology(int[] ids, int[] packages, int[] cores) {
+        if (ids.length == 0) {
+            throw new IllegalArgumentException("No CPUs");
+        }
+        if (ids.length != packages.length || ids.length != cores.length) {
+            throw new IllegalArgumentException("Mismatched topology arrays");
+        }
+
+        cpus = new Cpu[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            cpus[i] = new Cpu(ids[i], packages[i], cores[i]);
+        }
+        Arrays.sort(cpus, COMPACT);
+
+        // number the SMT siblings and the cores within their socket
+        int coreIdx = -1;
+        for (int i = 0; i < cpus.length; i++) {
+            Cpu c = cpus[i];
+            if (i > 0 && cpus[i - 1].pkg == c.pkg && cpus[i - 1].core == c.core) {
+                c.sibling = cpus[i - 1].sibling + 1;
+                c.coreIndex = coreIdx;
+            } else {
+                if (i == 0 || cpus[i - 1].pkg != c.pkg) {
+                    coreIdx = -1;
+                }
+                c.sibling = 0;
+                c.coreIndex = ++coreIdx;
+            }
+        }
+    }
+
+    /**
+     * Reads the topology of the CPUs this process is allowed to run on from Linux sysfs.
+     * If topology is not available, every CPU is treated as the separate core on the single socket.
+     *
+     * @return CPU topology
+     */
+    public static CpuTopology forCurrentProcess() {
+        int[] ids = allowedCpus();
+        int[] packages = new int[ids.length];
+        int[] cores = new int[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            String dir = SYSFS_CPU + "/cpu" + ids[i] + "/topology/";
+            Integer pkg = readInt(dir + "physical_package_id");
+            Integer core = readInt(dir + "core_id");
+            if (pkg == null || core == null) {
+                pkg = 0;
+                core = ids[i];
+            }
+            packages[i] = pkg;
+            cores[i] = core;
+        }
+        return new CpuTopology(ids, packages, cores);
+    }
+
+    /**
+     * @return CPU ids this process is allowed to run on
+     */
+    public static int[] allowedCpus() {
+        String list = readStatusLine("Cpus_allowed_list:");
+        if (list != null) {
+            try {
+                return parseCpuList(list);
+            } catch (NumberFormatException e) {
+                // fall through
+            }
+        }
+
+        int[] ids = new int[Runtime.getRuntime().availableProcessors()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = i;
+        }
+        return ids;
+    }
+
+    /**
+     * Parses Linux CPU list, e.g. "0-3,8,10-11".
+     * @param list CPU list
+     * @return CPU ids
+     */
+    public static int[] parseCpuList(String list) {
+        List<Integer> ids = new ArrayList<Integer>();
+        for (String range : list.trim().split(",")) {
+            range = range.trim();
+            if (range.isEmpty()) {
+                continue;
+            }
+            int dash = range.indexOf('-');
+            if (dash == -1) {
+                ids.add(Integer.valueOf(range));
+            } else {
+                int from = Integer.valueOf(range.substring(0, dash).trim());
+                int to = Integer.valueOf(range.substring(dash + 1).trim());
+                for (int c = from; c <= to; c++) {
+                    ids.add(c);
+                }
+            }
+        }
+        return toArray(ids);
+    }
+
+    /**
+     * Formats the CPU ids as Linux CPU list, collapsing the consecutive ids into the ranges.
+     * @param ids CPU ids, sorted
+     * @return CPU list
+     */
+    public static String toCpuList(int[] ids) {
+        StringBuilder sb = new StringBuilder();
+        int i = 0;
+        while (i < ids.length) {
+            int j = i;
+            while (j + 1 < ids.length && ids[j + 1] == ids[j] + 1) {
+                j++;
+            }
+            if (sb.length() > 0) {
+                sb.append(",");
+            }
+            sb.append(ids[i]);
+            if (j > i) {
+                sb.append("-").append(ids[j]);
+            }
+            i = j + 1;
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return number of CPUs
+     */
+    public int size() {
+        return cpus.length;
+    }
+
+    /**
+     * @return number of sockets
+     */
+    public int packages() {
+        Set<Integer> pkgs = new HashSet<Integer>();
+        for (Cpu c : cpus) {
+            pkgs.add(c.pkg);
+        }
+        return pkgs.size();
+    }
+
+    /**
+     * @return number of physical cores
+     */
+    public int cores() {
+        int count = 0;
+        for (Cpu c : cpus) {
+            if (c.sibling == 0) count++;
+        }
+        return count;
+    }
+
+    /**
+     * Places the benchmark workers on CPUs.
+     *
+     * @param policy placement policy
+     * @param threads number of worker threads
+     * @return placement; null if the policy does not pin the threads
+     */
+    public Placement place(AffinityPolicy policy, int threads) {
+        List<Cpu> order = new ArrayList<Cpu>(Arrays.asList(cpus));
+        switch (policy) {
+            case NONE:
+                return null;
+            case COMPACT:
+                Collections.sort(order, COMPACT);
+                break;
+            case SCATTER:
+                Collections.sort(order, SCATTER);
+                break;
+            case PHYSICAL:
+                Collections.sort(order, PHYSICAL);
+                break;
+            case NO_SMT:
+                Collections.sort(order, PHYSICAL);
+                for (int i = order.size() - 1; i >= 0; i--) {
+                    if (order.get(i).sibling != 0) {
+                        order.remove(i);
+                    }
+                }
+                break;
+            default:
+                throw new IllegalStateException("Unknown policy: " + policy);
+        }
+
+        int[] workers = new int[threads];
+        Set<Integer> busy = new TreeSet<Integer>();
+        for (int t = 0; t < threads; t++) {
+            Cpu c = order.get(t % order.size());
+            workers[t] = c.id;
+            busy.add(c.id);
+            if (policy == AffinityPolicy.NO_SMT) {
+                // keep the SMT siblings of measurement cores idle
+                for (Cpu s : cpus) {
+                    if (s.pkg == c.pkg && s.core == c.core) {
+                        busy.add(s.id);
+                    }
+                }
+            }
+        }
+
+        List<Integer> harness = new ArrayList<Integer>();
+        for (Cpu c : cpus) {
+            if (!busy.contains(c.id)) {
+                harness.add(c.id);
+            }
+        }
+        Collections.sort(harness);
+
+        return new Placement(policy, workers, toArray(harness), threads > order.size());
+    }
+
+    /**
+     * Worker threads placement.
+     */
+    public static class Placement implements Serializable {
+        private final AffinityPolicy policy;
+        private final int[] workers;
+        private final int[] harness;
+        private final boolean oversubscribed;
+
+        public Placement(AffinityPolicy policy, int[] workers, int[] harness, boolean oversubscribed) {
+            this.policy = policy;
+            this.workers = workers;
+            this.harness = harness;
+            this.oversubscribed = oversubscribed;
+        }
+
+        public AffinityPolicy getPolicy() {
+            return policy;
+        }
+
+        /**
+         * @return CPU ids for the worker threads, indexed by worker; wraps around if there are more workers
+         */
+        public int[] getWorkerCpus() {
+            return workers;
+        }
+
+        /**
+         * @param thread worker thread index
+         * @return CPU id the worker should run on
+         */
+        public int getWorkerCpu(int thread) {
+            return workers[thread % workers.length];
+        }
+
+        /**
+         * @return CPU ids for the harness threads, not used by any worker; empty if there are none left
+         */
+        public int[] getHarnessCpus() {
+            return harness;
+        }
+
+        /**
+         * @return true, if there are more workers than CPUs the policy could use
+         */
+        public boolean isOversubscribed() {
+            return oversubscribed;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            for (int w : workers) {
+                if (sb.length() > 0) sb.append(",");
+                sb.append(w);
+            }
+            return policy.label() + ", workers on CPUs " + sb +
+                    ", harness on " + (harness.length > 0 ? "CPUs " + toCpuList(harness) : "any CPU") +
+                    (oversubscribed ? " (oversubscribed)" : "");
+        }
+    }
+
+    private static class Cpu {
+        final int id;
+        final int pkg;
+        final int core;
+        int sibling;
+        int coreIndex;
+
+        Cpu(int id, int pkg, int core) {
+            this.id = id;
+            this.pkg = pkg;
+            this.core = core;
+        }
+    }
+
+    /**
+     * Socket by socket, core by core, SMT siblings next to each other.
+     */
+    private static final Comparator<Cpu> COMPACT = new Comparator<Cpu>() {
+        @Override
+        public int compare(Cpu o1, Cpu o2) {
+            int c = compareInts(o1.pkg, o2.pkg);
+            if (c == 0) c = compareInts(o1.core, o2.core);
+            if (c == 0) c = compareInts(o1.id, o2.id);
+            return c;
+        }
+    };
+
+    /**
+     * One CPU per physical core first, socket by socket; then the SMT siblings.
+     */
+    private static final Comparator<Cpu> PHYSICAL = new Comparator<Cpu>() {
+        @Override
+        public int compare(Cpu o1, Cpu o2) {
+            int c = compareInts(o1.sibling, o2.sibling);
+            if (c == 0) c = COMPACT.compare(o1, o2);
+            return c;
+        }
+    };
+
+    /**
+     * Round-robin across the sockets, one CPU per physical core first; then the SMT siblings.
+     */
+    private static final Comparator<Cpu> SCATTER = new Comparator<Cpu>() {
+        @Override
+        public int compare(Cpu o1, Cpu o2) {
+            int c = compareInts(o1.sibling, o2.sibling);
+            if (c == 0) c = compareInts(o1.coreIndex, o2.coreIndex);
+            if (c == 0) c = compareInts(o1.pkg, o2.pkg);
+            return c;
+        }
+    };
+
+    private static int compareInts(int a, int b) {
+        return (a < b) ? -1 : ((a == b) ? 0 : 1);
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] result = new int[list.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = list.get(i);
+        }
+        return result;
+    }
+
+    private static Integer readInt(String file) {
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new FileReader(file));
+            String line = reader.readLine();
+            return (line != null) ? Integer.valueOf(line.trim()) : null;
+        } catch (IOException e) {
+            return null;
+        } catch (NumberFormatException e) {
+            return null;
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    private static String readStatusLine(String prefix) {
+        File status = new File("/proc/self/status");
+        if (!status.canRead()) {
+            return null;
+        }
+
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new FileReader(status));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(prefix)) {
+                    return line.substring(prefix.length());
+                }
+            }
+            return null;
+        } catch (IOException e) {
+            return null;
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+}
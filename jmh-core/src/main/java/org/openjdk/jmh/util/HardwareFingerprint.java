@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2005, 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jmh.util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+
+/**
+ * Identifies the hardware and the VM the benchmarks run on. The results measured on the
+ * machines with different fingerprints are not comparable, and should never be merged.
+ *
+ * <p>The fingerprint is deliberately coarse: CPU model and count, memory size rounded
+ * to gigabytes, OS and VM version. It does not tell apart the identical machines.</p>
+ */
+public final class HardwareFingerprint {
+
+    private final String value;
+
+    /**
+     * @param value fingerprint, as reported by {@link #toString()} on the fingerprinted machine
+     */
+    public HardwareFingerprint(String value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Null fingerprint");
+        }
+        this.value = value;
+    }
+
+    /**
+     * @return fingerprint of this machine and this VM
+     */
+    public static HardwareFingerprint forCurrentMachine() {
+        String model = readProcLine("/proc/cpuinfo", "model name");
+        if (model == null) {
+            model = System.getProperty("os.arch");
+        }
+
+        String mem = readProcLine("/proc/meminfo", "MemTotal");
+        long memGb = -1;
+        if (mem != null) {
+            try {
+                long kb = Long.parseLong(mem.replace("kB", "").trim());
+                memGb = Math.round(kb / (1024.0 * 1024.0));
+            } catch (NumberFormatException e) {
+                // leave unknown
+            }
+        }
+
+        return new HardwareFingerprint(
+                model.replaceAll("\\s+", " ").trim() +
+                ", " + CpuTopology.allowedCpus().length + " CPUs" +
+                ", " + ((memGb >= 0) ? memGb + " GB" : "unknown memory") +
+                ", " + System.getProperty("os.name") + " " + System.getProperty("os.version") + " " + System.getProperty("os.arch") +
+                ", " + System.getProperty("java.vm.name") + " " + System.getProperty("java.vm.version"));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        return value.equals(((HardwareFingerprint) o).value);
+    }
+
+    @Override
+    public int hashCode() {
+        return value.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return value;
+    }
+
+    /**
+     * Reads the value of the first "key : value" line with the given key.
+     */
+    private static String readProcLine(String file, String key) {
+        File f = new File(file);
+        if (!f.canRead()) {
+            return null;
+        }
+
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new FileReader(f));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int idx = line.indexOf(':');
+                if (idx > 0 && line.substring(0, idx).trim().equals(key)) {
+                    return line.substring(idx + 1).trim();
+                }
+            }
+            return null;
+        } catch (IOException e) {
+            return null;
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2005, 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jmh.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Pins the threads to CPUs with Linux taskset.
+ * <p>
+ * Java has no API for thread affinity, but the running thread can find its own
+ * native thread id in procfs, and ask taskset to pin it. The threads started by the
+ * pinned thread, including the child processes, inherit its affinity.
+ */
+public final class ThreadAffinity {
+
+    private static final String TASKSET = Utils.findExecutable("/usr/bin/taskset", "/bin/taskset");
+
+    private ThreadAffinity() {
+        // prevent instantiation
+    }
+
+    /**
+     * @return path to taskset; null if not available
+     */
+    public static String getTaskset() {
+        return TASKSET;
+    }
+
+    /**
+     * @return true, if threads and processes could be pinned
+     */
+    public static boolean isAvailable() {
+        return TASKSET != null && new File("/proc/thread-self").exists();
+    }
+
+    /**
+     * Pins the current thread to the given CPUs.
+     *
+     * @param cpus CPU ids
+     * @return true, if the thread was pinned
+     */
+    public static boolean pinCurrentThread(int... cpus) {
+        if (!isAvailable() || cpus.length == 0) {
+            return false;
+        }
+
+        try {
+            // resolves to /proc/<pid>/task/<tid>
+            String tid = new File("/proc/thread-self").getCanonicalFile().getName();
+
+            Process p = new ProcessBuilder(TASKSET, "-p", "-c", CpuTopology.toCpuList(sorted(cpus)), tid)
+                    .redirectErrorStream(true)
+                    .start();
+            InputStreamDrainer drainer = new InputStreamDrainer(p.getInputStream(), new ByteArrayOutputStream());
+            drainer.start();
+            int ecode = p.waitFor();
+            drainer.join();
+            return ecode == 0;
+        } catch (IOException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static int[] sorted(int[] cpus) {
+        int[] copy = cpus.clone();
+        Arrays.sort(copy);
+        return copy;
+    }
+
+}
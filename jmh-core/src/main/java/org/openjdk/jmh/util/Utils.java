@@ -24,7 +24,10 @@
  */
 package org.openjdk.jmh.util;
 
+import java.io.File;
+import java.lang.management.ManagementFactory;
 import java.util.Collection;
+import java.util.Map;
 
 public class Utils {
 
@@ -52,4 +55,58 @@ public class Utils {
         }
         return sb.toString();
     }
+
+    /**
+     * @param paths candidate paths, in the order of preference
+     * @return first executable path; null if none is executable
+     */
+    public static String findExecutable(String... paths) {
+        for (String path : paths) {
+            if (new File(path).canExecute()) {
+                return path;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Guesses the process id of the current VM.
+     *
+     * @return process id; -1 if it can not be determined
+     */
+    public static long getPid() {
+        // HotSpot and most other VMs name the runtime as "pid@hostname"
+        String name = ManagementFactory.getRuntimeMXBean().getName();
+        int idx = name.indexOf('@');
+        if (idx > 0) {
+            try {
+                return Long.parseLong(name.substring(0, idx));
+            } catch (NumberFormatException e) {
+                // fall through
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Dumps the stacks of the threads with matching names.
+     *
+     * @param namePrefix thread name prefix
+     * @return thread dump
+     */
+    public static String threadDump(String namePrefix) {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<Thread, StackTraceElement[]> e : Thread.getAllStackTraces().entrySet()) {
+            Thread t = e.getKey();
+            if (!t.getName().startsWith(namePrefix)) {
+                continue;
+            }
+            sb.append("\"").append(t.getName()).append("\" ").append(t.getState()).append("\n");
+            for (StackTraceElement el : e.getValue()) {
+                sb.append("    at ").append(el).append("\n");
+            }
+            sb.append("\n");
+        }
+        return sb.toString();
+    }
 }
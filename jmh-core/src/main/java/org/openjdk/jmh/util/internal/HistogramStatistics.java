@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2005, 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jmh.util.internal;
+
+/**
+ * Statistics over the values recorded in the histogram, computed without expanding
+ * the individual values. The values are scaled on the fly, e.g. to convert them
+ * to the output time unit.
+ */
+public class HistogramStatistics extends Statistics {
+
+    private static final long serialVersionUID = -4208723617420457096L;
+
+    private final SampleHistogram histogram;
+    private final double scale;
+
+    /**
+     * @param histogram histogram to compute the statistics over
+     * @param scale multiplier for every value
+     */
+    public HistogramStatistics(SampleHistogram histogram, double scale) {
+        this.histogram = histogram;
+        this.scale = scale;
+    }
+
+    /**
+     * @return number of values; unlike {@link #getN()}, does not overflow
+     */
+    public long getCount() {
+        return histogram.getCount();
+    }
+
+    @Override
+    public void addValue(double d) {
+        throw new UnsupportedOperationException("Histogram statistics are read-only");
+    }
+
+    @Override
+    public double[] getValues() {
+        throw new UnsupportedOperationException("Histogram statistics do not keep the individual values");
+    }
+
+    @Override
+    public int getN() {
+        return (int) Math.min(Integer.MAX_VALUE, histogram.getCount());
+    }
+
+    @Override
+    public double getMax() {
+        return (histogram.getCount() > 0) ? histogram.getMax() * scale : Double.NaN;
+    }
+
+    @Override
+    public double getMin() {
+        return (histogram.getCount() > 0) ? histogram.getMin() * scale : Double.NaN;
+    }
+
+    @Override
+    public double getMean() {
+        return histogram.getMean() * scale;
+    }
+
+    @Override
+    public double getSum() {
+        return (histogram.getCount() > 0) ? histogram.getSum() * scale : Double.NaN;
+    }
+
+    @Override
+    public double getVariance() {
+        return histogram.getVariance() * scale * scale;
+    }
+
+    @Override
+    public double getPercentile(double rank) {
+        return histogram.getValueAtPercentile(rank) * scale;
+    }
+
+}
@@ -0,0 +1,341 @@
+/*
+ * Copyright (c) 2005, 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jmh.util.internal;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Log-linear histogram of the time samples, in nanoseconds.
+ * <p>
+ * The value range is split into the power-of-two buckets, and every bucket is split into the
+ * same number of linear sub-buckets, enough to tell apart the values differing in the
+ * requested number of significant decimal digits. Recording is then a couple of shifts and
+ * an array increment, and every sample is kept, regardless of the iteration length. Histograms
+ * with the same precision merge by adding up the counts.
+ * <p>
+ * The count, sum, minimum and maximum are tracked exactly. The values above
+ * {@link #HIGHEST_TRACKABLE} are counted in the topmost sub-bucket.
+ * <p>
+ * The recording histogram is meant to be allocated once and {@link #reset()} between
+ * the iterations; the results keep the {@link #snapshot()}, which only stores the
+ * sub-buckets up to the maximum value, and grows back if needed.
+ */
+public class SampleHistogram implements Serializable {
+
+    private static final long serialVersionUID = 5196727519839441732L;
+
+    /** Highest value kept at the requested precision, one hour */
+    public static final long HIGHEST_TRACKABLE = TimeUnit.HOURS.toNanos(1);
+
+    public static final int MIN_PRECISION = 1;
+    public static final int MAX_PRECISION = 4;
+
+    private final int precision;
+    private final int subBucketHalfCountMagnitude;
+    private final int subBucketHalfCount;
+    private final long subBucketMask;
+    private final int leadingZeroCountBase;
+
+    private final int size;
+
+    private long[] counts;
+    private long count;
+    private long sum;
+    private long min;
+    private long max;
+
+    /**
+     * @param precision number of significant decimal digits to keep
+     */
+    public SampleHistogram(int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("Histogram precision should be within [" + MIN_PRECISION + ", " + MAX_PRECISION + "]: " + precision);
+        }
+        this.precision = precision;
+
+        // sub-buckets in the upper half of every bucket should resolve 10^precision values
+        long largestSingleUnitResolution = 2 * (long) Math.pow(10, precision);
+        int subBucketCountMagnitude = 64 - Long.numberOfLeadingZeros(largestSingleUnitResolution - 1);
+        this.subBucketHalfCountMagnitude = subBucketCountMagnitude - 1;
+        this.subBucketHalfCount = 1 << subBucketHalfCountMagnitude;
+        this.subBucketMask = (1L << subBucketCountMagnitude) - 1;
+        this.leadingZeroCountBase = 64 - subBucketHalfCountMagnitude - 1;
+
+        int buckets = 1;
+        long smallestUntrackable = 1L << subBucketCountMagnitude;
+        while (smallestUntrackable <= HIGHEST_TRACKABLE) {
+            smallestUntrackable <<= 1;
+            buckets++;
+        }
+        this.size = (buckets + 1) * subBucketHalfCount;
+        this.counts = new long[size];
+
+        reset();
+    }
+
+    private SampleHistogram(SampleHistogram h, int length) {
+        this.precision = h.precision;
+        this.subBucketHalfCountMagnitude = h.subBucketHalfCountMagnitude;
+        this.subBucketHalfCount = h.subBucketHalfCount;
+        this.subBucketMask = h.subBucketMask;
+        this.leadingZeroCountBase = h.leadingZeroCountBase;
+        this.size = h.size;
+        this.counts = Arrays.copyOf(h.counts, length);
+        this.count = h.count;
+        this.sum = h.sum;
+        this.min = h.min;
+        this.max = h.max;
+    }
+
+    /**
+     * Restores the histogram from the counts in its non-empty sub-buckets, see {@link #getCountAt(int)}.
+     *
+     * @param precision number of significant decimal digits
+     * @param indices indices of the non-empty sub-buckets
+     * @param counts counts in those sub-buckets
+     * @param sum exact sum of the values
+     * @param min exact minimum value
+     * @param max exact maximum value
+     */
+    public SampleHistogram(int precision, int[] indices, long[] counts, long sum, long min, long max) {
+        this(precision);
+        long total = 0;
+        for (int i = 0; i < indices.length; i++) {
+            if (indices[i] < 0 || indices[i] >= size) {
+                throw new IllegalArgumentException("Sub-bucket index is out of range for precision " + precision + ": " + indices[i]);
+            }
+            this.counts[indices[i]] += counts[i];
+            total += counts[i];
+        }
+        this.count = total;
+        this.sum = sum;
+        this.min = (total > 0) ? min : Long.MAX_VALUE;
+        this.max = (total > 0) ? max : Long.MIN_VALUE;
+        this.counts = Arrays.copyOf(this.counts, usedLength());
+    }
+
+    /**
+     * Copies the recorded values, keeping the sub-buckets up to the maximum only.
+     * Recording histogram stays intact, and can be reset for the next iteration.
+     *
+     * @return copy of this histogram
+     */
+    public SampleHistogram snapshot() {
+        return new SampleHistogram(this, usedLength());
+    }
+
+    private int usedLength() {
+        for (int i = counts.length - 1; i >= 0; i--) {
+            if (counts[i] != 0) {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Records the value.
+     *
+     * @param value value, nanoseconds; negative values count as zero
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        int index = indexOf(value);
+        if (index >= counts.length) {
+            counts = Arrays.copyOf(counts, size);
+        }
+        counts[index]++;
+        count++;
+        sum += value;
+        if (value < min) {
+            min = value;
+        }
+        if (value > max) {
+            max = value;
+        }
+    }
+
+    /**
+     * Adds up the other histogram with the same precision into this one.
+     *
+     * @param other histogram to add
+     */
+    public void add(SampleHistogram other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException("Histogram precision mismatch: " + precision + " vs " + other.precision);
+        }
+        if (other.count == 0) {
+            return;
+        }
+        if (other.counts.length > counts.length) {
+            counts = Arrays.copyOf(counts, other.counts.length);
+        }
+        for (int i = 0; i < other.counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * Forgets all the recorded values.
+     */
+    public void reset() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        sum = 0;
+        min = Long.MAX_VALUE;
+        max = Long.MIN_VALUE;
+    }
+
+    public int getPrecision() {
+        return precision;
+    }
+
+    /**
+     * @return number of recorded values
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return exact sum of the recorded values
+     */
+    public long getSum() {
+        return sum;
+    }
+
+    /**
+     * @return exact minimum of the recorded values; {@link Long#MAX_VALUE} if there are none
+     */
+    public long getMin() {
+        return min;
+    }
+
+    /**
+     * @return exact maximum of the recorded values; {@link Long#MIN_VALUE} if there are none
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * @return exact mean of the recorded values; NaN if there are none
+     */
+    public double getMean() {
+        return (count > 0) ? (double) sum / count : Double.NaN;
+    }
+
+    /**
+     * @return variance of the recorded values, as if those were at the middle of their sub-buckets; NaN if there are fewer than two
+     */
+    public double getVariance() {
+        if (count < 2) {
+            return Double.NaN;
+        }
+        double mean = getMean();
+        double v = 0;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] != 0) {
+                double d = getValueAt(i) - mean;
+                v += d * d * counts[i];
+            }
+        }
+        return v / (count - 1);
+    }
+
+    /**
+     * Finds the value at the percentile. The value is within the precision of the exact one,
+     * and exact for the minimum and the maximum.
+     *
+     * @param percentile percentile, 0..100
+     * @return value at percentile; NaN if there are no values
+     */
+    public double getValueAtPercentile(double percentile) {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        long rank = (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * count);
+        if (rank <= 1) {
+            return min;
+        }
+        if (rank >= count) {
+            return max;
+        }
+
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.max(min, Math.min(max, getValueAt(i)));
+            }
+        }
+        return max;
+    }
+
+    /**
+     * @return number of sub-buckets, see {@link #getCountAt(int)}
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param index sub-bucket index
+     * @return number of values in the sub-bucket
+     */
+    public long getCountAt(int index) {
+        return (index < counts.length) ? counts[index] : 0;
+    }
+
+    /**
+     * @param index sub-bucket index
+     * @return value in the middle of the sub-bucket
+     */
+    public long getValueAt(int index) {
+        int bucket = (index >> subBucketHalfCountMagnitude) - 1;
+        long subBucket = (index & (subBucketHalfCount - 1)) + subBucketHalfCount;
+        if (bucket < 0) {
+            subBucket -= subBucketHalfCount;
+            bucket = 0;
+        }
+        return (subBucket << bucket) + ((1L << bucket) >> 1);
+    }
+
+    private int indexOf(long value) {
+        int bucket = leadingZeroCountBase - Long.numberOfLeadingZeros(value | subBucketMask);
+        int subBucket = (int) (value >>> bucket);
+        int index = ((bucket + 1) << subBucketHalfCountMagnitude) + (subBucket - subBucketHalfCount);
+        return (index < size) ? index : size - 1;
+    }
+
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2005, 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jmh.util.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Detects the steady state in the sequence of iteration scores.
+ * <p>
+ * The scores are considered steady when the trend over the last window of
+ * scores is negligible: the drift of the least-squares fit across the window
+ * is either within the relative tolerance, or within the residual noise
+ * around the fit. This catches both the slow ramps and the steps (e.g. the
+ * switch to the faster compiled code) in the middle of the window. Additionally,
+ * none of the scores in the window should be an outlier.
+ */
+public class SteadyStateDetector {
+
+    private final int window;
+    private final double tolerance;
+    private final List<Double> values;
+
+    /**
+     * @param window number of the recent scores to look at; at least 3
+     * @param tolerance relative drift across the window considered negligible, e.g. 0.02 for 2%
+     */
+    public SteadyStateDetector(int window, double tolerance) {
+        if (window < 3) {
+            throw new IllegalArgumentException("Window should be at least 3: " + window);
+        }
+        this.window = window;
+        this.tolerance = tolerance;
+        this.values = new ArrayList<Double>();
+    }
+
+    public void addValue(double d) {
+        values.add(d);
+    }
+
+    public int getN() {
+        return values.size();
+    }
+
+    /**
+     * @return relative drift of the scores across the last window; infinity if there are not enough scores yet
+     */
+    public double getDrift() {
+        if (values.size() < window) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double[] fit = fit();
+        return relative(Math.abs(fit[1] * (window - 1)), fit[0]);
+    }
+
+    /**
+     * @return relative residual noise around the trend over the last window; infinity if there are not enough scores yet
+     */
+    public double getNoise() {
+        if (values.size() < window) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double[] fit = fit();
+        return relative(fit[2], fit[0]);
+    }
+
+    /**
+     * @return true, if the recent scores are steady
+     */
+    public boolean isSteady() {
+        if (values.size() < window) {
+            return false;
+        }
+        double drift = getDrift();
+        return (drift <= tolerance || drift <= getNoise()) && !hasOutliers();
+    }
+
+    /**
+     * Checks if any of the scores in the last window is far from the others.
+     * Such the outliers inflate the noise, and would otherwise hide the change points.
+     *
+     * @return true, if there are outliers
+     */
+    private boolean hasOutliers() {
+        double[] sorted = new double[window];
+        for (int i = 0; i < window; i++) {
+            sorted[i] = value(i);
+        }
+        Arrays.sort(sorted);
+        double median = sorted[window / 2];
+
+        double[] deviations = new double[window];
+        for (int i = 0; i < window; i++) {
+            deviations[i] = Math.abs(sorted[i] - median);
+        }
+        Arrays.sort(deviations);
+
+        // median absolute deviation, scaled to estimate the standard deviation
+        double sigma = 1.4826 * deviations[window / 2];
+        double limit = Math.max(3 * sigma, tolerance * Math.abs(median));
+        return deviations[window - 1] > limit;
+    }
+
+    /**
+     * Least-squares linear fit over the last window.
+     *
+     * @return mean, slope, and standard deviation of residuals
+     */
+    private double[] fit() {
+        double xMean = (window - 1) / 2.0;
+        double yMean = 0;
+        for (int i = 0; i < window; i++) {
+            yMean += value(i);
+        }
+        yMean /= window;
+
+        double sxx = 0;
+        double sxy = 0;
+        for (int i = 0; i < window; i++) {
+            sxx += (i - xMean) * (i - xMean);
+            sxy += (i - xMean) * (value(i) - yMean);
+        }
+        double slope = sxy / sxx;
+
+        double ssr = 0;
+        for (int i = 0; i < window; i++) {
+            double r = value(i) - (yMean + slope * (i - xMean));
+            ssr += r * r;
+        }
+
+        return new double[]{yMean, slope, Math.sqrt(ssr / (window - 2))};
+    }
+
+    private static double relative(double v, double mean) {
+        if (mean == 0) {
+            return (v == 0) ? 0 : Double.POSITIVE_INFINITY;
+        }
+        return v / Math.abs(mean);
+    }
+
+    /**
+     * @param i index within the last window
+     * @return the score
+     */
+    private double value(int i) {
+        return values.get(values.size() - window + i);
+    }
+
+}
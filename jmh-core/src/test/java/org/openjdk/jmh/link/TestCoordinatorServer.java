@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2005, 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jmh.link;
+
+import org.junit.Test;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.logic.results.IterationResult;
+import org.openjdk.jmh.logic.results.OpsPerTimeUnit;
+import org.openjdk.jmh.logic.results.ResultRole;
+import org.openjdk.jmh.logic.results.RunResult;
+import org.openjdk.jmh.output.OutputFormatFactory;
+import org.openjdk.jmh.profile.EmptyResult;
+import org.openjdk.jmh.runner.BenchmarkRecord;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.parameters.IterationParams;
+import org.openjdk.jmh.runner.parameters.TimeValue;
+import org.openjdk.jmh.util.HardwareFingerprint;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for handing the work out to the agents.
+ */
+public class TestCoordinatorServer {
+
+    private static final HardwareFingerprint FP = new HardwareFingerprint("test CPU, 4 CPUs");
+
+    @Test
+    public void testWorkAndFingerprints() throws Exception {
+        BenchmarkRecord foo = new BenchmarkRecord("bench.Foo.foo", "bench.generated.Foo.foo", Mode.Throughput);
+        BenchmarkRecord bar = new BenchmarkRecord("bench.Foo.bar", "bench.generated.Foo.bar", Mode.Throughput);
+
+        Options opts = new OptionsBuilder().coordinatorPort(0).forks(3).build();
+        CoordinatorServer server = new CoordinatorServer(opts, OutputFormatFactory.createFormatInstance(false), Arrays.asList(foo, bar));
+        try {
+            AgentClient agent = new AgentClient("localhost", server.getPort(), server.getToken(), "good", FP);
+            assertEquals(3, agent.requestOptions().getForkCount());
+
+            AgentClient other = new AgentClient("localhost", server.getPort(), server.getToken(), "other", new HardwareFingerprint("other CPU, 4 CPUs"));
+            try {
+                other.requestOptions();
+                fail("Agent with the different fingerprint should be rejected");
+            } catch (IOException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("fingerprint"));
+            }
+            assertEquals(FP, server.getFingerprint());
+
+            assertEquals(foo, agent.requestWork());
+            agent.pushResult(foo, result(foo));
+
+            CoordinatorServer.Completed c = server.take();
+            assertEquals("good", c.getAgent());
+            assertEquals(foo, c.getBenchmark());
+            assertEquals(1, c.getResult().getRawIterationResults().size());
+
+            // agent dies with the work in flight, it should be handed out again
+            assertEquals(bar, agent.requestWork());
+            agent.close();
+
+            AgentClient next = new AgentClient("localhost", server.getPort(), server.getToken(), "next", FP);
+            next.requestOptions();
+            assertEquals(bar, next.requestWork());
+            next.pushResult(bar, null);
+
+            c = server.take();
+            assertEquals(bar, c.getBenchmark());
+            assertNull(c.getResult());
+
+            assertNull(next.requestWork());
+            next.close();
+        } finally {
+            server.terminate();
+        }
+    }
+
+    @Test
+    public void testWrongToken() throws Exception {
+        BenchmarkRecord foo = new BenchmarkRecord("bench.Foo.foo", "bench.generated.Foo.foo", Mode.Throughput);
+
+        Options opts = new OptionsBuilder().coordinatorPort(0).build();
+        CoordinatorServer server = new CoordinatorServer(opts, OutputFormatFactory.createFormatInstance(false), Arrays.asList(foo));
+        try {
+            AgentClient agent = new AgentClient("localhost", server.getPort(), "bad" + server.getToken(), "bad", FP);
+            try {
+                agent.requestOptions();
+                fail("Agent with the wrong token should be rejected");
+            } catch (IOException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("token"));
+            }
+            assertNull(server.getFingerprint());
+        } finally {
+            server.terminate();
+        }
+    }
+
+    @Test
+    public void testSerializedObjectsRefused() throws Exception {
+        BenchmarkRecord foo = new BenchmarkRecord("bench.Foo.foo", "bench.generated.Foo.foo", Mode.Throughput);
+
+        Options opts = new OptionsBuilder().coordinatorPort(0).build();
+        CoordinatorServer server = new CoordinatorServer(opts, OutputFormatFactory.createFormatInstance(false), Arrays.asList(foo));
+        try {
+            RunResult profiled = result(foo);
+            profiled.getRawIterationResults().iterator().next().addProfileResult(new EmptyResult());
+
+            // agent which sends the serialized objects anyway
+            Socket socket = new Socket("localhost", server.getPort());
+            LinkOutput out = new LinkOutput(socket.getOutputStream());
+            LinkInput in = new LinkInput(socket.getInputStream());
+            out.beginFrame(LinkProtocol.AGENT_HELLO);
+            out.writeInt(LinkProtocol.MAGIC);
+            out.writeInt(LinkProtocol.VERSION);
+            out.writeString(server.getToken());
+            out.writeString("rogue");
+            out.writeString(FP.toString());
+            out.endFrame();
+            out.writeFrame(LinkProtocol.WORK_REQUEST);
+            assertEquals(LinkProtocol.WORK, in.nextFrame());
+            assertEquals(foo.toLine(), in.readString());
+            out.beginFrame(LinkProtocol.WORK_RESULT);
+            out.writeRecord(foo);
+            out.writeBoolean(true);
+            out.writeRunResult(profiled);
+            out.endFrame();
+
+            // coordinator drops the link, and hands the work out again
+            assertEquals(-1, in.nextFrame());
+            socket.close();
+
+            // the proper agent does not send the profiler results
+            AgentClient agent = new AgentClient("localhost", server.getPort(), server.getToken(), "good", FP);
+            agent.requestOptions();
+            assertEquals(foo, agent.requestWork());
+            assertTrue(agent.pushResult(foo, profiled));
+
+            CoordinatorServer.Completed c = server.take();
+            assertEquals("good", c.getAgent());
+            assertEquals(1, c.getResult().getRawIterationResults().size());
+            assertTrue(c.getResult().getRawIterationResults().iterator().next().getProfilerResults().isEmpty());
+            agent.close();
+        } finally {
+            server.terminate();
+        }
+    }
+
+    private static RunResult result(BenchmarkRecord record) {
+        IterationResult ir = new IterationResult(record, new IterationParams(1, TimeValue.milliseconds(100), 1));
+        ir.addResult(new OpsPerTimeUnit(ResultRole.BOTH, "foo", 1000, 1000000000L, TimeUnit.SECONDS));
+        return new RunResult(Collections.singleton(ir));
+    }
+
+}
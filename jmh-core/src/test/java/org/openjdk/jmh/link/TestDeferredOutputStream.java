@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2005, 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jmh.link;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for the link output sent from the background.
+ */
+public class TestDeferredOutputStream {
+
+    @Test
+    public void testHold() throws Exception {
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        DeferredOutputStream os = new DeferredOutputStream(sink);
+
+        os.write(new byte[]{1, 2, 3});
+        os.flush();
+
+        // everything written before the hold is sent
+        os.hold();
+        assertEquals(3, sink.size());
+
+        os.write(4);
+        os.flush();
+        TimeUnit.MILLISECONDS.sleep(100);
+        assertEquals(3, sink.size());
+
+        os.release();
+        os.drain();
+        assertEquals(4, sink.size());
+
+        // close sends everything, even if held
+        os.hold();
+        os.write(5);
+        os.close();
+        assertArrayEquals(new byte[]{1, 2, 3, 4, 5}, sink.toByteArray());
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        DeferredOutputStream os = new DeferredOutputStream(new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("Broken");
+            }
+        });
+
+        os.write(1);
+        try {
+            os.drain();
+            fail("Failure to send should surface");
+        } catch (IOException e) {
+            assertTrue(e.getCause().getMessage().contains("Broken"));
+        }
+    }
+
+}
@@ -0,0 +1,271 @@
+/*
+ * Copyright (c) 2005, 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jmh.link;
+
+import org.junit.Test;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.logic.results.IterationResult;
+import org.openjdk.jmh.logic.results.OpenLoopTimePerOp;
+import org.openjdk.jmh.logic.results.OpsPerTimeUnit;
+import org.openjdk.jmh.logic.results.Result;
+import org.openjdk.jmh.logic.results.ResultRole;
+import org.openjdk.jmh.logic.results.RunResult;
+import org.openjdk.jmh.logic.results.SampleTimePerOp;
+import org.openjdk.jmh.runner.BenchmarkRecord;
+import org.openjdk.jmh.runner.options.AffinityPolicy;
+import org.openjdk.jmh.runner.options.LoadSchedule;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.parameters.IterationParams;
+import org.openjdk.jmh.runner.parameters.TimeValue;
+import org.openjdk.jmh.util.internal.SampleHistogram;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for link frame encoding.
+ */
+public class TestLinkCodec {
+
+    private final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    private final LinkOutput out = new LinkOutput(bos);
+
+    private LinkInput input(int expectedTag) throws IOException {
+        LinkInput in = new LinkInput(new ByteArrayInputStream(bos.toByteArray()));
+        assertEquals(expectedTag, in.nextFrame());
+        return in;
+    }
+
+    @Test
+    public void testPrimitives() throws IOException {
+        long[] longs = {0, 1, -1, 127, 128, -129, Integer.MAX_VALUE, Integer.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE};
+
+        out.beginFrame(LinkProtocol.OUT_PRINTLN);
+        for (long l : longs) {
+            out.writeLong(l);
+        }
+        out.writeDouble(Math.PI);
+        out.writeString(null);
+        out.writeString("");
+        out.writeString("\u00B1 \u043F\u0440\u0438\u0432\u0435\u0442");
+        out.writeEnum(null);
+        out.writeEnum(TimeUnit.HOURS);
+        out.endFrame();
+
+        LinkInput in = input(LinkProtocol.OUT_PRINTLN);
+        for (long l : longs) {
+            assertEquals(l, in.readLong());
+        }
+        assertEquals(Math.PI, in.readDouble(), 0);
+        assertEquals(null, in.readString());
+        assertEquals("", in.readString());
+        assertEquals("\u00B1 \u043F\u0440\u0438\u0432\u0435\u0442", in.readString());
+        assertEquals(null, in.readEnum(TimeUnit.class));
+        assertEquals(TimeUnit.HOURS, in.readEnum(TimeUnit.class));
+        assertEquals(0, in.getPayload().length);
+    }
+
+    @Test
+    public void testHistogram() throws IOException {
+        SampleHistogram histogram = new SampleHistogram(3);
+        for (int i = 0; i < 100000; i++) {
+            histogram.record(1000 + (i * 7919L) % 50000);
+        }
+
+        out.beginFrame(LinkProtocol.ITERATION_RESULT);
+        out.writeHistogram(histogram);
+        out.endFrame();
+
+        // only the occupied sub-buckets are sent
+        assertTrue("Encoded size: " + bos.size(), bos.size() < histogram.size() * 2);
+
+        SampleHistogram read = input(LinkProtocol.ITERATION_RESULT).readHistogram();
+        assertEquals(histogram.getPrecision(), read.getPrecision());
+        assertEquals(histogram.getCount(), read.getCount());
+        assertEquals(histogram.getSum(), read.getSum());
+        assertEquals(histogram.getMin(), read.getMin());
+        assertEquals(histogram.getMax(), read.getMax());
+        for (int i = 0; i < histogram.size(); i++) {
+            assertEquals(histogram.getCountAt(i), read.getCountAt(i));
+        }
+    }
+
+    @Test
+    public void testRunResult() throws IOException {
+        BenchmarkRecord record = new BenchmarkRecord("bench.Foo.bar", "bench.generated.Foo.bar", Mode.SampleTime);
+        IterationParams params = new IterationParams(5, TimeValue.milliseconds(100), 2);
+
+        SampleHistogram buffer = new SampleHistogram(3);
+        buffer.record(300);
+        buffer.record(100);
+        buffer.record(200);
+
+        IterationResult ir = new IterationResult(record, params);
+        ir.addResult(new SampleTimePerOp(ResultRole.BOTH, "bar", buffer, TimeUnit.MICROSECONDS));
+        ir.addResult(new OpsPerTimeUnit(ResultRole.SECONDARY, "baz", 1000, 1000000000L, TimeUnit.SECONDS));
+        ir.addResult(new OpenLoopTimePerOp(ResultRole.SECONDARY, "qux", buffer, 900, 1000000000L, 1000, TimeUnit.MICROSECONDS));
+        ir.markTimedOut();
+        ir.setWorkerSkew(15, 42);
+        ir.setCpus("0-3,8");
+
+        out.beginFrame(LinkProtocol.ITERATION_RESULT);
+        out.writeRecord(record);
+        out.writeRunResult(new RunResult(Collections.singleton(ir)));
+        out.endFrame();
+
+        LinkInput in = input(LinkProtocol.ITERATION_RESULT);
+        assertEquals(record, in.readRecord());
+        RunResult rr = in.readRunResult();
+
+        assertEquals(1, rr.getRawIterationResults().size());
+        IterationResult read = rr.getRawIterationResults().iterator().next();
+        assertEquals(params, read.getParams());
+        assertTrue(read.isTimedOut());
+        assertEquals(15, read.getStartSkew());
+        assertEquals(42, read.getStopSkew());
+        assertEquals("0-3,8", read.getCpus());
+
+        assertEquals(1, read.getRawPrimaryResults().size());
+        assertEquals(ir.getPrimaryResult().getScore(), read.getPrimaryResult().getScore(), 0);
+        assertEquals(ir.getPrimaryResult().getScoreUnit(), read.getPrimaryResult().getScoreUnit());
+
+        assertEquals(3, read.getSecondaryResults().size());
+        Iterator<Result> it = read.getRawSecondaryResults().get("baz").iterator();
+        assertEquals(1000.0, it.next().getScore(), 0);
+
+        OpenLoopTimePerOp openLoop = (OpenLoopTimePerOp) read.getRawSecondaryResults().get("qux").iterator().next();
+        assertEquals(900.0, openLoop.getAchievedRate(), 0);
+        assertEquals(1000.0, openLoop.getTargetRate(), 0);
+        assertEquals(0.2, openLoop.getScore(), 0);
+    }
+
+    @Test
+    public void testStreamedReferences() throws IOException {
+        BenchmarkRecord record = new BenchmarkRecord("bench.Foo.bar", "bench.generated.Foo.bar", Mode.Throughput);
+        IterationParams params = new IterationParams(5, TimeValue.milliseconds(100), 1);
+
+        IterationResult ir1 = new IterationResult(record, params);
+        ir1.addResult(new OpsPerTimeUnit(ResultRole.PRIMARY, "bar", 1000, 1000000000L, TimeUnit.SECONDS));
+        IterationResult ir2 = new IterationResult(record, params);
+        ir2.addResult(new OpsPerTimeUnit(ResultRole.PRIMARY, "bar", 2000, 1000000000L, TimeUnit.SECONDS));
+
+        out.beginFrame(LinkProtocol.ITERATION_RESULT);
+        out.writeStreamedIterationResult(ir1);
+        out.endFrame();
+        int streamedSize = bos.size();
+
+        out.beginFrame(LinkProtocol.OUT_END_BENCHMARK);
+        out.writeRunResult(new RunResult(Arrays.asList(ir1, ir2), true));
+        out.endFrame();
+
+        LinkInput in = new LinkInput(new ByteArrayInputStream(bos.toByteArray()));
+        assertEquals(LinkProtocol.ITERATION_RESULT, in.nextFrame());
+        IterationResult streamed = in.readStreamedIterationResult();
+        assertEquals(LinkProtocol.OUT_END_BENCHMARK, in.nextFrame());
+
+        // replayed frames resolve the references against the same link
+        RunResult rr = in.replay(in.getPayload()).readRunResult();
+        assertTrue(rr.isPartial());
+        assertEquals(2, rr.getRawIterationResults().size());
+
+        Iterator<IterationResult> it = rr.getRawIterationResults().iterator();
+        assertTrue(streamed == it.next());
+        assertEquals(2000.0, it.next().getPrimaryResult().getScore(), 0);
+
+        // the streamed iteration is not sent again
+        assertTrue(bos.size() - streamedSize < 2 * streamedSize);
+    }
+
+    @Test
+    public void testOptions() throws Exception {
+        Options opts = new OptionsBuilder()
+                .include(".*Foo.*")
+                .exclude("Bar")
+                .threads(4)
+                .threadSweep(1, 2, 4)
+                .affinity(AffinityPolicy.SCATTER)
+                .executor("FJP")
+                .syncIterations(false)
+                .warmupTime(TimeValue.seconds(3))
+                .measurementIterations(7)
+                .targetError(0.05)
+                .targetRate(5000)
+                .loadSchedule(LoadSchedule.POISSON)
+                .loadSweep(50, 90, 110)
+                .histogramPrecision(2)
+                .trace("traces")
+                .traceEvery(10)
+                .mode(Mode.AverageTime)
+                .mode(Mode.SampleTime)
+                .timeUnit(TimeUnit.NANOSECONDS)
+                .jvmArgs("-Xmx1g")
+                .seed(42)
+                .param("size", "1", "10")
+                .build();
+
+        out.beginFrame(LinkProtocol.OPTIONS);
+        out.writeOptions(opts);
+        out.endFrame();
+        Options read = input(LinkProtocol.OPTIONS).readOptions();
+
+        // every option should survive the trip
+        for (Method m : Options.class.getMethods()) {
+            if (m.getParameterTypes().length == 0) {
+                Object expected = m.invoke(opts);
+                Object actual = m.invoke(read);
+                assertEquals(m.getName(), String.valueOf(expected), String.valueOf(actual));
+            }
+        }
+    }
+
+    @Test(expected = EOFException.class)
+    public void testTruncatedFrame() throws IOException {
+        out.beginFrame(LinkProtocol.OUT_PRINTLN);
+        out.writeString("Hello");
+        out.endFrame();
+
+        byte[] frame = bos.toByteArray();
+        new LinkInput(new ByteArrayInputStream(Arrays.copyOf(frame, frame.length - 1))).nextFrame();
+    }
+
+    @Test
+    public void testEndOfStream() throws IOException {
+        out.writeFrame(LinkProtocol.FINISH);
+        LinkInput in = input(LinkProtocol.FINISH);
+        assertEquals(-1, in.nextFrame());
+    }
+
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2005, 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jmh.link;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for memory-mapped link rings.
+ */
+public class TestMappedLink {
+
+    @Test
+    public void testWrapAround() throws Exception {
+        Assume.assumeTrue(MappedLink.isSupported());
+
+        File file = File.createTempFile("jmh-link", ".test");
+        file.deleteOnExit();
+
+        MappedLink host = MappedLink.create(file);
+        final MappedLink fork = MappedLink.open(file);
+
+        // more than the ring capacity, to wrap around several times
+        final byte[] data = new byte[40 * 1024 * 1024 + 17];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 31);
+        }
+
+        Thread writer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    OutputStream os = fork.getOutputStream();
+                    for (int off = 0; off < data.length; off += 10000) {
+                        os.write(data, off, Math.min(10000, data.length - off));
+                    }
+                    fork.close();
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+        writer.start();
+
+        byte[] read = new byte[data.length];
+        InputStream is = host.getInputStream();
+        int pos = 0;
+        int n;
+        while ((n = is.read(read, pos, Math.min(65536, read.length - pos))) > 0) {
+            pos += n;
+        }
+        writer.join();
+
+        assertEquals(data.length, pos);
+        assertEquals(-1, is.read());
+        assertArrayEquals(data, read);
+
+        host.close();
+        host.delete();
+    }
+
+    @Test
+    public void testPeerGone() throws Exception {
+        Assume.assumeTrue(MappedLink.isSupported());
+
+        File file = File.createTempFile("jmh-link", ".test");
+        file.deleteOnExit();
+
+        MappedLink host = MappedLink.create(file);
+        MappedLink fork = MappedLink.open(file);
+
+        fork.getOutputStream().write(new byte[]{1, 2, 3});
+
+        // writer had died without closing the ring, the data written so far should still be read
+        host.peerGone();
+
+        byte[] read = new byte[10];
+        InputStream is = host.getInputStream();
+        assertEquals(3, is.read(read));
+        assertArrayEquals(new byte[]{1, 2, 3}, Arrays.copyOf(read, 3));
+        assertEquals(-1, is.read());
+
+        host.close();
+        host.delete();
+    }
+
+    @Test
+    public void testHostGone() throws Exception {
+        Assume.assumeTrue(MappedLink.isSupported());
+
+        File file = File.createTempFile("jmh-link", ".test");
+        file.deleteOnExit();
+
+        MappedLink host = MappedLink.create(file);
+        MappedLink fork = MappedLink.open(file, TimeUnit.MILLISECONDS.toNanos(500));
+
+        // host is alive, although silent
+        fork.getOutputStream().write(new byte[]{1, 2, 3});
+
+        // host dies without closing the rings
+        host.stopHeartbeat();
+
+        long start = System.nanoTime();
+        try {
+            fork.getInputStream().read();
+            fail("Fork should give up on the dead host");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("heartbeat"));
+        }
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10));
+
+        try {
+            // no one reads the ring, it fills up
+            OutputStream os = fork.getOutputStream();
+            byte[] chunk = new byte[64 * 1024];
+            while (true) {
+                os.write(chunk);
+            }
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("heartbeat"));
+        }
+
+        fork.close();
+        host.delete();
+    }
+
+}
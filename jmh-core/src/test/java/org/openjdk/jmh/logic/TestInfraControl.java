@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2005, 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jmh.logic;
+
+import org.junit.Test;
+import org.openjdk.jmh.runner.ActualParams;
+import org.openjdk.jmh.runner.parameters.TimeValue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestInfraControl {
+
+    private static InfraControl openLoop(int threads, double rate) {
+        return new InfraControl(threads, false, TimeValue.seconds(1), new CountDownLatch(threads), new CountDownLatch(threads),
+                false, TimeUnit.MILLISECONDS, new ActualParams(), rate, false, 3, null);
+    }
+
+    @Test
+    public void testPhases() {
+        // 4 threads at 1000 ops/s: every thread runs once per 4 ms, the threads are 1 ms apart
+        InfraControl control = openLoop(4, 1000);
+        assertEquals(4e6, control.ratePeriodNs, 0);
+        assertEquals(0, control.openLoopPhase(), 0);
+        assertEquals(1e6, control.openLoopPhase(), 0);
+        assertEquals(2e6, control.openLoopPhase(), 0);
+        assertEquals(3e6, control.openLoopPhase(), 0);
+    }
+
+    @Test
+    public void testAwaitStopsAtIterationEnd() throws InterruptedException {
+        final InfraControl control = openLoop(1, 0.1);
+        Thread t = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    TimeUnit.MILLISECONDS.sleep(50);
+                } catch (InterruptedException e) {
+                    // regardless...
+                }
+                control.isDone = true;
+            }
+        };
+        t.start();
+
+        long start = System.nanoTime();
+        assertFalse(control.awaitIntendedStart(start + TimeUnit.SECONDS.toNanos(10)));
+        long waited = System.nanoTime() - start;
+        t.join();
+
+        assertTrue("Waited for " + waited + " ns", waited < TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Test
+    public void testAwaitLate() {
+        InfraControl control = openLoop(1, 1000);
+        assertTrue(control.awaitIntendedStart(System.nanoTime() - 1));
+    }
+
+}
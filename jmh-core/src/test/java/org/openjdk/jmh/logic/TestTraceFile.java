@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2005, 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jmh.logic;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestTraceFile {
+
+    private static final long MS = 1000000L;
+
+    @Test
+    public void testTimeline() throws IOException {
+        File f = File.createTempFile("jmh", ".trace");
+        f.deleteOnExit();
+        TraceFile trace = new TraceFile(f, "bench.Foo.bar", 2, 2, 2);
+
+        TraceWriter w1 = trace.newWriter();
+        TraceWriter w2 = trace.newWriter();
+
+        trace.beginIteration(1);
+        w1.beginIteration(10 * MS);
+        w1.record(10 * MS, 100);
+        w1.record(11 * MS + 5, 300);
+        w1.endIteration(12 * MS);
+        w2.beginIteration(10 * MS + 10);
+        w2.record(10 * MS + 20, 200);
+        w2.endIteration(12 * MS - 1);
+
+        trace.beginIteration(2);
+        w1.beginIteration(20 * MS);
+        w1.record(20 * MS, 50);
+        w1.endIteration(21 * MS);
+        w2.beginIteration(20 * MS);
+        w2.endIteration(21 * MS);
+        trace.close();
+
+        TraceTimeline t = TraceTimeline.read(f);
+        assertEquals("bench.Foo.bar", t.getBenchmark());
+        assertEquals(2, t.getThreads());
+        assertEquals(2, t.getEvery());
+        assertEquals(2, t.getIterations().size());
+
+        TraceTimeline.Iteration it = t.getIterations().get(0);
+        assertEquals(1, it.getNumber());
+        assertEquals(2, it.size());
+        assertEquals(4.0, it.getOperations(0), 0);
+        assertEquals(150.0, it.getMeanLatency(0), 0);
+        assertEquals(200, it.getMaxLatency(0));
+        assertEquals(2.0, it.getOperations(1), 0);
+        assertEquals(300, it.getMaxLatency(1));
+        assertEquals(0, it.getDropped());
+
+        TraceTimeline.Iteration it2 = t.getIterations().get(1);
+        assertEquals(2, it2.getNumber());
+        assertEquals(1, it2.size());
+        assertEquals(2.0, it2.getOperations(0), 0);
+        assertEquals(50, it2.getMaxLatency(0));
+    }
+
+    @Test
+    public void testOverflowKeepsMarks() throws IOException {
+        File f = File.createTempFile("jmh", ".trace");
+        f.deleteOnExit();
+        TraceFile trace = new TraceFile(f, "bench.Foo.bar", 1, 2, 1);
+        TraceWriter w = trace.newWriter();
+
+        // overflow the first iteration region
+        trace.beginIteration(1);
+        w.beginIteration(0);
+        for (int i = 0; i < 20000000; i++) {
+            w.record(i, 10);
+        }
+        w.endIteration(MS);
+
+        // the second iteration has its own region
+        trace.beginIteration(2);
+        w.beginIteration(10 * MS);
+        w.record(10 * MS, 100);
+        w.endIteration(11 * MS);
+
+        // the iterations past the expected count are not traced
+        trace.beginIteration(3);
+        w.beginIteration(20 * MS);
+        w.record(20 * MS, 100);
+        w.endIteration(21 * MS);
+        trace.close();
+
+        TraceTimeline t = TraceTimeline.read(f);
+        assertEquals(2, t.getIterations().size());
+
+        TraceTimeline.Iteration it1 = t.getIterations().get(0);
+        assertEquals(1, it1.getNumber());
+        assertTrue(it1.getDropped() > 0);
+
+        TraceTimeline.Iteration it2 = t.getIterations().get(1);
+        assertEquals(2, it2.getNumber());
+        assertEquals(0, it2.getDropped());
+        assertEquals(1.0, it2.getOperations(0), 0);
+        assertEquals(100, it2.getMaxLatency(0));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testSlots() throws IOException {
+        File f = File.createTempFile("jmh", ".trace");
+        f.deleteOnExit();
+        TraceFile trace = new TraceFile(f, "bench.Foo.bar", 1, 1, 1);
+        trace.newWriter();
+        trace.newWriter();
+    }
+
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2005, 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jmh.logic.results;
+
+import org.junit.Test;
+import org.openjdk.jmh.util.internal.SampleHistogram;
+
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+public class TestLoadCurve {
+
+    private static OpenLoopTimePerOp step(double target, long achieved, long latency) {
+        SampleHistogram b = new SampleHistogram(3);
+        b.record(latency);
+        return new OpenLoopTimePerOp(ResultRole.PRIMARY, "Test1", b, achieved, 1000000000L, target, TimeUnit.MICROSECONDS);
+    }
+
+    @Test
+    public void testSaturation() {
+        SortedMap<Double, OpenLoopTimePerOp> steps = new TreeMap<Double, OpenLoopTimePerOp>();
+        steps.put(900.0, step(900, 890, 2000));
+        steps.put(250.0, step(250, 250, 1000));
+        steps.put(1200.0, step(1200, 1000, 80000));
+
+        LoadCurve curve = new LoadCurve(1000, steps);
+        assertEquals(3, curve.size());
+        assertEquals(0.25, curve.getLoad(0), 1e-9);
+        assertEquals(2.0, curve.getLatency(1, 50), 1e-9);
+        assertFalse(curve.isSaturated(1));
+        assertTrue(curve.isSaturated(2));
+        assertEquals(2, curve.getSaturationPoint());
+        assertEquals(890.0, curve.getSustainedRate(), 1e-9);
+    }
+
+    @Test
+    public void testNotSaturated() {
+        SortedMap<Double, OpenLoopTimePerOp> steps = new TreeMap<Double, OpenLoopTimePerOp>();
+        steps.put(500.0, step(500, 500, 1000));
+
+        LoadCurve curve = new LoadCurve(-1, steps);
+        assertEquals(-1, curve.getSaturationPoint());
+        assertEquals(500.0, curve.getSustainedRate(), 1e-9);
+        assertTrue(Double.isNaN(curve.getLoad(0)));
+    }
+
+    @Test
+    public void testOpsPerSecond() {
+        OpsPerTimeUnit r = new OpsPerTimeUnit(ResultRole.PRIMARY, "Test1", 2000, 1000000000L, TimeUnit.MILLISECONDS);
+        assertEquals(2000.0, LoadCurve.opsPerSecond(r), 1e-9);
+    }
+
+}
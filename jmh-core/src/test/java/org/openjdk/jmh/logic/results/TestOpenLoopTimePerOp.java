@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2005, 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jmh.logic.results;
+
+import org.junit.Test;
+import org.openjdk.jmh.util.internal.SampleHistogram;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertEquals;
+
+public class TestOpenLoopTimePerOp {
+
+    private static OpenLoopTimePerOp result(long ops, long durationNs, double rate, long... samples) {
+        SampleHistogram b = new SampleHistogram(3);
+        for (long s : samples) {
+            b.record(s);
+        }
+        return new OpenLoopTimePerOp(ResultRole.BOTH, "Test1", b, ops, durationNs, rate, TimeUnit.MICROSECONDS);
+    }
+
+    @Test
+    public void testIterationAggregator() {
+        // threads run concurrently: rates add up
+        OpenLoopTimePerOp r1 = result(1000, 1000000000L, 1000, 1000, 2000);
+        OpenLoopTimePerOp r2 = result(500, 1000000000L, 1000, 3000, 4000);
+        OpenLoopTimePerOp result = (OpenLoopTimePerOp) r1.getIterationAggregator().aggregate(Arrays.asList(r1, r2));
+
+        assertEquals(2.5, result.getScore());
+        assertEquals("us/op", result.getScoreUnit());
+        assertEquals(1500.0, result.getAchievedRate());
+        assertEquals(2000.0, result.getTargetRate());
+    }
+
+    @Test
+    public void testRunAggregator() {
+        // iterations run one after another: rates average out
+        OpenLoopTimePerOp r1 = result(1000, 1000000000L, 1000, 1000, 2000);
+        OpenLoopTimePerOp r2 = result(500, 1000000000L, 1000, 3000, 4000);
+        OpenLoopTimePerOp result = (OpenLoopTimePerOp) r1.getRunAggregator().aggregate(Arrays.asList(r1, r2));
+
+        assertEquals(2.5, result.getScore());
+        assertEquals(750.0, result.getAchievedRate());
+        assertEquals(1000.0, result.getTargetRate());
+    }
+
+}
@@ -25,7 +25,7 @@
 package org.openjdk.jmh.logic.results;
 
 import org.junit.Test;
-import org.openjdk.jmh.util.internal.SampleBuffer;
+import org.openjdk.jmh.util.internal.SampleHistogram;
 
 import java.util.Arrays;
 import java.util.concurrent.TimeUnit;
@@ -40,13 +40,13 @@ public class TestSampleTimePerOp {
 
     @Test
     public void testRunAggregator1() {
-        SampleBuffer b1 = new SampleBuffer();
-        b1.add(1000);
-        b1.add(2000);
+        SampleHistogram b1 = new SampleHistogram(3);
+        b1.record(1000);
+        b1.record(2000);
 
-        SampleBuffer b2 = new SampleBuffer();
-        b2.add(3000);
-        b2.add(4000);
+        SampleHistogram b2 = new SampleHistogram(3);
+        b2.record(3000);
+        b2.record(4000);
 
         SampleTimePerOp r1 = new SampleTimePerOp(ResultRole.BOTH, "Test1", b1, TimeUnit.MICROSECONDS);
         SampleTimePerOp r2 = new SampleTimePerOp(ResultRole.BOTH, "Test1", b2, TimeUnit.MICROSECONDS);
@@ -58,13 +58,13 @@ public class TestSampleTimePerOp {
 
     @Test
     public void testIterationAggregator1() {
-        SampleBuffer b1 = new SampleBuffer();
-        b1.add(1000);
-        b1.add(2000);
+        SampleHistogram b1 = new SampleHistogram(3);
+        b1.record(1000);
+        b1.record(2000);
 
-        SampleBuffer b2 = new SampleBuffer();
-        b2.add(3000);
-        b2.add(4000);
+        SampleHistogram b2 = new SampleHistogram(3);
+        b2.record(3000);
+        b2.record(4000);
 
         SampleTimePerOp r1 = new SampleTimePerOp(ResultRole.BOTH, "Test1", b1, TimeUnit.MICROSECONDS);
         SampleTimePerOp r2 = new SampleTimePerOp(ResultRole.BOTH, "Test1", b2, TimeUnit.MICROSECONDS);
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2005, 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jmh.logic.results;
+
+import org.junit.Test;
+import org.openjdk.jmh.annotations.Mode;
+
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import static junit.framework.Assert.assertEquals;
+
+public class TestScalabilityCurve {
+
+    @Test
+    public void testThroughput() {
+        SortedMap<Integer, Double> scores = new TreeMap<Integer, Double>();
+        scores.put(4, 300.0);
+        scores.put(1, 100.0);
+        scores.put(2, 200.0);
+
+        ScalabilityCurve curve = new ScalabilityCurve(Mode.Throughput, scores);
+        assertEquals(3, curve.size());
+        assertEquals(1, curve.getBaselineThreads());
+        assertEquals(4, curve.getThreads(2));
+        assertEquals(2.0, curve.getSpeedup(1), 1e-9);
+        assertEquals(1.0, curve.getEfficiency(1), 1e-9);
+        assertEquals(3.0, curve.getSpeedup(2), 1e-9);
+        assertEquals(0.75, curve.getEfficiency(2), 1e-9);
+    }
+
+    @Test
+    public void testAverageTime() {
+        SortedMap<Integer, Double> scores = new TreeMap<Integer, Double>();
+        scores.put(2, 10.0);
+        scores.put(4, 10.0);
+        scores.put(8, 40.0);
+
+        // time per op is per thread: constant latency with more threads is linear scaling
+        ScalabilityCurve curve = new ScalabilityCurve(Mode.AverageTime, scores);
+        assertEquals(2, curve.getBaselineThreads());
+        assertEquals(2.0, curve.getSpeedup(1), 1e-9);
+        assertEquals(1.0, curve.getEfficiency(1), 1e-9);
+        assertEquals(1.0, curve.getSpeedup(2), 1e-9);
+        assertEquals(0.25, curve.getEfficiency(2), 1e-9);
+    }
+
+}
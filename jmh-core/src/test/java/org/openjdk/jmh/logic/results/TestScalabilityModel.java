@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2005, 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jmh.logic.results;
+
+import org.junit.Test;
+import org.openjdk.jmh.annotations.Mode;
+
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+public class TestScalabilityModel {
+
+    private static double usl(double n, double alpha, double beta) {
+        return 1000 * n / (1 + alpha * (n - 1) + beta * n * (n - 1));
+    }
+
+    private static ScalabilityCurve curve(int[] threads, double alpha, double beta) {
+        SortedMap<Integer, Double> scores = new TreeMap<Integer, Double>();
+        for (int t : threads) {
+            scores.put(t, usl(t, alpha, beta));
+        }
+        return new ScalabilityCurve(Mode.Throughput, scores);
+    }
+
+    @Test
+    public void testUSLExact() {
+        ScalabilityModel m = ScalabilityModel.fitUSL(curve(new int[]{1, 2, 4, 8, 16, 32}, 0.05, 0.001));
+
+        assertEquals(0.05, m.getContention(), 1e-6);
+        assertEquals(0.001, m.getCoherency(), 1e-6);
+        assertEquals(1.0, m.getRSquared(), 1e-6);
+        assertTrue(m.hasPeak());
+        // sqrt(0.95 / 0.001) = 30.8
+        assertEquals(31, m.getPeakThreads());
+    }
+
+    @Test
+    public void testUSLWithoutSingleThread() {
+        ScalabilityModel m = ScalabilityModel.fitUSL(curve(new int[]{2, 4, 8, 16, 32}, 0.05, 0.001));
+
+        assertEquals(0.05, m.getContention(), 1e-3);
+        assertEquals(0.001, m.getCoherency(), 1e-4);
+        assertEquals(31, m.getPeakThreads());
+    }
+
+    @Test
+    public void testAmdahl() {
+        ScalabilityModel m = ScalabilityModel.fitAmdahl(curve(new int[]{1, 2, 4, 8}, 0.1, 0));
+
+        assertEquals(0.1, m.getContention(), 1e-6);
+        assertFalse(m.hasPeak());
+        assertEquals(-1, m.getPeakThreads());
+        assertEquals(10.0, m.getMaxSpeedup(), 1e-6);
+    }
+
+    @Test
+    public void testTooFewPoints() {
+        assertNull(ScalabilityModel.fitUSL(curve(new int[]{1, 2}, 0.1, 0)));
+    }
+
+}
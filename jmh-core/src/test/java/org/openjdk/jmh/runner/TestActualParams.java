@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2005, 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jmh.runner;
+
+import org.junit.Test;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the benchmark parameters
+ */
+public class TestActualParams {
+
+    @Test
+    public void testLineRoundTrip() {
+        SortedMap<String, List<String>> space = new TreeMap<String, List<String>>();
+        space.put("size", Arrays.asList("1", "10"));
+        space.put("label", Arrays.asList("a,b", "x=y|z;w", "%"));
+        space.put("empty", Collections.<String>emptyList());
+
+        ActualParams params = new ActualParams().with("size", "10").with("label", "x=y|z;w");
+        BenchmarkRecord br = new BenchmarkRecord("a.A.a", "a.generated.A.a", Mode.Throughput, space, params);
+
+        BenchmarkRecord copy = new BenchmarkRecord(br.toLine());
+        assertEquals(br, copy);
+        assertEquals(space, copy.getParamSpace());
+        assertEquals(params, copy.getActualParams());
+    }
+
+    @Test
+    public void testLineWithTargetRate() {
+        BenchmarkRecord br = new BenchmarkRecord("a.A.a", "a.generated.A.a", Mode.OpenLoop).cloneWithTargetRate(1234.5);
+
+        BenchmarkRecord copy = new BenchmarkRecord(br.toLine());
+        assertEquals(br, copy);
+        assertEquals(1234.5, copy.getTargetRate(), 0);
+        assertEquals(-1, copy.getThreads());
+    }
+
+    @Test
+    public void testLineWithoutParams() {
+        BenchmarkRecord br = new BenchmarkRecord("a.A.a,a.generated.A.a,Throughput");
+        assertEquals("a.A.a,a.generated.A.a,Throughput", br.toLine());
+        assertTrue(br.getParamSpace().isEmpty());
+        assertTrue(br.getActualParams().isEmpty());
+    }
+
+    @Test
+    public void testNumericOrder() {
+        ActualParams p2 = new ActualParams().with("size", "2");
+        ActualParams p10 = new ActualParams().with("size", "10");
+        assertTrue(p2.compareTo(p10) < 0);
+        assertTrue(p10.compareTo(p2) > 0);
+        assertEquals(0, p2.compareTo(new ActualParams().with("size", "2")));
+    }
+
+    @Test
+    public void testConvert() {
+        assertEquals(42, ActualParams.convert(" 42", int.class));
+        assertEquals(42L, ActualParams.convert("42", Long.class));
+        assertEquals(true, ActualParams.convert("true", boolean.class));
+        assertEquals('c', ActualParams.convert("c", char.class));
+        assertEquals(TimeUnit.SECONDS, ActualParams.convert("SECONDS", TimeUnit.class));
+        assertEquals(" s ", ActualParams.convert(" s ", String.class));
+    }
+
+    static class Base {
+        @Param
+        int size;
+    }
+
+    static class Derived extends Base {
+        @Param
+        private String label;
+
+        int notParam;
+    }
+
+    @Test
+    public void testInject() {
+        Derived d = new Derived();
+        new ActualParams().with("size", "10").with("label", "abc").injectInto(d);
+        assertEquals(10, d.size);
+        assertEquals("abc", d.label);
+        assertEquals(0, d.notParam);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testInjectMissing() {
+        new ActualParams().with("size", "10").injectInto(new Derived());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testInjectMalformed() {
+        new ActualParams().with("size", "ten").with("label", "abc").injectInto(new Derived());
+    }
+
+}
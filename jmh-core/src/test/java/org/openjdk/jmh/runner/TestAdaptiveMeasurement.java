@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2005, 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jmh.runner;
+
+import org.junit.Test;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.logic.results.IterationResult;
+import org.openjdk.jmh.logic.results.OpsPerTimeUnit;
+import org.openjdk.jmh.logic.results.ResultRole;
+import org.openjdk.jmh.runner.parameters.IterationParams;
+import org.openjdk.jmh.runner.parameters.TimeValue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the convergence check of adaptive measurement
+ */
+public class TestAdaptiveMeasurement {
+
+    private static List<IterationResult> results(long... scores) {
+        List<IterationResult> list = new ArrayList<IterationResult>();
+        for (long s : scores) {
+            IterationResult r = new IterationResult(new BenchmarkRecord("blah,blah," + Mode.Throughput), new IterationParams(1, TimeValue.days(1), 1));
+            r.addResult(new OpsPerTimeUnit(ResultRole.BOTH, "test", s, 1000 * 1000));
+            list.add(r);
+        }
+        return list;
+    }
+
+    @Test
+    public void testNotEnoughData() {
+        assertEquals(Double.POSITIVE_INFINITY, BaseRunner.getRelativeError(results()), 0);
+        assertEquals(Double.POSITIVE_INFINITY, BaseRunner.getRelativeError(results(100)), 0);
+    }
+
+    @Test
+    public void testStable() {
+        assertEquals(0, BaseRunner.getRelativeError(results(100, 100, 100)), 0);
+        assertTrue(BaseRunner.getRelativeError(results(1000, 1001, 999, 1000, 1000)) < 0.01);
+    }
+
+    @Test
+    public void testNoisy() {
+        assertTrue(BaseRunner.getRelativeError(results(100, 300, 50, 200, 120)) > 0.5);
+    }
+
+    @Test
+    public void testConvergesWithMoreData() {
+        double few = BaseRunner.getRelativeError(results(100, 110, 90));
+        double many = BaseRunner.getRelativeError(results(100, 110, 90, 100, 110, 90, 100, 110, 90));
+        assertTrue(many < few);
+    }
+
+}
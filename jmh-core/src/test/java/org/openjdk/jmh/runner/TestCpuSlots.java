@@ -22,21 +22,37 @@
  * or visit www.oracle.com if you need additional information or have any
  * questions.
  */
-package org.openjdk.jmh.link.frames;
+package org.openjdk.jmh.runner;
 
-import org.openjdk.jmh.runner.options.Options;
+import org.junit.Test;
 
-import java.io.Serializable;
+import static org.junit.Assert.assertEquals;
 
-public class OptionsFrame implements Serializable {
+/**
+ * Test for CpuSlots
+ */
+public class TestCpuSlots {
+
+    @Test
+    public void testDisjointSlots() throws InterruptedException {
+        CpuSlots slots = new CpuSlots(new int[]{0, 1, 2, 3, 4, 5, 6, 7});
 
-    private final Options opts;
+        CpuSlots.Slot s1 = slots.acquire(2);
+        CpuSlots.Slot s2 = slots.acquire(4);
+        assertEquals("0-1", s1.toString());
+        assertEquals("2-5", s2.toString());
 
-    public OptionsFrame(Options opts) {
-        this.opts = opts;
+        slots.release(s1);
+        CpuSlots.Slot s3 = slots.acquire(3);
+        assertEquals("0-1,6", s3.toString());
     }
 
-    public Options getOpts() {
-        return opts;
+    @Test
+    public void testWideSlotGetsAllCpus() throws InterruptedException {
+        CpuSlots slots = new CpuSlots(new int[]{4, 5, 6, 7});
+        CpuSlots.Slot s = slots.acquire(100);
+        assertEquals(4, s.size());
+        assertEquals("4-7", s.toString());
     }
+
 }
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2005, 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jmh.runner;
+
+import org.junit.Test;
+import org.openjdk.jmh.runner.options.ExecutionOrder;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for the fork ordering
+ */
+public class TestExecutionPlan {
+
+    private static String plan(ExecutionOrder order, Random random, Integer... forkCounts) {
+        return ExecutionPlan.plan(Arrays.asList(forkCounts), order, random).toString();
+    }
+
+    @Test
+    public void testSequential() {
+        assertEquals("[0:0, 0:1, 1:0, 2:0, 2:1, 2:2]", plan(ExecutionOrder.SEQUENTIAL, null, 2, 1, 3));
+    }
+
+    @Test
+    public void testInterleaved() {
+        assertEquals("[0:0, 1:0, 2:0, 0:1, 2:1, 2:2]", plan(ExecutionOrder.INTERLEAVED, null, 2, 1, 3));
+    }
+
+    @Test
+    public void testEmpty() {
+        assertEquals("[]", plan(ExecutionOrder.RANDOMIZED, new Random(1)));
+        assertEquals("[]", plan(ExecutionOrder.INTERLEAVED, null, 0, 0));
+    }
+
+    @Test
+    public void testRandomizedKeepsRounds() {
+        List<ExecutionPlan.PlannedFork> plan = ExecutionPlan.plan(Arrays.asList(3, 3, 3, 3), ExecutionOrder.RANDOMIZED, new Random(42));
+        assertEquals(12, plan.size());
+        for (int i = 0; i < plan.size(); i++) {
+            assertEquals(i / 4, plan.get(i).getFork());
+        }
+    }
+
+    @Test
+    public void testRandomizedIsReproducible() {
+        assertEquals(plan(ExecutionOrder.RANDOMIZED, new Random(42), 5, 5, 5, 5, 5),
+                     plan(ExecutionOrder.RANDOMIZED, new Random(42), 5, 5, 5, 5, 5));
+    }
+
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2005, 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jmh.runner;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test for ForkStartup
+ */
+public class TestForkStartup {
+
+    @Test
+    public void testParseVersion() {
+        assertEquals(6, ForkStartup.parseVersion("1.6.0_45"));
+        assertEquals(8, ForkStartup.parseVersion("1.8"));
+        assertEquals(9, ForkStartup.parseVersion("9-ea"));
+        assertEquals(17, ForkStartup.parseVersion("17.0.9"));
+        assertEquals(0, ForkStartup.parseVersion("unknown"));
+    }
+
+    @Test
+    public void testQuote() {
+        assertEquals("\"-Xmx1g\"", ForkStartup.quote("-Xmx1g"));
+        assertEquals("\"C:\\\\My Path\\\\a.jar\"", ForkStartup.quote("\"C:\\My Path\\a.jar\""));
+        assertEquals("\"-Dfoo=\\\"bar\\\"\"", ForkStartup.quote("-Dfoo=\"bar\""));
+    }
+
+    private static final String MAIN = "foo.Main";
+
+    /**
+     * @return the command line along with the argument file contents
+     */
+    private static String expand(ForkStartup.Command command) throws IOException {
+        List<String> args = new ArrayList<String>();
+        for (String arg : command.getCommand()) {
+            if (arg.startsWith("@")) {
+                BufferedReader reader = new BufferedReader(new FileReader(arg.substring(1)));
+                try {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        args.add(line);
+                    }
+                } finally {
+                    reader.close();
+                }
+            } else {
+                args.add(arg);
+            }
+        }
+        return args.toString();
+    }
+
+    @Test
+    public void testArchiveDumpedOnce() throws IOException {
+        ForkStartup startup = new ForkStartup(null);
+        Assume.assumeTrue(startup.supportsDynamicArchive());
+
+        File jar = File.createTempFile("jmh-fork", ".jar");
+        jar.deleteOnExit();
+        String[] command = new String[]{"java", "-cp", jar.getAbsolutePath(), MAIN, "1"};
+
+        assertTrue(startup.claimArchive(command, MAIN));
+        assertFalse(startup.claimArchive(command, MAIN));
+
+        // other forks do not touch the archive while it is being dumped
+        assertFalse(expand(startup.rewrite(command, MAIN, false)).contains("Archive"));
+
+        ForkStartup.Command dump = startup.rewrite(command, MAIN, true);
+        String dumpCommand = expand(dump);
+        assertTrue(dumpCommand, dumpCommand.contains("-XX:ArchiveClassesAtExit="));
+        assertEquals("dumping CDS archive", dump.getState());
+
+        String temp = dumpCommand.replaceAll("(?s).*-XX:ArchiveClassesAtExit=([^\"]*)\".*", "$1");
+        assertFalse(expand(startup.rewrite(command, MAIN, false)).contains("SharedArchiveFile"));
+
+        // pretend the fork had dumped the archive
+        FileOutputStream fos = new FileOutputStream(temp);
+        fos.write(new byte[]{1, 2, 3});
+        fos.close();
+        assertFalse(expand(startup.rewrite(command, MAIN, false)).contains("SharedArchiveFile"));
+
+        assertTrue(startup.archiveDumped(dump, true));
+        assertFalse(new File(temp).exists());
+
+        ForkStartup.Command use = startup.rewrite(command, MAIN, false);
+        assertTrue(expand(use).contains("-XX:SharedArchiveFile="));
+        assertEquals("using CDS archive", use.getState());
+    }
+
+    @Test
+    public void testArchiveFailedDump() throws IOException {
+        ForkStartup startup = new ForkStartup(null);
+        Assume.assumeTrue(startup.supportsDynamicArchive());
+
+        File jar = File.createTempFile("jmh-fork", ".jar");
+        jar.deleteOnExit();
+        String[] command = new String[]{"java", "-cp", jar.getAbsolutePath(), MAIN, "1"};
+
+        assertTrue(startup.claimArchive(command, MAIN));
+        ForkStartup.Command dump = startup.rewrite(command, MAIN, true);
+
+        // killed fork may leave the half-written archive behind
+        String temp = expand(dump).replaceAll("(?s).*-XX:ArchiveClassesAtExit=([^\"]*)\".*", "$1");
+        FileOutputStream fos = new FileOutputStream(temp);
+        fos.write(new byte[]{1, 2, 3});
+        fos.close();
+
+        assertFalse(startup.archiveDumped(dump, false));
+        assertFalse(new File(temp).exists());
+        ForkStartup.Command plain = startup.rewrite(command, MAIN, false);
+        assertFalse(expand(plain).contains("Archive"));
+        assertEquals("no CDS archive", plain.getState());
+    }
+
+}
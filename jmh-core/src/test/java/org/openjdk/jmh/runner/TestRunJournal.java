@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2005, 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jmh.runner;
+
+import org.junit.Test;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.logic.results.IterationResult;
+import org.openjdk.jmh.logic.results.OpsPerTimeUnit;
+import org.openjdk.jmh.logic.results.ResultRole;
+import org.openjdk.jmh.logic.results.RunResult;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.parameters.IterationParams;
+import org.openjdk.jmh.runner.parameters.TimeValue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for RunJournal
+ */
+public class TestRunJournal {
+
+    private static final BenchmarkRecord BENCH_A = new BenchmarkRecord("a.A.a", "a.generated.A.a", Mode.Throughput);
+    private static final BenchmarkRecord BENCH_B = new BenchmarkRecord("b.B.b", "b.generated.B.b", Mode.Throughput);
+
+    private static final String DIGEST = RunJournal.digest(new OptionsBuilder().build());
+
+    private static RunResult result(BenchmarkRecord benchmark, long ops) {
+        IterationResult r = new IterationResult(benchmark, new IterationParams(1, TimeValue.seconds(1), 1));
+        r.addResult(new OpsPerTimeUnit(ResultRole.BOTH, "test", ops, 1000 * 1000));
+        return new RunResult(Collections.singleton(r));
+    }
+
+    private static File tempFile() throws IOException {
+        File file = File.createTempFile("jmh-journal", ".bin");
+        file.deleteOnExit();
+        return file;
+    }
+
+    @Test
+    public void testResume() throws IOException {
+        File file = tempFile();
+
+        RunJournal journal = new RunJournal(file, DIGEST, false);
+        journal.forkCompleted(BENCH_A, 0, result(BENCH_A, 10));
+        journal.forkCompleted(BENCH_A, 1, result(BENCH_A, 20));
+        journal.benchmarkCompleted(BENCH_B, result(BENCH_B, 30));
+        journal.close();
+
+        journal = new RunJournal(file, DIGEST, true);
+        assertEquals(1, journal.getCompletedBenchmarkCount());
+        assertEquals(2, journal.getCompletedForkCount());
+        assertTrue(journal.hasCompletedForks(BENCH_A));
+        assertFalse(journal.hasCompletedForks(BENCH_B));
+        assertEquals(20, journal.getCompleted(BENCH_A, 1).getPrimaryResult().getScore(), 0.001);
+        assertNull(journal.getCompleted(BENCH_A, 2));
+        assertEquals(30, journal.getCompleted(BENCH_B).getPrimaryResult().getScore(), 0.001);
+        journal.close();
+    }
+
+    @Test
+    public void testRefusesToOverwrite() throws IOException {
+        File file = tempFile();
+
+        RunJournal journal = new RunJournal(file, DIGEST, false);
+        journal.benchmarkCompleted(BENCH_A, result(BENCH_A, 10));
+        journal.close();
+
+        try {
+            new RunJournal(file, DIGEST, false);
+            fail("Existing journal should not be overwritten");
+        } catch (IOException e) {
+            // expected
+        }
+
+        journal = new RunJournal(file, DIGEST, true);
+        assertEquals(1, journal.getCompletedBenchmarkCount());
+        journal.close();
+    }
+
+    @Test
+    public void testRefusesDifferentOptions() throws IOException {
+        File file = tempFile();
+
+        String digest = RunJournal.digest(new OptionsBuilder().measurementIterations(5).param("x", "1").build());
+        RunJournal journal = new RunJournal(file, digest, false);
+        journal.benchmarkCompleted(BENCH_A, result(BENCH_A, 10));
+        journal.close();
+
+        String[] others = new String[] {
+                RunJournal.digest(new OptionsBuilder().measurementIterations(10).param("x", "1").build()),
+                RunJournal.digest(new OptionsBuilder().measurementIterations(5).param("x", "2").build()),
+                RunJournal.digest(new OptionsBuilder().measurementIterations(5).param("x", "1").forks(3).build()),
+        };
+        for (String other : others) {
+            try {
+                new RunJournal(file, other, true);
+                fail("Journal written with the different options should not be resumed");
+            } catch (IOException e) {
+                // expected
+            }
+        }
+
+        // selecting the other benchmarks does not matter
+        String same = RunJournal.digest(new OptionsBuilder().include("foo").measurementIterations(5).param("x", "1").build());
+        assertEquals(digest, same);
+
+        journal = new RunJournal(file, same, true);
+        assertEquals(1, journal.getCompletedBenchmarkCount());
+        journal.close();
+    }
+
+    @Test
+    public void testPartialResume() throws IOException {
+        File file = tempFile();
+
+        IterationResult r = new IterationResult(BENCH_A, new IterationParams(1, TimeValue.seconds(1), 1));
+        r.addResult(new OpsPerTimeUnit(ResultRole.BOTH, "test", 10, 1000 * 1000));
+        r.markTimedOut();
+
+        RunJournal journal = new RunJournal(file, DIGEST, false);
+        journal.benchmarkCompleted(BENCH_A, new RunResult(Collections.singleton(r), true));
+        journal.close();
+
+        journal = new RunJournal(file, DIGEST, true);
+        RunResult rr = journal.getCompleted(BENCH_A);
+        assertTrue(rr.isPartial());
+        assertTrue(rr.getRawIterationResults().iterator().next().isTimedOut());
+        assertEquals(10, rr.getPrimaryResult().getScore(), 0.001);
+        journal.close();
+    }
+
+    @Test
+    public void testTornTail() throws IOException {
+        File file = tempFile();
+
+        RunJournal journal = new RunJournal(file, DIGEST, false);
+        journal.forkCompleted(BENCH_A, 0, result(BENCH_A, 10));
+        journal.forkCompleted(BENCH_A, 1, result(BENCH_A, 20));
+        journal.close();
+
+        // simulate the crash in the middle of the last record
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(raf.length() - 10);
+        raf.close();
+
+        journal = new RunJournal(file, DIGEST, true);
+        assertNotNull(journal.getCompleted(BENCH_A, 0));
+        assertNull(journal.getCompleted(BENCH_A, 1));
+
+        // appending after the torn record should work
+        journal.forkCompleted(BENCH_A, 1, result(BENCH_A, 20));
+        journal.close();
+
+        journal = new RunJournal(file, DIGEST, true);
+        assertEquals(2, journal.getCompletedForkCount());
+        journal.close();
+    }
+
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2005, 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jmh.runner;
+
+import org.junit.Test;
+import org.openjdk.jmh.logic.InfraControl;
+import org.openjdk.jmh.logic.results.OpsPerTimeUnit;
+import org.openjdk.jmh.logic.results.Result;
+import org.openjdk.jmh.logic.results.ResultRole;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test for WorkerPool
+ */
+public class TestWorkerPool {
+
+    @Test
+    public void testReusesWorkers() throws InterruptedException {
+        final AtomicInteger calls = new AtomicInteger();
+        WorkerPool pool = new WorkerPool(4, new HarnessThreadFactory("test"), new WorkerPool.Body() {
+            @Override
+            public Result run(int worker, InfraControl control) {
+                return new OpsPerTimeUnit(ResultRole.PRIMARY, "test", calls.incrementAndGet(), 1, TimeUnit.NANOSECONDS);
+            }
+        });
+
+        for (int iter = 0; iter < 10; iter++) {
+            int count = (iter % 2 == 0) ? 4 : 2;
+            pool.start(null, count);
+            assertTrue(pool.await(TimeUnit.SECONDS.toNanos(10)));
+            for (int i = 0; i < count; i++) {
+                assertTrue(pool.isCompleted(i));
+                assertNull(pool.getError(i));
+            }
+            assertTrue(pool.getStartSkew() >= 0);
+            assertTrue(pool.getStopSkew() >= 0);
+        }
+        assertEquals(5 * 4 + 5 * 2, calls.get());
+
+        pool.terminate(false);
+    }
+
+    @Test
+    public void testReportsErrors() throws InterruptedException {
+        WorkerPool pool = new WorkerPool(2, new HarnessThreadFactory("test"), new WorkerPool.Body() {
+            @Override
+            public Result run(int worker, InfraControl control) {
+                throw new IllegalStateException("expected");
+            }
+        });
+
+        pool.start(null, 2);
+        assertTrue(pool.await(TimeUnit.SECONDS.toNanos(10)));
+        assertTrue(pool.getError(0) instanceof IllegalStateException);
+        assertNull(pool.getResult(1));
+
+        pool.terminate(false);
+    }
+
+}
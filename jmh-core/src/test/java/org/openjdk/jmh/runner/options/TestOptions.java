@@ -109,4 +109,15 @@ public class TestOptions {
         }
     }
 
+    @Test
+    public void testTrace() throws Exception {
+        CommandLineOptions options = getOptions(new String[]{"-trace", "traces", "-tre", "10", "-te", "0.05"});
+        assertEquals("traces", options.getTrace());
+        assertEquals(10, options.getTraceEvery());
+        assertEquals(0.05, options.getTargetError(), 0);
+
+        options = getOptions(new String[]{"--traceevery", "3"});
+        assertEquals(3, options.getTraceEvery());
+    }
+
 }
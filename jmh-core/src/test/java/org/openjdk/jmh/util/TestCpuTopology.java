@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2005, 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jmh.util;
+
+import org.junit.Test;
+import org.openjdk.jmh.runner.options.AffinityPolicy;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test for CpuTopology
+ */
+public class TestCpuTopology {
+
+    /**
+     * 2 sockets x 2 cores x 2 SMT siblings, numbered the way Linux does: siblings are N and N+4.
+     */
+    private static CpuTopology twoSockets() {
+        return new CpuTopology(
+                new int[]{0, 1, 2, 3, 4, 5, 6, 7},
+                new int[]{0, 0, 1, 1, 0, 0, 1, 1},
+                new int[]{0, 1, 0, 1, 0, 1, 0, 1});
+    }
+
+    private static int[] workers(CpuTopology.Placement p, int threads) {
+        int[] r = new int[threads];
+        for (int t = 0; t < threads; t++) {
+            r[t] = p.getWorkerCpu(t);
+        }
+        return r;
+    }
+
+    @Test
+    public void testParseCpuList() {
+        assertTrue(Arrays.equals(new int[]{0, 1, 2, 3, 8, 10, 11}, CpuTopology.parseCpuList("0-3,8,10-11\n")));
+        assertTrue(Arrays.equals(new int[]{5}, CpuTopology.parseCpuList(" 5 ")));
+    }
+
+    @Test
+    public void testToCpuList() {
+        assertEquals("0-3,8,10-11", CpuTopology.toCpuList(new int[]{0, 1, 2, 3, 8, 10, 11}));
+        assertEquals("5", CpuTopology.toCpuList(new int[]{5}));
+    }
+
+    @Test
+    public void testShape() {
+        CpuTopology t = twoSockets();
+        assertEquals(8, t.size());
+        assertEquals(4, t.cores());
+        assertEquals(2, t.packages());
+        assertNull(t.place(AffinityPolicy.NONE, 4));
+    }
+
+    @Test
+    public void testCompact() {
+        CpuTopology.Placement p = twoSockets().place(AffinityPolicy.COMPACT, 4);
+        assertTrue(Arrays.equals(new int[]{0, 4, 1, 5}, workers(p, 4)));
+        assertEquals("2-3,6-7", CpuTopology.toCpuList(p.getHarnessCpus()));
+    }
+
+    @Test
+    public void testScatter() {
+        CpuTopology.Placement p = twoSockets().place(AffinityPolicy.SCATTER, 4);
+        assertTrue(Arrays.equals(new int[]{0, 2, 1, 3}, workers(p, 4)));
+        assertEquals("4-7", CpuTopology.toCpuList(p.getHarnessCpus()));
+    }
+
+    @Test
+    public void testPhysical() {
+        CpuTopology.Placement p = twoSockets().place(AffinityPolicy.PHYSICAL, 5);
+        assertTrue(Arrays.equals(new int[]{0, 1, 2, 3, 4}, workers(p, 5)));
+        assertEquals("5-7", CpuTopology.toCpuList(p.getHarnessCpus()));
+        assertFalse(p.isOversubscribed());
+    }
+
+    @Test
+    public void testNoSMT() {
+        CpuTopology.Placement p = twoSockets().place(AffinityPolicy.NO_SMT, 2);
+        assertTrue(Arrays.equals(new int[]{0, 1}, workers(p, 2)));
+        // siblings 4 and 5 are kept idle
+        assertEquals("2-3,6-7", CpuTopology.toCpuList(p.getHarnessCpus()));
+
+        p = twoSockets().place(AffinityPolicy.NO_SMT, 6);
+        assertTrue(Arrays.equals(new int[]{0, 1, 2, 3, 0, 1}, workers(p, 6)));
+        assertEquals(0, p.getHarnessCpus().length);
+        assertTrue(p.isOversubscribed());
+    }
+
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2005, 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jmh.util;
+
+import org.junit.Test;
+import org.openjdk.jmh.util.internal.SampleHistogram;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestSampleHistogram {
+
+    @Test
+    public void testPercentiles() {
+        Random r = new Random(42);
+        long[] values = new long[100000];
+        SampleHistogram h = new SampleHistogram(3);
+        for (int i = 0; i < values.length; i++) {
+            values[i] = 100 + (long) (Math.abs(r.nextGaussian()) * 1000000);
+            h.record(values[i]);
+        }
+        Arrays.sort(values);
+
+        assertEquals(values.length, h.getCount());
+        assertEquals(values[0], h.getMin());
+        assertEquals(values[values.length - 1], h.getMax());
+        assertEquals(values[0], h.getValueAtPercentile(0), 0);
+        assertEquals(values[values.length - 1], h.getValueAtPercentile(100), 0);
+
+        for (double p : new double[]{10, 50, 90, 99, 99.9}) {
+            long exact = values[(int) Math.ceil(p / 100 * values.length) - 1];
+            assertEquals("p" + p, exact, h.getValueAtPercentile(p), exact * 0.001);
+        }
+    }
+
+    @Test
+    public void testAdd() {
+        SampleHistogram h1 = new SampleHistogram(2);
+        h1.record(1000);
+        h1.record(2000);
+
+        SampleHistogram h2 = new SampleHistogram(2);
+        h2.record(3000);
+        h2.record(4000);
+
+        h1.add(h2);
+        assertEquals(4, h1.getCount());
+        assertEquals(10000, h1.getSum());
+        assertEquals(2500.0, h1.getMean(), 0);
+        assertEquals(1000, h1.getMin());
+        assertEquals(4000, h1.getMax());
+    }
+
+    @Test
+    public void testOutOfRange() {
+        SampleHistogram h = new SampleHistogram(1);
+        h.record(-5);
+        h.record(SampleHistogram.HIGHEST_TRACKABLE * 10);
+        assertEquals(2, h.getCount());
+        assertEquals(0, h.getMin());
+        assertEquals(SampleHistogram.HIGHEST_TRACKABLE * 10, h.getMax());
+
+        h.reset();
+        assertEquals(0, h.getCount());
+    }
+
+    @Test
+    public void testSnapshot() {
+        SampleHistogram recorder = new SampleHistogram(3);
+        recorder.record(1000);
+        recorder.record(2000);
+
+        SampleHistogram snapshot = recorder.snapshot();
+        recorder.reset();
+        recorder.record(5000);
+
+        assertEquals(2, snapshot.getCount());
+        assertEquals(2000, snapshot.getMax());
+        assertEquals(2000, snapshot.getValueAtPercentile(100), 0);
+        assertEquals(0, snapshot.getCountAt(snapshot.size() - 1));
+
+        // trimmed snapshot still takes the larger values
+        SampleHistogram merged = new SampleHistogram(3).snapshot();
+        merged.add(snapshot);
+        merged.add(recorder.snapshot());
+        merged.record(SampleHistogram.HIGHEST_TRACKABLE);
+        assertEquals(4, merged.getCount());
+        assertEquals(5000, merged.getValueAtPercentile(75), 5);
+        long total = 0;
+        for (int i = 0; i < merged.size(); i++) {
+            total += merged.getCountAt(i);
+        }
+        assertEquals(4, total);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPrecisionMismatch() {
+        new SampleHistogram(2).add(new SampleHistogram(3));
+    }
+
+}
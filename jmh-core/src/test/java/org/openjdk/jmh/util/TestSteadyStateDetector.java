@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2005, 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.openjdk.jmh.util;
+
+import org.junit.Test;
+import org.openjdk.jmh.util.internal.SteadyStateDetector;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for SteadyStateDetector
+ */
+public class TestSteadyStateDetector {
+
+    private static SteadyStateDetector detector(double... values) {
+        SteadyStateDetector d = new SteadyStateDetector(5, 0.02);
+        for (double v : values) {
+            d.addValue(v);
+        }
+        return d;
+    }
+
+    @Test
+    public void testNotEnoughData() {
+        assertFalse(detector(100, 100, 100, 100).isSteady());
+    }
+
+    @Test
+    public void testFlat() {
+        assertTrue(detector(100, 100, 100, 100, 100).isSteady());
+        assertTrue(detector(100, 101, 99, 100, 101).isSteady());
+    }
+
+    @Test
+    public void testRamp() {
+        assertFalse(detector(100, 120, 140, 160, 180).isSteady());
+        assertTrue(detector(100, 120, 140, 160, 180, 200, 200, 200, 200, 200).isSteady());
+    }
+
+    @Test
+    public void testStep() {
+        assertFalse(detector(100, 100, 100, 500, 500).isSteady());
+    }
+
+    @Test
+    public void testOutlier() {
+        assertFalse(detector(330, 140, 380, 370, 390).isSteady());
+    }
+
+    @Test
+    public void testNoisyButStationary() {
+        assertTrue(detector(100, 90, 110, 95, 105, 100, 92, 108, 98, 102).isSteady());
+    }
+
+}